@@ -0,0 +1,153 @@
+package vn.techbox.techbox_store.cart.purge;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.techbox.techbox_store.cart.repository.CartJdbcRepository;
+import vn.techbox.techbox_store.cart.store.CartStore;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Xoá giỏ hàng không hoạt động theo từng lô nhỏ.
+ *
+ * Carts are walked in id order, {@code cart.purge.batch-size} at a time; each batch locks its
+ * carts (skipping those being changed), deletes their lines and then the carts, and commits on
+ * its own, with a pause of {@code cart.purge.pause-ms} before the next one. The position is kept
+ * between runs, so a run that fails or stops at its batch limit resumes where it left off; it
+ * goes back to the first cart once a pass reaches the end.
+ */
+@Component
+@Slf4j
+public class CartPurgeJob {
+
+    private final CartJdbcRepository cartJdbcRepository;
+    private final CartStore cartStore;
+    private final TransactionTemplate batchTransaction;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final Counter cartsCounter;
+    private final Counter itemsCounter;
+    private final Counter passesCounter;
+    private final Timer batchTimer;
+
+    public CartPurgeJob(CartJdbcRepository cartJdbcRepository,
+                        CartStore cartStore,
+                        PlatformTransactionManager transactionManager,
+                        MeterRegistry meterRegistry,
+                        @Value("${cart.purge.batch-size:500}") int batchSize,
+                        @Value("${cart.purge.pause-ms:100}") long pauseMillis) {
+        this.cartJdbcRepository = cartJdbcRepository;
+        this.cartStore = cartStore;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMillis = Math.max(0, pauseMillis);
+        this.cartsCounter = Counter.builder("cart.purge.carts.deleted")
+                .description("Idle carts deleted by the cart purge")
+                .register(meterRegistry);
+        this.itemsCounter = Counter.builder("cart.purge.items.deleted")
+                .description("Cart lines deleted with their idle cart")
+                .register(meterRegistry);
+        this.passesCounter = Counter.builder("cart.purge.passes.completed")
+                .description("Cart purge passes that reached the last cart")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("cart.purge.batch.duration")
+                .description("Time to delete one batch of idle carts")
+                .register(meterRegistry);
+        Gauge.builder("cart.purge.cursor", cursor, AtomicInteger::get)
+                .description("Id of the last cart examined by the current purge pass")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Delete every cart not changed since {@code cutoff}, continuing the current pass to its end
+     */
+    public PurgeResult purgeAll(LocalDateTime cutoff) {
+        return purge(cutoff, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Delete at most {@code maxBatches} batches of carts not changed since {@code cutoff}, from
+     * where the previous run stopped
+     */
+    public PurgeResult purge(LocalDateTime cutoff, int maxBatches) {
+        if (!runLock.tryLock()) {
+            log.debug("Cart purge already running, skipping");
+            return new PurgeResult(0, 0, 0, false);
+        }
+        try {
+            // Cached copies of the carts about to be deleted must not outlive their rows
+            cartStore.evictIdleBefore(cutoff);
+            return run(cutoff, maxBatches);
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private PurgeResult run(LocalDateTime cutoff, int maxBatches) {
+        int carts = 0;
+        int items = 0;
+        int batches = 0;
+        while (batches < maxBatches) {
+            int afterId = cursor.get();
+            long startNanos = System.nanoTime();
+            CartJdbcRepository.PurgedBatch batch = batchTransaction.execute(
+                    status -> cartJdbcRepository.purgeIdleCarts(afterId, cutoff, batchSize));
+            batchTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+            if (batch.lastId() == null) {
+                cursor.set(0);
+                passesCounter.increment();
+                log.info("Cart purge pass completed: {} carts, {} items in this run", carts, items);
+                return new PurgeResult(carts, items, batches, true);
+            }
+            cursor.set(batch.lastId());
+            carts += batch.carts();
+            items += batch.items();
+            batches++;
+            cartsCounter.increment(batch.carts());
+            itemsCounter.increment(batch.items());
+
+            if (!pause()) {
+                break;
+            }
+        }
+        log.info("Cart purge stopped after {} batches at cart id {}: {} carts, {} items",
+                batches, cursor.get(), carts, items);
+        return new PurgeResult(carts, items, batches, false);
+    }
+
+    // Nhường DB cho request thật giữa hai lô
+    private boolean pause() {
+        if (pauseMillis == 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @param completed true if the pass reached the last cart (the next run starts a new pass)
+     */
+    public record PurgeResult(int carts, int items, int batches, boolean completed) {
+    }
+}
@@ -0,0 +1,199 @@
+package vn.techbox.techbox_store.cart.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Set-based JDBC access for carts: write-behind flushes of the in-memory cart store and batched purges.
+ * Bypasses the persistence context, so callers must not rely on managed Cart/CartItem state afterwards.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CartJdbcRepository {
+
+    private static final String SELECT_CART =
+            "SELECT id, user_id, created_at, updated_at FROM carts WHERE user_id = ?";
+
+    private static final String SELECT_ITEMS =
+            "SELECT id, product_variation_id, quantity, unit_price, added_at, updated_at FROM cart_items " +
+            "WHERE cart_id = ? ORDER BY id";
+
+    // carts.user_id is unique: an existing cart (e.g. recreated after a cleanup) only gets its timestamp bumped
+    private static final String UPSERT_CART =
+            "INSERT INTO carts (user_id, created_at, updated_at) VALUES (?, ?, ?) " +
+            "ON CONFLICT (user_id) DO UPDATE SET updated_at = EXCLUDED.updated_at";
+
+    private static final String SELECT_CART_IDS =
+            "SELECT user_id, id FROM carts WHERE user_id IN (:userIds)";
+
+    private static final String DELETE_ITEM =
+            "DELETE FROM cart_items WHERE cart_id = ? AND product_variation_id = ?";
+
+    private static final String UPDATE_ITEM =
+            "UPDATE cart_items SET quantity = ?, unit_price = ?, updated_at = ? " +
+            "WHERE cart_id = ? AND product_variation_id = ?";
+
+    private static final String INSERT_ITEM =
+            "INSERT INTO cart_items (cart_id, product_variation_id, quantity, unit_price, added_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    // Carts being changed right now are skipped and picked up by a later pass
+    private static final String LOCK_IDLE_CARTS =
+            "SELECT id FROM carts WHERE id > :afterId AND updated_at < :cutoff " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED";
+
+    private static final String DELETE_ITEMS_OF_CARTS =
+            "DELETE FROM cart_items WHERE cart_id IN (:ids)";
+
+    private static final String DELETE_CARTS =
+            "DELETE FROM carts WHERE id IN (:ids)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public Optional<CartRow> findCartByUserId(Integer userId) {
+        return jdbcTemplate.query(SELECT_CART, (rs, rowNum) -> new CartRow(
+                        rs.getInt("id"),
+                        rs.getInt("user_id"),
+                        rs.getTimestamp("created_at").toLocalDateTime(),
+                        rs.getTimestamp("updated_at").toLocalDateTime()), userId)
+                .stream()
+                .findFirst();
+    }
+
+    public List<CartItemRow> findItemsByCartId(Integer cartId) {
+        return jdbcTemplate.query(SELECT_ITEMS, (rs, rowNum) -> new CartItemRow(
+                rs.getInt("id"),
+                rs.getInt("product_variation_id"),
+                rs.getInt("quantity"),
+                rs.getBigDecimal("unit_price"),
+                rs.getTimestamp("added_at").toLocalDateTime(),
+                rs.getTimestamp("updated_at").toLocalDateTime()), cartId);
+    }
+
+    /**
+     * Create or touch the carts of the given users in one batch
+     *
+     * @return cart id per user id
+     */
+    public Map<Integer, Integer> upsertCarts(Collection<CartRow> carts) {
+        if (carts.isEmpty()) {
+            return Map.of();
+        }
+        List<Object[]> rows = new ArrayList<>(carts.size());
+        List<Integer> userIds = new ArrayList<>(carts.size());
+        for (CartRow cart : carts) {
+            rows.add(new Object[]{cart.userId(), Timestamp.valueOf(cart.createdAt()), Timestamp.valueOf(cart.updatedAt())});
+            userIds.add(cart.userId());
+        }
+        jdbcTemplate.batchUpdate(UPSERT_CART, rows);
+
+        Map<Integer, Integer> cartIdByUser = new HashMap<>();
+        namedParameterJdbcTemplate.query(SELECT_CART_IDS, new MapSqlParameterSource("userIds", userIds),
+                rs -> {
+                    cartIdByUser.put(rs.getInt("user_id"), rs.getInt("id"));
+                });
+        return cartIdByUser;
+    }
+
+    /**
+     * Delete cart lines, one batched statement
+     *
+     * @param variationIdsByCart product variation ids to remove, per cart id
+     */
+    public void deleteItems(Map<Integer, ? extends Collection<Integer>> variationIdsByCart) {
+        List<Object[]> rows = new ArrayList<>();
+        variationIdsByCart.forEach((cartId, variationIds) -> {
+            for (Integer productVariationId : variationIds) {
+                rows.add(new Object[]{cartId, productVariationId});
+            }
+        });
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_ITEM, rows);
+        }
+    }
+
+    /**
+     * Update cart lines in one batch and insert, in a second batch, those that do not exist yet
+     *
+     * @param itemsByCart lines to write, per cart id
+     */
+    public void saveItems(Map<Integer, ? extends Collection<CartItemRow>> itemsByCart) {
+        List<Object[]> updates = new ArrayList<>();
+        List<Integer> cartIds = new ArrayList<>();
+        List<CartItemRow> items = new ArrayList<>();
+        itemsByCart.forEach((cartId, cartItems) -> {
+            for (CartItemRow item : cartItems) {
+                updates.add(new Object[]{item.quantity(), item.unitPrice(), Timestamp.valueOf(item.updatedAt()),
+                        cartId, item.productVariationId()});
+                cartIds.add(cartId);
+                items.add(item);
+            }
+        });
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_ITEM, updates);
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                CartItemRow item = items.get(i);
+                inserts.add(new Object[]{cartIds.get(i), item.productVariationId(), item.quantity(), item.unitPrice(),
+                        Timestamp.valueOf(item.addedAt()), Timestamp.valueOf(item.updatedAt())});
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_ITEM, inserts);
+        }
+    }
+
+    /**
+     * Delete the next batch of carts (with their lines) not changed since {@code cutoff}, in id order
+     * after {@code afterId}. Must run in a transaction: the carts stay locked until it ends.
+     *
+     * @return the batch deleted; {@code lastId} is null when no cart was left after {@code afterId}
+     */
+    public PurgedBatch purgeIdleCarts(int afterId, LocalDateTime cutoff, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("afterId", afterId)
+                .addValue("cutoff", Timestamp.valueOf(cutoff))
+                .addValue("limit", limit);
+        List<Integer> ids = namedParameterJdbcTemplate.queryForList(LOCK_IDLE_CARTS, params, Integer.class);
+        if (ids.isEmpty()) {
+            return new PurgedBatch(null, 0, 0);
+        }
+        MapSqlParameterSource idParams = new MapSqlParameterSource("ids", ids);
+        int items = namedParameterJdbcTemplate.update(DELETE_ITEMS_OF_CARTS, idParams);
+        int carts = namedParameterJdbcTemplate.update(DELETE_CARTS, idParams);
+        return new PurgedBatch(ids.get(ids.size() - 1), carts, items);
+    }
+
+    public record PurgedBatch(Integer lastId, int carts, int items) {
+    }
+
+    /**
+     * @param id null until the cart has been written
+     */
+    public record CartRow(Integer id, Integer userId, LocalDateTime createdAt, LocalDateTime updatedAt) {
+    }
+
+    /**
+     * @param id null until the line has been written (or the cart reloaded)
+     */
+    public record CartItemRow(Integer id,
+                              Integer productVariationId,
+                              int quantity,
+                              BigDecimal unitPrice,
+                              LocalDateTime addedAt,
+                              LocalDateTime updatedAt) {
+    }
+}
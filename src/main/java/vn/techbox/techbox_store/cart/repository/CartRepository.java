@@ -35,6 +35,8 @@ public interface CartRepository extends JpaRepository<Cart, Integer> {
     List<Cart> findByUpdatedAtBetween(@Param("startDate") LocalDateTime startDate,
                                      @Param("endDate") LocalDateTime endDate);
 
-    @Query("SELECT DISTINCT c FROM Cart c LEFT JOIN FETCH c.cartItems WHERE c.userId = :userId")
+    // Nạp sẵn biến thể và sản phẩm của từng dòng để dựng giỏ hàng không phát sinh truy vấn theo từng item
+    @Query("SELECT DISTINCT c FROM Cart c LEFT JOIN FETCH c.cartItems ci LEFT JOIN FETCH ci.productVariation pv " +
+           "LEFT JOIN FETCH pv.product WHERE c.userId = :userId")
     Optional<Cart> findByUserIdWithItems(@Param("userId") Integer userId);
 }
@@ -1,12 +1,20 @@
 package vn.techbox.techbox_store.cart.scheduler;
 
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import vn.techbox.techbox_store.cart.purge.CartPurgeJob;
 import vn.techbox.techbox_store.cart.service.CartService;
 
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 @Component
 @RequiredArgsConstructor
 @Slf4j
@@ -14,13 +22,37 @@ import vn.techbox.techbox_store.cart.service.CartService;
 public class CartCleanupScheduler {
 
     private final CartService cartService;
+    private final CartPurgeJob cartPurgeJob;
+
+    // Purges pause between batches: run them here, not on the shared @Scheduled thread
+    private final ExecutorService purgeExecutor =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("cart-purge").daemon(true).factory());
+    private Future<?> nightlyRun;
+    private Future<?> continuousRun;
+
+    @Value("${cart.purge.retention-days:30}")
+    private int retentionDays = 30;
+
+    @Value("${cart.purge.continuous.enabled:false}")
+    private boolean continuous;
+
+    @Value("${cart.purge.continuous.max-batches:10}")
+    private int continuousMaxBatches = 10;
 
     @Scheduled(cron = "0 0 2 * * ?")
-    public void cleanupOldCarts() {
+    public synchronized void cleanupOldCarts() {
+        if (nightlyRun != null && !nightlyRun.isDone()) {
+            log.info("Previous cart cleanup still running, skipping");
+            return;
+        }
+        nightlyRun = purgeExecutor.submit(this::runCleanup);
+    }
+
+    private void runCleanup() {
         try {
             log.info("Starting scheduled cleanup of old user carts");
 
-            int deletedCount = cartService.deleteOldCarts(30);
+            int deletedCount = cartService.deleteOldCarts(retentionDays);
 
             log.info("Completed cart cleanup. Deleted {} old user carts", deletedCount);
 
@@ -28,4 +60,27 @@ public class CartCleanupScheduler {
             log.error("Error during cart cleanup: {}", e.getMessage(), e);
         }
     }
+
+    // Dọn liên tục vài lô mỗi lần, tiếp tục từ vị trí lần trước (bật bằng cart.purge.continuous.enabled)
+    @Scheduled(fixedDelayString = "${cart.purge.continuous.interval-ms:60000}")
+    public synchronized void purgeOldCartsContinuously() {
+        if (!continuous || (continuousRun != null && !continuousRun.isDone())) {
+            return;
+        }
+        continuousRun = purgeExecutor.submit(this::runContinuousPurge);
+    }
+
+    private void runContinuousPurge() {
+        try {
+            cartPurgeJob.purge(LocalDateTime.now().minusDays(retentionDays), continuousMaxBatches);
+        } catch (Exception e) {
+            log.error("Error during continuous cart purge: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Interrupts a pause; the purge stops after the batch in progress
+        purgeExecutor.shutdownNow();
+    }
 }
@@ -2,7 +2,9 @@ package vn.techbox.techbox_store.cart.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import vn.techbox.techbox_store.cart.dto.AddToCartRequest;
 import vn.techbox.techbox_store.cart.dto.CartResponse;
@@ -10,19 +12,27 @@ import vn.techbox.techbox_store.cart.dto.UpdateCartItemRequest;
 import vn.techbox.techbox_store.cart.exception.CartException;
 import vn.techbox.techbox_store.cart.model.Cart;
 import vn.techbox.techbox_store.cart.model.CartItem;
+import vn.techbox.techbox_store.cart.purge.CartPurgeJob;
 import vn.techbox.techbox_store.cart.repository.CartItemRepository;
+import vn.techbox.techbox_store.cart.repository.CartJdbcRepository.CartItemRow;
 import vn.techbox.techbox_store.cart.repository.CartRepository;
 import vn.techbox.techbox_store.cart.service.CartMappingService;
 import vn.techbox.techbox_store.cart.service.CartService;
+import vn.techbox.techbox_store.cart.store.CachedCart;
+import vn.techbox.techbox_store.cart.store.CartStore;
+import vn.techbox.techbox_store.cart.store.CartStoreMode;
 import vn.techbox.techbox_store.product.model.ProductVariation;
 import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
-import vn.techbox.techbox_store.promotion.dto.PromotionCalculationRequest;
 import vn.techbox.techbox_store.promotion.dto.PromotionCalculationResponse;
-import vn.techbox.techbox_store.promotion.service.PromotionService;
+import vn.techbox.techbox_store.promotion.engine.PromotionEngine;
+import vn.techbox.techbox_store.promotion.engine.PromotionSnapshot;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -35,13 +45,22 @@ public class CartServiceImpl implements CartService {
     private final CartItemRepository cartItemRepository;
     private final ProductVariationRepository productVariationRepository;
     private final CartMappingService cartMappingService;
-    private final PromotionService promotionService;
+    private final PromotionEngine promotionEngine;
+    private final CartStore cartStore;
+    private final CartPurgeJob cartPurgeJob;
+
+    @Value("${cart.store.mode:DATABASE}")
+    private CartStoreMode cartStoreMode = CartStoreMode.DATABASE;
 
     @Override
     @Transactional
     public CartResponse getUserCart(Integer userId) {
         log.info("Getting cart for user: {}", userId);
 
+        if (cartStoreMode == CartStoreMode.WRITE_BEHIND) {
+            return toCartResponse(cartStore.execute(userId, CachedCart::view));
+        }
+
         Optional<Cart> cartOpt = cartRepository.findByUserIdWithItems(userId);
 
         if (cartOpt.isPresent()) {
@@ -62,12 +81,18 @@ public class CartServiceImpl implements CartService {
     public CartResponse addToCart(Integer userId, AddToCartRequest request) {
         log.info("Adding product {} to cart for user {}", request.getProductVariationId(), userId);
 
-        Cart cart = getOrCreateUserCart(userId);
+        if (cartStoreMode == CartStoreMode.WRITE_BEHIND) {
+            ProductVariation productVariation = findProductVariation(request.getProductVariationId());
+            return toCartResponse(cartStore.execute(userId, cart -> {
+                addLine(cart, productVariation, request.getQuantity());
+                return cart.view();
+            }));
+        }
+
+        Cart cart = getOrCreateUserCartWithItems(userId);
         addItemToCart(cart, request.getProductVariationId(), request.getQuantity());
 
-        Cart updatedCart = cartRepository.findByUserIdWithItems(userId).orElse(cart);
-        Map<Integer, PromotionCalculationResponse> promotionMap = getPromotionsForCart(updatedCart);
-        return cartMappingService.toCartResponse(updatedCart, promotionMap);
+        return toPricedCartResponse(cart);
     }
 
     @Override
@@ -75,15 +100,30 @@ public class CartServiceImpl implements CartService {
         log.info("Updating cart item for user {}, product {}, quantity {}",
                 userId, productVariationId, request.getQuantity());
 
-        Cart cart = getOrCreateUserCart(userId);
+        if (cartStoreMode == CartStoreMode.WRITE_BEHIND) {
+            return toCartResponse(cartStore.execute(userId, cart -> {
+                if (request.getQuantity() == 0) {
+                    if (cart.removeLine(productVariationId)) {
+                        log.info("Removed cart item for product {}", productVariationId);
+                    }
+                } else if (cart.updateQuantity(productVariationId, request.getQuantity())) {
+                    log.info("Updated cart item quantity to {}", request.getQuantity());
+                } else if (request.getQuantity() > 0) {
+                    log.warn("Trying to update non-existent cart item: user={}, product={}", userId, productVariationId);
+                }
+                return cart.view();
+            }));
+        }
+
+        Cart cart = getOrCreateUserCartWithItems(userId);
 
-        Optional<CartItem> cartItemOpt = cartItemRepository
-                .findByCartIdAndProductVariationId(cart.getId(), productVariationId);
+        Optional<CartItem> cartItemOpt = findItem(cart, productVariationId);
 
         if (cartItemOpt.isPresent()) {
             CartItem cartItem = cartItemOpt.get();
 
             if (request.getQuantity() == 0) {
+                cart.getCartItems().remove(cartItem);
                 cartItemRepository.delete(cartItem);
                 log.info("Removed cart item for product {}", productVariationId);
             } else {
@@ -100,31 +140,43 @@ public class CartServiceImpl implements CartService {
             }
         }
 
-        Cart updatedCart = cartRepository.findByUserIdWithItems(userId).orElse(cart);
-        Map<Integer, PromotionCalculationResponse> promotionMap = getPromotionsForCart(updatedCart);
-        return cartMappingService.toCartResponse(updatedCart, promotionMap);
+        return toPricedCartResponse(cart);
     }
 
     @Override
     public CartResponse removeFromCart(Integer userId, Integer productVariationId) {
         log.info("Removing product {} from cart for user {}", productVariationId, userId);
 
-        Cart cart = getOrCreateUserCart(userId);
+        if (cartStoreMode == CartStoreMode.WRITE_BEHIND) {
+            return toCartResponse(cartStore.execute(userId, cart -> {
+                cart.removeLine(productVariationId);
+                return cart.view();
+            }));
+        }
 
-        cartItemRepository.deleteByCartIdAndProductVariationId(cart.getId(), productVariationId);
+        Cart cart = getOrCreateUserCartWithItems(userId);
+
+        // orphanRemoval xoá dòng khi flush; giỏ trong bộ nhớ đã đúng nên không cần đọc lại
+        cart.getCartItems().removeIf(item -> item.getProductVariation().getId().equals(productVariationId));
 
         cart.setUpdatedAt(LocalDateTime.now());
         cartRepository.save(cart);
 
-        Cart updatedCart = cartRepository.findByUserIdWithItems(userId).orElse(cart);
-        Map<Integer, PromotionCalculationResponse> promotionMap = getPromotionsForCart(updatedCart);
-        return cartMappingService.toCartResponse(updatedCart, promotionMap);
+        return toPricedCartResponse(cart);
     }
 
     @Override
     public void clearCart(Integer userId) {
         log.info("Clearing cart for user: {}", userId);
 
+        if (cartStoreMode == CartStoreMode.WRITE_BEHIND) {
+            cartStore.execute(userId, cart -> {
+                cart.clear();
+                return null;
+            });
+            return;
+        }
+
         Cart cart = getOrCreateUserCart(userId);
         cartItemRepository.deleteByCartId(cart.getId());
 
@@ -133,11 +185,13 @@ public class CartServiceImpl implements CartService {
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public int deleteOldCarts(int daysOld) {
         LocalDateTime cutoffTime = LocalDateTime.now().minusDays(daysOld);
         log.info("Deleting carts older than {} days (before {})", daysOld, cutoffTime);
 
-        int deletedCount = cartRepository.deleteCartsOlderThan(cutoffTime);
+        // Mỗi lô commit riêng, không giữ một transaction dài cho cả lần dọn
+        int deletedCount = cartPurgeJob.purgeAll(cutoffTime).carts();
         log.info("Deleted {} old carts", deletedCount);
 
         return deletedCount;
@@ -153,15 +207,38 @@ public class CartServiceImpl implements CartService {
                 });
     }
 
-    private void addItemToCart(Cart cart, Integer productVariationId, Integer quantity) {
-        ProductVariation productVariation = productVariationRepository.findById(productVariationId)
+    /**
+     * Giỏ hàng kèm items (một truy vấn); các thao tác sửa giỏ cập nhật trực tiếp danh sách này
+     */
+    private Cart getOrCreateUserCartWithItems(Integer userId) {
+        Cart cart = cartRepository.findByUserIdWithItems(userId)
+                .orElseGet(() -> cartRepository.save(Cart.builder()
+                        .userId(userId)
+                        .build()));
+        if (cart.getCartItems() == null) {
+            cart.setCartItems(new ArrayList<>());
+        }
+        return cart;
+    }
+
+    private Optional<CartItem> findItem(Cart cart, Integer productVariationId) {
+        return cart.getCartItems().stream()
+                .filter(item -> item.getProductVariation().getId().equals(productVariationId))
+                .findFirst();
+    }
+
+    private ProductVariation findProductVariation(Integer productVariationId) {
+        return productVariationRepository.findById(productVariationId)
                 .orElseThrow(() -> new CartException.CartItemNotFoundException("Product variation not found: " + productVariationId));
+    }
+
+    private void addItemToCart(Cart cart, Integer productVariationId, Integer quantity) {
+        ProductVariation productVariation = findProductVariation(productVariationId);
 
         if (productVariation.getStockQuantity() < quantity) {
             throw new CartException.InsufficientStockException("Insufficient stock. Available: " + productVariation.getStockQuantity());
         }
-        Optional<CartItem> existingItemOpt = cartItemRepository
-                .findByCartIdAndProductVariationId(cart.getId(), productVariationId);
+        Optional<CartItem> existingItemOpt = findItem(cart, productVariationId);
 
         if (existingItemOpt.isPresent()) {
             // Cập nhật quantity nếu item đã tồn tại
@@ -183,15 +260,79 @@ public class CartServiceImpl implements CartService {
                     .quantity(quantity)
                     .unitPrice(productVariation.getPrice())
                     .build();
-            cartItemRepository.save(newItem);
+            cart.getCartItems().add(cartItemRepository.save(newItem));
         }
 
         cart.setUpdatedAt(LocalDateTime.now());
         cartRepository.save(cart);
     }
     
+    // Giống addItemToCart nhưng trên giỏ trong bộ nhớ (đang giữ lock của user)
+    private void addLine(CachedCart cart, ProductVariation productVariation, Integer quantity) {
+        if (productVariation.getStockQuantity() < quantity) {
+            throw new CartException.InsufficientStockException("Insufficient stock. Available: " + productVariation.getStockQuantity());
+        }
+        Optional<CartItemRow> existingItemOpt = cart.item(productVariation.getId());
+
+        if (existingItemOpt.isPresent()) {
+            int newQuantity = existingItemOpt.get().quantity() + quantity;
+
+            if (productVariation.getStockQuantity() < newQuantity) {
+                throw new CartException.InsufficientStockException("Insufficient stock. Available: " + productVariation.getStockQuantity() +
+                        ", Requested total: " + newQuantity);
+            }
+
+            cart.updateQuantity(productVariation.getId(), newQuantity);
+        } else {
+            cart.addLine(productVariation.getId(), quantity, productVariation.getPrice());
+        }
+    }
+
+    /**
+     * Dựng response từ giỏ trong bộ nhớ: một truy vấn cho biến thể + sản phẩm của mọi dòng
+     */
+    private CartResponse toCartResponse(CachedCart.CartView view) {
+        Map<Integer, ProductVariation> variations = view.items().isEmpty()
+                ? Map.of()
+                : productVariationRepository.findAllWithProductByIdIn(
+                                view.items().stream().map(CartItemRow::productVariationId).toList()).stream()
+                        .collect(Collectors.toMap(ProductVariation::getId, Function.identity()));
+
+        Cart cart = Cart.builder()
+                .id(view.cart().id())
+                .userId(view.cart().userId())
+                .createdAt(view.cart().createdAt())
+                .updatedAt(view.cart().updatedAt())
+                .cartItems(new ArrayList<>())
+                .build();
+        for (CartItemRow item : view.items()) {
+            ProductVariation productVariation = variations.get(item.productVariationId());
+            if (productVariation == null) {
+                continue;
+            }
+            cart.getCartItems().add(CartItem.builder()
+                    .id(item.id())
+                    .cart(cart)
+                    .productVariation(productVariation)
+                    .quantity(item.quantity())
+                    .unitPrice(item.unitPrice())
+                    .addedAt(item.addedAt())
+                    .updatedAt(item.updatedAt())
+                    .build());
+        }
+        return toPricedCartResponse(cart);
+    }
+
+    private CartResponse toPricedCartResponse(Cart cart) {
+        return cartMappingService.toCartResponse(cart, getPromotionsForCart(cart));
+    }
+
     /**
      * Lấy thông tin promotion cho tất cả items trong giỏ hàng
+     *
+     * All lines are priced against one promotion snapshot, so this does not query the database
+     * whatever the cart size; a mutation only loads the variation of the line it changes.
+     *
      * @param cart Cart entity
      * @return Map với key là productVariationId và value là PromotionCalculationResponse
      */
@@ -199,17 +340,28 @@ public class CartServiceImpl implements CartService {
         if (cart.getCartItems() == null || cart.getCartItems().isEmpty()) {
             return Map.of();
         }
-        
-        return cart.getCartItems().stream()
-                .collect(Collectors.toMap(
-                    cartItem -> cartItem.getProductVariation().getId(),
-                    cartItem -> {
-                        PromotionCalculationRequest request = PromotionCalculationRequest.builder()
-                                .productVariationId(cartItem.getProductVariation().getId())
-                                .originalPrice(cartItem.getUnitPrice())
-                                .build();
-                        return promotionService.calculatePromotions(request);
-                    }
-                ));
+
+        PromotionSnapshot promotions = promotionEngine.snapshot();
+        Map<Integer, PromotionCalculationResponse> promotionMap = new HashMap<>();
+        for (CartItem cartItem : cart.getCartItems()) {
+            Integer productVariationId = cartItem.getProductVariation().getId();
+            promotionMap.put(productVariationId,
+                    toPromotionResponse(promotions.price(productVariationId, cartItem.getUnitPrice(), 1)));
+        }
+        return promotionMap;
+    }
+
+    private static PromotionCalculationResponse toPromotionResponse(PromotionSnapshot.PromotionPrice price) {
+        PromotionCalculationResponse.PromotionCalculationResponseBuilder builder = PromotionCalculationResponse.builder()
+                .productVariationId(price.productVariationId())
+                .salePrice(price.unitSalePrice());
+        if (price.hasPromotion()) {
+            PromotionSnapshot.ActivePromotion promotion = price.promotion();
+            builder.discountType(promotion.discountType().name())
+                    .discountValue(promotion.discountValue())
+                    .promotionId(promotion.promotionId())
+                    .campaignId(promotion.campaignId());
+        }
+        return builder.build();
     }
 }
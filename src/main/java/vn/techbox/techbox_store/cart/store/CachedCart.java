@@ -0,0 +1,182 @@
+package vn.techbox.techbox_store.cart.store;
+
+import vn.techbox.techbox_store.cart.repository.CartJdbcRepository.CartItemRow;
+import vn.techbox.techbox_store.cart.repository.CartJdbcRepository.CartRow;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Giỏ hàng của một user trong {@link CartStore}. Not thread-safe: only used under the user's lock,
+ * inside {@link CartStore#execute}.
+ *
+ * Lines changed or removed since the last flush are tracked so a flush only writes those; the
+ * version tells the flusher whether the cart changed again while it was being written.
+ */
+public final class CachedCart {
+
+    private final Integer userId;
+    private final LocalDateTime createdAt;
+    private final Map<Integer, CartItemRow> items = new LinkedHashMap<>();
+    private final Set<Integer> changed = new HashSet<>();
+    private final Set<Integer> removed = new HashSet<>();
+    private Integer cartId;
+    private LocalDateTime updatedAt;
+    private long version;
+    private long flushedVersion;
+
+    CachedCart(CartRow cart, List<CartItemRow> items) {
+        this.userId = cart.userId();
+        this.cartId = cart.id();
+        this.createdAt = cart.createdAt();
+        this.updatedAt = cart.updatedAt();
+        for (CartItemRow item : items) {
+            this.items.put(item.productVariationId(), item);
+        }
+    }
+
+    /**
+     * Giỏ hàng mới, chưa có trong DB (được tạo ở lần flush tới)
+     */
+    static CachedCart create(Integer userId) {
+        LocalDateTime now = LocalDateTime.now();
+        CachedCart cart = new CachedCart(new CartRow(null, userId, now, now), List.of());
+        cart.version++;
+        return cart;
+    }
+
+    public Optional<CartItemRow> item(Integer productVariationId) {
+        return Optional.ofNullable(items.get(productVariationId));
+    }
+
+    /**
+     * Add a line at the given unit price; the product variation must not be in the cart yet
+     */
+    public void addLine(Integer productVariationId, int quantity, BigDecimal unitPrice) {
+        if (items.containsKey(productVariationId)) {
+            throw new IllegalStateException("Product variation already in cart: " + productVariationId);
+        }
+        LocalDateTime now = touch();
+        items.put(productVariationId, new CartItemRow(null, productVariationId, quantity, unitPrice, now, now));
+        changed.add(productVariationId);
+    }
+
+    /**
+     * Change the quantity of a line, keeping the unit price it was added at
+     *
+     * @return false if the product variation is not in the cart
+     */
+    public boolean updateQuantity(Integer productVariationId, int quantity) {
+        CartItemRow item = items.get(productVariationId);
+        if (item == null) {
+            return false;
+        }
+        LocalDateTime now = touch();
+        items.put(productVariationId, new CartItemRow(item.id(), productVariationId, quantity, item.unitPrice(),
+                item.addedAt(), now));
+        changed.add(productVariationId);
+        return true;
+    }
+
+    /**
+     * @return false if the product variation is not in the cart
+     */
+    public boolean removeLine(Integer productVariationId) {
+        if (items.remove(productVariationId) == null) {
+            return false;
+        }
+        touch();
+        changed.remove(productVariationId);
+        removed.add(productVariationId);
+        return true;
+    }
+
+    public void clear() {
+        touch();
+        removed.addAll(items.keySet());
+        changed.clear();
+        items.clear();
+    }
+
+    /**
+     * Bản sao bất biến để dựng response ngoài lock
+     */
+    public CartView view() {
+        return new CartView(new CartRow(cartId, userId, createdAt, updatedAt), List.copyOf(items.values()));
+    }
+
+    Integer userId() {
+        return userId;
+    }
+
+    LocalDateTime updatedAt() {
+        return updatedAt;
+    }
+
+    boolean hasUnflushedChanges() {
+        return version != flushedVersion;
+    }
+
+    /**
+     * Take the changes to write and start tracking new ones from here
+     */
+    PendingWrite prepareFlush() {
+        List<CartItemRow> saves = new ArrayList<>(changed.size());
+        for (Integer productVariationId : changed) {
+            saves.add(items.get(productVariationId));
+        }
+        PendingWrite write = new PendingWrite(new CartRow(cartId, userId, createdAt, updatedAt), version,
+                saves, List.copyOf(removed), List.copyOf(items.values()));
+        changed.clear();
+        removed.clear();
+        return write;
+    }
+
+    /**
+     * @return true if nothing changed since {@code write} was prepared
+     */
+    boolean flushed(PendingWrite write, Integer cartId) {
+        this.cartId = cartId;
+        this.flushedVersion = write.version();
+        return version == flushedVersion;
+    }
+
+    // Put the changes of a failed write back, unless the lines changed again since
+    void flushFailed(PendingWrite write) {
+        for (CartItemRow item : write.saves()) {
+            if (items.containsKey(item.productVariationId())) {
+                changed.add(item.productVariationId());
+            }
+        }
+        for (Integer productVariationId : write.deletes()) {
+            if (!items.containsKey(productVariationId)) {
+                removed.add(productVariationId);
+            }
+        }
+    }
+
+    private LocalDateTime touch() {
+        updatedAt = LocalDateTime.now();
+        version++;
+        return updatedAt;
+    }
+
+    /**
+     * @param cart    cart row; its id is null until the cart has been written
+     * @param items   lines, in the order they were added
+     */
+    public record CartView(CartRow cart, List<CartItemRow> items) {
+    }
+
+    /**
+     * Changes of one cart to write
+     *
+     * @param saves    lines added or changed since the previous flush
+     * @param deletes  product variation ids removed since the previous flush
+     * @param allItems every line, written instead of {@code saves}/{@code deletes} when the cart row is new
+     */
+    record PendingWrite(CartRow cart, long version, List<CartItemRow> saves, List<Integer> deletes,
+                        List<CartItemRow> allItems) {
+    }
+}
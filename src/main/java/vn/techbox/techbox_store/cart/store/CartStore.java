@@ -0,0 +1,350 @@
+package vn.techbox.techbox_store.cart.store;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.techbox.techbox_store.cart.repository.CartJdbcRepository;
+import vn.techbox.techbox_store.cart.repository.CartJdbcRepository.CartItemRow;
+import vn.techbox.techbox_store.cart.repository.CartJdbcRepository.CartRow;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Giỏ hàng trong bộ nhớ, ghi xuống DB sau ({@link CartStoreMode#WRITE_BEHIND}).
+ *
+ * Recently used carts are kept in an LRU map bounded by {@code cart.store.max-carts}; a miss loads
+ * the cart from the database. Every access to one user's cart is serialised on a lock stripe, so a
+ * cart operation is a short critical section with no database round trip. Changed carts are
+ * written in batches by a scheduled flush and on shutdown: one upsert of the cart rows and batched
+ * deletes/updates/inserts of the changed lines, in a transaction of its own. Several changes to
+ * the same cart between two flushes are written once.
+ *
+ * A cart evicted before it is written stays reachable through the dirty map until it is, so an
+ * evicted cart is never reloaded from stale rows. The dirty map is bounded by
+ * {@code cart.store.max-dirty}: once it is full (the database is slow or down), a change to a cart
+ * that is not queued yet is written before {@link #execute} returns, and if that write fails the
+ * cart is dropped back to its last written state and the caller gets the error. Changes made after
+ * the last flush are lost if the process dies; the store is meant for a single application instance.
+ *
+ * A batch that fails is retried cart by cart, so one cart the database rejects (a constraint
+ * violation, e.g. a line whose variation was hard-deleted) does not hold back the others: its
+ * unsaved changes are dead-lettered - logged and dropped, the cart reloading from its rows on next
+ * use. Any other failure stops the flush and leaves the carts queued for the next one.
+ */
+@Component
+@Slf4j
+public class CartStore {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final CartJdbcRepository cartJdbcRepository;
+    private final TransactionTemplate flushTransaction;
+    private final boolean enabled;
+    private final int maxCarts;
+    private final int maxDirty;
+    private final int batchSize;
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    // Access-ordered; guarded by its own monitor
+    private final LinkedHashMap<Integer, CachedCart> carts;
+    private final ConcurrentHashMap<Integer, CachedCart> dirty = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public CartStore(CartJdbcRepository cartJdbcRepository,
+                     PlatformTransactionManager transactionManager,
+                     @Value("${cart.store.mode:DATABASE}") CartStoreMode mode,
+                     @Value("${cart.store.max-carts:10000}") int maxCarts,
+                     @Value("${cart.store.max-dirty:10000}") int maxDirty,
+                     @Value("${cart.store.batch-size:500}") int batchSize) {
+        this.cartJdbcRepository = cartJdbcRepository;
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = mode == CartStoreMode.WRITE_BEHIND;
+        this.maxCarts = Math.max(1, maxCarts);
+        this.maxDirty = Math.max(1, maxDirty);
+        this.batchSize = Math.max(1, batchSize);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.carts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedCart> eldest) {
+                // A dirty cart is still held by the dirty map until it has been written
+                return size() > CartStore.this.maxCarts;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Read or change a user's cart under the user's lock, loading it on a miss. Changes made by
+     * {@code action} are written by a later flush, or before returning when the dirty map is full.
+     * Keep database access out of {@code action}.
+     */
+    public <T> T execute(Integer userId, Function<CachedCart, T> action) {
+        if (!enabled) {
+            throw new IllegalStateException("Cart store is disabled (cart.store.mode=DATABASE)");
+        }
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            CachedCart cart = resolve(userId);
+            T result;
+            try {
+                result = action.apply(cart);
+            } catch (RuntimeException | Error e) {
+                // A partly applied action is rare: keep whatever it changed queued, even past the bound
+                if (cart.hasUnflushedChanges()) {
+                    dirty.putIfAbsent(userId, cart);
+                }
+                throw e;
+            }
+            if (cart.hasUnflushedChanges() && !dirty.containsKey(userId)) {
+                if (dirty.size() < maxDirty) {
+                    dirty.put(userId, cart);
+                } else {
+                    writeThrough(cart);
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Dirty map full: write this cart now rather than queue it. Caller holds the user's lock
+    private void writeThrough(CachedCart cart) {
+        try {
+            writeBatch(List.of(cart));
+        } catch (RuntimeException e) {
+            // Not kept: the cart goes back to its last written state and the caller sees the error
+            synchronized (carts) {
+                carts.remove(cart.userId(), cart);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drop written carts last changed before {@code cutoff} (their rows are about to be purged)
+     */
+    public void evictIdleBefore(LocalDateTime cutoff) {
+        if (!enabled) {
+            return;
+        }
+        List<Integer> userIds;
+        synchronized (carts) {
+            userIds = new ArrayList<>(carts.keySet());
+        }
+        int evicted = 0;
+        for (Integer userId : userIds) {
+            ReentrantLock lock = lockFor(userId);
+            lock.lock();
+            try {
+                synchronized (carts) {
+                    CachedCart cart = carts.get(userId);
+                    if (cart != null && !cart.hasUnflushedChanges() && cart.updatedAt().isBefore(cutoff)) {
+                        carts.remove(userId);
+                        evicted++;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        log.debug("Evicted {} idle carts last changed before {}", evicted, cutoff);
+    }
+
+    /**
+     * Write every changed cart
+     *
+     * @return number of carts written
+     */
+    public int flush() {
+        if (!enabled) {
+            return 0;
+        }
+        flushLock.lock();
+        try {
+            List<CachedCart> pending = new ArrayList<>(dirty.values());
+            int written = 0;
+            for (int from = 0; from < pending.size(); from += batchSize) {
+                List<CachedCart> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+                try {
+                    written += writeBatch(batch);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to flush a batch of {} carts, retrying cart by cart: {}", batch.size(), e.getMessage());
+                    written += writeOneByOne(batch);
+                }
+            }
+            return written;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Any failure other than the database rejecting a cart propagates; the carts not written stay dirty
+    private int writeOneByOne(List<CachedCart> batch) {
+        int written = 0;
+        for (CachedCart cart : batch) {
+            try {
+                written += writeBatch(List.of(cart));
+            } catch (DataIntegrityViolationException e) {
+                deadLetter(cart, e);
+            }
+        }
+        return written;
+    }
+
+    private void deadLetter(CachedCart cart, RuntimeException e) {
+        ReentrantLock lock = lockFor(cart.userId());
+        lock.lock();
+        try {
+            dirty.remove(cart.userId(), cart);
+            synchronized (carts) {
+                carts.remove(cart.userId(), cart);
+            }
+        } finally {
+            lock.unlock();
+        }
+        log.error("Dropping unsaved changes of the cart of user {}: the database rejects them", cart.userId(), e);
+    }
+
+    @Scheduled(fixedDelayString = "${cart.store.flush-interval-ms:2000}")
+    public void scheduledFlush() {
+        if (!enabled || dirty.isEmpty()) {
+            return;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to flush {} changed carts, will retry", dirty.size(), e);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (enabled && !dirty.isEmpty()) {
+            log.info("Flushing {} changed carts before shutdown", dirty.size());
+            flush();
+        }
+    }
+
+    public int size() {
+        synchronized (carts) {
+            return carts.size();
+        }
+    }
+
+    private CachedCart resolve(Integer userId) {
+        CachedCart cart;
+        synchronized (carts) {
+            cart = carts.get(userId);
+        }
+        if (cart != null) {
+            return cart;
+        }
+        cart = dirty.get(userId);
+        if (cart == null) {
+            cart = load(userId);
+        }
+        synchronized (carts) {
+            carts.put(userId, cart);
+        }
+        return cart;
+    }
+
+    private CachedCart load(Integer userId) {
+        Optional<CartRow> row = cartJdbcRepository.findCartByUserId(userId);
+        if (row.isEmpty()) {
+            return CachedCart.create(userId);
+        }
+        return new CachedCart(row.get(), cartJdbcRepository.findItemsByCartId(row.get().id()));
+    }
+
+    private int writeBatch(List<CachedCart> batch) {
+        List<CachedCart.PendingWrite> writes = new ArrayList<>(batch.size());
+        for (CachedCart cart : batch) {
+            ReentrantLock lock = lockFor(cart.userId());
+            lock.lock();
+            try {
+                writes.add(cart.prepareFlush());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<Integer, Integer> cartIdByUser;
+        try {
+            cartIdByUser = flushTransaction.execute(status -> write(writes));
+        } catch (RuntimeException e) {
+            for (int i = 0; i < batch.size(); i++) {
+                CachedCart cart = batch.get(i);
+                ReentrantLock lock = lockFor(cart.userId());
+                lock.lock();
+                try {
+                    cart.flushFailed(writes.get(i));
+                } finally {
+                    lock.unlock();
+                }
+            }
+            throw e;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            CachedCart cart = batch.get(i);
+            ReentrantLock lock = lockFor(cart.userId());
+            lock.lock();
+            try {
+                if (cart.flushed(writes.get(i), cartIdByUser.get(cart.userId()))) {
+                    dirty.remove(cart.userId(), cart);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        log.debug("Flushed {} carts", batch.size());
+        return batch.size();
+    }
+
+    private Map<Integer, Integer> write(List<CachedCart.PendingWrite> writes) {
+        List<CartRow> cartRows = new ArrayList<>(writes.size());
+        for (CachedCart.PendingWrite write : writes) {
+            cartRows.add(write.cart());
+        }
+        Map<Integer, Integer> cartIdByUser = cartJdbcRepository.upsertCarts(cartRows);
+
+        Map<Integer, List<Integer>> deletes = new HashMap<>();
+        Map<Integer, List<CartItemRow>> saves = new HashMap<>();
+        for (CachedCart.PendingWrite write : writes) {
+            Integer cartId = cartIdByUser.get(write.cart().userId());
+            if (cartId.equals(write.cart().id())) {
+                deletes.put(cartId, write.deletes());
+                saves.put(cartId, write.saves());
+            } else {
+                // New cart, or the row was purged and recreated: write every line
+                saves.put(cartId, write.allItems());
+            }
+        }
+        cartJdbcRepository.deleteItems(deletes);
+        cartJdbcRepository.saveItems(saves);
+        return cartIdByUser;
+    }
+
+    private ReentrantLock lockFor(Integer userId) {
+        return locks[Math.floorMod(userId.hashCode(), LOCK_STRIPES)];
+    }
+}
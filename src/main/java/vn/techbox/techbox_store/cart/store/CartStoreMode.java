@@ -0,0 +1,17 @@
+package vn.techbox.techbox_store.cart.store;
+
+/**
+ * Cách lưu giỏ hàng, cấu hình bằng {@code cart.store.mode}
+ */
+public enum CartStoreMode {
+
+    /**
+     * Mỗi thao tác đọc/ghi thẳng bảng carts/cart_items qua JPA
+     */
+    DATABASE,
+
+    /**
+     * Giỏ hàng đang dùng nằm trong bộ nhớ, ghi xuống DB theo lô sau vài giây (một instance ứng dụng)
+     */
+    WRITE_BEHIND
+}
@@ -0,0 +1,45 @@
+package vn.techbox.techbox_store.common.pagination;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Một trang của danh sách phân trang theo con trỏ. Không có tổng số dòng: đếm toàn bảng là phần
+ * đắt nhất của phân trang offset.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    public static final int DEFAULT_SIZE = 20;
+    public static final int MAX_SIZE = 100;
+
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    // Truyền lại vào tham số cursor để lấy trang tiếp theo; null ở trang cuối
+    private String nextCursor;
+
+    public static int limit(Integer size) {
+        if (size == null || size <= 0) {
+            return DEFAULT_SIZE;
+        }
+        return Math.min(size, MAX_SIZE);
+    }
+
+    /**
+     * Build a page from rows fetched with {@code size + 1} as the limit; the extra row only tells
+     * whether there is a next page and is dropped
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int size, Function<T, SeekCursor> cursorOf) {
+        boolean hasNext = rows.size() > size;
+        List<T> content = hasNext ? List.copyOf(rows.subList(0, size)) : rows;
+        String nextCursor = hasNext ? cursorOf.apply(content.get(content.size() - 1)).encode() : null;
+        return new CursorPage<>(content, size, hasNext, nextCursor);
+    }
+}
@@ -0,0 +1,53 @@
+package vn.techbox.techbox_store.common.pagination;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Vị trí của dòng cuối trang trước trong danh sách sắp xếp theo {@code (createdAt DESC, id DESC)}.
+ *
+ * The next page is the rows strictly after it in that order, i.e. {@code createdAt < c.createdAt OR
+ * (createdAt = c.createdAt AND id < c.id)}, which an index on {@code (created_at, id)} answers
+ * without skipping the earlier pages. Clients get it as an opaque URL-safe token.
+ */
+public record SeekCursor(LocalDateTime createdAt, long id) {
+
+    // Sau mọi dòng thật, nên trang đầu dùng chung câu truy vấn với các trang sau
+    private static final SeekCursor FIRST = new SeekCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    public static SeekCursor first() {
+        return FIRST;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not produced by {@link #encode()}
+     */
+    public static SeekCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new SeekCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    public String encode() {
+        String value = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Cho các bảng khoá Integer
+    public int intId() {
+        return (int) Math.min(id, Integer.MAX_VALUE);
+    }
+}
@@ -1,7 +1,9 @@
 package vn.techbox.techbox_store.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -17,6 +19,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import vn.techbox.techbox_store.filter.JwtFilter;
+import vn.techbox.techbox_store.user.security.BitsetMethodSecurityExpressionHandler;
+import vn.techbox.techbox_store.user.security.PermissionIndex;
 
 @Configuration
 @EnableWebSecurity
@@ -39,6 +43,12 @@ public class SecurityConfig {
                 .build();
     }
 
+    // @PreAuthorize hasAuthority/hasRole checks become bit tests on the principal's permission bitset
+    @Bean
+    static MethodSecurityExpressionHandler methodSecurityExpressionHandler(ObjectProvider<PermissionIndex> permissionIndex) {
+        return new BitsetMethodSecurityExpressionHandler(permissionIndex);
+    }
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder(12);
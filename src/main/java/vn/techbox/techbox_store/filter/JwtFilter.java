@@ -7,12 +7,16 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.context.ApplicationContext;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import vn.techbox.techbox_store.user.service.AuthService;
+import vn.techbox.techbox_store.user.service.RolePermissionService;
+import vn.techbox.techbox_store.user.security.AccessTokenClaims;
 import vn.techbox.techbox_store.user.security.MyUserDetailService;
+import vn.techbox.techbox_store.user.security.PrincipalCache;
+import vn.techbox.techbox_store.user.security.UserPrincipal;
+import vn.techbox.techbox_store.user.security.VerifiedTokenCache;
 import io.jsonwebtoken.security.SignatureException;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.MalformedJwtException;
@@ -30,49 +34,64 @@ public class JwtFilter extends OncePerRequestFilter {
     private static final Logger logger = LoggerFactory.getLogger(JwtFilter.class);
     private final AuthService authService;
     private final ApplicationContext context;
+    private final PrincipalCache principalCache;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final RolePermissionService rolePermissionService;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
-    public JwtFilter(AuthService authService, ApplicationContext context) {
+    public JwtFilter(AuthService authService,
+                     ApplicationContext context,
+                     PrincipalCache principalCache,
+                     VerifiedTokenCache verifiedTokenCache,
+                     RolePermissionService rolePermissionService) {
         this.authService = authService;
         this.context = context;
+        this.principalCache = principalCache;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.rolePermissionService = rolePermissionService;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         String authHeader = request.getHeader("Authorization");
-        String token = null;
-        String username = null;
+        AccessTokenClaims claims = null;
 
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            token = authHeader.substring(7);
-            try {
-                username = authService.extractUserName(token);
-            } catch (SignatureException e) {
-                logger.error("Invalid JWT signature: {}", e.getMessage());
-                sendErrorResponse(response, "INVALID_SIGNATURE", "Invalid JWT signature", false);
-                return;
-            } catch (ExpiredJwtException e) {
-                logger.error("JWT token expired: {}", e.getMessage());
-                sendErrorResponse(response, "TOKEN_EXPIRED", "Access token expired. Please use refresh token to get a new access token.", true);
-                return;
-            } catch (MalformedJwtException e) {
-                logger.error("Malformed JWT token: {}", e.getMessage());
-                sendErrorResponse(response, "MALFORMED_TOKEN", "Malformed JWT token", false);
-                return;
-            } catch (Exception e) {
-                logger.error("JWT processing error: {}", e.getMessage());
-                sendErrorResponse(response, "JWT_ERROR", "JWT processing error", false);
-                return;
+            String token = authHeader.substring(7);
+            // A token seen before skips signature verification and parsing
+            claims = verifiedTokenCache.get(token);
+            if (claims == null) {
+                try {
+                    // Signature and expiry are checked here, once; the claims carry everything else
+                    claims = authService.parseAccessToken(token);
+                    verifiedTokenCache.put(token, claims);
+                } catch (SignatureException e) {
+                    logger.error("Invalid JWT signature: {}", e.getMessage());
+                    sendErrorResponse(response, "INVALID_SIGNATURE", "Invalid JWT signature", false);
+                    return;
+                } catch (ExpiredJwtException e) {
+                    logger.error("JWT token expired: {}", e.getMessage());
+                    sendErrorResponse(response, "TOKEN_EXPIRED", "Access token expired. Please use refresh token to get a new access token.", true);
+                    return;
+                } catch (MalformedJwtException e) {
+                    logger.error("Malformed JWT token: {}", e.getMessage());
+                    sendErrorResponse(response, "MALFORMED_TOKEN", "Malformed JWT token", false);
+                    return;
+                } catch (Exception e) {
+                    logger.error("JWT processing error: {}", e.getMessage());
+                    sendErrorResponse(response, "JWT_ERROR", "JWT processing error", false);
+                    return;
+                }
             }
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+        if (claims != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             try {
-                UserDetails userDetails = context.getBean(MyUserDetailService.class).loadUserByUsername(username);
+                UserPrincipal principal = resolvePrincipal(claims);
 
-                if (authService.validateToken(token, userDetails)) {
+                if (principal != null) {
                     UsernamePasswordAuthenticationToken authToken =
-                            new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                            new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
                 }
@@ -83,6 +102,35 @@ public class JwtFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * Principal for a verified token: from the cache by user id, loading it by that same id only on a
+     * miss. Tokens issued before the uid claim existed are still served by loading the user by email.
+     */
+    private UserPrincipal resolvePrincipal(AccessTokenClaims claims) {
+        String email = claims.subject();
+        if (claims.userId() == null) {
+            return loadPrincipal(email);
+        }
+        // A principal loaded before the last role/permission change is reloaded
+        UserPrincipal principal = principalCache.get(
+                claims.userId(), rolePermissionService.getMatrixVersion(), () -> loadPrincipal(claims.userId()));
+        // Token cấp cho email cũ không còn hợp lệ sau khi đổi email
+        return email.equals(principal.getUsername()) ? principal : null;
+    }
+
+    private UserPrincipal loadPrincipal(String email) {
+        return (UserPrincipal) context.getBean(MyUserDetailService.class).loadUserByUsername(email);
+    }
+
+    private UserPrincipal loadPrincipal(Integer userId) {
+        UserPrincipal principal = context.getBean(MyUserDetailService.class).loadUserById(userId);
+        // Never cache one user's authorities under another user's id
+        if (!userId.equals(principal.id())) {
+            throw new IllegalStateException("Loaded user " + principal.id() + " for token uid " + userId);
+        }
+        return principal;
+    }
+
     private void sendErrorResponse(HttpServletResponse response, String errorCode, String message, boolean requiresRefresh) throws IOException {
         response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
         response.setContentType("application/json");
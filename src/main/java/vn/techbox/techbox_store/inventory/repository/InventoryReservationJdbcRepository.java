@@ -0,0 +1,202 @@
+package vn.techbox.techbox_store.inventory.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import vn.techbox.techbox_store.inventory.model.InventoryReservation;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Set-based JDBC access for reservations: row locks, batched counter updates, batched inserts and bulk expiry.
+ * Bypasses the persistence context, so callers must not rely on managed ProductVariation state afterwards.
+ */
+@Repository
+@RequiredArgsConstructor
+public class InventoryReservationJdbcRepository {
+
+    private static final String LOCK_VARIATIONS =
+            "SELECT id, product_id, stock_quantity, reserved_quantity FROM product_variations " +
+            "WHERE id IN (:ids) ORDER BY id FOR UPDATE";
+
+    private static final String INSERT_RESERVATION =
+            "INSERT INTO inventory_reservations " +
+            "(order_id, product_variation_id, quantity, status, reserved_at, expires_at, released_at, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Bump version so entity writers holding an older copy fail instead of overwriting the counter
+    private static final String ADD_RESERVED =
+            "UPDATE product_variations SET reserved_quantity = reserved_quantity + ?, " +
+            "version = COALESCE(version, 0) + 1, updated_at = ? WHERE id = ?";
+
+    // Same condition as the ATOMIC reservation: the stock must still cover the units
+    private static final String ADD_RESERVED_IF_AVAILABLE =
+            "UPDATE product_variations SET reserved_quantity = reserved_quantity + ?, " +
+            "version = COALESCE(version, 0) + 1, updated_at = ? " +
+            "WHERE id = ? AND stock_quantity - reserved_quantity >= ?";
+
+    private static final String SUBTRACT_RESERVED =
+            "UPDATE product_variations SET reserved_quantity = reserved_quantity - ?, " +
+            "version = COALESCE(version, 0) + 1, updated_at = ? WHERE id = ? AND reserved_quantity >= ?";
+
+    private static final String EXPIRE_FOR_ORDERS =
+            "UPDATE inventory_reservations SET status = 'EXPIRED', updated_at = :now " +
+            "WHERE order_id IN (:orderIds) AND status = 'RESERVED' AND expires_at < :now " +
+            "RETURNING id, order_id, product_variation_id, quantity";
+
+    // Oldest first, skipping rows another transaction is confirming/releasing right now
+    private static final String EXPIRE_DUE =
+            "UPDATE inventory_reservations SET status = 'EXPIRED', updated_at = :now " +
+            "WHERE id IN (SELECT id FROM inventory_reservations " +
+            "WHERE status = 'RESERVED' AND expires_at < :now " +
+            "ORDER BY expires_at LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, order_id, product_variation_id, quantity";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * Lock the variation rows in ascending id order (deadlock-free across concurrent checkouts)
+     * and return their current counters
+     */
+    public List<VariationStock> lockVariations(Collection<Integer> productVariationIds) {
+        if (productVariationIds.isEmpty()) {
+            return List.of();
+        }
+        return namedParameterJdbcTemplate.query(LOCK_VARIATIONS,
+                new MapSqlParameterSource("ids", productVariationIds),
+                (rs, rowNum) -> new VariationStock(
+                        rs.getInt("id"),
+                        rs.getInt("product_id"),
+                        rs.getInt("stock_quantity"),
+                        rs.getInt("reserved_quantity")));
+    }
+
+    /**
+     * Add to reserved_quantity, one batched statement per variation (applied in ascending id order)
+     */
+    public void incrementReserved(SortedMap<Integer, Integer> quantityByVariation) {
+        if (quantityByVariation.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(quantityByVariation.size());
+        for (Map.Entry<Integer, Integer> entry : quantityByVariation.entrySet()) {
+            rows.add(new Object[]{entry.getValue(), now, entry.getKey()});
+        }
+        jdbcTemplate.batchUpdate(ADD_RESERVED, rows);
+    }
+
+    /**
+     * Add to reserved_quantity where the available stock still covers it, one batched statement per
+     * variation (ascending id order). Rows with too little available stock are left unchanged.
+     *
+     * @return ids of the variations that were not updated
+     */
+    public List<Integer> incrementReservedIfAvailable(SortedMap<Integer, Integer> quantityByVariation) {
+        return updateEach(ADD_RESERVED_IF_AVAILABLE, quantityByVariation);
+    }
+
+    /**
+     * Subtract from reserved_quantity, one batched statement per variation (ascending id order).
+     * Rows whose counter is lower than the quantity are left unchanged.
+     *
+     * @return ids of the variations that were not updated
+     */
+    public List<Integer> decrementReserved(SortedMap<Integer, Integer> quantityByVariation) {
+        return updateEach(SUBTRACT_RESERVED, quantityByVariation);
+    }
+
+    // Statements taking (quantity, now, id, quantity); returns the ids whose row was not updated
+    private List<Integer> updateEach(String sql, SortedMap<Integer, Integer> quantityByVariation) {
+        if (quantityByVariation.isEmpty()) {
+            return List.of();
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(quantityByVariation.size());
+        List<Integer> ids = new ArrayList<>(quantityByVariation.size());
+        for (Map.Entry<Integer, Integer> entry : quantityByVariation.entrySet()) {
+            rows.add(new Object[]{entry.getValue(), now, entry.getKey(), entry.getValue()});
+            ids.add(entry.getKey());
+        }
+        int[] counts = jdbcTemplate.batchUpdate(sql, rows);
+        List<Integer> skipped = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                skipped.add(ids.get(i));
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Mark the due RESERVED reservations of the given orders EXPIRED in one statement
+     */
+    public List<ExpiredReservation> expireDueForOrders(Collection<Integer> orderIds, LocalDateTime now) {
+        if (orderIds.isEmpty()) {
+            return List.of();
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("orderIds", orderIds)
+                .addValue("now", Timestamp.valueOf(now));
+        return namedParameterJdbcTemplate.query(EXPIRE_FOR_ORDERS, params, (rs, rowNum) -> expiredReservation(rs));
+    }
+
+    /**
+     * Mark up to {@code limit} due RESERVED reservations (any order) EXPIRED in one statement
+     */
+    public List<ExpiredReservation> expireDue(LocalDateTime now, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource("now", Timestamp.valueOf(now))
+                .addValue("limit", limit);
+        return namedParameterJdbcTemplate.query(EXPIRE_DUE, params, (rs, rowNum) -> expiredReservation(rs));
+    }
+
+    public void insertAll(List<InventoryReservation> reservations) {
+        if (reservations.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(reservations.size());
+        for (InventoryReservation reservation : reservations) {
+            rows.add(new Object[]{
+                    reservation.getOrderId(),
+                    reservation.getProductVariationId(),
+                    reservation.getQuantity(),
+                    reservation.getStatus().name(),
+                    Timestamp.valueOf(reservation.getReservedAt()),
+                    reservation.getExpiresAt() != null ? Timestamp.valueOf(reservation.getExpiresAt()) : null,
+                    reservation.getReleasedAt() != null ? Timestamp.valueOf(reservation.getReleasedAt()) : null,
+                    now,
+                    now
+            });
+        }
+        jdbcTemplate.batchUpdate(INSERT_RESERVATION, rows);
+    }
+
+    private static ExpiredReservation expiredReservation(ResultSet rs) throws SQLException {
+        return new ExpiredReservation(
+                rs.getLong("id"),
+                rs.getInt("order_id"),
+                rs.getInt("product_variation_id"),
+                rs.getInt("quantity"));
+    }
+
+    public record ExpiredReservation(Long id, Integer orderId, Integer productVariationId, int quantity) {
+    }
+
+    public record VariationStock(Integer id, Integer productId, int stockQuantity, int reservedQuantity) {
+
+        public int availableQuantity() {
+            return stockQuantity - reservedQuantity;
+        }
+    }
+}
@@ -25,6 +25,10 @@ public interface InventoryReservationRepository extends JpaRepository<InventoryR
     @Query("SELECT COALESCE(SUM(ir.quantity), 0) FROM InventoryReservation ir WHERE ir.productVariationId = :productVariationId AND ir.status = 'RESERVED'")
     Integer getTotalReservedQuantity(@Param("productVariationId") Integer productVariationId);
 
+    // Cặp (orderId, expiresAt) của các giữ chỗ còn hạn - dựng lại timing wheel khi khởi động
+    @Query("SELECT DISTINCT ir.orderId, ir.expiresAt FROM InventoryReservation ir WHERE ir.status = 'RESERVED' AND ir.expiresAt IS NOT NULL")
+    List<Object[]> findPendingExpiryDeadlines();
+
     // Delete RELEASED and EXPIRED reservations
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Query("DELETE FROM InventoryReservation ir WHERE (ir.status = 'RELEASED' AND ir.releasedAt < :cutoff) OR (ir.status = 'EXPIRED' AND ir.expiresAt < :cutoff)")
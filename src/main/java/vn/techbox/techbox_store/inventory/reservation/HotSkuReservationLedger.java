@@ -0,0 +1,454 @@
+package vn.techbox.techbox_store.inventory.reservation;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.techbox.techbox_store.inventory.model.InventoryReservation;
+import vn.techbox.techbox_store.inventory.model.ReservationStatus;
+import vn.techbox.techbox_store.inventory.repository.InventoryReservationJdbcRepository;
+import vn.techbox.techbox_store.product.event.ProductStockChangedEvent;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sổ giữ hàng cho SKU bán chạy ({@link ReservationMode#LEDGER}).
+ *
+ * Each variation has an in-memory counter of available units (stock - reserved - pending),
+ * serialised per variation, so a reservation is a short critical section instead of a
+ * read-modify-write that competes on the row version. Accepted reservations are appended to a
+ * log once the caller's transaction commits (or handed back to the counter on rollback), and the
+ * log is flushed in batches: one JDBC batch INSERT into {@code inventory_reservations} plus one
+ * aggregated {@code reserved_quantity} increment per variation, in a transaction of its own.
+ *
+ * "Pending" is what the counter has handed out but the database does not show yet. Counters are
+ * reloaded from the database (minus pending) when a reservation would otherwise be refused and
+ * after other code writes the variation's stock. Until that write commits a counter can still
+ * hand out units the write has taken, so the flush only adds to {@code reserved_quantity} where
+ * the stock still covers it (the same condition as {@link ReservationMode#ATOMIC}). Reservations
+ * it cannot cover are written as RELEASED, logged and their counter is reloaded, so reserved
+ * never exceeds stock.
+ *
+ * The periodic flush runs on a thread of its own rather than the shared {@code @Scheduled} pool,
+ * so purges and reprices running there cannot hold reservations back from the database.
+ */
+@Component
+@Slf4j
+public class HotSkuReservationLedger {
+
+    private static final String SELECT_VARIATION =
+            "SELECT product_id, stock_quantity, reserved_quantity FROM product_variations WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final InventoryReservationJdbcRepository reservationJdbcRepository;
+    private final TransactionTemplate flushTransaction;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int batchSize;
+
+    private final ConcurrentHashMap<Integer, VariationCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<LogEntry> pendingLog = new ConcurrentLinkedDeque<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flushExecutor;
+
+    public HotSkuReservationLedger(JdbcTemplate jdbcTemplate,
+                                   InventoryReservationJdbcRepository reservationJdbcRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   ApplicationEventPublisher eventPublisher,
+                                   @Value("${inventory.reservation.mode:OPTIMISTIC}") ReservationMode mode,
+                                   @Value("${inventory.reservation.ledger.batch-size:500}") int batchSize,
+                                   @Value("${inventory.reservation.ledger.flush-interval-ms:50}") long flushIntervalMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.reservationJdbcRepository = reservationJdbcRepository;
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.eventPublisher = eventPublisher;
+        this.enabled = mode == ReservationMode.LEDGER;
+        this.batchSize = Math.max(1, batchSize);
+        if (enabled) {
+            long interval = Math.max(1, flushIntervalMillis);
+            this.flushExecutor = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("reservation-ledger-flush").daemon(true).factory());
+            this.flushExecutor.scheduleWithFixedDelay(this::scheduledFlush, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.flushExecutor = null;
+        }
+    }
+
+    /**
+     * Reserve units of a variation; the reservation row is written by the next flush after commit
+     *
+     * @throws IllegalArgumentException if the variation does not exist or has too little stock
+     */
+    public void reserve(Integer orderId, Integer productVariationId, Integer quantity, LocalDateTime expiresAt) {
+        if (quantity == null || quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        VariationCounter counter = counters.computeIfAbsent(productVariationId, VariationCounter::new);
+        if (!counter.tryTake(quantity)) {
+            // The counter may be behind the database (release, stock import...) - resync once before refusing
+            counter.reload();
+            if (!counter.tryTake(quantity)) {
+                throw new IllegalArgumentException(
+                        String.format("Insufficient stock. Available: %d, Requested: %d", counter.available(), quantity));
+            }
+        }
+
+        appendAfterCommit(List.of(new LogEntry(orderId, productVariationId, counter.productId(), quantity,
+                LocalDateTime.now(), expiresAt)));
+    }
+
+    /**
+     * Reserve several variations for one order, all or nothing. Counters are taken in ascending
+     * variation id order and handed back if any of them is short.
+     *
+     * @param quantityByVariation quantity per variation id (ascending iteration order)
+     * @throws IllegalArgumentException if a variation does not exist or has too little stock
+     */
+    public void reserveAll(Integer orderId, SortedMap<Integer, Integer> quantityByVariation, LocalDateTime expiresAt) {
+        List<LogEntry> entries = new ArrayList<>(quantityByVariation.size());
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            for (Map.Entry<Integer, Integer> line : quantityByVariation.entrySet()) {
+                Integer productVariationId = line.getKey();
+                int quantity = line.getValue();
+                if (quantity <= 0) {
+                    throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+                }
+                VariationCounter counter = counters.computeIfAbsent(productVariationId, VariationCounter::new);
+                if (!counter.tryTake(quantity)) {
+                    counter.reload();
+                    if (!counter.tryTake(quantity)) {
+                        throw new IllegalArgumentException(String.format(
+                                "Insufficient stock for product variation %d. Available: %d, Requested: %d",
+                                productVariationId, counter.available(), quantity));
+                    }
+                }
+                entries.add(new LogEntry(orderId, productVariationId, counter.productId(), quantity, now, expiresAt));
+            }
+        } catch (RuntimeException e) {
+            entries.forEach(this::giveBack);
+            throw e;
+        }
+        appendAfterCommit(entries);
+    }
+
+    // Log the reservations once the caller commits; hand the units back if it rolls back
+    private void appendAfterCommit(List<LogEntry> entries) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        entries.forEach(pendingLog::offerLast);
+                    } else {
+                        entries.forEach(HotSkuReservationLedger.this::giveBack);
+                    }
+                }
+            });
+        } else {
+            entries.forEach(pendingLog::offerLast);
+        }
+    }
+
+    private void giveBack(LogEntry entry) {
+        VariationCounter counter = counters.get(entry.productVariationId());
+        if (counter != null) {
+            counter.giveBack(entry.quantity());
+        }
+    }
+
+    /**
+     * Write every committed reservation still in the log. Called before reservations are read back
+     * (confirm, release, expiry changes) so they see the rows.
+     *
+     * A batch that fails is retried one reservation at a time, so one bad entry cannot hold the
+     * rest of the log back: an entry the database rejects outright (a constraint violation, e.g.
+     * its variation was hard-deleted) is dead-lettered - logged, its units handed back and its
+     * counter reloaded - and the others are written. Any other failure is treated as the database
+     * being unavailable: the unwritten entries go back to the head of the log and the error is
+     * rethrown.
+     *
+     * @return number of reservations written
+     */
+    public int flush() {
+        if (!enabled) {
+            return 0;
+        }
+        flushLock.lock();
+        try {
+            int written = 0;
+            while (true) {
+                List<LogEntry> batch = new ArrayList<>();
+                LogEntry entry;
+                while (batch.size() < batchSize && (entry = pendingLog.pollFirst()) != null) {
+                    batch.add(entry);
+                }
+                if (batch.isEmpty()) {
+                    return written;
+                }
+                try {
+                    flushed(batch, writeBatch(batch));
+                    written += batch.size();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to flush a batch of {} inventory reservations, retrying one by one: {}",
+                            batch.size(), e.getMessage());
+                    written += flushOneByOne(batch);
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int flushOneByOne(List<LogEntry> batch) {
+        int written = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            LogEntry entry = batch.get(i);
+            try {
+                flushed(List.of(entry), writeBatch(List.of(entry)));
+                written++;
+            } catch (DataIntegrityViolationException e) {
+                deadLetter(entry, e);
+            } catch (RuntimeException e) {
+                // Keep order: put what is left in front of anything appended meanwhile
+                for (int j = batch.size() - 1; j >= i; j--) {
+                    pendingLog.offerFirst(batch.get(j));
+                }
+                throw e;
+            }
+        }
+        return written;
+    }
+
+    // Written: the units are in the database now. Refused: the counter handed out units the stock no longer had
+    private void flushed(List<LogEntry> written, List<LogEntry> refused) {
+        for (LogEntry flushedEntry : written) {
+            VariationCounter counter = counters.get(flushedEntry.productVariationId());
+            if (counter != null) {
+                counter.flushed(flushedEntry.quantity());
+            }
+        }
+        for (LogEntry refusedEntry : refused) {
+            VariationCounter counter = counters.get(refusedEntry.productVariationId());
+            if (counter != null) {
+                counter.markStale();
+            }
+        }
+    }
+
+    private void deadLetter(LogEntry entry, RuntimeException e) {
+        log.error("Dropping inventory reservation the database rejects: {}", entry, e);
+        VariationCounter counter = counters.get(entry.productVariationId());
+        if (counter != null) {
+            counter.flushed(entry.quantity());
+            counter.markStale();
+        }
+    }
+
+    private void scheduledFlush() {
+        if (!enabled || pendingLog.isEmpty()) {
+            return;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to flush {} pending inventory reservations, will retry", pendingLog.size(), e);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            try {
+                flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (enabled && !pendingLog.isEmpty()) {
+            log.info("Flushing {} pending inventory reservations before shutdown", pendingLog.size());
+            flush();
+        }
+    }
+
+    /**
+     * Units handed out for a variation that are not in the database yet
+     */
+    public int pendingQuantity(Integer productVariationId) {
+        VariationCounter counter = counters.get(productVariationId);
+        return counter != null ? counter.pending.get() : 0;
+    }
+
+    // Stock or reserved quantity was written outside the ledger - reload the counter on next use
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(ProductStockChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        for (Integer productVariationId : event.productVariationIds()) {
+            VariationCounter counter = counters.get(productVariationId);
+            if (counter != null) {
+                counter.markStale();
+            }
+        }
+    }
+
+    /**
+     * Write one batch in a transaction of its own
+     *
+     * @return the entries the stock could no longer cover, written as RELEASED
+     */
+    private List<LogEntry> writeBatch(List<LogEntry> batch) {
+        // Sorted so concurrent flushers/writers lock variation rows in the same order
+        SortedMap<Integer, Integer> reservedByVariation = new TreeMap<>();
+        Set<Integer> productIds = new HashSet<>();
+        for (LogEntry entry : batch) {
+            reservedByVariation.merge(entry.productVariationId(), entry.quantity(), Integer::sum);
+            productIds.add(entry.productId());
+        }
+
+        List<LogEntry> refused = flushTransaction.execute(status -> {
+            List<Integer> shortVariations = reservationJdbcRepository.incrementReservedIfAvailable(reservedByVariation);
+            List<LogEntry> refusedEntries = shortVariations.isEmpty()
+                    ? List.of()
+                    : reserveOneByOne(batch, new HashSet<>(shortVariations));
+            reservationJdbcRepository.insertAll(toReservations(batch, refusedEntries));
+            eventPublisher.publishEvent(ProductStockChangedEvent.ofProducts(productIds));
+            return refusedEntries;
+        });
+        if (refused != null && !refused.isEmpty()) {
+            log.error("Stock no longer covers {} ledger reservations, written as RELEASED: {}", refused.size(), refused);
+            return refused;
+        }
+        log.debug("Flushed {} inventory reservations for {} variations", batch.size(), reservedByVariation.size());
+        return List.of();
+    }
+
+    // A variation's total did not fit: take its entries in log order while the stock still covers them
+    private List<LogEntry> reserveOneByOne(List<LogEntry> batch, Set<Integer> shortVariations) {
+        List<LogEntry> refused = new ArrayList<>();
+        for (LogEntry entry : batch) {
+            if (!shortVariations.contains(entry.productVariationId())) {
+                continue;
+            }
+            SortedMap<Integer, Integer> single = new TreeMap<>(Map.of(entry.productVariationId(), entry.quantity()));
+            if (!reservationJdbcRepository.incrementReservedIfAvailable(single).isEmpty()) {
+                refused.add(entry);
+            }
+        }
+        return refused;
+    }
+
+    private static List<InventoryReservation> toReservations(List<LogEntry> batch, List<LogEntry> refused) {
+        Set<LogEntry> refusedEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+        refusedEntries.addAll(refused);
+        LocalDateTime now = LocalDateTime.now();
+        List<InventoryReservation> reservations = new ArrayList<>(batch.size());
+        for (LogEntry entry : batch) {
+            boolean covered = !refusedEntries.contains(entry);
+            reservations.add(InventoryReservation.builder()
+                    .orderId(entry.orderId())
+                    .productVariationId(entry.productVariationId())
+                    .quantity(entry.quantity())
+                    .status(covered ? ReservationStatus.RESERVED : ReservationStatus.RELEASED)
+                    .reservedAt(entry.reservedAt())
+                    .expiresAt(entry.expiresAt())
+                    .releasedAt(covered ? null : now)
+                    .build());
+        }
+        return reservations;
+    }
+
+    private record LogEntry(Integer orderId,
+                            Integer productVariationId,
+                            Integer productId,
+                            int quantity,
+                            LocalDateTime reservedAt,
+                            LocalDateTime expiresAt) {
+    }
+
+    /**
+     * Available units of one variation. All changes go through the monitor, so a reload cannot
+     * interleave with a take; {@code pending} is also decremented by the flusher without it,
+     * which at worst makes a concurrent reload count a flushed reservation twice.
+     */
+    private final class VariationCounter {
+
+        private final Integer productVariationId;
+        private final AtomicInteger pending = new AtomicInteger();
+        private Integer productId;
+        private int available;
+        private boolean loaded;
+
+        VariationCounter(Integer productVariationId) {
+            this.productVariationId = productVariationId;
+        }
+
+        synchronized boolean tryTake(int quantity) {
+            if (!loaded) {
+                reload();
+            }
+            if (available < quantity) {
+                return false;
+            }
+            available -= quantity;
+            pending.addAndGet(quantity);
+            return true;
+        }
+
+        synchronized void giveBack(int quantity) {
+            available += quantity;
+            pending.addAndGet(-quantity);
+        }
+
+        void flushed(int quantity) {
+            pending.addAndGet(-quantity);
+        }
+
+        synchronized void markStale() {
+            loaded = false;
+        }
+
+        synchronized int available() {
+            return available;
+        }
+
+        synchronized Integer productId() {
+            return productId;
+        }
+
+        synchronized void reload() {
+            // Read pending before the row: a flush committing in between is then counted twice, never missed
+            int pendingSnapshot = pending.get();
+            List<int[]> rows = jdbcTemplate.query(SELECT_VARIATION,
+                    (rs, rowNum) -> new int[]{rs.getInt("product_id"), rs.getInt("stock_quantity"), rs.getInt("reserved_quantity")},
+                    productVariationId);
+            if (rows.isEmpty()) {
+                throw new IllegalArgumentException("Product variation not found: " + productVariationId);
+            }
+            int[] row = rows.get(0);
+            productId = row[0];
+            available = row[1] - row[2] - pendingSnapshot;
+            loaded = true;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package vn.techbox.techbox_store.inventory.reservation;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hạn giữ hàng / giữ voucher của các đơn hàng, sắp theo {@code expiresAt} trên một {@link TimingWheel}.
+ *
+ * Reservations are registered per order once their transaction commits (and rebuilt from the
+ * database at startup by {@code ReservationCleanupScheduler}); each tick drains the orders whose
+ * deadline has passed so they can be expired with set-based updates. Confirming, releasing or
+ * making an order's reservations permanent cancels its deadlines once that transaction commits;
+ * a deadline that still fires for such an order simply matches no row.
+ */
+@Component
+public class ReservationExpiryWheel {
+
+    // 64 buckets x 4 levels: with 1s ticks deadlines up to ~194 days sit on the wheel itself
+    private static final int WHEEL_SIZE = 64;
+    private static final int LEVELS = 4;
+
+    private final TimingWheel<Expiry> wheel;
+    // Deadlines that had already passed when registered; expired on the next tick
+    private final Set<Expiry> overdue = new HashSet<>();
+    // Deadlines on the wheel per order, for cancel(); an order may have several
+    private final Map<Expiry, List<TimingWheel.Timeout<Expiry>>> scheduled = new HashMap<>();
+
+    public ReservationExpiryWheel(@Value("${inventory.reservation.expiry.tick-ms:1000}") long tickMillis) {
+        this(tickMillis, System.currentTimeMillis());
+    }
+
+    ReservationExpiryWheel(long tickMillis, long startMillis) {
+        this.wheel = new TimingWheel<>(Math.max(1, tickMillis), WHEEL_SIZE, LEVELS, startMillis);
+    }
+
+    /**
+     * Register the deadline of an order's reservations after the current transaction commits
+     */
+    public void schedule(ReservationKind kind, Integer orderId, LocalDateTime expiresAt) {
+        if (orderId == null || expiresAt == null) {
+            return;
+        }
+        afterCommit(() -> add(kind, orderId, expiresAt));
+    }
+
+    /**
+     * Drop the deadlines of an order's reservations after the current transaction commits
+     * (confirmed, released or made permanent)
+     */
+    public void cancelAfterCommit(ReservationKind kind, Integer orderId) {
+        if (orderId != null) {
+            afterCommit(() -> cancel(kind, orderId));
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Register a deadline that is already committed (startup rebuild)
+     */
+    public synchronized void add(ReservationKind kind, Integer orderId, LocalDateTime expiresAt) {
+        Expiry expiry = new Expiry(kind, orderId);
+        long deadlineMillis = expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        TimingWheel.Timeout<Expiry> timeout = wheel.add(deadlineMillis, expiry);
+        if (timeout == null) {
+            overdue.add(expiry);
+        } else {
+            scheduled.computeIfAbsent(expiry, k -> new ArrayList<>()).add(timeout);
+        }
+    }
+
+    public synchronized void cancel(ReservationKind kind, Integer orderId) {
+        Expiry expiry = new Expiry(kind, orderId);
+        overdue.remove(expiry);
+        List<TimingWheel.Timeout<Expiry>> timeouts = scheduled.remove(expiry);
+        if (timeouts != null) {
+            timeouts.forEach(wheel::cancel);
+        }
+    }
+
+    /**
+     * Advance the wheel to now and return the orders whose reservations are due
+     */
+    public Due drainDue() {
+        return drainDue(System.currentTimeMillis());
+    }
+
+    // Package-private for tests: advance to an explicit time
+    synchronized Due drainDue(long nowMillis) {
+        Set<Integer> inventoryOrderIds = new HashSet<>();
+        Set<Integer> voucherOrderIds = new HashSet<>();
+        overdue.forEach(expiry -> collect(expiry, inventoryOrderIds, voucherOrderIds));
+        overdue.clear();
+        wheel.advance(nowMillis, expiry -> {
+            collect(expiry, inventoryOrderIds, voucherOrderIds);
+            scheduled.computeIfPresent(expiry, (key, timeouts) -> {
+                timeouts.removeIf(TimingWheel.Timeout::isDone);
+                return timeouts.isEmpty() ? null : timeouts;
+            });
+        });
+        return new Due(inventoryOrderIds, voucherOrderIds);
+    }
+
+    public synchronized int size() {
+        return wheel.size() + overdue.size();
+    }
+
+    private static void collect(Expiry expiry, Set<Integer> inventoryOrderIds, Set<Integer> voucherOrderIds) {
+        if (expiry.kind() == ReservationKind.INVENTORY) {
+            inventoryOrderIds.add(expiry.orderId());
+        } else {
+            voucherOrderIds.add(expiry.orderId());
+        }
+    }
+
+    public enum ReservationKind {
+        INVENTORY,
+        VOUCHER
+    }
+
+    public record Due(Set<Integer> inventoryOrderIds, Set<Integer> voucherOrderIds) {
+
+        public boolean isEmpty() {
+            return inventoryOrderIds.isEmpty() && voucherOrderIds.isEmpty();
+        }
+    }
+
+    private record Expiry(ReservationKind kind, Integer orderId) {
+    }
+}
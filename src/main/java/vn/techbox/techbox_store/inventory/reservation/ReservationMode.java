@@ -0,0 +1,22 @@
+package vn.techbox.techbox_store.inventory.reservation;
+
+/**
+ * Cách giữ hàng (reserved_quantity) khi đặt hàng, cấu hình bằng {@code inventory.reservation.mode}
+ */
+public enum ReservationMode {
+
+    /**
+     * Đọc ProductVariation, tăng reservedQuantity rồi lưu với @Version (retry khi xung đột)
+     */
+    OPTIMISTIC,
+
+    /**
+     * Bộ đếm trong bộ nhớ cho từng biến thể + log giữ hàng ghi xuống DB theo lô (SKU bán chạy)
+     */
+    LEDGER,
+
+    /**
+     * Một câu UPDATE có điều kiện (stock - reserved >= quantity), kiểm tra số dòng bị ảnh hưởng, không retry
+     */
+    ATOMIC
+}
@@ -0,0 +1,172 @@
+package vn.techbox.techbox_store.inventory.reservation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel (Varghese &amp; Lauck) over absolute ticks.
+ *
+ * Level {@code L} has {@code wheelSize} buckets of {@code wheelSize^L} ticks each. A timeout is
+ * placed on the lowest level whose span covers its remaining delay and cascades one level down
+ * every time its bucket comes round, so adding is O(1) and each tick only touches one bucket per
+ * level that rolls over. Deadlines beyond the top level wait in an overflow list that is
+ * re-examined whenever the top level completes a rotation. A cancelled timeout stays in its bucket
+ * until the bucket comes round and is then dropped, so cancelling is O(1) too.
+ *
+ * Not thread-safe: callers serialise {@link #add} and {@link #advance}.
+ */
+public final class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<Timeout<T>>[][] levels;
+    private final long[] spans;
+    private final List<Timeout<T>> overflow = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int wheelSize, int levelCount, long startMillis) {
+        if (tickMillis <= 0 || wheelSize < 2 || levelCount < 1) {
+            throw new IllegalArgumentException("Invalid timing wheel geometry");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.levels = new List[levelCount][wheelSize];
+        this.spans = new long[levelCount + 1];
+        spans[0] = 1;
+        for (int level = 1; level <= levelCount; level++) {
+            spans[level] = Math.multiplyExact(spans[level - 1], wheelSize);
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * @return a handle for {@link #cancel}, or null if the deadline has already passed (the item is not stored)
+     */
+    public Timeout<T> add(long deadlineMillis, T item) {
+        // Fire on the first tick strictly after the deadline
+        Timeout<T> timeout = new Timeout<>(deadlineMillis / tickMillis + 1, item);
+        if (timeout.deadlineTick <= currentTick) {
+            return null;
+        }
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * @return false if the timeout has already fired or been cancelled
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.done) {
+            return false;
+        }
+        timeout.done = true;
+        size--;
+        return true;
+    }
+
+    /**
+     * Move the wheel up to {@code nowMillis}, handing every timeout that became due to {@code expired}
+     */
+    public void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Cascade from the top so entries can fall through several levels in one tick
+            if (currentTick % spans[levels.length] == 0 && !overflow.isEmpty()) {
+                List<Timeout<T>> pending = new ArrayList<>(overflow);
+                overflow.clear();
+                pending.forEach(timeout -> reinsert(timeout, expired));
+            }
+            for (int level = levels.length - 1; level >= 1; level--) {
+                if (currentTick % spans[level] == 0) {
+                    List<Timeout<T>> bucket = take(level, (int) ((currentTick / spans[level]) % wheelSize));
+                    if (bucket != null) {
+                        bucket.forEach(timeout -> reinsert(timeout, expired));
+                    }
+                }
+            }
+            List<Timeout<T>> due = take(0, (int) (currentTick % wheelSize));
+            if (due != null) {
+                due.forEach(timeout -> fire(timeout, expired));
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long tickMillis() {
+        return tickMillis;
+    }
+
+    private void reinsert(Timeout<T> timeout, Consumer<T> expired) {
+        if (timeout.done) {
+            return;
+        }
+        if (timeout.deadlineTick <= currentTick) {
+            fire(timeout, expired);
+        } else {
+            place(timeout);
+        }
+    }
+
+    private void fire(Timeout<T> timeout, Consumer<T> expired) {
+        if (timeout.done) {
+            return;
+        }
+        timeout.done = true;
+        size--;
+        expired.accept(timeout.item);
+    }
+
+    private void place(Timeout<T> timeout) {
+        long delay = timeout.deadlineTick - currentTick;
+        for (int level = 0; level < levels.length; level++) {
+            if (delay < spans[level + 1]) {
+                int slot = (int) ((timeout.deadlineTick / spans[level]) % wheelSize);
+                List<Timeout<T>> bucket = levels[level][slot];
+                if (bucket == null) {
+                    bucket = new ArrayList<>();
+                    levels[level][slot] = bucket;
+                }
+                bucket.add(timeout);
+                return;
+            }
+        }
+        overflow.add(timeout);
+    }
+
+    private List<Timeout<T>> take(int level, int slot) {
+        List<Timeout<T>> bucket = levels[level][slot];
+        levels[level][slot] = null;
+        return bucket;
+    }
+
+    /**
+     * A stored deadline; {@code done} once it has fired or been cancelled
+     */
+    public static final class Timeout<T> {
+
+        private final long deadlineTick;
+        private final T item;
+        private boolean done;
+
+        private Timeout(long deadlineTick, T item) {
+            this.deadlineTick = deadlineTick;
+            this.item = item;
+        }
+
+        public T item() {
+            return item;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+    }
+}
@@ -2,13 +2,25 @@ package vn.techbox.techbox_store.inventory.scheduler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import vn.techbox.techbox_store.inventory.repository.InventoryReservationRepository;
+import vn.techbox.techbox_store.inventory.reservation.ReservationExpiryWheel;
 import vn.techbox.techbox_store.inventory.service.InventoryReservationService;
+import vn.techbox.techbox_store.voucher.repository.VoucherReservationRepository;
 import vn.techbox.techbox_store.voucher.service.VoucherReservationService;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntFunction;
 
 @Service
 @RequiredArgsConstructor
@@ -17,16 +29,65 @@ public class ReservationCleanupScheduler {
 
     private final InventoryReservationService inventoryReservationService;
     private final VoucherReservationService voucherReservationService;
+    private final InventoryReservationRepository inventoryReservationRepository;
+    private final VoucherReservationRepository voucherReservationRepository;
+    private final ReservationExpiryWheel expiryWheel;
 
+    @Value("${inventory.reservation.expiry.batch-size:500}")
+    private int expiryBatchSize = 500;
+
+    /**
+     * Expire whatever was left over while the application was down, then put every pending
+     * deadline back on the wheel
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildExpiryWheel() {
+        try {
+            cleanUpExpiredReservations();
+
+            List<Object[]> inventoryDeadlines = inventoryReservationRepository.findPendingExpiryDeadlines();
+            List<Object[]> voucherDeadlines = voucherReservationRepository.findPendingExpiryDeadlines();
+            for (Object[] row : inventoryDeadlines) {
+                expiryWheel.add(ReservationExpiryWheel.ReservationKind.INVENTORY, (Integer) row[0], (LocalDateTime) row[1]);
+            }
+            for (Object[] row : voucherDeadlines) {
+                expiryWheel.add(ReservationExpiryWheel.ReservationKind.VOUCHER, (Integer) row[0], (LocalDateTime) row[1]);
+            }
+            log.info("Rebuilt reservation expiry wheel: {} inventory and {} voucher deadlines",
+                    inventoryDeadlines.size(), voucherDeadlines.size());
+        } catch (Exception e) {
+            log.error("Failed to rebuild reservation expiry wheel", e);
+        }
+    }
+
+    // Giải phóng giữ chỗ đúng hạn: mỗi tick chỉ xử lý các đơn vừa đến hạn trên timing wheel
+    @Scheduled(fixedDelayString = "${inventory.reservation.expiry.tick-ms:1000}")
+    public void expireDueReservations() {
+        ReservationExpiryWheel.Due due = expiryWheel.drainDue();
+        if (due.isEmpty()) {
+            return;
+        }
+        try {
+            inChunks(due.inventoryOrderIds(), inventoryReservationService::expireReservations);
+            inChunks(due.voucherOrderIds(), voucherReservationService::expireReservations);
+        } catch (Exception e) {
+            // Left for the periodic sweep below
+            log.error("Error expiring reservations at deadline", e);
+        }
+    }
+
+    // Safety net for deadlines the wheel does not know about (e.g. written by another instance)
     @Scheduled(fixedRate = 300000)
     public void cleanUpExpiredReservations() {
         log.info("Starting scheduled cleanup of expired reservations");
 
         try {
-            inventoryReservationService.cleanUpExpiredReservations();
-            voucherReservationService.cleanUpExpiredReservations();
+            int inventoryExpired = drain(inventoryReservationService::cleanUpExpiredReservations);
+            int voucherExpired = drain(voucherReservationService::cleanUpExpiredReservations);
 
-            log.info("Successfully completed scheduled cleanup of expired reservations");
+            log.info("Successfully completed scheduled cleanup of expired reservations - inventory: {}, vouchers: {}",
+                    inventoryExpired, voucherExpired);
         } catch (Exception e) {
             log.error("Error during scheduled cleanup of expired reservations", e);
         }
@@ -44,4 +105,23 @@ public class ReservationCleanupScheduler {
             log.error("Error during daily purge of old reservations", e);
         }
     }
+
+    // One transaction per batch of orders so a burst of deadlines does not hold locks for long
+    private void inChunks(Collection<Integer> orderIds, ToIntFunction<Collection<Integer>> expire) {
+        List<Integer> ids = new ArrayList<>(orderIds);
+        int chunkSize = Math.max(1, expiryBatchSize);
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            expire.applyAsInt(ids.subList(from, Math.min(from + chunkSize, ids.size())));
+        }
+    }
+
+    private static int drain(IntSupplier sweep) {
+        int total = 0;
+        int expired;
+        do {
+            expired = sweep.getAsInt();
+            total += expired;
+        } while (expired > 0);
+        return total;
+    }
 }
@@ -2,6 +2,8 @@ package vn.techbox.techbox_store.inventory.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
@@ -9,13 +11,19 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import vn.techbox.techbox_store.inventory.model.InventoryReservation;
 import vn.techbox.techbox_store.inventory.model.ReservationStatus;
+import vn.techbox.techbox_store.inventory.reservation.HotSkuReservationLedger;
+import vn.techbox.techbox_store.inventory.reservation.ReservationExpiryWheel;
+import vn.techbox.techbox_store.inventory.reservation.ReservationMode;
+import vn.techbox.techbox_store.inventory.repository.InventoryReservationJdbcRepository;
 import vn.techbox.techbox_store.inventory.repository.InventoryReservationRepository;
 import vn.techbox.techbox_store.inventory.dto.CreateStockExportFromOrderRequest;
+import vn.techbox.techbox_store.product.event.ProductStockChangedEvent;
 import vn.techbox.techbox_store.product.model.ProductVariation;
 import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
 import vn.techbox.techbox_store.order.repository.OrderRepository;
 import vn.techbox.techbox_store.order.model.OrderStatus;
 import vn.techbox.techbox_store.payment.model.PaymentMethod;
+import vn.techbox.techbox_store.payment.model.PaymentStatus;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -29,6 +37,16 @@ public class InventoryReservationService {
     private final ProductVariationRepository productVariationRepository;
     private final OrderRepository orderRepository;
     private final StockExportService stockExportService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final HotSkuReservationLedger reservationLedger;
+    private final InventoryReservationJdbcRepository reservationJdbcRepository;
+    private final ReservationExpiryWheel expiryWheel;
+
+    @Value("${inventory.reservation.mode:OPTIMISTIC}")
+    private ReservationMode reservationMode = ReservationMode.OPTIMISTIC;
+
+    @Value("${inventory.reservation.expiry.batch-size:500}")
+    private int expiryBatchSize = 500;
 
     @Transactional
     @Retryable(retryFor = {OptimisticLockingFailureException.class}, maxAttempts = 3, backoff = @Backoff(delay = 100))
@@ -47,6 +65,16 @@ public class InventoryReservationService {
     public void reserveInventoryInternal(Integer orderId, Integer productVariationId, Integer quantity, LocalDateTime expiresAt) {
         log.info("Reserving inventory for order: {}, productVariation: {}, quantity: {}, permanent: {}",
                 orderId, productVariationId, quantity, expiresAt == null);
+        expiryWheel.schedule(ReservationExpiryWheel.ReservationKind.INVENTORY, orderId, expiresAt);
+
+        if (reservationMode == ReservationMode.LEDGER) {
+            reservationLedger.reserve(orderId, productVariationId, quantity, expiresAt);
+            return;
+        }
+        if (reservationMode == ReservationMode.ATOMIC) {
+            reserveAtomically(orderId, productVariationId, quantity, expiresAt);
+            return;
+        }
 
         ProductVariation productVariation = productVariationRepository.findById(productVariationId)
                 .orElseThrow(() -> new IllegalArgumentException("Product variation not found: " + productVariationId));
@@ -61,6 +89,7 @@ public class InventoryReservationService {
         // Update reserved quantity in product variation with optimistic locking
         productVariation.setReservedQuantity(productVariation.getReservedQuantity() + quantity);
         productVariationRepository.save(productVariation);
+        eventPublisher.publishEvent(ProductStockChangedEvent.of(productVariation));
 
         // Create inventory reservation record
         InventoryReservation reservation = InventoryReservation.builder()
@@ -75,9 +104,91 @@ public class InventoryReservationService {
         inventoryReservationRepository.save(reservation);
     }
 
+    /**
+     * Giữ hàng tạm thời (15 phút) cho tất cả biến thể của một đơn hàng trong một lượt
+     *
+     * @param quantityByVariation productVariationId -> số lượng
+     */
+    @Transactional
+    public void reserveInventoryBatch(Integer orderId, Map<Integer, Integer> quantityByVariation) {
+        reserveInventoryBatchInternal(orderId, quantityByVariation, LocalDateTime.now().plusMinutes(15));
+    }
+
+    /**
+     * Giữ hàng vĩnh viễn (không hết hạn) cho tất cả biến thể của một đơn hàng trong một lượt
+     *
+     * @param quantityByVariation productVariationId -> số lượng
+     */
+    @Transactional
+    public void reserveInventoryPermanentBatch(Integer orderId, Map<Integer, Integer> quantityByVariation) {
+        reserveInventoryBatchInternal(orderId, quantityByVariation, null);
+    }
+
+    /**
+     * All or nothing: variation rows are locked in ascending id order (so concurrent checkouts cannot
+     * deadlock), every quantity is validated, and only then are the counters and reservation rows
+     * written with JDBC batches - a constant number of round trips regardless of cart size.
+     */
+    private void reserveInventoryBatchInternal(Integer orderId, Map<Integer, Integer> quantityByVariation,
+                                               LocalDateTime expiresAt) {
+        SortedMap<Integer, Integer> quantities = new TreeMap<>(quantityByVariation);
+        if (quantities.isEmpty()) {
+            return;
+        }
+        log.info("Reserving inventory for order: {}, {} variations, permanent: {}",
+                orderId, quantities.size(), expiresAt == null);
+
+        quantities.forEach((productVariationId, quantity) -> {
+            if (quantity == null || quantity <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive for product variation " + productVariationId);
+            }
+        });
+        expiryWheel.schedule(ReservationExpiryWheel.ReservationKind.INVENTORY, orderId, expiresAt);
+
+        if (reservationMode == ReservationMode.LEDGER) {
+            reservationLedger.reserveAll(orderId, quantities, expiresAt);
+            return;
+        }
+
+        Map<Integer, InventoryReservationJdbcRepository.VariationStock> locked = new HashMap<>();
+        for (InventoryReservationJdbcRepository.VariationStock stock : reservationJdbcRepository.lockVariations(quantities.keySet())) {
+            locked.put(stock.id(), stock);
+        }
+
+        Set<Integer> productIds = new HashSet<>();
+        List<InventoryReservation> reservations = new ArrayList<>(quantities.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+            InventoryReservationJdbcRepository.VariationStock stock = locked.get(line.getKey());
+            if (stock == null) {
+                throw new IllegalArgumentException("Product variation not found: " + line.getKey());
+            }
+            if (stock.availableQuantity() < line.getValue()) {
+                throw new IllegalArgumentException(String.format(
+                        "Insufficient stock for product variation %d. Available: %d, Requested: %d",
+                        line.getKey(), stock.availableQuantity(), line.getValue()));
+            }
+            productIds.add(stock.productId());
+            reservations.add(InventoryReservation.builder()
+                    .orderId(orderId)
+                    .productVariationId(line.getKey())
+                    .quantity(line.getValue())
+                    .status(ReservationStatus.RESERVED)
+                    .reservedAt(now)
+                    .expiresAt(expiresAt)
+                    .build());
+        }
+
+        reservationJdbcRepository.incrementReserved(quantities);
+        reservationJdbcRepository.insertAll(reservations);
+        eventPublisher.publishEvent(ProductStockChangedEvent.of(productIds, quantities.keySet()));
+    }
+
     @Transactional
     public void setReservationsExpiryNull(Integer orderId) {
         log.info("Setting expiry to null for reservations of order: {}", orderId);
+        reservationLedger.flush();
+        expiryWheel.cancelAfterCommit(ReservationExpiryWheel.ReservationKind.INVENTORY, orderId);
 
         List<InventoryReservation> reservations = inventoryReservationRepository
                 .findByOrderIdAndStatus(orderId, ReservationStatus.RESERVED);
@@ -91,6 +202,8 @@ public class InventoryReservationService {
     @Transactional
     public void confirmReservations(Integer orderId) {
         log.info("Confirming inventory reservations for order: {}", orderId);
+        reservationLedger.flush();
+        expiryWheel.cancelAfterCommit(ReservationExpiryWheel.ReservationKind.INVENTORY, orderId);
 
         List<InventoryReservation> reservations = inventoryReservationRepository
                 .findByOrderIdAndStatus(orderId, ReservationStatus.RESERVED);
@@ -99,11 +212,17 @@ public class InventoryReservationService {
         var order = orderRepository.findById(orderId.longValue())
                 .orElseThrow(() -> new IllegalStateException("Order not found: " + orderId));
 
+        Set<Integer> decrementedVariationIds = new HashSet<>();
         for (InventoryReservation reservation : reservations) {
             // Confirm the reservation
             reservation.confirm();
 
             // Only remove from reserved quantity, stock will be decremented by StockExportService
+            if (reservationMode != ReservationMode.OPTIMISTIC) {
+                decrementReserved(reservation, decrementedVariationIds);
+                inventoryReservationRepository.save(reservation);
+                continue;
+            }
             ProductVariation productVariation = productVariationRepository.findById(reservation.getProductVariationId())
                     .orElseThrow(() -> new IllegalStateException("Product variation not found: " + reservation.getProductVariationId()));
 
@@ -111,7 +230,9 @@ public class InventoryReservationService {
 
             productVariationRepository.save(productVariation);
             inventoryReservationRepository.save(reservation);
+            eventPublisher.publishEvent(ProductStockChangedEvent.of(productVariation));
         }
+        publishStockChanged(decrementedVariationIds);
 
         // Create stock export record for the sale - this will handle stock quantity decrement
         if (!reservations.isEmpty()) {
@@ -128,15 +249,23 @@ public class InventoryReservationService {
     @Transactional
     public void releaseReservations(Integer orderId) {
         log.info("Releasing inventory reservations for order: {}", orderId);
+        reservationLedger.flush();
+        expiryWheel.cancelAfterCommit(ReservationExpiryWheel.ReservationKind.INVENTORY, orderId);
 
         List<InventoryReservation> reservations = inventoryReservationRepository
                 .findByOrderIdAndStatus(orderId, ReservationStatus.RESERVED);
 
+        Set<Integer> decrementedVariationIds = new HashSet<>();
         for (InventoryReservation reservation : reservations) {
             // Release the reservation
             reservation.release();
 
             // Remove from reserved quantity
+            if (reservationMode != ReservationMode.OPTIMISTIC) {
+                decrementReserved(reservation, decrementedVariationIds);
+                inventoryReservationRepository.save(reservation);
+                continue;
+            }
             ProductVariation productVariation = productVariationRepository.findById(reservation.getProductVariationId())
                     .orElseThrow(() -> new IllegalStateException("Product variation not found: " + reservation.getProductVariationId()));
 
@@ -144,52 +273,143 @@ public class InventoryReservationService {
 
             productVariationRepository.save(productVariation);
             inventoryReservationRepository.save(reservation);
+            eventPublisher.publishEvent(ProductStockChangedEvent.of(productVariation));
         }
+        publishStockChanged(decrementedVariationIds);
 
         // Also consider auto-cancel order if no more active reservations
         autoCancelOrderIfPendingVnpayAndNoActiveReservations(orderId);
     }
 
+    /**
+     * Safety-net sweep: expire up to one batch of due reservations of any order
+     *
+     * @return number of reservations expired (a full batch means more may be due)
+     */
     @Transactional
-    public void cleanUpExpiredReservations() {
-        log.info("Cleaning up expired inventory reservations");
+    public int cleanUpExpiredReservations() {
+        reservationLedger.flush();
+        List<InventoryReservationJdbcRepository.ExpiredReservation> expired =
+                reservationJdbcRepository.expireDue(LocalDateTime.now(), expiryBatchSize);
+        releaseExpired(expired);
+        if (!expired.isEmpty()) {
+            log.info("Cleaned up {} expired inventory reservations", expired.size());
+        }
+        return expired.size();
+    }
 
-        List<InventoryReservation> expiredReservations = inventoryReservationRepository
-                .findExpiredReservations(ReservationStatus.RESERVED, LocalDateTime.now());
+    /**
+     * Expire the due reservations of the given orders (driven by {@link ReservationExpiryWheel})
+     */
+    @Transactional
+    public int expireReservations(Collection<Integer> orderIds) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        reservationLedger.flush();
+        List<InventoryReservationJdbcRepository.ExpiredReservation> expired =
+                reservationJdbcRepository.expireDueForOrders(orderIds, LocalDateTime.now());
+        releaseExpired(expired);
+        if (!expired.isEmpty()) {
+            log.info("Expired {} inventory reservations of {} orders", expired.size(), orderIds.size());
+        }
+        return expired.size();
+    }
 
-        Set<Integer> impactedOrderIds = new HashSet<>();
+    @Transactional
+    public int purgeOldReleasedAndExpiredReservations(LocalDateTime cutoff) {
+        log.info("Purging old inventory reservations before {}", cutoff);
+        int deleted = inventoryReservationRepository.deleteReleasedOrExpiredBefore(cutoff);
+        log.info("Purged {} old inventory reservations", deleted);
+        return deleted;
+    }
 
-        for (InventoryReservation reservation : expiredReservations) {
-            reservation.setStatus(ReservationStatus.EXPIRED);
+    /**
+     * Giữ hàng bằng một UPDATE có điều kiện - không đọc entity, không xung đột version, không retry
+     */
+    private void reserveAtomically(Integer orderId, Integer productVariationId, Integer quantity, LocalDateTime expiresAt) {
+        if (quantity == null || quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        int updated = productVariationRepository.incrementReservedQuantityIfAvailable(productVariationId, quantity);
+        if (updated == 0) {
+            ProductVariation productVariation = productVariationRepository.findById(productVariationId)
+                    .orElseThrow(() -> new IllegalArgumentException("Product variation not found: " + productVariationId));
+            throw new IllegalArgumentException(
+                String.format("Insufficient stock. Available: %d, Requested: %d", productVariation.getAvailableQuantity(), quantity));
+        }
 
-            // Remove from reserved quantity
-            ProductVariation productVariation = productVariationRepository.findById(reservation.getProductVariationId())
-                    .orElse(null);
+        InventoryReservation reservation = InventoryReservation.builder()
+                .orderId(orderId)
+                .productVariationId(productVariationId)
+                .quantity(quantity)
+                .status(ReservationStatus.RESERVED)
+                .reservedAt(LocalDateTime.now())
+                .expiresAt(expiresAt)
+                .build();
 
-            if (productVariation != null) {
-                productVariation.setReservedQuantity(productVariation.getReservedQuantity() - reservation.getQuantity());
-                productVariationRepository.save(productVariation);
-            }
+        inventoryReservationRepository.save(reservation);
+        publishStockChanged(Set.of(productVariationId));
+    }
 
-            inventoryReservationRepository.save(reservation);
-            impactedOrderIds.add(reservation.getOrderId());
+    /**
+     * Trả số lượng đang giữ về tồn khả dụng bằng UPDATE có điều kiện (không đọc/ghi entity), dùng cho
+     * chế độ LEDGER (không tranh chấp version với luồng flush) và ATOMIC
+     */
+    private void decrementReserved(InventoryReservation reservation, Set<Integer> decrementedVariationIds) {
+        int updated = productVariationRepository.decrementReservedQuantity(
+                reservation.getProductVariationId(), reservation.getQuantity());
+        if (updated == 0) {
+            log.warn("Reserved quantity of product variation {} is lower than reservation {} ({} units), left unchanged",
+                    reservation.getProductVariationId(), reservation.getId(), reservation.getQuantity());
+            return;
         }
+        decrementedVariationIds.add(reservation.getProductVariationId());
+    }
 
-        // After expiring reservations, cancel related orders if appropriate
-        for (Integer orderIdInt : impactedOrderIds) {
-            if (orderIdInt == null) continue;
-            autoCancelOrderIfPendingVnpayAndNoActiveReservations(orderIdInt);
+    /**
+     * Set-based release of reservations already marked EXPIRED: one batched counter update per
+     * variation, one stock event and one bulk auto-cancel for all impacted orders
+     */
+    private void releaseExpired(List<InventoryReservationJdbcRepository.ExpiredReservation> expired) {
+        if (expired.isEmpty()) {
+            return;
         }
+        SortedMap<Integer, Integer> quantityByVariation = new TreeMap<>();
+        Set<Integer> impactedOrderIds = new HashSet<>();
+        for (InventoryReservationJdbcRepository.ExpiredReservation reservation : expired) {
+            quantityByVariation.merge(reservation.productVariationId(), reservation.quantity(), Integer::sum);
+            impactedOrderIds.add(reservation.orderId());
+        }
+
+        List<Integer> skipped = reservationJdbcRepository.decrementReserved(quantityByVariation);
+        if (!skipped.isEmpty()) {
+            log.warn("Reserved quantity of product variations {} is lower than their expired reservations, left unchanged", skipped);
+        }
+        Set<Integer> decrementedVariationIds = new HashSet<>(quantityByVariation.keySet());
+        skipped.forEach(decrementedVariationIds::remove);
+        publishStockChanged(decrementedVariationIds);
 
-        log.info("Cleaned up {} expired inventory reservations", expiredReservations.size());
+        autoCancelUnpaidVnpayOrdersWithoutActiveReservations(impactedOrderIds);
     }
 
-    @Transactional
-    public int purgeOldReleasedAndExpiredReservations(LocalDateTime cutoff) {
-        log.info("Purging old inventory reservations before {}", cutoff);
-        int deleted = inventoryReservationRepository.deleteReleasedOrExpiredBefore(cutoff);
-        log.info("Purged {} old inventory reservations", deleted);
-        return deleted;
+    private void autoCancelUnpaidVnpayOrdersWithoutActiveReservations(Set<Integer> orderIds) {
+        // Không bắt lỗi ở đây: lỗi SQL làm hỏng cả transaction, để lần quét sau xử lý lại toàn bộ
+        List<Long> ids = orderIds.stream().map(Integer::longValue).toList();
+        int cancelled = orderRepository.cancelUnpaidOrdersWithoutActiveReservations(ids,
+                OrderStatus.PENDING, OrderStatus.CANCELLED, PaymentMethod.VNPAY, PaymentStatus.PENDING,
+                ReservationStatus.RESERVED, LocalDateTime.now());
+        if (cancelled > 0) {
+            log.info("Cancelled {} unpaid VNPAY orders with no active reservations", cancelled);
+        }
+    }
+
+    private void publishStockChanged(Set<Integer> productVariationIds) {
+        if (productVariationIds.isEmpty()) {
+            return;
+        }
+        List<Integer> productIds = productVariationRepository.findProductIdsByIdIn(productVariationIds);
+        eventPublisher.publishEvent(ProductStockChangedEvent.of(productIds, productVariationIds));
     }
 
     private void autoCancelOrderIfPendingVnpayAndNoActiveReservations(Integer orderId) {
@@ -2,6 +2,7 @@ package vn.techbox.techbox_store.inventory.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -12,6 +13,7 @@ import vn.techbox.techbox_store.inventory.model.StockAdjustment;
 import vn.techbox.techbox_store.inventory.model.StockAdjustmentItem;
 import vn.techbox.techbox_store.inventory.repository.StockAdjustmentRepository;
 import vn.techbox.techbox_store.inventory.service.StockAdjustmentService;
+import vn.techbox.techbox_store.product.event.ProductStockChangedEvent;
 import vn.techbox.techbox_store.product.model.ProductVariation;
 import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
 import vn.techbox.techbox_store.user.repository.UserRepository;
@@ -31,6 +33,7 @@ public class StockAdjustmentServiceImpl implements StockAdjustmentService {
     private final ProductVariationRepository productVariationRepository;
     private final UserRepository userRepository;
     private final StockAdjustmentMapper stockAdjustmentMapper;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional(readOnly = true)
@@ -193,6 +196,7 @@ public class StockAdjustmentServiceImpl implements StockAdjustmentService {
 
         variation.setStockQuantity(newStock);
         productVariationRepository.save(variation);
+        eventPublisher.publishEvent(ProductStockChangedEvent.of(variation));
 
         log.info("Updated inventory for product {}: {} -> {}", variation.getSku(), currentStock, newStock);
     }
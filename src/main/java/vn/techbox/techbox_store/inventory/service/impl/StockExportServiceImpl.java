@@ -2,6 +2,8 @@ package vn.techbox.techbox_store.inventory.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -11,8 +13,10 @@ import vn.techbox.techbox_store.inventory.mapper.StockExportMapper;
 import vn.techbox.techbox_store.inventory.model.StockExport;
 import vn.techbox.techbox_store.inventory.model.StockExportItem;
 import vn.techbox.techbox_store.inventory.repository.StockExportRepository;
+import vn.techbox.techbox_store.inventory.reservation.ReservationMode;
 import vn.techbox.techbox_store.inventory.service.StockExportService;
 import vn.techbox.techbox_store.order.repository.OrderRepository;
+import vn.techbox.techbox_store.product.event.ProductStockChangedEvent;
 import vn.techbox.techbox_store.product.model.ProductVariation;
 import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
 import vn.techbox.techbox_store.user.repository.UserRepository;
@@ -33,6 +37,10 @@ public class StockExportServiceImpl implements StockExportService {
     private final UserRepository userRepository;
     private final OrderRepository orderRepository;
     private final StockExportMapper stockExportMapper;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${inventory.reservation.mode:OPTIMISTIC}")
+    private ReservationMode reservationMode = ReservationMode.OPTIMISTIC;
     
     @Override
     @Transactional(readOnly = true)
@@ -185,11 +193,25 @@ public class StockExportServiceImpl implements StockExportService {
      * Decrease product variation stock when exporting
      */
     private void decreaseProductVariationStock(ProductVariation variation, Integer quantity) {
+        if (reservationMode != ReservationMode.OPTIMISTIC) {
+            // Guarded UPDATE instead of read-modify-write, so it does not race the ledger flusher's
+            // version bumps on hot rows; the managed entity is left untouched
+            int updated = productVariationRepository.decrementStockQuantityIfAvailable(variation.getId(), quantity);
+            if (updated == 0) {
+                throw new RuntimeException("Insufficient stock for product variation ID: " + variation.getId()
+                        + ". Required: " + quantity);
+            }
+            eventPublisher.publishEvent(ProductStockChangedEvent.of(variation));
+            log.info("Decreased stock of product variation {} by {}", variation.getId(), quantity);
+            return;
+        }
+
         Integer currentStock = variation.getStockQuantity();
         Integer newStock = currentStock - quantity;
         
         variation.setStockQuantity(newStock);
         productVariationRepository.save(variation);
+        eventPublisher.publishEvent(ProductStockChangedEvent.of(variation));
         
         log.info("Updated product variation {} - New stock: {}", variation.getId(), newStock);
     }
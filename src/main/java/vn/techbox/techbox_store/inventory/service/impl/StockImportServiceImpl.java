@@ -2,6 +2,7 @@ package vn.techbox.techbox_store.inventory.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -13,6 +14,7 @@ import vn.techbox.techbox_store.inventory.model.StockImportItem;
 import vn.techbox.techbox_store.inventory.repository.StockImportRepository;
 import vn.techbox.techbox_store.inventory.repository.SupplierRepository;
 import vn.techbox.techbox_store.inventory.service.StockImportService;
+import vn.techbox.techbox_store.product.event.ProductStockChangedEvent;
 import vn.techbox.techbox_store.product.model.ProductVariation;
 import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
 import vn.techbox.techbox_store.user.repository.UserRepository;
@@ -36,6 +38,7 @@ public class StockImportServiceImpl implements StockImportService {
     private final SupplierRepository supplierRepository;
     private final UserRepository userRepository;
     private final StockImportMapper stockImportMapper;
+    private final ApplicationEventPublisher eventPublisher;
     
     @Override
     @Transactional(readOnly = true)
@@ -172,6 +175,7 @@ public class StockImportServiceImpl implements StockImportService {
         variation.setAvgCostPrice(newAvgCostPrice);
         
         productVariationRepository.save(variation);
+        eventPublisher.publishEvent(ProductStockChangedEvent.of(variation));
         
         log.info("Updated product variation {} - New stock: {}, New avg cost: {}", 
                 variation.getId(), newStock, newAvgCostPrice);
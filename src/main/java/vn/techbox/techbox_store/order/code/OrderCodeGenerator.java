@@ -0,0 +1,10 @@
+package vn.techbox.techbox_store.order.code;
+
+/**
+ * Sinh mã đơn hàng. Codes must be unique across every application instance; a replacement
+ * implementation only needs to be registered as a bean in place of {@link SequenceOrderCodeGenerator}.
+ */
+public interface OrderCodeGenerator {
+
+    String nextCode();
+}
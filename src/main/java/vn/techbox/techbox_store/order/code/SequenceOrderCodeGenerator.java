@@ -0,0 +1,100 @@
+package vn.techbox.techbox_store.order.code;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import vn.techbox.techbox_store.order.repository.OrderJdbcRepository;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Mã đơn dạng {@code <prefix><yyMMdd><node id 2 số><số thứ tự 9 số>}, ví dụ {@code ORD25101803000012345}.
+ *
+ * Numbers come from the {@code order_code_seq} database sequence, {@code order.code.block-size} at
+ * a time, so only one order in a block pays for a query. Within an instance codes increase
+ * monotonically (day first, then number); across instances the sequence keeps them unique and
+ * the node id shows which instance issued them. The fixed-width layout keeps codes of one day
+ * adjacent in the order_code index. The sequence is created once at startup, not per block.
+ */
+@Component
+@Slf4j
+public class SequenceOrderCodeGenerator implements OrderCodeGenerator {
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyMMdd");
+    private static final int NUMBER_DIGITS = 9;
+
+    private final OrderJdbcRepository orderJdbcRepository;
+    private final String prefix;
+    private final String nodeId;
+    private final int blockSize;
+
+    // Guarded by this
+    private long[] block = new long[0];
+    private int nextIndex;
+    private long currentDay = Long.MIN_VALUE;
+    private String codePrefix;
+    private boolean sequenceReady;
+
+    public SequenceOrderCodeGenerator(OrderJdbcRepository orderJdbcRepository,
+                                      @Value("${order.code-prefix:ORD}") String prefix,
+                                      @Value("${order.code.node-id:0}") int nodeId,
+                                      @Value("${order.code.block-size:100}") int blockSize) {
+        if (nodeId < 0 || nodeId > 99) {
+            throw new IllegalArgumentException("order.code.node-id must be between 0 and 99: " + nodeId);
+        }
+        this.orderJdbcRepository = orderJdbcRepository;
+        this.prefix = prefix;
+        this.nodeId = nodeId < 10 ? "0" + nodeId : String.valueOf(nodeId);
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void onApplicationReady() {
+        try {
+            ensureSequence();
+        } catch (Exception e) {
+            // Retried by the first block allocation
+            log.warn("Could not create order_code_seq at startup: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Runs in the caller's transaction; sequence values are not returned on rollback, so a rolled
+     * back order only leaves a gap
+     */
+    @Override
+    public synchronized String nextCode() {
+        if (nextIndex >= block.length) {
+            ensureSequence();
+            block = orderJdbcRepository.nextOrderCodeNumbers(blockSize);
+            nextIndex = 0;
+            log.debug("Allocated order code block {}..{}", block[0], block[block.length - 1]);
+        }
+        long number = block[nextIndex++];
+
+        LocalDate today = LocalDate.now();
+        if (today.toEpochDay() != currentDay) {
+            currentDay = today.toEpochDay();
+            codePrefix = prefix + DAY_FORMAT.format(today) + nodeId;
+        }
+
+        String digits = Long.toString(number);
+        StringBuilder code = new StringBuilder(codePrefix.length() + Math.max(NUMBER_DIGITS, digits.length()));
+        code.append(codePrefix);
+        for (int i = digits.length(); i < NUMBER_DIGITS; i++) {
+            code.append('0');
+        }
+        return code.append(digits).toString();
+    }
+
+    // Caller holds the monitor; only an order arriving before startup completes pays for the DDL
+    private void ensureSequence() {
+        if (!sequenceReady) {
+            orderJdbcRepository.createOrderCodeSequenceIfMissing();
+            sequenceReady = true;
+        }
+    }
+}
@@ -14,6 +14,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import vn.techbox.techbox_store.common.pagination.CursorPage;
 import vn.techbox.techbox_store.order.dto.*;
 import vn.techbox.techbox_store.order.exception.OrderException;
 import vn.techbox.techbox_store.order.model.OrderStatus;
@@ -49,6 +50,25 @@ public class OrderController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/all/summary")
+    @PreAuthorize("hasAuthority('ORDER:READ')")
+    @Operation(summary = "Get order summaries", description = "Get paginated list of orders without their items, with optional status filter")
+    public ResponseEntity<Page<OrderSummaryResponse>> getAllOrderSummaries(
+            @PageableDefault(size = 20) Pageable pageable,
+            @RequestParam(required = false) OrderStatus status) {
+        return ResponseEntity.ok(orderService.getAllOrderSummaries(status, pageable));
+    }
+
+    @GetMapping("/all/cursor")
+    @PreAuthorize("hasAuthority('ORDER:READ')")
+    @Operation(summary = "Get all orders by cursor", description = "Get orders newest first using an opaque cursor instead of page numbers, without a total count")
+    public ResponseEntity<CursorPage<OrderResponse>> getAllOrdersByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) OrderStatus status) {
+        return ResponseEntity.ok(orderService.getAllOrdersByCursor(status, cursor, size));
+    }
+
     @GetMapping("/user/{userId}")
     @PreAuthorize("hasAuthority('ORDER:READ')")
     @Operation(summary = "Get orders by user ID", description = "Get paginated list of orders for a specific user (Admin only)")
@@ -86,13 +106,14 @@ public class OrderController {
     @Operation(summary = "Create new order", description = "Create a new order with items and shipping information")
     public ResponseEntity<OrderResponse> createOrder(
             @Valid @RequestBody CreateOrderRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @AuthenticationPrincipal UserPrincipal userPrincipal) {
 
         try {
             Integer userId = userPrincipal.getId();
             log.info("Creating order for user: {}", userId);
 
-            OrderResponse response = orderService.createOrder(request, userId);
+            OrderResponse response = orderService.createOrder(request, userId, idempotencyKey);
 
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
         } catch (Exception e) {
@@ -212,4 +233,14 @@ public class OrderController {
 
         return ResponseEntity.ok(orders);
     }
+
+    @GetMapping("/search/cursor")
+    @PreAuthorize("hasAuthority('ORDER:READ')")
+    @Operation(summary = "Search orders by order code with a cursor", description = "Search orders by order code pattern, newest first, using an opaque cursor without a total count")
+    public ResponseEntity<CursorPage<OrderResponse>> searchOrdersByCodeByCursor(
+            @RequestParam String searchTerm,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(orderService.searchOrdersByCodeByCursor(searchTerm, cursor, size));
+    }
 }
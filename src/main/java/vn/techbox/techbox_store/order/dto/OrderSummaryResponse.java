@@ -0,0 +1,32 @@
+package vn.techbox.techbox_store.order.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import vn.techbox.techbox_store.order.model.OrderStatus;
+import vn.techbox.techbox_store.payment.model.PaymentMethod;
+import vn.techbox.techbox_store.payment.model.PaymentStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Một dòng trong danh sách đơn hàng (không kèm chi tiết sản phẩm), đọc thẳng từ một câu truy vấn
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummaryResponse {
+    private Long id;
+    private String orderCode;
+    private OrderStatus status;
+    private PaymentMethod paymentMethod;
+    private PaymentStatus paymentStatus;
+    private BigDecimal finalAmount;
+    private String shippingName;
+    private String shippingPhone;
+    private Long itemCount;
+    private LocalDateTime createdAt;
+}
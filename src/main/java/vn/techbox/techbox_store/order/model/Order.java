@@ -14,7 +14,12 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_orders_user_idempotency_key", columnNames = {"user_id", "idempotency_key"})
+}, indexes = {
+        // Thứ tự của danh sách đơn và phân trang theo con trỏ
+        @Index(name = "idx_orders_created_at_id", columnList = "created_at, id")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -39,6 +44,10 @@ public class Order {
     @Column(name = "note", columnDefinition = "TEXT")
     private String note;
 
+    // Idempotency-Key của request tạo đơn (nếu client gửi); một key chỉ tạo một đơn cho mỗi user
+    @Column(name = "idempotency_key", length = 100)
+    private String idempotencyKey;
+
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
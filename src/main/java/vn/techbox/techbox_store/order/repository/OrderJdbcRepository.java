@@ -0,0 +1,89 @@
+package vn.techbox.techbox_store.order.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * PostgreSQL-specific JDBC access for orders
+ */
+@Repository
+@RequiredArgsConstructor
+public class OrderJdbcRepository {
+
+    public static final String ORDER_CODE_TRIGRAM_INDEX = "idx_orders_order_code_trgm";
+
+    // Two-key form: (user id, hash of the key); released when the transaction ends
+    private static final String LOCK_IDEMPOTENCY_KEY =
+            "SELECT pg_advisory_xact_lock(?, hashtext(?))";
+
+    private static final String CREATE_ORDER_CODE_SEQUENCE =
+            "CREATE SEQUENCE IF NOT EXISTS order_code_seq";
+
+    // One round trip for a whole block; values are unique across instances even if not contiguous
+    private static final String NEXT_ORDER_CODE_NUMBERS =
+            "SELECT nextval('order_code_seq') FROM generate_series(1, ?)";
+
+    private static final String CREATE_TRIGRAM_EXTENSION =
+            "CREATE EXTENSION IF NOT EXISTS pg_trgm";
+
+    // Matches LOWER(o.orderCode) LIKE '%...%' in OrderRepository's code search
+    private static final String CREATE_ORDER_CODE_TRIGRAM_INDEX =
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + ORDER_CODE_TRIGRAM_INDEX +
+            " ON orders USING gin (lower(order_code) gin_trgm_ops)";
+
+    private static final String DROP_ORDER_CODE_TRIGRAM_INDEX =
+            "DROP INDEX CONCURRENTLY IF EXISTS " + ORDER_CODE_TRIGRAM_INDEX;
+
+    private static final String SELECT_INDEX_VALID =
+            "SELECT i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE c.relname = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Serialise the transactions creating an order with the same idempotency key for the same user,
+     * so a retry waits for the first attempt and then sees its order
+     */
+    public void lockIdempotencyKey(Integer userId, String idempotencyKey) {
+        jdbcTemplate.query(LOCK_IDEMPOTENCY_KEY, rs -> null, userId, idempotencyKey);
+    }
+
+    public void createOrderCodeSequenceIfMissing() {
+        jdbcTemplate.execute(CREATE_ORDER_CODE_SEQUENCE);
+    }
+
+    /**
+     * Take {@code count} numbers from the order code sequence, ascending
+     */
+    public long[] nextOrderCodeNumbers(int count) {
+        return jdbcTemplate.queryForList(NEXT_ORDER_CODE_NUMBERS, Long.class, count).stream()
+                .mapToLong(Long::longValue)
+                .sorted()
+                .toArray();
+    }
+
+    public void createTrigramExtensionIfMissing() {
+        jdbcTemplate.execute(CREATE_TRIGRAM_EXTENSION);
+    }
+
+    /**
+     * @return empty if the index does not exist, otherwise whether it is usable (an interrupted
+     * concurrent build leaves an invalid index behind)
+     */
+    public Optional<Boolean> isOrderCodeTrigramIndexValid() {
+        return jdbcTemplate.queryForList(SELECT_INDEX_VALID, Boolean.class, ORDER_CODE_TRIGRAM_INDEX)
+                .stream()
+                .findFirst();
+    }
+
+    // CONCURRENTLY cannot run inside a transaction: call without one
+    public void createOrderCodeTrigramIndex() {
+        jdbcTemplate.execute(CREATE_ORDER_CODE_TRIGRAM_INDEX);
+    }
+
+    public void dropOrderCodeTrigramIndex() {
+        jdbcTemplate.execute(DROP_ORDER_CODE_TRIGRAM_INDEX);
+    }
+}
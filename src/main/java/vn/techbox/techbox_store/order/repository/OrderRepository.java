@@ -3,12 +3,20 @@ package vn.techbox.techbox_store.order.repository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import vn.techbox.techbox_store.inventory.model.ReservationStatus;
+import vn.techbox.techbox_store.order.dto.OrderSummaryResponse;
 import vn.techbox.techbox_store.order.model.Order;
 import vn.techbox.techbox_store.order.model.OrderStatus;
+import vn.techbox.techbox_store.payment.model.PaymentMethod;
+import vn.techbox.techbox_store.payment.model.PaymentStatus;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -16,6 +24,8 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
 
     Optional<Order> findByOrderCode(String orderCode);
 
+    Optional<Order> findByUser_IdAndIdempotencyKey(Integer userId, String idempotencyKey);
+
     Page<Order> findByUser_IdOrderByCreatedAtDesc(Integer userId, Pageable pageable);
 
     Page<Order> findByStatusOrderByCreatedAtDesc(OrderStatus status, Pageable pageable);
@@ -38,6 +48,98 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Query("SELECT o FROM Order o LEFT JOIN FETCH o.orderItems oi LEFT JOIN FETCH oi.productVariation pv LEFT JOIN FETCH pv.product WHERE o.user.id = :userId ORDER BY o.createdAt DESC")
     Page<Order> findTopOrdersByUserId(@Param("userId") Integer userId, Pageable pageable);
 
+    // Huỷ hàng loạt các đơn VNPAY chưa thanh toán không còn giữ hàng (sau khi giữ chỗ hết hạn)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :cancelled, o.updatedAt = :now " +
+           "WHERE o.id IN :orderIds AND o.status = :pending " +
+           "AND o.paymentInfo.id IN (SELECT p.id FROM Payment p WHERE p.paymentMethod = :paymentMethod AND p.paymentStatus = :paymentStatus) " +
+           "AND NOT EXISTS (SELECT ir.id FROM InventoryReservation ir WHERE ir.orderId = o.id AND ir.status = :reserved)")
+    int cancelUnpaidOrdersWithoutActiveReservations(@Param("orderIds") Collection<Long> orderIds,
+                                                    @Param("pending") OrderStatus pending,
+                                                    @Param("cancelled") OrderStatus cancelled,
+                                                    @Param("paymentMethod") PaymentMethod paymentMethod,
+                                                    @Param("paymentStatus") PaymentStatus paymentStatus,
+                                                    @Param("reserved") ReservationStatus reserved,
+                                                    @Param("now") LocalDateTime now);
+
     @Query("SELECT o FROM Order o WHERE LOWER(o.orderCode) LIKE LOWER(CONCAT('%', :searchTerm, '%')) ORDER BY o.createdAt DESC")
     Page<Order> searchByOrderCode(@Param("searchTerm") String searchTerm, Pageable pageable);
+
+    // Danh sách đơn hai bước: lấy trang id trước, rồi nạp cả đồ thị của các id đó bằng findAllWithDetailsByIdIn
+
+    @Query(value = "SELECT o.id FROM Order o WHERE o.user.id = :userId ORDER BY o.createdAt DESC, o.id DESC",
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE o.user.id = :userId")
+    Page<Long> findIdsByUserId(@Param("userId") Integer userId, Pageable pageable);
+
+    @Query(value = "SELECT o.id FROM Order o WHERE o.user.id = :userId AND o.status = :status ORDER BY o.createdAt DESC, o.id DESC",
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE o.user.id = :userId AND o.status = :status")
+    Page<Long> findIdsByUserIdAndStatus(@Param("userId") Integer userId, @Param("status") OrderStatus status, Pageable pageable);
+
+    @Query(value = "SELECT o.id FROM Order o WHERE o.status = :status ORDER BY o.createdAt DESC, o.id DESC",
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE o.status = :status")
+    Page<Long> findIdsByStatus(@Param("status") OrderStatus status, Pageable pageable);
+
+    @Query(value = "SELECT o.id FROM Order o WHERE o.status <> :status ORDER BY o.createdAt DESC, o.id DESC",
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE o.status <> :status")
+    Page<Long> findIdsByStatusNot(@Param("status") OrderStatus status, Pageable pageable);
+
+    @Query(value = "SELECT o.id FROM Order o WHERE LOWER(o.orderCode) LIKE LOWER(CONCAT('%', :searchTerm, '%')) ORDER BY o.createdAt DESC, o.id DESC",
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE LOWER(o.orderCode) LIKE LOWER(CONCAT('%', :searchTerm, '%'))")
+    Page<Long> searchIdsByOrderCode(@Param("searchTerm") String searchTerm, Pageable pageable);
+
+    // Phân trang theo con trỏ (createdAt, id): không đếm, không bỏ qua các trang trước.
+    // The leading createdAt <= :createdAt is the range bound on idx_orders_created_at_id; the OR only
+    // decides ties on the cursor's own timestamp
+
+    @Query("SELECT o.id FROM Order o WHERE o.status = :status " +
+           "AND o.createdAt <= :createdAt AND (o.createdAt < :createdAt OR o.id < :id) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Long> findIdsByStatusBefore(@Param("status") OrderStatus status,
+                                     @Param("createdAt") LocalDateTime createdAt,
+                                     @Param("id") Long id,
+                                     Pageable pageable);
+
+    @Query("SELECT o.id FROM Order o WHERE o.status <> :status " +
+           "AND o.createdAt <= :createdAt AND (o.createdAt < :createdAt OR o.id < :id) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Long> findIdsByStatusNotBefore(@Param("status") OrderStatus status,
+                                        @Param("createdAt") LocalDateTime createdAt,
+                                        @Param("id") Long id,
+                                        Pageable pageable);
+
+    @Query("SELECT o.id FROM Order o WHERE LOWER(o.orderCode) LIKE LOWER(CONCAT('%', :searchTerm, '%')) " +
+           "AND o.createdAt <= :createdAt AND (o.createdAt < :createdAt OR o.id < :id) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Long> searchIdsByOrderCodeBefore(@Param("searchTerm") String searchTerm,
+                                          @Param("createdAt") LocalDateTime createdAt,
+                                          @Param("id") Long id,
+                                          Pageable pageable);
+
+    // Only one collection is fetched, so the rows multiply by item count but not by a cartesian product
+    @Query("SELECT o FROM Order o " +
+           "LEFT JOIN FETCH o.paymentInfo " +
+           "LEFT JOIN FETCH o.shippingInfo " +
+           "LEFT JOIN FETCH o.orderItems " +
+           "WHERE o.id IN :ids")
+    List<Order> findAllWithDetailsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Danh sách rút gọn cho trang quản trị: một câu truy vấn phẳng, không nạp entity
+
+    @Query(value = "SELECT new vn.techbox.techbox_store.order.dto.OrderSummaryResponse(" +
+                   "o.id, o.orderCode, o.status, p.paymentMethod, p.paymentStatus, p.finalAmount, " +
+                   "s.shippingName, s.shippingPhone, " +
+                   "(SELECT COUNT(oi) FROM OrderItem oi WHERE oi.order = o), o.createdAt) " +
+                   "FROM Order o LEFT JOIN o.paymentInfo p LEFT JOIN o.shippingInfo s " +
+                   "WHERE o.status = :status ORDER BY o.createdAt DESC, o.id DESC",
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE o.status = :status")
+    Page<OrderSummaryResponse> findSummariesByStatus(@Param("status") OrderStatus status, Pageable pageable);
+
+    @Query(value = "SELECT new vn.techbox.techbox_store.order.dto.OrderSummaryResponse(" +
+                   "o.id, o.orderCode, o.status, p.paymentMethod, p.paymentStatus, p.finalAmount, " +
+                   "s.shippingName, s.shippingPhone, " +
+                   "(SELECT COUNT(oi) FROM OrderItem oi WHERE oi.order = o), o.createdAt) " +
+                   "FROM Order o LEFT JOIN o.paymentInfo p LEFT JOIN o.shippingInfo s " +
+                   "WHERE o.status <> :status ORDER BY o.createdAt DESC, o.id DESC",
+           countQuery = "SELECT COUNT(o) FROM Order o WHERE o.status <> :status")
+    Page<OrderSummaryResponse> findSummariesByStatusNot(@Param("status") OrderStatus status, Pageable pageable);
 }
@@ -0,0 +1,58 @@
+package vn.techbox.techbox_store.order.search;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import vn.techbox.techbox_store.order.repository.OrderJdbcRepository;
+
+import java.util.Optional;
+
+/**
+ * Tạo chỉ mục trigram cho tìm kiếm mã đơn khi ứng dụng khởi động.
+ *
+ * The admin search matches a substring of the order code, which a btree cannot serve; a GIN
+ * trigram index on {@code lower(order_code)} can. It is built CONCURRENTLY in the background so
+ * neither startup nor order writes wait for it, and an invalid index left by an interrupted build
+ * is dropped and rebuilt. Hibernate's ddl-auto cannot express operator classes, hence the
+ * explicit DDL. Failures (e.g. no permission to create the extension) are logged and the search
+ * keeps working, only without the index.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderCodeTrigramIndex {
+
+    private final OrderJdbcRepository orderJdbcRepository;
+
+    @Value("${order.search.trigram-index.enabled:true}")
+    private boolean enabled = true;
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndex() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Optional<Boolean> valid = orderJdbcRepository.isOrderCodeTrigramIndexValid();
+            if (valid.orElse(false)) {
+                return;
+            }
+            orderJdbcRepository.createTrigramExtensionIfMissing();
+            if (valid.isPresent()) {
+                log.warn("Order code trigram index {} is invalid, rebuilding", OrderJdbcRepository.ORDER_CODE_TRIGRAM_INDEX);
+                orderJdbcRepository.dropOrderCodeTrigramIndex();
+            }
+            long startMillis = System.currentTimeMillis();
+            orderJdbcRepository.createOrderCodeTrigramIndex();
+            log.info("Order code trigram index {} built in {} ms",
+                    OrderJdbcRepository.ORDER_CODE_TRIGRAM_INDEX, System.currentTimeMillis() - startMillis);
+        } catch (Exception e) {
+            log.error("Failed to create order code trigram index; order code search will scan orders", e);
+        }
+    }
+}
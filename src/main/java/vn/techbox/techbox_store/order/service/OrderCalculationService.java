@@ -1,5 +1,7 @@
 package vn.techbox.techbox_store.order.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -11,10 +13,16 @@ import vn.techbox.techbox_store.order.util.OrderCalculationUtil;
 import vn.techbox.techbox_store.payment.model.Payment;
 import vn.techbox.techbox_store.product.model.ProductVariation;
 import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
+import vn.techbox.techbox_store.promotion.engine.PromotionEngine;
+import vn.techbox.techbox_store.promotion.engine.PromotionSnapshot;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -23,31 +31,32 @@ public class OrderCalculationService {
 
     private final OrderCalculationUtil orderUtil;
     private final ProductVariationRepository productVariationRepository;
+    private final PromotionEngine promotionEngine;
+    private final MeterRegistry meterRegistry;
 
     public DiscountCalculationResponse calculateDiscounts(DiscountCalculationRequest request) {
         log.info("Calculating discounts for {} items with voucher: {}",
                 request.getOrderItems().size(), request.getVoucherCode());
 
+        Timer.Sample sample = Timer.start(meterRegistry);
         List<DiscountCalculationResponse.ItemDiscountDetail> itemDiscounts = new ArrayList<>();
         BigDecimal totalOriginalAmount = BigDecimal.ZERO;
         BigDecimal totalPromotionDiscount = BigDecimal.ZERO;
 
-        for (DiscountCalculationRequest.OrderItemRequest item : request.getOrderItems()) {
-            ProductVariation productVariation = productVariationRepository.findById(item.getProductVariationId())
-                    .orElse(null);
-
-            if (productVariation != null) {
-                BigDecimal originalPrice = productVariation.getPrice();
-                totalOriginalAmount = totalOriginalAmount.add(
-                    originalPrice.multiply(BigDecimal.valueOf(item.getQuantity()))
-                );
-            }
-        }
+        // Một truy vấn cho mọi biến thể (kèm sản phẩm); promotion lấy từ bảng dùng chung của PromotionEngine
+        List<Integer> variationIds = request.getOrderItems().stream()
+                .map(DiscountCalculationRequest.OrderItemRequest::getProductVariationId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        Map<Integer, ProductVariation> variations = variationIds.isEmpty()
+                ? Map.of()
+                : productVariationRepository.findAllWithProductByIdIn(variationIds).stream()
+                        .collect(Collectors.toMap(ProductVariation::getId, Function.identity()));
+        PromotionSnapshot promotions = promotionEngine.snapshot();
 
-        // Tính promotion discount cho từng item
         for (DiscountCalculationRequest.OrderItemRequest item : request.getOrderItems()) {
-            ProductVariation productVariation = productVariationRepository.findById(item.getProductVariationId())
-                    .orElse(null);
+            ProductVariation productVariation = variations.get(item.getProductVariationId());
 
             if (productVariation == null) {
                 continue;
@@ -56,11 +65,11 @@ public class OrderCalculationService {
             // Sử dụng giá gốc từ database thay vì giá từ frontend
             BigDecimal originalPrice = productVariation.getPrice();
             BigDecimal originalAmount = originalPrice.multiply(BigDecimal.valueOf(item.getQuantity()));
+            totalOriginalAmount = totalOriginalAmount.add(originalAmount);
 
-            BigDecimal promotionDiscount = orderUtil.calculatePromotionDiscount(
-                    item.getProductVariationId(),
-                    item.getQuantity()
-            );
+            BigDecimal promotionDiscount = promotions
+                    .price(item.getProductVariationId(), originalPrice, item.getQuantity())
+                    .discountAmount();
 
             totalPromotionDiscount = totalPromotionDiscount.add(promotionDiscount);
 
@@ -95,6 +104,10 @@ public class OrderCalculationService {
                 .add(shippingFee)
                 .add(taxAmount);
 
+        sample.stop(Timer.builder("order.pricing.preview.duration")
+                .description("Time to price a checkout preview (all lines, voucher, shipping and tax)")
+                .register(meterRegistry));
+
         return DiscountCalculationResponse.builder()
                 .totalAmount(totalOriginalAmount)
                 .promotionDiscount(totalPromotionDiscount)
@@ -155,15 +168,25 @@ public class OrderCalculationService {
     public void calculatePromotionDiscounts(List<OrderItem> orderItems) {
         log.info("Calculating promotion discounts for {} items", orderItems.size());
 
-        for (OrderItem item : orderItems) {
+        // Giá gốc lấy từ biến thể đã nạp, promotion từ bảng dùng chung: không truy vấn theo từng item
+        Integer[] variationIds = new Integer[orderItems.size()];
+        int[] quantities = new int[orderItems.size()];
+        BigDecimal[] unitPrices = new BigDecimal[orderItems.size()];
+        for (int i = 0; i < orderItems.size(); i++) {
+            OrderItem item = orderItems.get(i);
+            variationIds[i] = item.getProductVariation().getId();
+            quantities[i] = item.getQuantity();
+            unitPrices[i] = item.getProductVariation().getPrice();
+        }
+        BigDecimal[] discounts = orderUtil.calculatePromotionDiscounts(variationIds, quantities, unitPrices);
+
+        for (int i = 0; i < orderItems.size(); i++) {
+            OrderItem item = orderItems.get(i);
             // Đảm bảo unitPrice là giá gốc từ database
-            BigDecimal originalPrice = item.getProductVariation().getPrice();
+            BigDecimal originalPrice = unitPrices[i];
             item.setUnitPrice(originalPrice);
 
-            BigDecimal promotionDiscount = orderUtil.calculatePromotionDiscount(
-                    item.getProductVariation().getId(),
-                    item.getQuantity()
-            );
+            BigDecimal promotionDiscount = discounts[i];
             item.setDiscountAmount(promotionDiscount);
 
             // Cập nhật lại total price sau khi áp dụng discount
@@ -173,7 +196,7 @@ public class OrderCalculationService {
 
             if (promotionDiscount.compareTo(BigDecimal.ZERO) > 0) {
                 log.info("Applied promotion discount {} for product variation {}",
-                        promotionDiscount, item.getProductVariation().getId());
+                        promotionDiscount, variationIds[i]);
             }
         }
     }
@@ -2,13 +2,18 @@ package vn.techbox.techbox_store.order.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import vn.techbox.techbox_store.inventory.reservation.HotSkuReservationLedger;
+import vn.techbox.techbox_store.inventory.reservation.ReservationMode;
 import vn.techbox.techbox_store.order.model.Order;
 import vn.techbox.techbox_store.order.model.OrderItem;
 import vn.techbox.techbox_store.order.model.OrderStatus;
 import vn.techbox.techbox_store.order.repository.OrderRepository;
 import vn.techbox.techbox_store.payment.model.PaymentMethod;
+import vn.techbox.techbox_store.product.event.ProductStockChangedEvent;
 import vn.techbox.techbox_store.product.model.ProductVariation;
 import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
 import vn.techbox.techbox_store.voucher.model.UserVoucher;
@@ -27,6 +32,11 @@ public class OrderConfirmationService {
     private final ProductVariationRepository productVariationRepository;
     private final UserVoucherRepository userVoucherRepository;
     private final VoucherRepository voucherRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final HotSkuReservationLedger reservationLedger;
+
+    @Value("${inventory.reservation.mode:OPTIMISTIC}")
+    private ReservationMode reservationMode = ReservationMode.OPTIMISTIC;
 
     @Transactional
     public Order confirmCodOrder(Integer orderId) {
@@ -43,9 +53,16 @@ public class OrderConfirmationService {
         if (order.getPaymentInfo() != null &&
             order.getPaymentInfo().getPaymentMethod() == PaymentMethod.COD) {
 
+            // Reservations still in the ledger must be in reserved_quantity before the guarded decrement
+            reservationLedger.flush();
+
             // Reduce inventory for each order item
             for (OrderItem orderItem : order.getOrderItems()) {
                 Integer productVariationId = orderItem.getProductVariation().getId();
+                if (reservationMode != ReservationMode.OPTIMISTIC) {
+                    decreaseAvailableStock(orderItem.getProductVariation(), orderItem.getQuantity());
+                    continue;
+                }
                 ProductVariation productVariation = productVariationRepository.findById(productVariationId)
                         .orElseThrow(() -> new IllegalStateException("Product variation not found: " + productVariationId));
 
@@ -61,6 +78,7 @@ public class OrderConfirmationService {
                 // Reduce stock quantity directly
                 productVariation.setStockQuantity(productVariation.getStockQuantity() - orderItem.getQuantity());
                 productVariationRepository.save(productVariation);
+                eventPublisher.publishEvent(ProductStockChangedEvent.of(productVariation));
 
                 log.info("Reduced stock for product variation {}: {} units",
                         productVariationId, orderItem.getQuantity());
@@ -103,4 +121,17 @@ public class OrderConfirmationService {
                                           (order.getPaymentInfo() != null ? order.getPaymentInfo().getPaymentMethod() : "UNKNOWN"));
         }
     }
+
+    // Guarded relative UPDATE: no read-modify-write on the versioned row the ledger flusher also writes
+    private void decreaseAvailableStock(ProductVariation productVariation, Integer quantity) {
+        int updated = productVariationRepository.decrementAvailableStockQuantity(productVariation.getId(), quantity);
+        if (updated == 0) {
+            throw new IllegalArgumentException(
+                String.format("Insufficient stock for product variation %d. Requested: %d",
+                            productVariation.getId(), quantity));
+        }
+        eventPublisher.publishEvent(ProductStockChangedEvent.of(productVariation));
+
+        log.info("Reduced stock for product variation {}: {} units", productVariation.getId(), quantity);
+    }
 }
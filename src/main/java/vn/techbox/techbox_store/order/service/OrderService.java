@@ -1,7 +1,9 @@
 package vn.techbox.techbox_store.order.service;
 
+import vn.techbox.techbox_store.common.pagination.CursorPage;
 import vn.techbox.techbox_store.order.dto.CreateOrderRequest;
 import vn.techbox.techbox_store.order.dto.OrderResponse;
+import vn.techbox.techbox_store.order.dto.OrderSummaryResponse;
 import vn.techbox.techbox_store.order.model.OrderStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -11,6 +13,8 @@ import java.util.List;
 public interface OrderService {
 
     OrderResponse createOrder(CreateOrderRequest request, Integer userId);
+    // Retries with the same idempotency key return the order created by the first attempt
+    OrderResponse createOrder(CreateOrderRequest request, Integer userId, String idempotencyKey);
     OrderResponse getOrderById(Long orderId, Integer userId);
     OrderResponse getOrderByCode(String orderCode, Integer userId);
     // Admin/Staff methods to get orders by id or code without user ownership check
@@ -20,10 +24,15 @@ public interface OrderService {
     Page<OrderResponse> getUserOrdersByStatus(Integer userId, OrderStatus status, Pageable pageable);
     Page<OrderResponse> getAllOrders(Pageable pageable);
     Page<OrderResponse> getAllOrdersByStatus(OrderStatus status, Pageable pageable);
+    // Lightweight admin listing without items; status null means every status except PENDING
+    Page<OrderSummaryResponse> getAllOrderSummaries(OrderStatus status, Pageable pageable);
     Page<OrderResponse> getOrdersByUserId(Integer userId, Pageable pageable);
     Page<OrderResponse> getOrdersByUserIdAndStatus(Integer userId, OrderStatus status, Pageable pageable);
     OrderResponse updateOrderStatus(Long orderId, OrderStatus status);
     OrderResponse cancelOrder(Long orderId, Integer userId);
     List<String> getRecentProductSpus(Integer userId, int k);
     Page<OrderResponse> searchOrdersByCode(String searchTerm, Pageable pageable);
+    // Keyset pagination newest first: no total count, same cost at any depth; a null cursor means the first page
+    CursorPage<OrderResponse> getAllOrdersByCursor(OrderStatus status, String cursor, Integer size);
+    CursorPage<OrderResponse> searchOrdersByCodeByCursor(String searchTerm, String cursor, Integer size);
 }
@@ -3,12 +3,16 @@ package vn.techbox.techbox_store.order.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import vn.techbox.techbox_store.common.pagination.CursorPage;
+import vn.techbox.techbox_store.common.pagination.SeekCursor;
 import vn.techbox.techbox_store.inventory.service.InventoryReservationService;
+import vn.techbox.techbox_store.order.code.OrderCodeGenerator;
 import vn.techbox.techbox_store.order.dto.*;
 import vn.techbox.techbox_store.order.exception.OrderException;
 import vn.techbox.techbox_store.order.model.*;
@@ -17,6 +21,7 @@ import vn.techbox.techbox_store.payment.model.PaymentMethod;
 import vn.techbox.techbox_store.payment.model.PaymentStatus;
 import vn.techbox.techbox_store.payment.repository.PaymentRepository;
 import vn.techbox.techbox_store.payment.service.factory.PaymentServiceFactory;
+import vn.techbox.techbox_store.order.repository.OrderJdbcRepository;
 import vn.techbox.techbox_store.order.repository.OrderRepository;
 import vn.techbox.techbox_store.order.repository.OrderShippingInfoRepository;
 import vn.techbox.techbox_store.product.model.ProductVariation;
@@ -28,8 +33,11 @@ import vn.techbox.techbox_store.voucher.service.VoucherReservationService;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -48,12 +56,38 @@ public class OrderServiceImpl implements OrderService {
     private final PaymentRepository payment;
     private final InventoryReservationService inventoryReservationService;
     private final VoucherReservationService voucherReservationService;
+    private final OrderJdbcRepository orderJdbcRepository;
+    private final OrderCodeGenerator orderCodeGenerator;
+
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 100;
 
     @Override
     @Transactional
     public OrderResponse createOrder(CreateOrderRequest request, Integer userId) {
+        return createOrder(request, userId, null);
+    }
+
+    @Override
+    @Transactional
+    public OrderResponse createOrder(CreateOrderRequest request, Integer userId, String idempotencyKey) {
         log.info("Creating order for user: {}", userId);
 
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            idempotencyKey = idempotencyKey.trim();
+            if (idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+                throw new OrderException("Idempotency-Key must be at most " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+            }
+            // Một lần thử lại đang chạy song song sẽ đợi ở đây rồi thấy đơn của lần đầu
+            orderJdbcRepository.lockIdempotencyKey(userId, idempotencyKey);
+            Optional<Order> existing = orderRepository.findByUser_IdAndIdempotencyKey(userId, idempotencyKey);
+            if (existing.isPresent()) {
+                log.info("Replaying order {} for idempotency key {}", existing.get().getOrderCode(), idempotencyKey);
+                return replayCreatedOrder(existing.get(), request);
+            }
+        } else {
+            idempotencyKey = null;
+        }
+
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new OrderException("User not found"));
 
@@ -73,17 +107,28 @@ public class OrderServiceImpl implements OrderService {
                 .estimatedDeliveryDate(java.time.LocalDate.now().plusDays(3))
                 .deliveryInstructions(request.getDeliveryInstructions())
                 .build();
-        OrderShippingInfo savedShippingInfo = orderShippingInfoRepository.save(shippingInfo);
 
         // Initialize payment entity
         Payment payment = paymentServiceFactory.getPaymentService(request.getPaymentMethod())
                 .initiatePayment(null);
         payment.setVoucherCode(request.getVoucherCode());
 
+        // Load all variations (with their product) in one query instead of one per item
+        List<Integer> variationIds = request.getOrderItems().stream()
+                .map(itemRequest -> itemRequest.getProductVariationId().intValue())
+                .distinct()
+                .toList();
+        Map<Integer, ProductVariation> variationsById = new HashMap<>();
+        for (ProductVariation variation : productVariationRepository.findAllWithProductByIdIn(variationIds)) {
+            variationsById.put(variation.getId(), variation);
+        }
+
         List<OrderItem> orderItems = new ArrayList<>();
         for (CreateOrderRequest.OrderItemRequest itemRequest : request.getOrderItems()) {
-            ProductVariation productVariation = productVariationRepository.findById(itemRequest.getProductVariationId().intValue())
-                    .orElseThrow(() -> new OrderException("Product variation not found"));
+            ProductVariation productVariation = variationsById.get(itemRequest.getProductVariationId().intValue());
+            if (productVariation == null) {
+                throw new OrderException("Product variation not found");
+            }
 
             OrderItem orderItem = OrderItem.builder()
                     .productVariation(productVariation)
@@ -99,15 +144,17 @@ public class OrderServiceImpl implements OrderService {
         }
 
         orderCalculationService.calculateOrderAmounts(null, payment, orderItems, request.getVoucherCode());
-        Payment savedPaymentInfo = this.payment.save(payment);
 
+        // Shipping info, payment and items are persisted with the order (cascade); later changes are
+        // flushed once at commit
         Order order = Order.builder()
-                .orderCode(generateOrderCode())
+                .orderCode(orderCodeGenerator.nextCode())
                 .user(user)
                 .status(OrderStatus.PENDING)
                 .note(request.getNote())
-                .shippingInfo(savedShippingInfo)
-                .paymentInfo(savedPaymentInfo)
+                .idempotencyKey(idempotencyKey)
+                .shippingInfo(shippingInfo)
+                .paymentInfo(payment)
                 .createdAt(LocalDateTime.now())
                 .updatedAt(LocalDateTime.now())
                 .build();
@@ -120,13 +167,10 @@ public class OrderServiceImpl implements OrderService {
         // If order is COD, immediately transition to CONFIRMED and create permanent reservations
         if (request.getPaymentMethod() == PaymentMethod.COD) {
             try {
-                for (OrderItem orderItem : savedOrder.getOrderItems()) {
-                    inventoryReservationService.reserveInventoryPermanent(
-                            savedOrder.getId().intValue(),
-                            orderItem.getProductVariation().getId(),
-                            orderItem.getQuantity()
-                    );
-                }
+                inventoryReservationService.reserveInventoryPermanentBatch(
+                        savedOrder.getId().intValue(),
+                        quantitiesByVariation(savedOrder)
+                );
                 if (savedOrder.getVoucherCode() != null && !savedOrder.getVoucherCode().trim().isEmpty()) {
                     voucherReservationService.reserveVoucherPermanent(
                             savedOrder.getId().intValue(),
@@ -137,7 +181,6 @@ public class OrderServiceImpl implements OrderService {
 
                 // Update order status to CONFIRMED for COD orders
                 savedOrder.setStatus(OrderStatus.CONFIRMED);
-                orderRepository.save(savedOrder);
                 log.info("COD order {} automatically confirmed and permanent reservations created", savedOrder.getId());
             } catch (Exception e) {
                 log.error("Failed to create permanent reservations for COD order {}: {}", savedOrder.getId(), e.getMessage(), e);
@@ -149,14 +192,11 @@ public class OrderServiceImpl implements OrderService {
         // Note: Permanent reservations will be created when status changes to CONFIRMED
         if (request.getPaymentMethod() == PaymentMethod.VNPAY) {
             try {
-                for (OrderItem orderItem : savedOrder.getOrderItems()) {
-                    // Reserve inventory for each order item 15 minutes
-                    inventoryReservationService.reserveInventory(
-                            savedOrder.getId().intValue(),
-                            orderItem.getProductVariation().getId(),
-                            orderItem.getQuantity()
-                    );
-                }
+                // Reserve inventory for all order items for 15 minutes
+                inventoryReservationService.reserveInventoryBatch(
+                        savedOrder.getId().intValue(),
+                        quantitiesByVariation(savedOrder)
+                );
                 if (savedOrder.getVoucherCode() != null && !savedOrder.getVoucherCode().trim().isEmpty()) {
                     voucherReservationService.reserveVoucherByCode(
                             savedOrder.getId().intValue(),
@@ -170,33 +210,54 @@ public class OrderServiceImpl implements OrderService {
             }
         }
 
+        PaymentResponse paymentResponse = processPayment(savedOrder, request);
+
+        log.info("Order created successfully with code: {}", savedOrder.getOrderCode());
+
+        OrderResponse response = orderMappingService.toOrderResponse(savedOrder);
+        if (paymentResponse != null) {
+            response.setPaymentUrl(paymentResponse.getPaymentUrl());
+        }
+        return response;
+    }
+
+    /**
+     * Response cho lần gửi lại cùng Idempotency-Key: đơn đã tạo, kèm link thanh toán mới nếu đơn vẫn chờ thanh toán
+     */
+    private OrderResponse replayCreatedOrder(Order order, CreateOrderRequest request) {
+        PaymentResponse paymentResponse = null;
+        if (order.getStatus() == OrderStatus.PENDING
+                && order.getPaymentMethod() == PaymentMethod.VNPAY
+                && order.getPaymentInfo().getPaymentStatus() == PaymentStatus.PENDING) {
+            paymentResponse = processPayment(order, request);
+        }
+        OrderResponse response = orderMappingService.toOrderResponse(order);
+        if (paymentResponse != null) {
+            response.setPaymentUrl(paymentResponse.getPaymentUrl());
+        }
+        return response;
+    }
+
+    private PaymentResponse processPayment(Order savedOrder, CreateOrderRequest request) {
         PaymentResponse paymentResponse = null;
         try {
             PaymentRequest paymentRequest = new PaymentRequest();
             paymentRequest.setOrderId(savedOrder.getId());
-            paymentRequest.setPaymentMethod(request.getPaymentMethod());
-            paymentRequest.setAmount(savedPaymentInfo.getFinalAmount());
+            paymentRequest.setPaymentMethod(savedOrder.getPaymentMethod());
+            paymentRequest.setAmount(savedOrder.getPaymentInfo().getFinalAmount());
             paymentRequest.setReturnUrl(request.getReturnUrl());
             paymentRequest.setCancelUrl(null);
 
-            var processor = paymentServiceFactory.getPaymentService(request.getPaymentMethod());
+            var processor = paymentServiceFactory.getPaymentService(savedOrder.getPaymentMethod());
             paymentResponse = processor.generatePaymentUrl(paymentRequest);
 
             if (paymentResponse != null && ("PENDING".equals(paymentResponse.getStatus()) || "SUCCESS".equals(paymentResponse.getStatus()))) {
                 savedOrder.getPaymentInfo().setPaymentTransactionId(paymentResponse.getTransactionId());
-                orderRepository.save(savedOrder);
             }
         } catch (Exception ex) {
             log.error("Auto process payment failed for order {}: {}", savedOrder.getId(), ex.getMessage(), ex);
         }
-
-        log.info("Order created successfully with code: {}", savedOrder.getOrderCode());
-
-        OrderResponse response = orderMappingService.toOrderResponse(savedOrder);
-        if (paymentResponse != null) {
-            response.setPaymentUrl(paymentResponse.getPaymentUrl());
-        }
-        return response;
+        return paymentResponse;
     }
 
     @Override
@@ -244,44 +305,44 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional(readOnly = true)
     public Page<OrderResponse> getUserOrders(Integer userId, Pageable pageable) {
-        Page<Order> orders = orderRepository.findByUser_IdOrderByCreatedAtDesc(userId, pageable);
-        return orders.map(orderMappingService::toOrderResponse);
+        Page<Long> orders = orderRepository.findIdsByUserId(userId, pageable);
+        return toOrderResponses(orders);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<OrderResponse> getUserOrdersByStatus(Integer userId, OrderStatus status, Pageable pageable) {
-        Page<Order> orders = orderRepository.findByUserIdAndStatusOrderByCreatedAtDesc(userId, status, pageable);
-        return orders.map(orderMappingService::toOrderResponse);
+        Page<Long> orders = orderRepository.findIdsByUserIdAndStatus(userId, status, pageable);
+        return toOrderResponses(orders);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<OrderResponse> getAllOrders(Pageable pageable) {
         // For admin 'get all' endpoint, exclude PENDING orders by default
-        Page<Order> orders = orderRepository.findByStatusNotOrderByCreatedAtDesc(OrderStatus.PENDING, pageable);
-        return orders.map(orderMappingService::toOrderResponse);
+        Page<Long> orders = orderRepository.findIdsByStatusNot(OrderStatus.PENDING, pageable);
+        return toOrderResponses(orders);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<OrderResponse> getAllOrdersByStatus(OrderStatus status, Pageable pageable) {
-        Page<Order> orders = orderRepository.findByStatusOrderByCreatedAtDesc(status, pageable);
-        return orders.map(orderMappingService::toOrderResponse);
+        Page<Long> orders = orderRepository.findIdsByStatus(status, pageable);
+        return toOrderResponses(orders);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<OrderResponse> getOrdersByUserId(Integer userId, Pageable pageable) {
-        Page<Order> orders = orderRepository.findByUser_IdOrderByCreatedAtDesc(userId, pageable);
-        return orders.map(orderMappingService::toOrderResponse);
+        Page<Long> orders = orderRepository.findIdsByUserId(userId, pageable);
+        return toOrderResponses(orders);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<OrderResponse> getOrdersByUserIdAndStatus(Integer userId, OrderStatus status, Pageable pageable) {
-        Page<Order> orders = orderRepository.findByUserIdAndStatusOrderByCreatedAtDesc(userId, status, pageable);
-        return orders.map(orderMappingService::toOrderResponse);
+        Page<Long> orders = orderRepository.findIdsByUserIdAndStatus(userId, status, pageable);
+        return toOrderResponses(orders);
     }
 
     @Override
@@ -410,14 +471,80 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional(readOnly = true)
     public Page<OrderResponse> searchOrdersByCode(String searchTerm, Pageable pageable) {
-        Page<Order> orders = orderRepository.searchByOrderCode(searchTerm, pageable);
-        return orders.map(orderMappingService::toOrderResponse);
+        Page<Long> orders = orderRepository.searchIdsByOrderCode(searchTerm, pageable);
+        return toOrderResponses(orders);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<OrderSummaryResponse> getAllOrderSummaries(OrderStatus status, Pageable pageable) {
+        if (status != null) {
+            return orderRepository.findSummariesByStatus(status, pageable);
+        }
+        // Giống getAllOrders: mặc định bỏ qua đơn PENDING
+        return orderRepository.findSummariesByStatusNot(OrderStatus.PENDING, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<OrderResponse> getAllOrdersByCursor(OrderStatus status, String cursor, Integer size) {
+        SeekCursor after = SeekCursor.decode(cursor);
+        int limit = CursorPage.limit(size);
+        // One extra row tells whether there is a next page
+        Pageable firstRows = PageRequest.of(0, limit + 1);
+        List<Long> orderIds = status != null
+                ? orderRepository.findIdsByStatusBefore(status, after.createdAt(), after.id(), firstRows)
+                : orderRepository.findIdsByStatusNotBefore(OrderStatus.PENDING, after.createdAt(), after.id(), firstRows);
+        return CursorPage.of(toOrderResponses(orderIds), limit, OrderServiceImpl::seekCursorOf);
     }
 
-    private String generateOrderCode() {
-        String prefix = "ORD";
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String random = UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-        return prefix + timestamp.substring(timestamp.length() - 6) + random;
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<OrderResponse> searchOrdersByCodeByCursor(String searchTerm, String cursor, Integer size) {
+        SeekCursor after = SeekCursor.decode(cursor);
+        int limit = CursorPage.limit(size);
+        List<Long> orderIds = orderRepository.searchIdsByOrderCodeBefore(
+                searchTerm, after.createdAt(), after.id(), PageRequest.of(0, limit + 1));
+        return CursorPage.of(toOrderResponses(orderIds), limit, OrderServiceImpl::seekCursorOf);
+    }
+
+    private static SeekCursor seekCursorOf(OrderResponse order) {
+        return new SeekCursor(order.getCreatedAt(), order.getId());
+    }
+
+    private Page<OrderResponse> toOrderResponses(Page<Long> orderIds) {
+        return new PageImpl<>(toOrderResponses(orderIds.getContent()), orderIds.getPageable(), orderIds.getTotalElements());
+    }
+
+    /**
+     * Second phase of a listing: load payment, shipping and items of the whole page in one query
+     * and map them in the order of the ids, instead of touching each lazy association per order
+     */
+    private List<OrderResponse> toOrderResponses(List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Order> ordersById = new HashMap<>();
+        for (Order order : orderRepository.findAllWithDetailsByIdIn(orderIds)) {
+            ordersById.put(order.getId(), order);
+        }
+        List<OrderResponse> responses = new ArrayList<>(orderIds.size());
+        for (Long orderId : orderIds) {
+            Order order = ordersById.get(orderId);
+            // Bỏ qua đơn vừa bị xoá giữa hai bước
+            if (order != null) {
+                responses.add(orderMappingService.toOrderResponse(order));
+            }
+        }
+        return responses;
+    }
+
+    // productVariationId -> tổng số lượng (gộp các dòng trùng biến thể)
+    private Map<Integer, Integer> quantitiesByVariation(Order order) {
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItem orderItem : order.getOrderItems()) {
+            quantities.merge(orderItem.getProductVariation().getId(), orderItem.getQuantity(), Integer::sum);
+        }
+        return quantities;
     }
 }
@@ -15,6 +15,7 @@ import vn.techbox.techbox_store.voucher.repository.VoucherRepository;
 import vn.techbox.techbox_store.voucher.repository.VoucherReservationRepository;
 import vn.techbox.techbox_store.voucher.exception.VoucherValidationException;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -101,16 +102,24 @@ public class OrderValidationService {
         }
 
         for (CreateOrderRequest.OrderItemRequest item : orderItems) {
-            if (!productVariationRepository.existsById(item.getProductVariationId().intValue())) {
-                throw new RuntimeException("Product variation not found: " + item.getProductVariationId());
-            }
-
             if (item.getQuantity() <= 0) {
                 throw new RuntimeException("Quantity must be greater than 0");
             }
 
             // TODO: Validate stock availability
         }
+
+        // Kiểm tra tồn tại của mọi biến thể bằng một truy vấn
+        List<Integer> variationIds = orderItems.stream()
+                .map(item -> item.getProductVariationId().intValue())
+                .distinct()
+                .toList();
+        Set<Integer> existingIds = new HashSet<>(productVariationRepository.findExistingIds(variationIds));
+        for (CreateOrderRequest.OrderItemRequest item : orderItems) {
+            if (!existingIds.contains(item.getProductVariationId().intValue())) {
+                throw new RuntimeException("Product variation not found: " + item.getProductVariationId());
+            }
+        }
     }
 
     private void validatePaymentMethod(PaymentMethod paymentMethod) {
@@ -8,13 +8,12 @@ import org.springframework.stereotype.Component;
 import vn.techbox.techbox_store.order.model.Order;
 import vn.techbox.techbox_store.product.model.ProductVariation;
 import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
-import vn.techbox.techbox_store.promotion.model.Promotion;
-import vn.techbox.techbox_store.promotion.repository.PromotionRepository;
+import vn.techbox.techbox_store.promotion.engine.PromotionEngine;
+import vn.techbox.techbox_store.promotion.engine.PromotionSnapshot;
 import vn.techbox.techbox_store.voucher.model.Voucher;
 import vn.techbox.techbox_store.voucher.repository.VoucherRepository;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
 import java.util.List;
 
 @Component
@@ -22,16 +21,14 @@ import java.util.List;
 @Slf4j
 public class OrderCalculationUtil {
 
-    private final PromotionRepository promotionRepository;
+    private final PromotionEngine promotionEngine;
     private final VoucherRepository voucherRepository;
     private final ProductVariationRepository productVariationRepository;
 
     public BigDecimal calculatePromotionDiscount(Integer productVariationId, Integer quantity) {
         try {
-            List<Promotion> activePromotions = promotionRepository
-                    .findActivePromotionsByProductVariationId(productVariationId, LocalDateTime.now());
-
-            if (activePromotions.isEmpty()) {
+            PromotionSnapshot snapshot = promotionEngine.snapshot();
+            if (snapshot.promotionsOf(productVariationId).isEmpty()) {
                 log.debug("No active promotions found for product variation {}", productVariationId);
                 return BigDecimal.ZERO;
             }
@@ -42,27 +39,11 @@ public class OrderCalculationUtil {
                 return BigDecimal.ZERO;
             }
 
-            BigDecimal maxDiscount = BigDecimal.ZERO;
-            Promotion bestPromotion = null;
-
-            for (Promotion promotion : activePromotions) {
-                if (promotion.getCampaign() != null && promotion.getCampaign().isActive() && promotion.isValid()) {
-                    BigDecimal discount = promotion.calculateDiscount(productPrice, quantity);
+            PromotionSnapshot.PromotionPrice price = snapshot.price(productVariationId, productPrice, quantity);
 
-                    if (discount.compareTo(maxDiscount) > 0) {
-                        maxDiscount = discount;
-                        bestPromotion = promotion;
-                        log.debug("Found better promotion discount {} for product {} from campaign {}",
-                                discount, productVariationId, promotion.getCampaign().getName());
-                    }
-                }
-            }
-
-            if (bestPromotion != null) {
-                log.info("Applied best promotion with discount {} for product variation {}", maxDiscount, productVariationId);
-            }
-
-            return maxDiscount;
+            log.info("Applied best promotion with discount {} for product variation {}",
+                    price.discountAmount(), productVariationId);
+            return price.discountAmount();
 
         } catch (Exception e) {
             log.error("Error calculating promotion discount for product variation {}: {}",
@@ -71,6 +52,21 @@ public class OrderCalculationUtil {
         }
     }
 
+    /**
+     * Promotion discount of several lines at known unit prices, in one pass over the promotion table
+     *
+     * @return discount per line, aligned with {@code productVariationIds}
+     */
+    public BigDecimal[] calculatePromotionDiscounts(Integer[] productVariationIds, int[] quantities, BigDecimal[] unitPrices) {
+        List<PromotionSnapshot.PromotionPrice> prices = promotionEngine.priceFor(productVariationIds, quantities, unitPrices);
+        BigDecimal[] discounts = new BigDecimal[prices.size()];
+        for (int i = 0; i < discounts.length; i++) {
+            PromotionSnapshot.PromotionPrice price = prices.get(i);
+            discounts[i] = price.unitPrice().compareTo(BigDecimal.ZERO) > 0 ? price.discountAmount() : BigDecimal.ZERO;
+        }
+        return discounts;
+    }
+
     public BigDecimal calculateVoucherDiscount(BigDecimal totalAmount, String voucherCode) {
         if (voucherCode == null || voucherCode.trim().isEmpty()) {
             return BigDecimal.ZERO;
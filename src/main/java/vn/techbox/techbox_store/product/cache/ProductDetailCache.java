@@ -0,0 +1,258 @@
+package vn.techbox.techbox_store.product.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import vn.techbox.techbox_store.product.dto.productDto.ProductDetailResponse;
+import vn.techbox.techbox_store.product.event.ProductChangedEvent;
+import vn.techbox.techbox_store.product.event.ProductStockChangedEvent;
+import vn.techbox.techbox_store.promotion.event.PromotionChangedEvent;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded LRU cache of assembled {@link ProductDetailResponse} keyed by product id.
+ *
+ * Entries are weighted by an estimate of their retained size and evicted least-recently-used
+ * once the total exceeds {@code product.detail-cache.max-bytes}. Each entry also expires at the
+ * next campaign boundary of its promotions, since the sale prices it carries change there.
+ * Product and stock writes evict the affected products after commit; a per-product stamp
+ * taken before loading stops a reader from installing a response built before such a write.
+ *
+ * The DTOs are mutable, so the cache keeps its own deep copy of each response and hands every
+ * reader a fresh copy: a caller that adjusts its response cannot change what others are served.
+ */
+@Component
+@Slf4j
+public class ProductDetailCache {
+
+    private static final int STAMP_STRIPES = 64;
+
+    private final boolean enabled;
+    private final long maxBytes;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final long[] stamps = new long[STAMP_STRIPES];
+    private long totalBytes;
+
+    public ProductDetailCache(@Value("${product.detail-cache.enabled:true}") boolean enabled,
+                              @Value("${product.detail-cache.max-bytes:33554432}") long maxBytes) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+    }
+
+    public Optional<ProductDetailResponse> get(Integer productId) {
+        if (!enabled || productId == null) {
+            return Optional.empty();
+        }
+        ProductDetailResponse cached;
+        synchronized (this) {
+            Entry entry = entries.get(productId);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            if (entry.validUntil != null && !LocalDateTime.now().isBefore(entry.validUntil)) {
+                remove(productId);
+                return Optional.empty();
+            }
+            cached = entry.response;
+        }
+        // The cached copy is never modified, so it can be copied outside the lock
+        return Optional.of(copy(cached));
+    }
+
+    /**
+     * Take before loading from the database and hand back to {@link #put}
+     */
+    public synchronized long stamp(Integer productId) {
+        return stamps[stripe(productId)];
+    }
+
+    /**
+     * Cache a freshly assembled response unless the product was evicted since {@code stamp} was taken.
+     *
+     * @param validUntil next campaign start/end affecting the product, or null if none
+     */
+    public void put(Integer productId, ProductDetailResponse response, LocalDateTime validUntil, long stamp) {
+        if (!enabled || productId == null || response == null) {
+            return;
+        }
+        long weight = estimateBytes(response);
+        if (weight > maxBytes) {
+            return;
+        }
+        // The caller keeps using its response; changes it makes later must not reach the cache
+        ProductDetailResponse cached = copy(response);
+        synchronized (this) {
+            if (stamps[stripe(productId)] != stamp) {
+                return;
+            }
+            remove(productId);
+            entries.put(productId, new Entry(cached, validUntil, weight));
+            totalBytes += weight;
+
+            Iterator<Map.Entry<Integer, Entry>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                totalBytes -= eldest.next().getValue().weight;
+                eldest.remove();
+            }
+        }
+    }
+
+    public synchronized void evict(Collection<Integer> productIds) {
+        for (Integer productId : productIds) {
+            if (productId == null) continue;
+            stamps[stripe(productId)]++;
+            remove(productId);
+        }
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < STAMP_STRIPES; i++) {
+            stamps[i]++;
+        }
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long estimatedBytes() {
+        return totalBytes;
+    }
+
+    // Synchronous so the next read after commit already misses
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        evict(event.productIds());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(ProductStockChangedEvent event) {
+        evict(event.productIds());
+    }
+
+    // Campaign dates / deletion change sale prices of products we cannot enumerate cheaply
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPromotionChanged(PromotionChangedEvent event) {
+        clear();
+    }
+
+    private void remove(Integer productId) {
+        Entry removed = entries.remove(productId);
+        if (removed != null) {
+            totalBytes -= removed.weight;
+        }
+    }
+
+    private static int stripe(Integer productId) {
+        return Math.floorMod(productId, STAMP_STRIPES);
+    }
+
+    private static ProductDetailResponse copy(ProductDetailResponse response) {
+        return ProductDetailResponse.builder()
+                .id(response.getId())
+                .name(response.getName())
+                .description(response.getDescription())
+                .categoryId(response.getCategoryId())
+                .categoryName(response.getCategoryName())
+                .spu(response.getSpu())
+                .brandId(response.getBrandId())
+                .brandName(response.getBrandName())
+                .imageUrl(response.getImageUrl())
+                .imagePublicId(response.getImagePublicId())
+                .warrantyMonths(response.getWarrantyMonths())
+                .averageRating(response.getAverageRating())
+                .totalRatings(response.getTotalRatings())
+                .displayOriginalPrice(response.getDisplayOriginalPrice())
+                .displaySalePrice(response.getDisplaySalePrice())
+                .discountType(response.getDiscountType())
+                .discountValue(response.getDiscountValue())
+                .attributes(copyAttributes(response.getAttributes()))
+                .variations(response.getVariations() == null ? null : response.getVariations().stream()
+                        .map(ProductDetailCache::copyVariation)
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private static ProductDetailResponse.VariationDto copyVariation(ProductDetailResponse.VariationDto variation) {
+        return ProductDetailResponse.VariationDto.builder()
+                .id(variation.getId())
+                .variationName(variation.getVariationName())
+                .sku(variation.getSku())
+                .price(variation.getPrice())
+                .availableQuantity(variation.getAvailableQuantity())
+                .salePrice(variation.getSalePrice())
+                .discountType(variation.getDiscountType())
+                .discountValue(variation.getDiscountValue())
+                .images(variation.getImages() == null ? null : variation.getImages().stream()
+                        .map(image -> new ProductDetailResponse.ImageDto(image.getId(), image.getImageUrl()))
+                        .collect(Collectors.toList()))
+                .attributes(copyAttributes(variation.getAttributes()))
+                .build();
+    }
+
+    // Mutable lists, like the ones the mapper builds, so callers can still edit their copy
+    private static List<ProductDetailResponse.AttributeDto> copyAttributes(List<ProductDetailResponse.AttributeDto> attributes) {
+        return attributes == null ? null : attributes.stream()
+                .map(attribute -> new ProductDetailResponse.AttributeDto(attribute.getId(), attribute.getName(), attribute.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    // Rough retained size: object headers/fields plus 2 bytes per char
+    private static long estimateBytes(ProductDetailResponse response) {
+        long bytes = 256
+                + chars(response.getName())
+                + chars(response.getDescription())
+                + chars(response.getCategoryName())
+                + chars(response.getBrandName())
+                + chars(response.getSpu())
+                + chars(response.getImageUrl())
+                + chars(response.getImagePublicId());
+        bytes += attributeBytes(response.getAttributes());
+        if (response.getVariations() != null) {
+            for (ProductDetailResponse.VariationDto variation : response.getVariations()) {
+                bytes += 192
+                        + chars(variation.getVariationName())
+                        + chars(variation.getSku())
+                        + chars(variation.getDiscountType());
+                bytes += attributeBytes(variation.getAttributes());
+                if (variation.getImages() != null) {
+                    for (ProductDetailResponse.ImageDto image : variation.getImages()) {
+                        bytes += 48 + chars(image.getImageUrl());
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static long attributeBytes(List<ProductDetailResponse.AttributeDto> attributes) {
+        if (attributes == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (ProductDetailResponse.AttributeDto attribute : attributes) {
+            bytes += 64 + chars(attribute.getName()) + chars(attribute.getValue());
+        }
+        return bytes;
+    }
+
+    private static long chars(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private record Entry(ProductDetailResponse response, LocalDateTime validUntil, long weight) {
+    }
+}
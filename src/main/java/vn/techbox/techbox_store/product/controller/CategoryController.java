@@ -40,6 +40,15 @@ public class CategoryController {
         return ResponseEntity.ok(rootCategories);
     }
     
+    @GetMapping("/{id}/breadcrumb")
+    public ResponseEntity<List<CategoryResponse>> getCategoryBreadcrumb(@PathVariable Integer id) {
+        try {
+            return ResponseEntity.ok(categoryService.getCategoryBreadcrumb(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     @GetMapping("/{parentId}/children")
     public ResponseEntity<List<CategoryResponse>> getChildCategories(@PathVariable Integer parentId) {
         List<CategoryResponse> childCategories = categoryService.getChildCategories(parentId);
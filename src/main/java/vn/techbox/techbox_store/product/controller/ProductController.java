@@ -8,7 +8,9 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import vn.techbox.techbox_store.cloudinary.service.CloudinaryService;
+import vn.techbox.techbox_store.common.pagination.CursorPage;
 import vn.techbox.techbox_store.product.dto.productDto.ProductDetailResponse;
+import vn.techbox.techbox_store.product.dto.productDto.ProductFacetResponse;
 import vn.techbox.techbox_store.product.dto.productDto.ProductFilterRequest;
 import vn.techbox.techbox_store.product.dto.productDto.ProductListResponse;
 import vn.techbox.techbox_store.product.dto.productDto.ProductManagementDetailResponse;
@@ -78,6 +80,46 @@ public class ProductController {
         return ResponseEntity.ok(products);
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<Page<ProductListResponse>> searchProducts(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+
+        Page<ProductListResponse> products = productService.searchProducts(q, page, size);
+        return ResponseEntity.ok(products);
+    }
+
+    @GetMapping("/facets")
+    public ResponseEntity<?> getProductFacets(
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) Integer brandId,
+            @RequestParam(required = false) Integer categoryId,
+            @RequestParam(required = false) List<String> attributes,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) Double minRating,
+            @RequestParam(required = false) Integer campaignId) {
+
+        ProductFilterRequest filterRequest = ProductFilterRequest.builder()
+                .name(name)
+                .brandId(brandId)
+                .categoryId(categoryId)
+                .attributes(attributes)
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .minRating(minRating)
+                .campaignId(campaignId)
+                .build();
+
+        try {
+            ProductFacetResponse facets = productService.getProductFacets(filterRequest);
+            return ResponseEntity.ok(facets);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<ProductDetailResponse> getProductDetail(
             @PathVariable Integer id) {
@@ -157,6 +199,51 @@ public class ProductController {
 
 
 
+    /**
+     * Same filters as /management, newest first by opaque cursor, without page numbers or a total count
+     */
+    @PreAuthorize("hasAuthority('PRODUCT:READ')")
+    @GetMapping("/management/cursor")
+    public ResponseEntity<CursorPage<ProductManagementListResponse>> getProductsForManagementByCursor(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) String spu,
+            @RequestParam(required = false) Integer brandId,
+            @RequestParam(required = false) Integer categoryId,
+            @RequestParam(required = false) List<String> attributes,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) Double minRating,
+            @RequestParam(required = false) Integer campaignId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+
+        ProductStatus productStatus = null;
+        if (status != null && !status.trim().isEmpty()) {
+            try {
+                productStatus = ProductStatus.valueOf(status.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                // Invalid status, leave as null (no filter)
+            }
+        }
+
+        ProductFilterRequest filterRequest = ProductFilterRequest.builder()
+                .status(productStatus)
+                .name(name)
+                .spu(spu)
+                .brandId(brandId)
+                .categoryId(categoryId)
+                .attributes(attributes)
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .minRating(minRating)
+                .campaignId(campaignId)
+                .size(size)
+                .build();
+
+        return ResponseEntity.ok(productService.filterProductsForManagementByCursor(filterRequest, cursor));
+    }
+
     /**
      * Get full product details for management
      */
@@ -0,0 +1,40 @@
+package vn.techbox.techbox_store.product.dto.productDto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DTO for facet counts of a product filter - number of matching products per facet value
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductFacetResponse {
+
+    // Tổng số sản phẩm khớp bộ lọc
+    private long total;
+
+    // categoryId -> số sản phẩm
+    private Map<Integer, Long> categories;
+
+    // brandId -> số sản phẩm
+    private Map<Integer, Long> brands;
+
+    // attributeId -> danh sách giá trị và số sản phẩm
+    private Map<Integer, List<ValueCount>> attributes;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class ValueCount {
+        private String value;
+        private long count;
+    }
+}
@@ -0,0 +1,20 @@
+package vn.techbox.techbox_store.product.event;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Phát ra khi dữ liệu hiển thị của một hoặc nhiều sản phẩm thay đổi
+ * (thông tin sản phẩm, thuộc tính, giá hiển thị, rating, promotion...).
+ * Các bộ nhớ đệm / chỉ mục đọc lắng nghe sự kiện này sau khi transaction commit.
+ */
+public record ProductChangedEvent(Set<Integer> productIds) {
+
+    public static ProductChangedEvent of(Integer productId) {
+        return new ProductChangedEvent(Set.of(productId));
+    }
+
+    public static ProductChangedEvent of(Collection<Integer> productIds) {
+        return new ProductChangedEvent(Set.copyOf(productIds));
+    }
+}
@@ -0,0 +1,28 @@
+package vn.techbox.techbox_store.product.event;
+
+import vn.techbox.techbox_store.product.model.ProductVariation;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Phát ra khi tồn kho (stock / reserved) của các biến thể thuộc một hoặc nhiều sản phẩm thay đổi:
+ * nhập, xuất, điều chỉnh kho, giữ hàng và giải phóng giữ hàng.
+ *
+ * {@code productVariationIds} lists the variations whose database counters were written directly;
+ * it is empty when the change only needs read caches of the products refreshed.
+ */
+public record ProductStockChangedEvent(Set<Integer> productIds, Set<Integer> productVariationIds) {
+
+    public static ProductStockChangedEvent of(ProductVariation variation) {
+        return new ProductStockChangedEvent(Set.of(variation.getProductId()), Set.of(variation.getId()));
+    }
+
+    public static ProductStockChangedEvent of(Collection<Integer> productIds, Collection<Integer> productVariationIds) {
+        return new ProductStockChangedEvent(Set.copyOf(productIds), Set.copyOf(productVariationIds));
+    }
+
+    public static ProductStockChangedEvent ofProducts(Collection<Integer> productIds) {
+        return new ProductStockChangedEvent(Set.copyOf(productIds), Set.of());
+    }
+}
@@ -0,0 +1,228 @@
+package vn.techbox.techbox_store.product.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import vn.techbox.techbox_store.product.model.Category;
+import vn.techbox.techbox_store.product.repository.CategoryRepository;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory closure of the category tree.
+ *
+ * The whole hierarchy is loaded with one query and laid out in DFS pre-order, so the
+ * descendants of a category are the contiguous slice {@code order[start[id] .. end[id])}
+ * and its ancestors are a precomputed root-first path. The snapshot is immutable and
+ * rebuilt lazily after {@link #invalidate()} (called by category writes after commit).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CategoryClosureIndex {
+
+    private final CategoryRepository categoryRepository;
+
+    private volatile Closure closure;
+    // Bumped on every invalidation so a build that raced with a write is not installed
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Category itself followed by all of its descendants (pre-order)
+     */
+    public List<Integer> getSelfAndDescendantIds(Integer categoryId) {
+        Closure current = get();
+        if (!current.contains(categoryId)) {
+            return List.of(categoryId);
+        }
+        int id = categoryId;
+        int from = current.start[id];
+        int to = current.end[id];
+        List<Integer> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(current.order[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Ancestors of a category from the root down to its direct parent
+     */
+    public List<Integer> getAncestorIds(Integer categoryId) {
+        Closure current = get();
+        if (!current.contains(categoryId)) {
+            return List.of();
+        }
+        int[] path = current.ancestors[categoryId];
+        List<Integer> result = new ArrayList<>(path.length);
+        for (int ancestorId : path) {
+            result.add(ancestorId);
+        }
+        return result;
+    }
+
+    public boolean isDescendant(Integer categoryId, Integer ancestorId) {
+        Closure current = get();
+        if (!current.contains(categoryId) || !current.contains(ancestorId)) {
+            return false;
+        }
+        int position = current.start[categoryId];
+        return position > current.start[ancestorId] && position < current.end[ancestorId];
+    }
+
+    public Optional<String> getName(Integer categoryId) {
+        Closure current = get();
+        return current.contains(categoryId) ? Optional.ofNullable(current.names[categoryId]) : Optional.empty();
+    }
+
+    public Optional<Integer> getParentId(Integer categoryId) {
+        Closure current = get();
+        if (!current.contains(categoryId) || current.parent[categoryId] < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(current.parent[categoryId]);
+    }
+
+    /**
+     * Drop the snapshot once the current transaction commits (immediately if none)
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doInvalidate();
+                }
+            });
+        } else {
+            doInvalidate();
+        }
+    }
+
+    private void doInvalidate() {
+        version.incrementAndGet();
+        closure = null;
+    }
+
+    private Closure get() {
+        Closure current = closure;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (closure == null) {
+                long buildVersion = version.get();
+                Closure built = build(categoryRepository.findAll());
+                if (version.get() == buildVersion) {
+                    closure = built;
+                }
+                return built;
+            }
+            return closure;
+        }
+    }
+
+    private static Closure build(List<Category> categories) {
+        int maxId = -1;
+        for (Category category : categories) {
+            maxId = Math.max(maxId, category.getId());
+        }
+        int size = maxId + 1;
+
+        int[] parent = new int[size];
+        Arrays.fill(parent, -1);
+        String[] names = new String[size];
+        boolean[] present = new boolean[size];
+        Map<Integer, List<Integer>> children = new HashMap<>();
+        List<Integer> roots = new ArrayList<>();
+
+        for (Category category : categories) {
+            int id = category.getId();
+            present[id] = true;
+            names[id] = category.getName();
+        }
+        for (Category category : categories) {
+            int id = category.getId();
+            Integer parentId = category.getParentCategoryId();
+            if (parentId != null && parentId < size && present[parentId] && parentId != id) {
+                parent[id] = parentId;
+                children.computeIfAbsent(parentId, k -> new ArrayList<>()).add(id);
+            } else {
+                roots.add(id);
+            }
+        }
+
+        int[] order = new int[categories.size()];
+        int[] start = new int[size];
+        int[] end = new int[size];
+        int[][] ancestors = new int[size][];
+        boolean[] visited = new boolean[size];
+        int[] cursor = {0};
+
+        for (int root : roots) {
+            visit(root, new int[0], children, order, start, end, ancestors, visited, cursor);
+        }
+        // Categories caught in a parent cycle are unreachable from any root; keep them as isolated nodes
+        for (Category category : categories) {
+            int id = category.getId();
+            if (!visited[id]) {
+                log.warn("Category {} is part of a parent cycle, treating it as a root", id);
+                parent[id] = -1;
+                visit(id, new int[0], children, order, start, end, ancestors, visited, cursor);
+            }
+        }
+
+        return new Closure(present, parent, names, order, start, end, ancestors);
+    }
+
+    // Iterative DFS keeps deep trees off the call stack
+    private static void visit(int root, int[] rootPath, Map<Integer, List<Integer>> children,
+                              int[] order, int[] start, int[] end, int[][] ancestors,
+                              boolean[] visited, int[] cursor) {
+        Deque<int[]> stack = new ArrayDeque<>();
+        // frame = {categoryId, nextChildIndex}
+        stack.push(new int[]{root, 0});
+        visited[root] = true;
+        ancestors[root] = rootPath;
+        start[root] = cursor[0];
+        order[cursor[0]++] = root;
+
+        while (!stack.isEmpty()) {
+            int[] frame = stack.peek();
+            int id = frame[0];
+            List<Integer> kids = children.getOrDefault(id, List.of());
+            if (frame[1] < kids.size()) {
+                int child = kids.get(frame[1]++);
+                if (visited[child]) {
+                    continue;
+                }
+                visited[child] = true;
+                int[] path = Arrays.copyOf(ancestors[id], ancestors[id].length + 1);
+                path[path.length - 1] = id;
+                ancestors[child] = path;
+                start[child] = cursor[0];
+                order[cursor[0]++] = child;
+                stack.push(new int[]{child, 0});
+            } else {
+                end[id] = cursor[0];
+                stack.pop();
+            }
+        }
+    }
+
+    private record Closure(boolean[] present,
+                           int[] parent,
+                           String[] names,
+                           int[] order,
+                           int[] start,
+                           int[] end,
+                           int[][] ancestors) {
+
+        boolean contains(Integer id) {
+            return id != null && id >= 0 && id < present.length && present[id];
+        }
+    }
+}
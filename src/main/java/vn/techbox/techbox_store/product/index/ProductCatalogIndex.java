@@ -0,0 +1,662 @@
+package vn.techbox.techbox_store.product.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import vn.techbox.techbox_store.product.dto.productDto.ProductFacetResponse;
+import vn.techbox.techbox_store.product.dto.productDto.ProductFilterRequest;
+import vn.techbox.techbox_store.product.dto.productDto.ProductListResponse;
+import vn.techbox.techbox_store.product.event.ProductChangedEvent;
+import vn.techbox.techbox_store.product.model.Product;
+import vn.techbox.techbox_store.product.model.ProductAttribute;
+import vn.techbox.techbox_store.product.model.ProductStatus;
+import vn.techbox.techbox_store.product.repository.ProductAttributeRepository;
+import vn.techbox.techbox_store.product.repository.ProductRepository;
+import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory faceted index for the public product catalog.
+ *
+ * Products are keyed by their integer id, which is used directly as the bit position in the
+ * per-facet bitmaps (status, category, brand, campaign, attribute value). Price and rating
+ * ranges are answered from arrays of product ids sorted by the corresponding column.
+ *
+ * The index is built once the application is ready and refreshed per product after every
+ * committed {@link ProductChangedEvent}. Until it is ready (or when disabled with
+ * {@code catalog.index.enabled=false}) callers fall back to the JPA specification query.
+ * A failed build or refresh keeps serving the previous index; the products involved are
+ * retried every {@code catalog.index.retry-interval-ms}, and the whole index is rebuilt
+ * nightly as a safety net.
+ */
+@Component
+@Slf4j
+public class ProductCatalogIndex {
+
+    private final ProductRepository productRepository;
+    private final ProductAttributeRepository productAttributeRepository;
+    private final ProductVariationRepository productVariationRepository;
+    private final boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Serializes rebuild/refresh so a later refresh always applies the latest committed state
+    private final Object refreshMonitor = new Object();
+    private volatile boolean ready = false;
+    // Products whose last refresh failed; retried by retryFailed()
+    private final Set<Integer> failedRefreshes = ConcurrentHashMap.newKeySet();
+
+    // ===== Index state (guarded by lock) =====
+    private Entry[] entries = new Entry[0];
+    private final BitSet allProducts = new BitSet();
+    private final Map<ProductStatus, BitSet> byStatus = new EnumMap<>(ProductStatus.class);
+    private final Map<Integer, BitSet> byCategory = new HashMap<>();
+    private final Map<Integer, BitSet> byBrand = new HashMap<>();
+    private final Map<Integer, BitSet> byCampaign = new HashMap<>();
+    private final Map<Integer, Map<String, ValuePostings>> byAttribute = new HashMap<>();
+    private int[] priceOrder = new int[0];
+    private int[] ratingOrder = new int[0];
+
+    public ProductCatalogIndex(ProductRepository productRepository,
+                               ProductAttributeRepository productAttributeRepository,
+                               ProductVariationRepository productVariationRepository,
+                               @Value("${catalog.index.enabled:true}") boolean enabled) {
+        this.productRepository = productRepository;
+        this.productAttributeRepository = productAttributeRepository;
+        this.productVariationRepository = productVariationRepository;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Index can serve queries (enabled and initial build completed)
+     */
+    public boolean isAvailable() {
+        return enabled && ready;
+    }
+
+    // ============================================
+    // Build & maintenance
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            log.info("Catalog index is disabled, product filtering uses database queries");
+            return;
+        }
+        rebuild();
+    }
+
+    /**
+     * Full rebuild as a safety net against missed refreshes
+     */
+    @Scheduled(cron = "${catalog.index.rebuild-cron:0 15 3 * * *}")
+    public void scheduledRebuild() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Retry a build that never succeeded, or the products whose refresh failed
+     */
+    @Scheduled(fixedDelayString = "${catalog.index.retry-interval-ms:30000}")
+    public void retryFailed() {
+        if (!enabled) {
+            return;
+        }
+        if (!ready) {
+            rebuild();
+        } else if (!failedRefreshes.isEmpty()) {
+            List<Integer> productIds = new ArrayList<>(failedRefreshes);
+            failedRefreshes.removeAll(productIds);
+            refresh(productIds);
+        }
+    }
+
+    @Async
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (!enabled || event.productIds().isEmpty()) {
+            return;
+        }
+        refresh(event.productIds());
+    }
+
+    public void rebuild() {
+        synchronized (refreshMonitor) {
+            long start = System.currentTimeMillis();
+            try {
+                List<Product> products = productRepository.findAll();
+                Map<Integer, List<ProductAttribute>> attributes = productAttributeRepository.findAll().stream()
+                        .collect(Collectors.groupingBy(ProductAttribute::getProductId));
+                Map<Integer, Set<Integer>> campaigns = toCampaignMap(productVariationRepository.findProductCampaignPairs());
+                // Entries are built before the index is cleared, so a bad row cannot leave it half-built
+                List<Entry> built = new ArrayList<>(products.size());
+                for (Product product : products) {
+                    built.add(toEntry(product, attributes.get(product.getId()), campaigns.get(product.getId())));
+                }
+
+                lock.writeLock().lock();
+                try {
+                    clear();
+                    for (Entry entry : built) {
+                        put(entry);
+                    }
+                    rebuildOrders();
+                    ready = true;
+                    failedRefreshes.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.info("Catalog index built with {} products in {} ms", products.size(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                // Nothing was cleared yet: a previously built index keeps serving until the retry
+                log.error("Failed to build catalog index{}", ready ? ", keeping the previous one" : ", falling back to database queries", e);
+            }
+        }
+    }
+
+    public void refresh(Collection<Integer> productIds) {
+        synchronized (refreshMonitor) {
+            try {
+                Map<Integer, Product> products = productRepository.findAllById(productIds).stream()
+                        .collect(Collectors.toMap(Product::getId, Function.identity()));
+                Map<Integer, List<ProductAttribute>> attributes = productAttributeRepository.findByProductIdIn(productIds).stream()
+                        .collect(Collectors.groupingBy(ProductAttribute::getProductId));
+                Map<Integer, Set<Integer>> campaigns = toCampaignMap(
+                        productVariationRepository.findProductCampaignPairsByProductIdIn(productIds));
+                Map<Integer, Entry> built = new HashMap<>();
+                for (Product product : products.values()) {
+                    built.put(product.getId(), toEntry(product, attributes.get(product.getId()), campaigns.get(product.getId())));
+                }
+
+                lock.writeLock().lock();
+                try {
+                    for (Integer productId : productIds) {
+                        remove(productId);
+                        Entry entry = built.get(productId);
+                        if (entry != null) {
+                            put(entry);
+                        }
+                    }
+                    rebuildOrders();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (Exception e) {
+                // The previous entries keep serving: briefly stale beats every query hitting the database
+                failedRefreshes.addAll(productIds);
+                log.error("Failed to refresh catalog index for products {}, will retry", productIds, e);
+            }
+        }
+    }
+
+    // ============================================
+    // Queries
+
+    /**
+     * Filter, sort and paginate products. The filter must already be prepared
+     * (default status, category expanded to its descendants).
+     */
+    public Page<ProductListResponse> filter(ProductFilterRequest filter, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = match(filter);
+            int total = matches.cardinality();
+            int[] ordered = order(matches, pageable.getSort());
+
+            int from = (int) Math.min(pageable.getOffset(), ordered.length);
+            int to = Math.min(from + pageable.getPageSize(), ordered.length);
+            List<ProductListResponse> content = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                content.add(entries[ordered[i]].toListResponse());
+            }
+            return new PageImpl<>(content, pageable, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Facet counts (category, brand, attribute value) over the products matching the filter
+     */
+    public ProductFacetResponse facets(ProductFilterRequest filter) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = match(filter);
+
+            Map<Integer, Long> categories = countPerKey(byCategory, matches);
+            Map<Integer, Long> brands = countPerKey(byBrand, matches);
+
+            Map<Integer, List<ProductFacetResponse.ValueCount>> attributes = new TreeMap<>();
+            for (Map.Entry<Integer, Map<String, ValuePostings>> attribute : byAttribute.entrySet()) {
+                List<ProductFacetResponse.ValueCount> values = new ArrayList<>();
+                for (ValuePostings postings : attribute.getValue().values()) {
+                    long count = intersectionCount(postings.products, matches);
+                    if (count > 0) {
+                        values.add(new ProductFacetResponse.ValueCount(postings.displayValue, count));
+                    }
+                }
+                if (!values.isEmpty()) {
+                    values.sort(Comparator.comparingLong(ProductFacetResponse.ValueCount::getCount).reversed());
+                    attributes.put(attribute.getKey(), values);
+                }
+            }
+
+            return ProductFacetResponse.builder()
+                    .total(matches.cardinality())
+                    .categories(categories)
+                    .brands(brands)
+                    .attributes(attributes)
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BitSet match(ProductFilterRequest filter) {
+        BitSet result = (BitSet) allProducts.clone();
+
+        if (filter.getStatus() != null) {
+            result.and(byStatus.getOrDefault(filter.getStatus(), new BitSet()));
+        }
+
+        if (filter.getBrandId() != null) {
+            result.and(byBrand.getOrDefault(filter.getBrandId(), new BitSet()));
+        }
+
+        if (filter.getCategoryIds() != null && !filter.getCategoryIds().isEmpty()) {
+            BitSet anyCategory = new BitSet();
+            for (Integer categoryId : filter.getCategoryIds()) {
+                BitSet products = byCategory.get(categoryId);
+                if (products != null) {
+                    anyCategory.or(products);
+                }
+            }
+            result.and(anyCategory);
+        }
+
+        if (filter.getCampaignId() != null) {
+            result.and(byCampaign.getOrDefault(filter.getCampaignId(), new BitSet()));
+        }
+
+        if (filter.getAttributes() != null) {
+            for (String attr : filter.getAttributes()) {
+                String[] parts = attr.split(":", 2);
+                if (parts.length != 2) {
+                    continue;
+                }
+                try {
+                    result.and(attributeMatches(Integer.parseInt(parts[0]), parts[1]));
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid attribute filter format: {}", attr);
+                }
+            }
+        }
+
+        if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+            result.and(range(priceOrder, e -> e.displaySalePrice, filter.getMinPrice(), filter.getMaxPrice()));
+        }
+
+        if (filter.getMinRating() != null) {
+            result.and(range(ratingOrder, e -> e.averageRating, filter.getMinRating(), null));
+        }
+
+        // Partial text matches are evaluated only on the remaining candidates
+        String name = lowerOrNull(filter.getName());
+        String spu = lowerOrNull(filter.getSpu());
+        if (name != null || spu != null) {
+            for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+                Entry entry = entries[id];
+                if ((name != null && (entry.nameLower == null || !entry.nameLower.contains(name)))
+                        || (spu != null && (entry.spuLower == null || !entry.spuLower.contains(spu)))) {
+                    result.clear(id);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Same semantics as ProductSpecification.hasAttributes: case-insensitive partial match on value
+     */
+    private BitSet attributeMatches(Integer attributeId, String value) {
+        BitSet result = new BitSet();
+        Map<String, ValuePostings> values = byAttribute.get(attributeId);
+        if (values == null) {
+            return result;
+        }
+        String needle = value.toLowerCase(Locale.ROOT);
+        for (Map.Entry<String, ValuePostings> entry : values.entrySet()) {
+            if (entry.getKey().contains(needle)) {
+                result.or(entry.getValue().products);
+            }
+        }
+        return result;
+    }
+
+    private <T extends Comparable<? super T>> BitSet range(int[] order, Function<Entry, T> key, T min, T max) {
+        int from = min == null ? 0 : lowerBound(order, key, min);
+        int to = max == null ? order.length : upperBound(order, key, max);
+        BitSet result = new BitSet();
+        for (int i = from; i < to; i++) {
+            result.set(order[i]);
+        }
+        return result;
+    }
+
+    // First position whose key >= value
+    private <T extends Comparable<? super T>> int lowerBound(int[] order, Function<Entry, T> key, T value) {
+        int lo = 0;
+        int hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.apply(entries[order[mid]]).compareTo(value) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // First position whose key > value
+    private <T extends Comparable<? super T>> int upperBound(int[] order, Function<Entry, T> key, T value) {
+        int lo = 0;
+        int hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.apply(entries[order[mid]]).compareTo(value) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Order matches like the database would for the sort built by SortHelper
+     * (PostgreSQL puts NULLs last for ASC and first for DESC)
+     */
+    private int[] order(BitSet matches, Sort sort) {
+        Sort.Order sortOrder = sort.stream().findFirst().orElse(Sort.Order.asc("id"));
+        boolean desc = sortOrder.isDescending();
+
+        return switch (sortOrder.getProperty()) {
+            case "displaySalePrice" -> orderBySortedArray(matches, priceOrder, desc);
+            case "averageRating" -> orderBySortedArray(matches, ratingOrder, desc);
+            case "createdAt" -> orderByComparator(matches, e -> e.createdAt, desc);
+            case "name" -> orderByComparator(matches, e -> e.name, desc);
+            default -> {
+                int[] ids = matches.stream().toArray();
+                yield desc ? reverse(ids) : ids;
+            }
+        };
+    }
+
+    private int[] orderBySortedArray(BitSet matches, int[] sortedOrder, boolean desc) {
+        int[] result = new int[matches.cardinality()];
+        BitSet withoutValue = (BitSet) matches.clone();
+        int n = 0;
+        for (int id : sortedOrder) {
+            if (matches.get(id)) {
+                result[n++] = id;
+                withoutValue.clear(id);
+            }
+        }
+        if (desc) {
+            reverseInPlace(result, n);
+            // NULLS FIRST for DESC
+            int[] nulls = withoutValue.stream().toArray();
+            System.arraycopy(result, 0, result, nulls.length, n);
+            System.arraycopy(nulls, 0, result, 0, nulls.length);
+        } else {
+            for (int id = withoutValue.nextSetBit(0); id >= 0; id = withoutValue.nextSetBit(id + 1)) {
+                result[n++] = id;
+            }
+        }
+        return result;
+    }
+
+    private <T extends Comparable<? super T>> int[] orderByComparator(BitSet matches, Function<Entry, T> key, boolean desc) {
+        Comparator<Integer> comparator = Comparator.comparing((Integer id) -> key.apply(entries[id]),
+                Comparator.nullsLast(Comparator.<T>naturalOrder()));
+        if (desc) {
+            comparator = comparator.reversed();
+        }
+        return matches.stream().boxed().sorted(comparator).mapToInt(Integer::intValue).toArray();
+    }
+
+    // ============================================
+    // Index maintenance helpers (caller holds write lock)
+
+    private void put(Entry entry) {
+        int id = entry.id;
+        if (id >= entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(id + 1, entries.length * 2));
+        }
+        entries[id] = entry;
+        allProducts.set(id);
+        byStatus.computeIfAbsent(entry.status, k -> new BitSet()).set(id);
+        if (entry.categoryId != null) {
+            byCategory.computeIfAbsent(entry.categoryId, k -> new BitSet()).set(id);
+        }
+        if (entry.brandId != null) {
+            byBrand.computeIfAbsent(entry.brandId, k -> new BitSet()).set(id);
+        }
+        for (Integer campaignId : entry.campaignIds) {
+            byCampaign.computeIfAbsent(campaignId, k -> new BitSet()).set(id);
+        }
+        for (AttributeValue attribute : entry.attributes) {
+            byAttribute.computeIfAbsent(attribute.attributeId, k -> new HashMap<>())
+                    .computeIfAbsent(attribute.value.toLowerCase(Locale.ROOT), k -> new ValuePostings(attribute.value))
+                    .products.set(id);
+        }
+    }
+
+    private void remove(int id) {
+        if (id >= entries.length || entries[id] == null) {
+            return;
+        }
+        Entry entry = entries[id];
+        clearBit(byStatus, entry.status, id);
+        clearBit(byCategory, entry.categoryId, id);
+        clearBit(byBrand, entry.brandId, id);
+        for (Integer campaignId : entry.campaignIds) {
+            clearBit(byCampaign, campaignId, id);
+        }
+        for (AttributeValue attribute : entry.attributes) {
+            Map<String, ValuePostings> values = byAttribute.get(attribute.attributeId);
+            if (values == null) {
+                continue;
+            }
+            String key = attribute.value.toLowerCase(Locale.ROOT);
+            ValuePostings postings = values.get(key);
+            if (postings != null) {
+                postings.products.clear(id);
+                if (postings.products.isEmpty()) {
+                    values.remove(key);
+                }
+            }
+            if (values.isEmpty()) {
+                byAttribute.remove(attribute.attributeId);
+            }
+        }
+        entries[id] = null;
+        allProducts.clear(id);
+    }
+
+    private <K> void clearBit(Map<K, BitSet> postings, K key, int id) {
+        if (key == null) {
+            return;
+        }
+        BitSet bits = postings.get(key);
+        if (bits != null) {
+            bits.clear(id);
+            if (bits.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    private void clear() {
+        entries = new Entry[0];
+        allProducts.clear();
+        byStatus.clear();
+        byCategory.clear();
+        byBrand.clear();
+        byCampaign.clear();
+        byAttribute.clear();
+        priceOrder = new int[0];
+        ratingOrder = new int[0];
+    }
+
+    private void rebuildOrders() {
+        priceOrder = sortedBy(e -> e.displaySalePrice);
+        ratingOrder = sortedBy(e -> e.averageRating);
+    }
+
+    private <T extends Comparable<? super T>> int[] sortedBy(Function<Entry, T> key) {
+        return allProducts.stream()
+                .filter(id -> key.apply(entries[id]) != null)
+                .boxed()
+                .sorted(Comparator.comparing((Integer id) -> key.apply(entries[id])))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private Map<Integer, Long> countPerKey(Map<Integer, BitSet> postings, BitSet matches) {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (Map.Entry<Integer, BitSet> entry : postings.entrySet()) {
+            long count = intersectionCount(entry.getValue(), matches);
+            if (count > 0) {
+                counts.put(entry.getKey(), count);
+            }
+        }
+        return counts;
+    }
+
+    private static long intersectionCount(BitSet a, BitSet b) {
+        BitSet copy = (BitSet) a.clone();
+        copy.and(b);
+        return copy.cardinality();
+    }
+
+    private static Map<Integer, Set<Integer>> toCampaignMap(List<Object[]> pairs) {
+        Map<Integer, Set<Integer>> result = new HashMap<>();
+        for (Object[] pair : pairs) {
+            result.computeIfAbsent((Integer) pair[0], k -> new HashSet<>()).add((Integer) pair[1]);
+        }
+        return result;
+    }
+
+    private static Entry toEntry(Product product, List<ProductAttribute> attributes, Set<Integer> campaignIds) {
+        List<AttributeValue> values = attributes == null ? List.of() : attributes.stream()
+                .filter(pa -> pa.getValue() != null)
+                .map(pa -> new AttributeValue(pa.getAttributeId(), pa.getValue()))
+                .toList();
+
+        return new Entry(
+                product.getId(),
+                product.getName(),
+                lowerOrNull(product.getName()),
+                lowerOrNull(product.getSpu()),
+                product.getImageUrl(),
+                product.getStatus(),
+                product.getCategoryId(),
+                product.getBrandId(),
+                product.getDisplayOriginalPrice(),
+                product.getDisplaySalePrice(),
+                product.getDiscountType(),
+                product.getDiscountValue(),
+                product.getAverageRating(),
+                product.getTotalRatings(),
+                product.getCreatedAt(),
+                values,
+                campaignIds == null ? Set.of() : Set.copyOf(campaignIds)
+        );
+    }
+
+    private static String lowerOrNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static int[] reverse(int[] values) {
+        reverseInPlace(values, values.length);
+        return values;
+    }
+
+    private static void reverseInPlace(int[] values, int length) {
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the indexed columns of a product
+     */
+    private record Entry(int id,
+                         String name,
+                         String nameLower,
+                         String spuLower,
+                         String imageUrl,
+                         ProductStatus status,
+                         Integer categoryId,
+                         Integer brandId,
+                         BigDecimal displayOriginalPrice,
+                         BigDecimal displaySalePrice,
+                         String discountType,
+                         BigDecimal discountValue,
+                         Double averageRating,
+                         Integer totalRatings,
+                         LocalDateTime createdAt,
+                         List<AttributeValue> attributes,
+                         Set<Integer> campaignIds) {
+
+        ProductListResponse toListResponse() {
+            return ProductListResponse.builder()
+                    .id(id)
+                    .name(name)
+                    .imageUrl(imageUrl)
+                    .displayOriginalPrice(displayOriginalPrice)
+                    .displaySalePrice(displaySalePrice)
+                    .discountType(discountType)
+                    .discountValue(discountValue)
+                    .averageRating(averageRating)
+                    .totalRatings(totalRatings)
+                    .build();
+        }
+    }
+
+    private record AttributeValue(Integer attributeId, String value) {
+    }
+
+    private static class ValuePostings {
+        final String displayValue;
+        final BitSet products = new BitSet();
+
+        ValuePostings(String displayValue) {
+            this.displayValue = displayValue;
+        }
+    }
+}
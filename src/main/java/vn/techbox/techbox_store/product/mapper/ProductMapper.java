@@ -3,7 +3,6 @@ package vn.techbox.techbox_store.product.mapper;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Component;
@@ -23,8 +22,7 @@ import vn.techbox.techbox_store.product.repository.BrandRepository;
 import vn.techbox.techbox_store.product.repository.CategoryRepository;
 import vn.techbox.techbox_store.product.repository.ProductAttributeRepository;
 import vn.techbox.techbox_store.product.service.ProductVariationService;
-import vn.techbox.techbox_store.promotion.model.Promotion;
-import vn.techbox.techbox_store.promotion.model.PromotionType;
+import vn.techbox.techbox_store.promotion.engine.PromotionSnapshot;
 
 @Component
 @RequiredArgsConstructor
@@ -112,7 +110,7 @@ public class ProductMapper {
             List<ProductVariation> productVariations,
             Map<Integer, List<ProductVariationImage>> imagesMap,
             Map<Integer, List<VariationAttribute>> variationAttributesMap,
-            Map<Integer, List<Promotion>> promotionsMap) {
+            PromotionSnapshot promotions) {
         
         if (product == null) return null;
         
@@ -134,7 +132,7 @@ public class ProductMapper {
                             variation,
                             imagesMap.getOrDefault(variation.getId(), List.of()),
                             variationAttributesMap.getOrDefault(variation.getId(), List.of()),
-                            promotionsMap.getOrDefault(variation.getId(), List.of())
+                            promotions
                     ))
                     .collect(Collectors.toList());
         
@@ -168,7 +166,7 @@ public class ProductMapper {
             ProductVariation variation,
             List<ProductVariationImage> images,
             List<VariationAttribute> variationAttributes,
-            List<Promotion> promotions) {
+            PromotionSnapshot promotions) {
         
         // Convert images to DTOs
         List<ProductDetailResponse.ImageDto> imageDtos = images.stream()
@@ -188,37 +186,11 @@ public class ProductMapper {
                         .build())
                 .collect(Collectors.toList());
         
-        // Calculate realtime pricing with active promotions
-        BigDecimal salePrice = variation.getPrice();
-        String discountType = null;
-        BigDecimal discountValue = null;
-        
-        // Get the first active promotion (assuming only one active promotion per variation at a time)
-        Optional<Promotion> activePromotion = promotions.stream()
-                .filter(Promotion::isActive)
-                .findFirst();
-        
-        if (activePromotion.isPresent()) {
-            Promotion promo = activePromotion.get();
-            discountType = promo.getDiscountType().name();
-            discountValue = promo.getDiscountValue();
-            
-            // Calculate sale price based on promotion type
-            if (promo.getDiscountType() == PromotionType.PERCENTAGE) {
-                // Percentage discount: price - (price * discountValue / 100)
-                BigDecimal discountAmount = variation.getPrice()
-                        .multiply(discountValue)
-                        .divide(BigDecimal.valueOf(100), 2, java.math.RoundingMode.HALF_UP);
-                salePrice = variation.getPrice().subtract(discountAmount);
-            } else if (promo.getDiscountType() == PromotionType.FIXED) {
-                // Fixed discount: price - discountValue
-                salePrice = variation.getPrice().subtract(discountValue);
-                // Ensure price doesn't go below zero
-                if (salePrice.compareTo(BigDecimal.ZERO) < 0) {
-                    salePrice = BigDecimal.ZERO;
-                }
-            }
-        }
+        // Calculate realtime pricing with the best active promotion
+        PromotionSnapshot.PromotionPrice price = promotions.price(variation.getId(), variation.getPrice(), 1);
+        BigDecimal salePrice = price.unitSalePrice();
+        String discountType = price.hasPromotion() ? price.promotion().discountType().name() : null;
+        BigDecimal discountValue = price.hasPromotion() ? price.promotion().discountValue() : null;
         
         // Calculate available quantity (stock - reserved)
         Integer availableQuantity = variation.getAvailableQuantity();
@@ -8,15 +8,14 @@ import vn.techbox.techbox_store.product.model.ProductVariation;
 import vn.techbox.techbox_store.product.model.ProductVariationImage;
 import vn.techbox.techbox_store.product.repository.ProductRepository;
 import vn.techbox.techbox_store.product.repository.ProductVariationImageRepository;
+import vn.techbox.techbox_store.promotion.engine.PromotionEngine;
+import vn.techbox.techbox_store.promotion.engine.PromotionSnapshot;
 import vn.techbox.techbox_store.promotion.model.Promotion;
 import vn.techbox.techbox_store.promotion.model.PromotionType;
-import vn.techbox.techbox_store.promotion.repository.PromotionRepository;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Component
@@ -25,7 +24,7 @@ public class ProductVariationMapper {
     
     private final ProductVariationImageRepository productVariationImageRepository;
     private final ProductRepository productRepository;
-    private final PromotionRepository promotionRepository;
+    private final PromotionEngine promotionEngine;
     
     /**
      * Convert ProductVariation entity to ProductVariationResponse DTO
@@ -38,20 +37,8 @@ public class ProductVariationMapper {
         // Calculate available quantity
         Integer availableQuantity = variation.getStockQuantity() - variation.getReservedQuantity();
         
-        // Get active promotion for this variation
-        List<Promotion> activePromotions = promotionRepository.findActivePromotionsByProductVariationId(
-            variation.getId(), 
-            LocalDateTime.now()
-        );
-        
-        // Find best promotion (highest discount)
-        Optional<Promotion> bestPromotion = activePromotions.stream()
-            .filter(p -> p.getCampaign() != null && p.getCampaign().isActive() && p.isValid())
-            .max((p1, p2) -> {
-                BigDecimal discount1 = calculateDiscount(variation.getPrice(), p1);
-                BigDecimal discount2 = calculateDiscount(variation.getPrice(), p2);
-                return discount1.compareTo(discount2);
-            });
+        // Best promotion (highest discount) from the shared active-promotion table
+        PromotionSnapshot.PromotionPrice price = promotionEngine.priceFor(variation.getId(), variation.getPrice(), 1);
         
         // Build response with pricing information
         ProductVariationResponse.ProductVariationResponseBuilder builder = ProductVariationResponse.builder()
@@ -63,13 +50,10 @@ public class ProductVariationMapper {
                 .availableQuantity(availableQuantity);
         
         // Set promotion pricing if available
-        if (bestPromotion.isPresent()) {
-            Promotion promotion = bestPromotion.get();
-            BigDecimal salePrice = calculateSalePrice(variation.getPrice(), promotion);
-            
-            builder.salePrice(salePrice)
-                   .discountType(promotion.getDiscountType().name())
-                   .discountValue(promotion.getDiscountValue());
+        if (price.hasPromotion()) {
+            builder.salePrice(price.unitSalePrice())
+                   .discountType(price.promotion().discountType().name())
+                   .discountValue(price.promotion().discountValue());
         } else {
             // No promotion, salePrice equals original price
             builder.salePrice(variation.getPrice())
@@ -0,0 +1,253 @@
+package vn.techbox.techbox_store.product.pricing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.techbox.techbox_store.product.event.ProductChangedEvent;
+import vn.techbox.techbox_store.promotion.engine.PromotionEngine;
+import vn.techbox.techbox_store.promotion.engine.PromotionSnapshot;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Set-based repricing of product display prices (display original/sale price, discount type/value).
+ *
+ * Products are processed in id-ordered chunks; each chunk costs two queries (products and
+ * their active variations), sale prices come from the shared {@link PromotionEngine} table, the
+ * lowest sale price per product is computed in memory and only rows whose display pricing
+ * actually changed are written back with one JDBC batch UPDATE. Every chunk commits in its own
+ * transaction.
+ *
+ * Pricing rules are the same as {@code ProductPriceUpdateServiceImpl.updateProductPricing}:
+ * the best active promotion of a variation applies, and the product shows the variation
+ * with the lowest sale price.
+ */
+@Component
+@Slf4j
+public class ProductBulkRepricer {
+
+    private static final String SELECT_PUBLISHED_PRODUCTS =
+            "SELECT id, display_original_price, display_sale_price, discount_type, discount_value " +
+            "FROM products WHERE status = 'PUBLISHED' AND id > :afterId ORDER BY id LIMIT :limit";
+
+    private static final String SELECT_PRODUCTS_BY_ID =
+            "SELECT id, display_original_price, display_sale_price, discount_type, discount_value " +
+            "FROM products WHERE id IN (:ids) ORDER BY id";
+
+    private static final String SELECT_VARIATIONS =
+            "SELECT id, product_id, price FROM product_variations " +
+            "WHERE product_id IN (:ids) AND deleted_at IS NULL ORDER BY product_id, id";
+
+    private static final String UPDATE_DISPLAY_PRICING =
+            "UPDATE products SET display_original_price = ?, display_sale_price = ?, " +
+            "discount_type = ?, discount_value = ?, updated_at = ? WHERE id = ?";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PromotionEngine promotionEngine;
+    private final MeterRegistry meterRegistry;
+    private final int chunkSize;
+
+    private final Counter scannedCounter;
+    private final Counter updatedCounter;
+
+    public ProductBulkRepricer(NamedParameterJdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               ApplicationEventPublisher eventPublisher,
+                               PromotionEngine promotionEngine,
+                               MeterRegistry meterRegistry,
+                               @Value("${pricing.bulk.chunk-size:2000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.promotionEngine = promotionEngine;
+        this.meterRegistry = meterRegistry;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.scannedCounter = Counter.builder("product.reprice.products.scanned")
+                .description("Products evaluated by bulk repricing")
+                .register(meterRegistry);
+        this.updatedCounter = Counter.builder("product.reprice.products.updated")
+                .description("Products whose display pricing was rewritten by bulk repricing")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reprice every published product
+     */
+    public RepriceResult repriceAll() {
+        long startNanos = System.nanoTime();
+        int scanned = 0;
+        int updated = 0;
+        int afterId = 0;
+
+        while (true) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("afterId", afterId)
+                    .addValue("limit", chunkSize);
+            List<CurrentPricing> chunk = jdbcTemplate.query(SELECT_PUBLISHED_PRODUCTS, params,
+                    (rs, rowNum) -> CurrentPricing.from(rs));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            updated += repriceChunk(chunk);
+            scanned += chunk.size();
+            afterId = chunk.get(chunk.size() - 1).productId();
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+        }
+
+        return finish("all", scanned, updated, startNanos);
+    }
+
+    /**
+     * Reprice the given products regardless of status (ids that do not exist are ignored)
+     */
+    public RepriceResult reprice(Collection<Integer> productIds) {
+        long startNanos = System.nanoTime();
+        List<Integer> ids = productIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .toList();
+        int scanned = 0;
+        int updated = 0;
+
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<Integer> slice = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            List<CurrentPricing> chunk = jdbcTemplate.query(SELECT_PRODUCTS_BY_ID,
+                    new MapSqlParameterSource("ids", slice),
+                    (rs, rowNum) -> CurrentPricing.from(rs));
+            if (chunk.isEmpty()) {
+                continue;
+            }
+            updated += repriceChunk(chunk);
+            scanned += chunk.size();
+        }
+
+        return finish("targeted", scanned, updated, startNanos);
+    }
+
+    private int repriceChunk(List<CurrentPricing> chunk) {
+        Integer changed = transactionTemplate.execute(status -> {
+            List<Integer> productIds = chunk.stream().map(CurrentPricing::productId).toList();
+            LocalDateTime now = LocalDateTime.now();
+
+            Map<Integer, List<VariationPrice>> variationsByProduct = new HashMap<>();
+            MapSqlParameterSource idParams = new MapSqlParameterSource("ids", productIds);
+            jdbcTemplate.query(SELECT_VARIATIONS, idParams, rs -> {
+                variationsByProduct.computeIfAbsent(rs.getInt("product_id"), k -> new ArrayList<>())
+                        .add(new VariationPrice(rs.getInt("id"), rs.getBigDecimal("price")));
+            });
+
+            PromotionSnapshot promotions = promotionEngine.snapshot();
+
+            Timestamp updatedAt = Timestamp.valueOf(now);
+            List<Object[]> batch = new ArrayList<>();
+            List<Integer> changedIds = new ArrayList<>();
+            for (CurrentPricing current : chunk) {
+                CurrentPricing target = lowestPrice(current.productId(),
+                        variationsByProduct.getOrDefault(current.productId(), List.of()),
+                        promotions);
+                if (!current.sameAs(target)) {
+                    batch.add(new Object[]{
+                            target.originalPrice(), target.salePrice(),
+                            target.discountType(), target.discountValue(),
+                            updatedAt, target.productId()
+                    });
+                    changedIds.add(target.productId());
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                jdbcTemplate.getJdbcTemplate().batchUpdate(UPDATE_DISPLAY_PRICING, batch);
+                eventPublisher.publishEvent(ProductChangedEvent.of(changedIds));
+            }
+            return batch.size();
+        });
+        return changed != null ? changed : 0;
+    }
+
+    private static CurrentPricing lowestPrice(Integer productId, List<VariationPrice> variations,
+                                              PromotionSnapshot promotions) {
+        CurrentPricing best = new CurrentPricing(productId, null, null, null, null);
+        for (VariationPrice variation : variations) {
+            PromotionSnapshot.PromotionPrice price = promotions.price(variation.id(), variation.price(), 1);
+            BigDecimal salePrice = price.unitSalePrice();
+            String discountType = price.hasPromotion() ? price.promotion().discountType().name() : null;
+            BigDecimal discountValue = price.hasPromotion() ? price.promotion().discountValue() : null;
+            if (best.salePrice() == null || salePrice.compareTo(best.salePrice()) < 0) {
+                best = new CurrentPricing(productId, variation.price(), salePrice, discountType, discountValue);
+            }
+        }
+        return best;
+    }
+
+    private RepriceResult finish(String scope, int scanned, int updated, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        Timer.builder("product.reprice.duration")
+                .description("Wall time of a repricing run")
+                .tag("scope", scope)
+                .register(meterRegistry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        scannedCounter.increment(scanned);
+        updatedCounter.increment(updated);
+
+        RepriceResult result = new RepriceResult(scanned, updated, elapsedNanos / 1_000_000);
+        log.info("Repriced {} products ({}): {} changed in {} ms ({} products/s)",
+                scanned, scope, updated, result.elapsedMillis(), result.productsPerSecond());
+        return result;
+    }
+
+    public record RepriceResult(int scanned, int updated, long elapsedMillis) {
+
+        public long productsPerSecond() {
+            return elapsedMillis > 0 ? scanned * 1000L / elapsedMillis : scanned;
+        }
+    }
+
+    private record VariationPrice(Integer id, BigDecimal price) {
+    }
+
+    private record CurrentPricing(Integer productId,
+                                  BigDecimal originalPrice,
+                                  BigDecimal salePrice,
+                                  String discountType,
+                                  BigDecimal discountValue) {
+
+        static CurrentPricing from(ResultSet rs) throws SQLException {
+            return new CurrentPricing(
+                    rs.getInt("id"),
+                    rs.getBigDecimal("display_original_price"),
+                    rs.getBigDecimal("display_sale_price"),
+                    rs.getString("discount_type"),
+                    rs.getBigDecimal("discount_value"));
+        }
+
+        boolean sameAs(CurrentPricing other) {
+            return sameAmount(originalPrice, other.originalPrice)
+                    && sameAmount(salePrice, other.salePrice)
+                    && Objects.equals(discountType, other.discountType)
+                    && sameAmount(discountValue, other.discountValue);
+        }
+
+        private static boolean sameAmount(BigDecimal a, BigDecimal b) {
+            return a == null ? b == null : b != null && a.compareTo(b) == 0;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.stereotype.Repository;
 import vn.techbox.techbox_store.product.model.ProductAttribute;
 import vn.techbox.techbox_store.product.model.ProductAttributeId;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -15,6 +16,9 @@ public interface ProductAttributeRepository extends JpaRepository<ProductAttribu
     
     @Query("SELECT pa FROM ProductAttribute pa WHERE pa.productId = :productId")
     List<ProductAttribute> findByProductId(@Param("productId") Integer productId);
+
+    @Query("SELECT pa FROM ProductAttribute pa WHERE pa.productId IN :productIds")
+    List<ProductAttribute> findByProductIdIn(@Param("productIds") Collection<Integer> productIds);
     
     @Query("SELECT pa FROM ProductAttribute pa WHERE pa.attributeId = :attributeId")
     List<ProductAttribute> findByAttributeId(@Param("attributeId") Integer attributeId);
@@ -27,6 +27,13 @@ public interface ProductRepository extends JpaRepository<Product, Integer>, JpaS
        // Find active (status = 'PUBLISHED') product by id
        @Query("SELECT p FROM Product p WHERE p.id = :id AND p.status = 'PUBLISHED'")
        Optional<Product> findActiveById(@Param("id") Integer id);
+
+       // Published product with category, brand and attributes in one query (product detail page)
+       @Query("SELECT DISTINCT p FROM Product p " +
+              "LEFT JOIN FETCH p.category LEFT JOIN FETCH p.brand " +
+              "LEFT JOIN FETCH p.productAttributes pa LEFT JOIN FETCH pa.attribute " +
+              "WHERE p.id = :id AND p.status = 'PUBLISHED'")
+       Optional<Product> findActiveDetailById(@Param("id") Integer id);
       
        // Find products by list of IDs and not deleted
        @Query("SELECT p FROM Product p WHERE p.id IN :ids AND p.deletedAt IS NULL")
@@ -1,11 +1,13 @@
 package vn.techbox.techbox_store.product.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import vn.techbox.techbox_store.product.model.ProductVariation;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -33,6 +35,12 @@ public interface ProductVariationRepository extends JpaRepository<ProductVariati
     // Find active variations by product id
     @Query("SELECT pv FROM ProductVariation pv WHERE pv.productId = :productId AND pv.deletedAt IS NULL")
     List<ProductVariation> findByProductId(@Param("productId") Integer productId);
+
+    // Active variations of a product with their attributes fetched (product detail page)
+    @Query("SELECT DISTINCT pv FROM ProductVariation pv " +
+           "LEFT JOIN FETCH pv.variationAttributes va LEFT JOIN FETCH va.attribute " +
+           "WHERE pv.productId = :productId AND pv.deletedAt IS NULL")
+    List<ProductVariation> findActiveWithAttributesByProductId(@Param("productId") Integer productId);
     
     // Find deleted variations by product id
     @Query("SELECT pv FROM ProductVariation pv WHERE pv.productId = :productId AND pv.deletedAt IS NOT NULL")
@@ -54,4 +62,52 @@ public interface ProductVariationRepository extends JpaRepository<ProductVariati
     // Find variations with low stock (quantity <= threshold)
     @Query("SELECT pv FROM ProductVariation pv WHERE pv.stockQuantity - COALESCE(pv.reservedQuantity, 0) <= :threshold AND pv.deletedAt IS NULL")
     List<ProductVariation> findLowStockVariations(@Param("threshold") Integer threshold);
+
+    // Cặp (productId, campaignId) của các biến thể có promotion - dùng cho catalog index
+    @Query("SELECT DISTINCT pv.productId, pr.campaign.id FROM ProductVariation pv JOIN pv.promotions pr")
+    List<Object[]> findProductCampaignPairs();
+
+    @Query("SELECT DISTINCT pv.productId, pr.campaign.id FROM ProductVariation pv JOIN pv.promotions pr WHERE pv.productId IN :productIds")
+    List<Object[]> findProductCampaignPairsByProductIdIn(@Param("productIds") Collection<Integer> productIds);
+
+    // Sản phẩm có biến thể nằm trong campaign - dùng để tính lại giá theo campaign
+    @Query("SELECT DISTINCT pv.productId FROM ProductVariation pv JOIN pv.promotions pr WHERE pr.campaign.id = :campaignId")
+    List<Integer> findProductIdsByCampaignId(@Param("campaignId") Integer campaignId);
+
+    @Query("SELECT pv FROM ProductVariation pv JOIN FETCH pv.product WHERE pv.id IN :ids")
+    List<ProductVariation> findAllWithProductByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT pv.id FROM ProductVariation pv WHERE pv.id IN :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT DISTINCT pv.productId FROM ProductVariation pv WHERE pv.id IN :ids")
+    List<Integer> findProductIdsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Giảm reserved bằng một UPDATE tương đối, không đọc entity; tăng version để các bản entity cũ không ghi đè
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductVariation pv SET pv.reservedQuantity = pv.reservedQuantity - :quantity, " +
+           "pv.version = COALESCE(pv.version, 0) + 1, pv.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE pv.id = :id AND pv.reservedQuantity >= :quantity")
+    int decrementReservedQuantity(@Param("id") Integer id, @Param("quantity") Integer quantity);
+
+    // Giữ hàng bằng UPDATE có điều kiện: 0 dòng nghĩa là không đủ tồn khả dụng (hoặc không tồn tại)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductVariation pv SET pv.reservedQuantity = pv.reservedQuantity + :quantity, " +
+           "pv.version = COALESCE(pv.version, 0) + 1, pv.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE pv.id = :id AND pv.stockQuantity - pv.reservedQuantity >= :quantity")
+    int incrementReservedQuantityIfAvailable(@Param("id") Integer id, @Param("quantity") Integer quantity);
+
+    // Xuất kho bằng UPDATE có điều kiện: 0 dòng nghĩa là không đủ tồn kho (hoặc không tồn tại)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductVariation pv SET pv.stockQuantity = pv.stockQuantity - :quantity, " +
+           "pv.version = COALESCE(pv.version, 0) + 1, pv.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE pv.id = :id AND pv.stockQuantity >= :quantity")
+    int decrementStockQuantityIfAvailable(@Param("id") Integer id, @Param("quantity") Integer quantity);
+
+    // Bán trực tiếp (COD) bằng UPDATE có điều kiện trên tồn khả dụng: không lấn vào phần đã giữ cho đơn khác
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductVariation pv SET pv.stockQuantity = pv.stockQuantity - :quantity, " +
+           "pv.version = COALESCE(pv.version, 0) + 1, pv.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE pv.id = :id AND pv.stockQuantity - pv.reservedQuantity >= :quantity")
+    int decrementAvailableStockQuantity(@Param("id") Integer id, @Param("quantity") Integer quantity);
 }
\ No newline at end of file
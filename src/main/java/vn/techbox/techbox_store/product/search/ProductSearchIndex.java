@@ -0,0 +1,495 @@
+package vn.techbox.techbox_store.product.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import vn.techbox.techbox_store.product.event.ProductChangedEvent;
+import vn.techbox.techbox_store.product.model.Product;
+import vn.techbox.techbox_store.product.model.ProductAttribute;
+import vn.techbox.techbox_store.product.model.ProductStatus;
+import vn.techbox.techbox_store.product.repository.ProductAttributeRepository;
+import vn.techbox.techbox_store.product.repository.ProductRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory inverted index for product full-text search.
+ *
+ * Indexes product name, SPU, description and attribute values after Vietnamese diacritic
+ * folding. Every token is stored as an exact term and, for short fields, as edge n-grams
+ * (prefixes) so partial words typed in a search box still match. Results are ranked with
+ * BM25F: per-field term frequencies are weighted, normalized by field length and combined
+ * before saturation.
+ *
+ * Name and SPU filters ({@link #findIdsContaining}) match case-insensitive substrings of the
+ * stored values instead, the same rows as the {@code LIKE '%...%'} queries they replace. The
+ * lower-cased values are indexed by trigram: the posting lists of the query's trigrams are
+ * intersected and only those candidates are checked with {@code contains}.
+ *
+ * Built when the application is ready and refreshed per product after every committed
+ * {@link ProductChangedEvent}. A failed build or refresh keeps serving the previous index; the
+ * products involved are retried every {@code search.index.retry-interval-ms}, and the whole
+ * index is rebuilt nightly as a safety net. Disabled with {@code search.index.enabled=false}.
+ */
+@Component
+@Slf4j
+public class ProductSearchIndex {
+
+    public enum Field {
+        NAME('n', 3.0f, true),
+        SPU('s', 2.0f, true),
+        ATTRIBUTE('a', 1.5f, true),
+        DESCRIPTION('d', 1.0f, false);
+
+        private final char code;
+        private final float weight;
+        private final boolean prefixed;
+
+        Field(char code, float weight, boolean prefixed) {
+            this.code = code;
+            this.weight = weight;
+            this.prefixed = prefixed;
+        }
+
+        String exactKey(String token) {
+            return code + ":" + token;
+        }
+
+        String prefixKey(String prefix) {
+            return code + "^" + prefix;
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // Prefix-only matches count less than whole-word matches
+    private static final float PREFIX_WEIGHT = 0.5f;
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int GRAM_LENGTH = 3;
+
+    private final ProductRepository productRepository;
+    private final ProductAttributeRepository productAttributeRepository;
+    private final boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object refreshMonitor = new Object();
+    private volatile boolean ready = false;
+    // Products whose last refresh failed; retried by retryFailed()
+    private final Set<Integer> failedRefreshes = ConcurrentHashMap.newKeySet();
+
+    // ===== Index state (guarded by lock) =====
+    private final Map<String, Postings> postings = new HashMap<>();
+    // Trigrams of the lower-cased name and SPU, keyed like the terms: field code + "~" + trigram
+    private final Map<String, Postings> grams = new HashMap<>();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private final long[] totalFieldLengths = new long[FIELDS.length];
+
+    public ProductSearchIndex(ProductRepository productRepository,
+                              ProductAttributeRepository productAttributeRepository,
+                              @Value("${search.index.enabled:true}") boolean enabled) {
+        this.productRepository = productRepository;
+        this.productAttributeRepository = productAttributeRepository;
+        this.enabled = enabled;
+    }
+
+    public boolean isAvailable() {
+        return enabled && ready;
+    }
+
+    // ============================================
+    // Build & maintenance
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            log.info("Product search index is disabled, text search uses database queries");
+            return;
+        }
+        rebuild();
+    }
+
+    /**
+     * Full rebuild as a safety net against missed refreshes
+     */
+    @Scheduled(cron = "${search.index.rebuild-cron:0 20 3 * * *}")
+    public void scheduledRebuild() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Retry a build that never succeeded, or the products whose refresh failed
+     */
+    @Scheduled(fixedDelayString = "${search.index.retry-interval-ms:30000}")
+    public void retryFailed() {
+        if (!enabled) {
+            return;
+        }
+        if (!ready) {
+            rebuild();
+        } else if (!failedRefreshes.isEmpty()) {
+            List<Integer> productIds = new ArrayList<>(failedRefreshes);
+            failedRefreshes.removeAll(productIds);
+            refresh(productIds);
+        }
+    }
+
+    @Async
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (!enabled || event.productIds().isEmpty()) {
+            return;
+        }
+        refresh(event.productIds());
+    }
+
+    public void rebuild() {
+        synchronized (refreshMonitor) {
+            long start = System.currentTimeMillis();
+            try {
+                List<Product> products = productRepository.findAll();
+                Map<Integer, List<ProductAttribute>> attributes = productAttributeRepository.findAll().stream()
+                        .collect(Collectors.groupingBy(ProductAttribute::getProductId));
+
+                lock.writeLock().lock();
+                try {
+                    postings.clear();
+                    grams.clear();
+                    documents.clear();
+                    Arrays.fill(totalFieldLengths, 0);
+                    for (Product product : products) {
+                        put(product, attributes.get(product.getId()));
+                    }
+                    ready = true;
+                    failedRefreshes.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.info("Product search index built with {} products and {} terms in {} ms",
+                        products.size(), postings.size(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                // Nothing was cleared yet: a previously built index keeps serving until the retry
+                log.error("Failed to build product search index{}", ready ? ", keeping the previous one" : ", falling back to database queries", e);
+            }
+        }
+    }
+
+    public void refresh(Collection<Integer> productIds) {
+        synchronized (refreshMonitor) {
+            try {
+                Map<Integer, Product> products = productRepository.findAllById(productIds).stream()
+                        .collect(Collectors.toMap(Product::getId, Function.identity()));
+                Map<Integer, List<ProductAttribute>> attributes = productAttributeRepository.findByProductIdIn(productIds).stream()
+                        .collect(Collectors.groupingBy(ProductAttribute::getProductId));
+
+                lock.writeLock().lock();
+                try {
+                    for (Integer productId : productIds) {
+                        remove(productId);
+                        Product product = products.get(productId);
+                        if (product != null) {
+                            put(product, attributes.get(productId));
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (Exception e) {
+                failedRefreshes.addAll(productIds);
+                log.error("Failed to refresh search index for products {}, will retry", productIds, e);
+            }
+        }
+    }
+
+    // ============================================
+    // Queries
+
+    /**
+     * Product ids matching every query token in any field, best match first
+     */
+    public List<Integer> search(String query, ProductStatus status) {
+        lock.readLock().lock();
+        try {
+            Map<Integer, Float> scores = score(query, EnumSet.allOf(Field.class));
+            return scores.entrySet().stream()
+                    .filter(e -> status == null || documents.get(e.getKey()).status == status)
+                    .sorted(Map.Entry.<Integer, Float>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of products whose name or SPU contains {@code text}, ignoring case: the rows
+     * {@code LOWER(field) LIKE '%text%'} would return
+     */
+    public Set<Integer> findIdsContaining(String text, Field field) {
+        if (field != Field.NAME && field != Field.SPU) {
+            throw new IllegalArgumentException("Substring match is only supported for NAME and SPU: " + field);
+        }
+        String needle = text.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            Set<Integer> ids = new HashSet<>();
+            if (needle.length() < GRAM_LENGTH) {
+                // Too short for a trigram: scan, such needles match most products anyway
+                for (Map.Entry<Integer, Document> entry : documents.entrySet()) {
+                    if (contains(entry.getValue(), field, needle)) {
+                        ids.add(entry.getKey());
+                    }
+                }
+                return ids;
+            }
+
+            // Every product containing the needle has all of its trigrams; start from the rarest
+            List<Postings> lists = new ArrayList<>();
+            for (String gram : trigrams(needle)) {
+                Postings gramPostings = grams.get(gramKey(field, gram));
+                if (gramPostings == null) {
+                    return ids;
+                }
+                lists.add(gramPostings);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            Postings rarest = lists.get(0);
+            candidates:
+            for (int i = 0; i < rarest.size; i++) {
+                int productId = rarest.ids[i];
+                for (int j = 1; j < lists.size(); j++) {
+                    if (!lists.get(j).contains(productId)) {
+                        continue candidates;
+                    }
+                }
+                // Trigrams may appear in another order or apart: confirm the substring
+                if (contains(documents.get(productId), field, needle)) {
+                    ids.add(productId);
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean contains(Document document, Field field, String needle) {
+        String value = field == Field.NAME ? document.name() : document.spu();
+        return value != null && value.contains(needle);
+    }
+
+    private Map<Integer, Float> score(String query, EnumSet<Field> fields) {
+        List<String> tokens = VietnameseTextNormalizer.tokenize(query).stream().distinct().toList();
+        if (tokens.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Integer, Float> scores = null;
+        for (String token : tokens) {
+            // Length-normalized, field-weighted term frequency per document
+            Map<Integer, Float> weightedTf = new HashMap<>();
+            for (Field field : fields) {
+                accumulate(weightedTf, postings.get(field.exactKey(token)), field, 1.0f);
+                if (field.prefixed && token.length() >= MIN_PREFIX_LENGTH) {
+                    accumulate(weightedTf, postings.get(field.prefixKey(token)), field, PREFIX_WEIGHT);
+                }
+            }
+            if (weightedTf.isEmpty()) {
+                return Map.of();
+            }
+
+            int documentFrequency = weightedTf.size();
+            float idf = (float) Math.log(1 + (documents.size() - documentFrequency + 0.5) / (documentFrequency + 0.5));
+
+            Map<Integer, Float> next = new HashMap<>();
+            for (Map.Entry<Integer, Float> entry : weightedTf.entrySet()) {
+                Integer productId = entry.getKey();
+                if (scores != null && !scores.containsKey(productId)) {
+                    continue;
+                }
+                float tf = entry.getValue();
+                float tokenScore = idf * tf * (K1 + 1) / (tf + K1);
+                next.put(productId, (scores == null ? 0f : scores.get(productId)) + tokenScore);
+            }
+            scores = next;
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+        return scores;
+    }
+
+    private void accumulate(Map<Integer, Float> weightedTf, Postings termPostings, Field field, float factor) {
+        if (termPostings == null) {
+            return;
+        }
+        int f = field.ordinal();
+        float averageLength = documents.isEmpty() ? 1f : Math.max(1f, (float) totalFieldLengths[f] / documents.size());
+        for (int i = 0; i < termPostings.size; i++) {
+            int productId = termPostings.ids[i];
+            float lengthNorm = 1 - B + B * documents.get(productId).fieldLengths[f] / averageLength;
+            weightedTf.merge(productId, factor * field.weight * termPostings.frequencies[i] / lengthNorm, Float::sum);
+        }
+    }
+
+    // ============================================
+    // Index maintenance (caller holds write lock)
+
+    private void put(Product product, List<ProductAttribute> attributes) {
+        Map<Field, List<String>> fieldTokens = new EnumMap<>(Field.class);
+        fieldTokens.put(Field.NAME, VietnameseTextNormalizer.tokenize(product.getName()));
+        fieldTokens.put(Field.SPU, VietnameseTextNormalizer.tokenize(product.getSpu()));
+        fieldTokens.put(Field.DESCRIPTION, VietnameseTextNormalizer.tokenize(product.getDescription()));
+        List<String> attributeTokens = new ArrayList<>();
+        if (attributes != null) {
+            for (ProductAttribute attribute : attributes) {
+                attributeTokens.addAll(VietnameseTextNormalizer.tokenize(attribute.getValue()));
+            }
+        }
+        fieldTokens.put(Field.ATTRIBUTE, attributeTokens);
+
+        int[] fieldLengths = new int[FIELDS.length];
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (Field field : FIELDS) {
+            List<String> tokens = fieldTokens.get(field);
+            fieldLengths[field.ordinal()] = tokens.size();
+            totalFieldLengths[field.ordinal()] += tokens.size();
+            for (String token : tokens) {
+                frequencies.merge(field.exactKey(token), 1, Integer::sum);
+                if (field.prefixed) {
+                    for (int length = MIN_PREFIX_LENGTH; length < token.length(); length++) {
+                        frequencies.merge(field.prefixKey(token.substring(0, length)), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+
+        int productId = product.getId();
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new Postings()).put(productId, entry.getValue());
+        }
+        Document document = new Document(product.getStatus(), lowerCase(product.getName()), lowerCase(product.getSpu()),
+                fieldLengths, frequencies.keySet().toArray(String[]::new));
+        for (String key : gramKeys(document)) {
+            grams.computeIfAbsent(key, k -> new Postings()).put(productId, 1);
+        }
+        documents.put(productId, document);
+    }
+
+    private void remove(Integer productId) {
+        Document document = documents.remove(productId);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.terms) {
+            Postings termPostings = postings.get(term);
+            if (termPostings != null) {
+                termPostings.remove(productId);
+                if (termPostings.size == 0) {
+                    postings.remove(term);
+                }
+            }
+        }
+        for (String key : gramKeys(document)) {
+            Postings gramPostings = grams.get(key);
+            if (gramPostings != null) {
+                gramPostings.remove(productId);
+                if (gramPostings.size == 0) {
+                    grams.remove(key);
+                }
+            }
+        }
+        for (int f = 0; f < FIELDS.length; f++) {
+            totalFieldLengths[f] -= document.fieldLengths[f];
+        }
+    }
+
+    // Recomputed from the stored values on removal, so documents do not keep their trigrams
+    private static Set<String> gramKeys(Document document) {
+        Set<String> keys = new HashSet<>();
+        if (document.name() != null) {
+            for (String gram : trigrams(document.name())) {
+                keys.add(gramKey(Field.NAME, gram));
+            }
+        }
+        if (document.spu() != null) {
+            for (String gram : trigrams(document.spu())) {
+                keys.add(gramKey(Field.SPU, gram));
+            }
+        }
+        return keys;
+    }
+
+    private static Set<String> trigrams(String value) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+            result.add(value.substring(i, i + GRAM_LENGTH));
+        }
+        return result;
+    }
+
+    private static String gramKey(Field field, String gram) {
+        return field.code + "~" + gram;
+    }
+
+    private static String lowerCase(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    private record Document(ProductStatus status, String name, String spu, int[] fieldLengths, String[] terms) {
+    }
+
+    /**
+     * Posting list: product ids sorted ascending with their term frequency
+     */
+    private static class Postings {
+        int[] ids = new int[2];
+        int[] frequencies = new int[2];
+        int size;
+
+        void put(int id, int frequency) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                frequencies[pos] = frequency;
+                return;
+            }
+            int insertAt = -pos - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            System.arraycopy(frequencies, insertAt, frequencies, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            frequencies[insertAt] = frequency;
+            size++;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        void remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            System.arraycopy(frequencies, pos + 1, frequencies, pos, size - pos - 1);
+            size--;
+        }
+    }
+}
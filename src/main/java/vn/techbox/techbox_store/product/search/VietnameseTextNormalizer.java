@@ -0,0 +1,50 @@
+package vn.techbox.techbox_store.product.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Chuẩn hóa văn bản tiếng Việt cho tìm kiếm: chữ thường, bỏ dấu (kể cả đ -> d),
+ * bỏ thẻ HTML và tách thành các token chữ/số.
+ * Ví dụ: "Điện thoại Xiaomi Redmi" -> [dien, thoai, xiaomi, redmi]
+ */
+public final class VietnameseTextNormalizer {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern HTML_TAGS = Pattern.compile("<[^>]*>");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]+");
+
+    private VietnameseTextNormalizer() {
+    }
+
+    /**
+     * Lowercase and strip Vietnamese diacritics
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT).replace('đ', 'd');
+        return COMBINING_MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+    }
+
+    /**
+     * Fold then split into alphanumeric tokens
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String plain = HTML_TAGS.matcher(text).replaceAll(" ");
+        for (String token : NON_ALPHANUMERIC.split(fold(plain))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
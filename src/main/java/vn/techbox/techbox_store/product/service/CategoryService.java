@@ -25,6 +25,19 @@ public interface CategoryService {
      * @return list of category IDs including parent and all children recursively
      */
     List<Integer> getAllChildCategoryIds(Integer parentCategoryId);
+
+    /**
+     * Get ancestor category IDs from the root down to the direct parent
+     *
+     * @param categoryId the category ID
+     * @return list of ancestor IDs (empty for root categories)
+     */
+    List<Integer> getAncestorCategoryIds(Integer categoryId);
+
+    /**
+     * Get the breadcrumb path from the root category down to the given category (inclusive)
+     */
+    List<CategoryResponse> getCategoryBreadcrumb(Integer categoryId);
     
     CategoryResponse createCategory(CategoryCreateRequest request);
     
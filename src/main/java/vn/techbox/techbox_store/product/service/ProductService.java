@@ -1,6 +1,7 @@
 package vn.techbox.techbox_store.product.service;
 
 import org.springframework.data.domain.Page;
+import vn.techbox.techbox_store.common.pagination.CursorPage;
 import vn.techbox.techbox_store.product.dto.productDto.*;
 
 import java.util.List;
@@ -17,12 +18,21 @@ public interface ProductService {
     
     // Search & Filter với nhiều tiêu chí + phân trang
     Page<ProductListResponse> filterProducts(ProductFilterRequest filterRequest);
+
+    // Tìm kiếm toàn văn, sắp xếp theo độ liên quan
+    Page<ProductListResponse> searchProducts(String query, int page, int size);
+
+    // Số lượng sản phẩm theo từng facet (danh mục, thương hiệu, thuộc tính) cho bộ lọc
+    ProductFacetResponse getProductFacets(ProductFilterRequest filterRequest);
     
     // Lấy danh sách sản phẩm theo danh sách SPU
     Page<ProductListResponse> getProductsBySpus(List<String> spus, int page, int size);
     
     Page<ProductManagementListResponse> filterProductsForManagement(ProductFilterRequest filterRequest);
 
+    // Phân trang theo con trỏ, mới nhất trước; bỏ qua sortBy/page và không đếm tổng
+    CursorPage<ProductManagementListResponse> filterProductsForManagementByCursor(ProductFilterRequest filterRequest, String cursor);
+
     void addAttributesToProduct(Integer productId, Map<Integer, String> attributes);
     
 
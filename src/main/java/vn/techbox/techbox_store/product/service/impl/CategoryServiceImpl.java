@@ -6,6 +6,7 @@ import org.springframework.transaction.annotation.Transactional;
 import vn.techbox.techbox_store.product.dto.CategoryDto.CategoryCreateRequest;
 import vn.techbox.techbox_store.product.dto.CategoryDto.CategoryResponse;
 import vn.techbox.techbox_store.product.dto.CategoryDto.CategoryUpdateRequest;
+import vn.techbox.techbox_store.product.index.CategoryClosureIndex;
 import vn.techbox.techbox_store.product.mapper.CategoryMapper;
 import vn.techbox.techbox_store.product.model.Category;
 import vn.techbox.techbox_store.product.repository.CategoryRepository;
@@ -15,6 +16,7 @@ import vn.techbox.techbox_store.product.service.CategoryService;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -26,6 +28,7 @@ public class CategoryServiceImpl implements CategoryService {
     private final CategoryRepository categoryRepository;
     private final ProductRepository productRepository;
     private final CategoryMapper categoryMapper;
+    private final CategoryClosureIndex categoryClosureIndex;
     
     @Override
     @Transactional(readOnly = true)
@@ -64,19 +67,37 @@ public class CategoryServiceImpl implements CategoryService {
     @Override
     @Transactional(readOnly = true)
     public List<Integer> getAllChildCategoryIds(Integer parentCategoryId) {
-        List<Integer> result = new ArrayList<>();
-        
-        // Add the parent category itself
-        result.add(parentCategoryId);
-        
-        // Recursively get all child category IDs
-        List<Category> childCategories = categoryRepository.findByParentCategoryId(parentCategoryId);
-        for (Category child : childCategories) {
-            // Recursive call to get all descendants
-            result.addAll(getAllChildCategoryIds(child.getId()));
+        // Served from the in-memory closure (parent itself first, then all descendants)
+        return categoryClosureIndex.getSelfAndDescendantIds(parentCategoryId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Integer> getAncestorCategoryIds(Integer categoryId) {
+        return categoryClosureIndex.getAncestorIds(categoryId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<CategoryResponse> getCategoryBreadcrumb(Integer categoryId) {
+        if (categoryClosureIndex.getName(categoryId).isEmpty()) {
+            throw new RuntimeException("Category not found with id: " + categoryId);
         }
-        
-        return result;
+
+        List<Integer> path = new ArrayList<>(categoryClosureIndex.getAncestorIds(categoryId));
+        path.add(categoryId);
+
+        List<CategoryResponse> breadcrumb = new ArrayList<>(path.size());
+        for (Integer id : path) {
+            Integer parentId = categoryClosureIndex.getParentId(id).orElse(null);
+            breadcrumb.add(CategoryResponse.builder()
+                    .id(id)
+                    .name(categoryClosureIndex.getName(id).orElse(null))
+                    .parentCategoryId(parentId)
+                    .parentCategoryName(parentId != null ? categoryClosureIndex.getName(parentId).orElse(null) : null)
+                    .build());
+        }
+        return breadcrumb;
     }
     
     private void updateParentChildCategories(Integer parentCategoryId, Category childCategory) {
@@ -124,6 +145,8 @@ public class CategoryServiceImpl implements CategoryService {
         // Update parent category's child list
         updateParentChildCategories(request.getParentCategoryId(), savedCategory);
 
+        categoryClosureIndex.invalidate();
+
         return categoryMapper.toResponse(savedCategory);
     }
 
@@ -145,6 +168,11 @@ public class CategoryServiceImpl implements CategoryService {
             if (request.getParentCategoryId().equals(id)) {
                 throw new RuntimeException("Category cannot be its own parent");
             }
+
+            // Prevent cycles (category cannot be moved under one of its descendants)
+            if (categoryClosureIndex.isDescendant(request.getParentCategoryId(), id)) {
+                throw new RuntimeException("Category cannot be moved under its own subcategory");
+            }
         }
 
         // Check if category name already exists (excluding current category)
@@ -153,7 +181,7 @@ public class CategoryServiceImpl implements CategoryService {
         }
 
         // Remove from old parent if parentCategoryId is changed
-        if (!request.getParentCategoryId().equals(category.getParentCategoryId())) {
+        if (!Objects.equals(request.getParentCategoryId(), category.getParentCategoryId())) {
             removeChildFromParent(category.getParentCategoryId(), category);
         }
 
@@ -165,6 +193,8 @@ public class CategoryServiceImpl implements CategoryService {
         // Update new parent's child list
         updateParentChildCategories(request.getParentCategoryId(), updatedCategory);
 
+        categoryClosureIndex.invalidate();
+
         return categoryMapper.toResponse(updatedCategory);
     }
     
@@ -187,6 +217,7 @@ public class CategoryServiceImpl implements CategoryService {
         }
         
         categoryRepository.delete(category);
+        categoryClosureIndex.invalidate();
     }
     
     @Override
@@ -2,20 +2,23 @@ package vn.techbox.techbox_store.product.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import vn.techbox.techbox_store.product.event.ProductChangedEvent;
 import vn.techbox.techbox_store.product.model.Product;
 import vn.techbox.techbox_store.product.model.ProductVariation;
+import vn.techbox.techbox_store.product.pricing.ProductBulkRepricer;
 import vn.techbox.techbox_store.product.repository.ProductRepository;
 import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
 import vn.techbox.techbox_store.product.service.ProductPriceUpdateService;
-import vn.techbox.techbox_store.promotion.model.Promotion;
-import vn.techbox.techbox_store.promotion.repository.PromotionRepository;
+import vn.techbox.techbox_store.promotion.engine.PromotionEngine;
+import vn.techbox.techbox_store.promotion.engine.PromotionSnapshot;
 
 import java.math.BigDecimal;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
 
 @Slf4j
 @Service
@@ -25,7 +28,9 @@ public class ProductPriceUpdateServiceImpl implements ProductPriceUpdateService
     
     private final ProductRepository productRepository;
     private final ProductVariationRepository productVariationRepository;
-    private final PromotionRepository promotionRepository;
+    private final PromotionEngine promotionEngine;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProductBulkRepricer productBulkRepricer;
     
     @Override
     public void updateProductPricing(Integer productId) {
@@ -44,11 +49,15 @@ public class ProductPriceUpdateServiceImpl implements ProductPriceUpdateService
             product.setDiscountType(null);
             product.setDiscountValue(null);
             productRepository.save(product);
+            eventPublisher.publishEvent(ProductChangedEvent.of(productId));
             return;
         }
         
+        // Promotion lấy từ bảng promotion đang hoạt động dùng chung, không truy vấn thêm
+        PromotionSnapshot promotions = promotionEngine.snapshot();
+        
         // Tìm biến thể có giá sau giảm thấp nhất
-        VariationWithDiscount lowestPriceVariation = findLowestPriceVariation(variations);
+        VariationWithDiscount lowestPriceVariation = findLowestPriceVariation(variations, promotions);
         
         if (lowestPriceVariation != null) {
             product.setDisplayOriginalPrice(lowestPriceVariation.originalPrice);
@@ -57,64 +66,41 @@ public class ProductPriceUpdateServiceImpl implements ProductPriceUpdateService
             product.setDiscountValue(lowestPriceVariation.discountValue);
             
             productRepository.save(product);
+            eventPublisher.publishEvent(ProductChangedEvent.of(productId));
         }
     }
     
+    /**
+     * Chạy ngoài transaction của service để mỗi chunk của bulk repricer commit riêng
+     */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void updateAllProductPricing() {
         log.info("Starting to update pricing for all products");
-        List<Product> allProducts = productRepository.findAllActive();
-        
-        int count = 0;
-        for (Product product : allProducts) {
-            try {
-                updateProductPricing(product.getId());
-                count++;
-            } catch (Exception e) {
-                log.error("Error updating pricing for product ID: {}", product.getId(), e);
-            }
-        }
-        
-        log.info("Completed pricing update for {} products", count);
+        ProductBulkRepricer.RepriceResult result = productBulkRepricer.repriceAll();
+        log.info("Completed pricing update for {} products ({} changed)", result.scanned(), result.updated());
     }
     
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void updateProductPricingByCampaign(Integer campaignId) {
         log.info("Updating product pricing for campaign ID: {}", campaignId);
         
-        // Lấy tất cả promotions trong campaign này
-        List<Promotion> promotions = promotionRepository.findByCampaignId(campaignId);
-        
-        // Lấy danh sách product ID unique từ promotions
-        List<Integer> productIds = promotions.stream()
-                .map(Promotion::getProductVariationId)
-                .distinct()
-                .map(variationId -> {
-                    ProductVariation variation = productVariationRepository.findById(variationId).orElse(null);
-                    return variation != null ? variation.getProductId() : null;
-                })
-                .filter(java.util.Objects::nonNull)
-                .distinct()
-                .toList();
+        // Lấy danh sách product ID unique từ promotions của campaign
+        List<Integer> productIds = productVariationRepository.findProductIdsByCampaignId(campaignId);
         
         log.info("Found {} products to update for campaign ID: {}", productIds.size(), campaignId);
         
-        // Cập nhật giá cho từng sản phẩm
-        for (Integer productId : productIds) {
-            try {
-                updateProductPricing(productId);
-            } catch (Exception e) {
-                log.error("Error updating pricing for product ID: {} in campaign: {}", productId, campaignId, e);
-            }
-        }
+        productBulkRepricer.reprice(productIds);
     }
     
     /**
      * Tìm biến thể có giá sau giảm thấp nhất
      */
-    private VariationWithDiscount findLowestPriceVariation(List<ProductVariation> variations) {
+    private VariationWithDiscount findLowestPriceVariation(List<ProductVariation> variations,
+                                                           PromotionSnapshot promotions) {
         return variations.stream()
-                .map(this::calculateVariationPricing)
+                .map(variation -> calculateVariationPricing(variation, promotions))
                 .min(Comparator.comparing(v -> v.salePrice))
                 .orElse(null);
     }
@@ -122,27 +108,19 @@ public class ProductPriceUpdateServiceImpl implements ProductPriceUpdateService
     /**
      * Tính toán giá cho một biến thể (bao gồm promotion nếu có)
      */
-    private VariationWithDiscount calculateVariationPricing(ProductVariation variation) {
+    private VariationWithDiscount calculateVariationPricing(ProductVariation variation, PromotionSnapshot promotions) {
         BigDecimal originalPrice = variation.getPrice();
         
-        // Tìm promotion active cho biến thể này
-        Optional<Promotion> activePromotion = promotionRepository
-                .findByProductVariationId(variation.getId())
-                .stream()
-                .filter(Promotion::isActive)
-                .findFirst();
+        // Promotion tốt nhất đang hoạt động cho biến thể này
+        PromotionSnapshot.PromotionPrice price = promotions.price(variation.getId(), originalPrice, 1);
         
-        if (activePromotion.isPresent()) {
-            Promotion promotion = activePromotion.get();
-            BigDecimal discount = promotion.calculateDiscount(originalPrice, 1);
-            BigDecimal salePrice = originalPrice.subtract(discount);
-            
+        if (price.hasPromotion()) {
             return new VariationWithDiscount(
                     variation.getId(),
                     originalPrice,
-                    salePrice,
-                    promotion.getDiscountType().name(),
-                    promotion.getDiscountValue()
+                    price.unitSalePrice(),
+                    price.promotion().discountType().name(),
+                    price.promotion().discountValue()
             );
         } else {
             // Không có promotion
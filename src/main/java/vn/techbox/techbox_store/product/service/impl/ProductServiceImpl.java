@@ -1,23 +1,33 @@
 package vn.techbox.techbox_store.product.service.impl;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import vn.techbox.techbox_store.common.pagination.CursorPage;
+import vn.techbox.techbox_store.common.pagination.SeekCursor;
+import vn.techbox.techbox_store.product.cache.ProductDetailCache;
 import vn.techbox.techbox_store.product.dto.productDto.*;
+import vn.techbox.techbox_store.product.event.ProductChangedEvent;
 import vn.techbox.techbox_store.product.helpers.ProductFilterHelper;
 import vn.techbox.techbox_store.product.helpers.SortHelper;
+import vn.techbox.techbox_store.product.index.ProductCatalogIndex;
 import vn.techbox.techbox_store.product.model.*;
 import vn.techbox.techbox_store.product.repository.*;
 import vn.techbox.techbox_store.product.mapper.ProductMapper;
+import vn.techbox.techbox_store.product.search.ProductSearchIndex;
 import vn.techbox.techbox_store.product.service.ProductPriceUpdateService;
 import vn.techbox.techbox_store.product.service.ProductService;
 import vn.techbox.techbox_store.product.service.ProductVariationService;
 import vn.techbox.techbox_store.product.specification.ProductSpecification;
+import vn.techbox.techbox_store.promotion.engine.PromotionEngine;
+import vn.techbox.techbox_store.promotion.engine.PromotionSnapshot;
 import vn.techbox.techbox_store.promotion.model.Promotion;
 import vn.techbox.techbox_store.promotion.model.PromotionType;
 import vn.techbox.techbox_store.promotion.repository.PromotionRepository;
@@ -25,7 +35,9 @@ import vn.techbox.techbox_store.review.repository.ReviewRepository;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -38,10 +50,10 @@ public class ProductServiceImpl implements ProductService {
     private final BrandRepository brandRepository;
     private final ProductAttributeRepository productAttributeRepository;
     private final ProductVariationService productVariationService;
-    private final VariationAttributeRepository variationAttributeRepository;
     private final ProductVariationImageRepository productVariationImageRepository;
     private final ReviewRepository reviewRepository;
     private final PromotionRepository promotionRepository;
+    private final PromotionEngine promotionEngine;
     private final ProductMapper productMapper;
     private final ProductFilterHelper productFilterHelper;
     private final SortHelper sortHelper;
@@ -49,6 +61,10 @@ public class ProductServiceImpl implements ProductService {
     private final ProductVariationRepository productVariationRepository;
     private final AttributeRepository attributeRepository;
     private final ProductPriceUpdateService productPriceUpdateService;
+    private final ProductCatalogIndex productCatalogIndex;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductDetailCache productDetailCache;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional(readOnly = true)
@@ -61,6 +77,11 @@ public class ProductServiceImpl implements ProductService {
         int page = filter.getPage() != null ? filter.getPage() : 0;
         int size = filter.getSize() != null ? filter.getSize() : 20;
         Pageable pageable = PageRequest.of(page, size, sort);
+
+        // Serve from in-memory catalog index when it is built, otherwise fall back to the database
+        if (productCatalogIndex.isAvailable()) {
+            return productCatalogIndex.filter(filter, pageable);
+        }
         
         Specification<Product> spec = productSpecification.buildFilterSpecification(filter);
         
@@ -71,6 +92,42 @@ public class ProductServiceImpl implements ProductService {
         return productsPage.map(productMapper::toListResponse);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Page<ProductListResponse> searchProducts(String query, int page, int size) {
+        if (!productSearchIndex.isAvailable()) {
+            // Fallback: partial name match
+            return filterProducts(ProductFilterRequest.builder().name(query).page(page).size(size).build());
+        }
+
+        Pageable pageable = PageRequest.of(page, size);
+        List<Integer> rankedIds = productSearchIndex.search(query, ProductStatus.PUBLISHED);
+
+        int from = (int) Math.min(pageable.getOffset(), rankedIds.size());
+        int to = Math.min(from + size, rankedIds.size());
+        List<Integer> pageIds = rankedIds.subList(from, to);
+
+        // Load only the requested page, then restore relevance order
+        Map<Integer, Product> products = productRepository.findAllById(pageIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<ProductListResponse> content = pageIds.stream()
+                .map(products::get)
+                .filter(Objects::nonNull)
+                .map(productMapper::toListResponse)
+                .toList();
+
+        return new PageImpl<>(content, pageable, rankedIds.size());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ProductFacetResponse getProductFacets(ProductFilterRequest filterRequest) {
+        if (!productCatalogIndex.isAvailable()) {
+            throw new IllegalStateException("Catalog index is not available");
+        }
+        return productCatalogIndex.facets(productFilterHelper.prepareFilter(filterRequest));
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Page<ProductListResponse> getProductsBySpus(List<String> spus, int page, int size) {
@@ -101,10 +158,38 @@ public class ProductServiceImpl implements ProductService {
         return productsPage.map(productMapper::toManagementListResponse);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<ProductManagementListResponse> filterProductsForManagementByCursor(ProductFilterRequest filterRequest,
+                                                                                         String cursor) {
+        ProductFilterRequest filter = productFilterHelper.prepareManagementFilter(filterRequest);
+        SeekCursor after = SeekCursor.decode(cursor);
+        int limit = CursorPage.limit(filter.getSize());
+
+        Specification<Product> spec = productSpecification.buildFilterSpecification(filter)
+                .and(ProductSpecification.createdBefore(after));
+        Sort newestFirst = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"));
+
+        // limit + 1 rows and no count query
+        List<Product> products = productRepository.findBy(spec, query -> query.sortBy(newestFirst).limit(limit + 1).all());
+
+        return CursorPage.of(
+                products.stream().map(productMapper::toManagementListResponse).collect(Collectors.toList()),
+                limit,
+                row -> new SeekCursor(row.getCreatedAt(), row.getId()));
+    }
+
     @Override
     @Transactional(readOnly = true)
     public Optional<ProductDetailResponse> getProductDetailById(Integer id) {
-        Optional<Product> productOpt = productRepository.findActiveById(id);
+        Optional<ProductDetailResponse> cached = productDetailCache.get(id);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        long stamp = productDetailCache.stamp(id);
+
+        // Product + category + brand + attributes (with attribute names) in one query
+        Optional<Product> productOpt = productRepository.findActiveDetailById(id);
         
         if (productOpt.isEmpty()) {
             return Optional.empty();
@@ -112,64 +197,46 @@ public class ProductServiceImpl implements ProductService {
         
         Product product = productOpt.get();
         
-        // Get category and brand names
-        String categoryName = product.getCategoryId() != null 
-                ? categoryRepository.findById(product.getCategoryId())
-                    .map(Category::getName).orElse(null)
-                : null;
+        String categoryName = product.getCategory() != null ? product.getCategory().getName() : null;
+        String brandName = product.getBrand() != null ? product.getBrand().getName() : null;
         
-        String brandName = product.getBrandId() != null
-                ? brandRepository.findById(product.getBrandId())
-                    .map(Brand::getName).orElse(null)
-                : null;
-        
-        // Get product attributes with their attribute details
-        List<ProductAttribute> productAttributes = 
-                productAttributeRepository.findByProductId(product.getId());
-        
-        // Get all active product variations using variation service
+        // Active variations with their attributes (with attribute names) in one query
         List<ProductVariation> productVariations = 
-                productVariationService.getActiveVariationEntitiesByProductId(product.getId());
+                productVariationRepository.findActiveWithAttributesByProductId(product.getId());
         
-        // Batch load all related data to avoid N+1 queries
         List<Integer> variationIds = productVariations.stream()
                 .map(ProductVariation::getId)
                 .collect(Collectors.toList());
         
-        // Batch fetch variation images
-        Map<Integer, List<ProductVariationImage>> imagesMap = 
-                productVariationImageRepository.findByProductVariationIdIn(variationIds)
-                    .stream()
-                    .collect(Collectors.groupingBy(img -> img.getProductVariationId()));
+        Map<Integer, List<VariationAttribute>> variationAttributesMap = productVariations.stream()
+                .collect(Collectors.toMap(ProductVariation::getId, ProductVariation::getVariationAttributes));
         
-        // Batch fetch variation attributes
-        Map<Integer, List<VariationAttribute>> variationAttributesMap = 
-                variationAttributeRepository.findByProductVariationIdIn(variationIds)
+        // Images are a separate bag, so they are batch fetched rather than joined
+        Map<Integer, List<ProductVariationImage>> imagesMap = variationIds.isEmpty()
+                ? Map.of()
+                : productVariationImageRepository.findByProductVariationIdIn(variationIds)
                     .stream()
-                    .collect(Collectors.groupingBy(va -> va.getProductVariationId()));
+                    .collect(Collectors.groupingBy(img -> img.getProductVariationId()));
         
-        // Batch fetch promotions
-        Map<Integer, List<Promotion>> promotionsMap = 
-                promotionRepository.findByProductVariationIdIn(variationIds)
-                    .stream()
-                    .collect(Collectors.groupingBy(Promotion::getProductVariationId));
+        // Sale prices come from the shared active-promotion table, no promotion query
+        PromotionSnapshot promotions = promotionEngine.snapshot();
         
-        // Use mapper to convert to response
         ProductDetailResponse response = productMapper.toDetailResponse(
                 product, 
                 categoryName, 
                 brandName,
-                productAttributes,
+                product.getProductAttributes(),
                 productVariations,
                 imagesMap,
                 variationAttributesMap,
-                promotionsMap
+                promotions
         );
         
+        // Sale prices in the response change at the next campaign boundary
+        productDetailCache.put(id, response, promotions.validUntil(), stamp);
         return Optional.of(response);
     }
 
-    
     @Override
     @Transactional(readOnly = true)
     public Optional<ProductResponse> getProductById(Integer id) {
@@ -274,6 +341,8 @@ public class ProductServiceImpl implements ProductService {
             savedProduct = productRepository.save(savedProduct);
         }
 
+        eventPublisher.publishEvent(ProductChangedEvent.of(savedProduct.getId()));
+
         // Return ProductResponse
         return convertToResponse(savedProduct);
     }
@@ -329,6 +398,8 @@ public class ProductServiceImpl implements ProductService {
             }
         }
 
+        eventPublisher.publishEvent(ProductChangedEvent.of(savedProduct.getId()));
+
         // Return ProductResponse
         return convertToResponse(savedProduct);
     }    @Override
@@ -394,6 +465,7 @@ public class ProductServiceImpl implements ProductService {
         }
 
         Product updatedProduct = productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(id));
         return convertToResponse(updatedProduct);
     }
     
@@ -406,6 +478,7 @@ public class ProductServiceImpl implements ProductService {
         product.delete(); // Sets deletedAt
         product.setStatus(ProductStatus.DELETED); // Set status to DELETED
         productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(id));
     }
     
     @Override
@@ -421,6 +494,7 @@ public class ProductServiceImpl implements ProductService {
         product.restore(); // Clears deletedAt
         product.setStatus(ProductStatus.DRAFT); // Set status to DRAFT after restore
         productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(id));
     }
     
 
@@ -461,6 +535,7 @@ public class ProductServiceImpl implements ProductService {
         }
         
         productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(productId));
     }
     
     @Override
@@ -476,6 +551,7 @@ public class ProductServiceImpl implements ProductService {
         product.setTotalRatings(currentTotal + 1);
         
         productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(productId));
     }
     
     @Override
@@ -495,6 +571,7 @@ public class ProductServiceImpl implements ProductService {
         }
         
         productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(productId));
     }
     
     @Override
@@ -515,6 +592,7 @@ public class ProductServiceImpl implements ProductService {
         }
         
         productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(productId));
     }
     
     /**
@@ -547,6 +625,7 @@ public class ProductServiceImpl implements ProductService {
 
         productPriceUpdateService.updateProductPricing(id);
         productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(id));
         
         return convertToResponse(product);
     }
@@ -567,6 +646,7 @@ public class ProductServiceImpl implements ProductService {
         product.setDeletedAt(null); // Clear deleted timestamp if restoring from DELETED
         
         Product savedProduct = productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(id));
         return convertToResponse(savedProduct);
     }
     
@@ -603,6 +683,7 @@ public class ProductServiceImpl implements ProductService {
         }
         
         Product savedProduct = productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(id));
         return convertToResponse(savedProduct);
     }
     
@@ -630,7 +711,8 @@ public class ProductServiceImpl implements ProductService {
         if (!productRepository.existsById(id)) {
             throw new IllegalArgumentException("Product not found with id: " + id);
         }
-        productRepository.deleteById(id);            
+        productRepository.deleteById(id);
+        eventPublisher.publishEvent(ProductChangedEvent.of(id));
     }
 
     // New method to add attributes to a product
@@ -655,5 +737,6 @@ public class ProductServiceImpl implements ProductService {
             product.addProductAttribute(productAttribute);
         }
         productRepository.save(product);
+        eventPublisher.publishEvent(ProductChangedEvent.of(productId));
     }
 }
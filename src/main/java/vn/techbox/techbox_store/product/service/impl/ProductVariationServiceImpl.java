@@ -1,12 +1,15 @@
 package vn.techbox.techbox_store.product.service.impl;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import vn.techbox.techbox_store.product.dto.productDto.ProductVariationCreateRequest;
 import vn.techbox.techbox_store.product.dto.productDto.ProductVariationManagementResponse;
 import vn.techbox.techbox_store.product.dto.productDto.ProductVariationResponse;
 import vn.techbox.techbox_store.product.dto.productDto.ProductVariationUpdateRequest;
+import vn.techbox.techbox_store.product.event.ProductChangedEvent;
+import vn.techbox.techbox_store.product.event.ProductStockChangedEvent;
 import vn.techbox.techbox_store.product.mapper.ProductVariationMapper;
 import vn.techbox.techbox_store.product.model.Attribute;
 import vn.techbox.techbox_store.product.repository.AttributeRepository;
@@ -37,6 +40,7 @@ public class ProductVariationServiceImpl implements ProductVariationService {
     private final ProductVariationMapper productVariationMapper;
     private final AttributeRepository attributeRepository;
     private final ProductPriceUpdateService productPriceUpdateService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional(readOnly = true)
@@ -164,6 +168,7 @@ public class ProductVariationServiceImpl implements ProductVariationService {
             productPriceUpdateService.updateProductPricing(id);
         }
 
+        eventPublisher.publishEvent(ProductChangedEvent.of(product.getId()));
         return productVariationMapper.toResponse(savedVariation);
     }
     
@@ -218,6 +223,7 @@ public class ProductVariationServiceImpl implements ProductVariationService {
         }
 
         ProductVariation updatedVariation = productVariationRepository.save(variation);
+        eventPublisher.publishEvent(ProductChangedEvent.of(updatedVariation.getProductId()));
         return productVariationMapper.toResponse(updatedVariation);
     }
     
@@ -228,6 +234,7 @@ public class ProductVariationServiceImpl implements ProductVariationService {
         
         variation.delete(); // Soft delete
         productVariationRepository.save(variation);
+        eventPublisher.publishEvent(ProductChangedEvent.of(variation.getProductId()));
     }
     
     @Override
@@ -237,6 +244,7 @@ public class ProductVariationServiceImpl implements ProductVariationService {
         
         variation.restore();
         productVariationRepository.save(variation);
+        eventPublisher.publishEvent(ProductChangedEvent.of(variation.getProductId()));
     }
     
     @Override
@@ -297,6 +305,7 @@ public class ProductVariationServiceImpl implements ProductVariationService {
                 .orElseThrow(() -> new IllegalArgumentException("Product variation not found with id: " + id));
         variation.setStockQuantity(stockQuantity);
         ProductVariation updatedVariation = productVariationRepository.save(variation);
+        eventPublisher.publishEvent(ProductStockChangedEvent.of(updatedVariation));
         return productVariationMapper.toResponse(updatedVariation);
     }
     
@@ -375,6 +384,7 @@ public class ProductVariationServiceImpl implements ProductVariationService {
     public void deleteProductVariationHard(Integer id) {
         productVariationRepository.findById(id).ifPresent(variation -> {
             productVariationRepository.delete(variation);
+            eventPublisher.publishEvent(ProductChangedEvent.of(variation.getProductId()));
         });
     }
 }
\ No newline at end of file
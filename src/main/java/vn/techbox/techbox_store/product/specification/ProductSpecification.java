@@ -1,25 +1,35 @@
 package vn.techbox.techbox_store.product.specification;
 
 import jakarta.persistence.criteria.*;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Component;
 
+import vn.techbox.techbox_store.common.pagination.SeekCursor;
 import vn.techbox.techbox_store.product.dto.productDto.ProductFilterRequest;
 import vn.techbox.techbox_store.product.model.Product;
 import vn.techbox.techbox_store.product.model.ProductAttribute;
 import vn.techbox.techbox_store.product.model.ProductStatus;
 import vn.techbox.techbox_store.product.model.ProductVariation;
+import vn.techbox.techbox_store.product.search.ProductSearchIndex;
 import vn.techbox.techbox_store.promotion.model.Promotion;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 @Component
+@RequiredArgsConstructor
 @Slf4j
 public class ProductSpecification {
 
+    // Above this many matches an IN list costs more than the LIKE scan it replaces
+    private static final int MAX_SEARCH_ID_FILTER = 5000;
+
+    private final ProductSearchIndex productSearchIndex;
 
     public Specification<Product> buildFilterSpecification(ProductFilterRequest filter) {
         Specification<Product> spec = Specification.where(null);
@@ -31,12 +41,14 @@ public class ProductSpecification {
         
         // Apply name filter
         if (filter.getName() != null && !filter.getName().trim().isEmpty()) {
-            spec = spec.and(ProductSpecification.nameLike(filter.getName()));
+            spec = spec.and(textMatch(filter.getName(), ProductSearchIndex.Field.NAME,
+                    ProductSpecification.nameLike(filter.getName())));
         }
         
         // Apply SPU filter
         if (filter.getSpu() != null && !filter.getSpu().trim().isEmpty()) {
-            spec = spec.and(ProductSpecification.spuLike(filter.getSpu()));
+            spec = spec.and(textMatch(filter.getSpu(), ProductSearchIndex.Field.SPU,
+                    ProductSpecification.spuLike(filter.getSpu())));
         }
         
         // Apply brand filter
@@ -72,6 +84,44 @@ public class ProductSpecification {
         return spec;
     }
 
+    /**
+     * Resolve a name/SPU substring filter through the search index when it is available,
+     * otherwise use the given LIKE specification; both match the same rows
+     */
+    private Specification<Product> textMatch(String text, ProductSearchIndex.Field field, Specification<Product> fallback) {
+        if (!productSearchIndex.isAvailable()) {
+            return fallback;
+        }
+        Set<Integer> ids = productSearchIndex.findIdsContaining(text, field);
+        if (ids.size() > MAX_SEARCH_ID_FILTER) {
+            return fallback;
+        }
+        return ProductSpecification.idIn(ids);
+    }
+
+    /**
+     * Filter by product IDs
+     */
+    public static Specification<Product> idIn(Collection<Integer> ids) {
+        return (root, query, criteriaBuilder) -> ids.isEmpty()
+            ? criteriaBuilder.disjunction()
+            : root.get("id").in(ids);
+    }
+
+    /**
+     * Rows after the cursor in {@code (createdAt DESC, id DESC)} order. The leading
+     * {@code createdAt <= cursor} bounds the scan of idx_products_created_at_id
+     */
+    public static Specification<Product> createdBefore(SeekCursor cursor) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.and(
+            criteriaBuilder.lessThanOrEqualTo(root.get("createdAt"), cursor.createdAt()),
+            criteriaBuilder.or(
+                criteriaBuilder.lessThan(root.get("createdAt"), cursor.createdAt()),
+                criteriaBuilder.lessThan(root.get("id"), cursor.intId())
+            )
+        );
+    }
+
     /**
      * Filter by product status
      */
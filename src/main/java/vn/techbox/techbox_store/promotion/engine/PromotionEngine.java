@@ -0,0 +1,129 @@
+package vn.techbox.techbox_store.promotion.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import vn.techbox.techbox_store.product.model.ProductVariation;
+import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
+import vn.techbox.techbox_store.promotion.event.PromotionChangedEvent;
+import vn.techbox.techbox_store.promotion.model.Promotion;
+import vn.techbox.techbox_store.promotion.repository.CampaignRepository;
+import vn.techbox.techbox_store.promotion.repository.PromotionRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tính giá sau promotion cho giỏ hàng, đơn hàng và catalog từ một {@link PromotionSnapshot} dùng chung.
+ *
+ * The snapshot is built with two queries (all active promotions with their campaign, and the next
+ * campaign start) and swapped in atomically; readers never lock. It is rebuilt lazily on the first
+ * call after the next campaign boundary or after a {@link PromotionChangedEvent}. An invalidation
+ * racing with a rebuild bumps the generation, so the snapshot built from older data is not reused.
+ *
+ * Rule: among the promotions of active, non-deleted campaigns the one giving the largest discount
+ * for the line applies.
+ */
+@Component
+@Slf4j
+public class PromotionEngine {
+
+    private final PromotionRepository promotionRepository;
+    private final CampaignRepository campaignRepository;
+    private final ProductVariationRepository productVariationRepository;
+
+    private final AtomicLong generation = new AtomicLong();
+    private volatile PromotionSnapshot current;
+
+    public PromotionEngine(PromotionRepository promotionRepository,
+                           CampaignRepository campaignRepository,
+                           ProductVariationRepository productVariationRepository) {
+        this.promotionRepository = promotionRepository;
+        this.campaignRepository = campaignRepository;
+        this.productVariationRepository = productVariationRepository;
+    }
+
+    public PromotionSnapshot snapshot() {
+        PromotionSnapshot snapshot = current;
+        if (snapshot != null && snapshot.generation() == generation.get() && snapshot.isValidAt(LocalDateTime.now())) {
+            return snapshot;
+        }
+        return rebuild();
+    }
+
+    public PromotionSnapshot.PromotionPrice priceFor(Integer productVariationId, BigDecimal unitPrice, int quantity) {
+        return snapshot().price(productVariationId, unitPrice, quantity);
+    }
+
+    /**
+     * Price several lines against the current variation prices (one query for all prices)
+     *
+     * @return one result per index of {@code productVariationIds}; unknown variations are priced at zero
+     */
+    public List<PromotionSnapshot.PromotionPrice> priceFor(Integer[] productVariationIds, int[] quantities) {
+        Map<Integer, BigDecimal> prices = new HashMap<>();
+        for (ProductVariation variation : productVariationRepository.findAllById(new HashSet<>(Arrays.asList(productVariationIds)))) {
+            prices.put(variation.getId(), variation.getPrice());
+        }
+        BigDecimal[] unitPrices = new BigDecimal[productVariationIds.length];
+        for (int i = 0; i < productVariationIds.length; i++) {
+            unitPrices[i] = prices.get(productVariationIds[i]);
+        }
+        return priceFor(productVariationIds, quantities, unitPrices);
+    }
+
+    /**
+     * Price several lines at the given unit prices, without touching the database
+     */
+    public List<PromotionSnapshot.PromotionPrice> priceFor(Integer[] productVariationIds, int[] quantities,
+                                                           BigDecimal[] unitPrices) {
+        if (productVariationIds.length != quantities.length || productVariationIds.length != unitPrices.length) {
+            throw new IllegalArgumentException("Variation ids, quantities and prices must have the same length");
+        }
+        PromotionSnapshot snapshot = snapshot();
+        List<PromotionSnapshot.PromotionPrice> result = new ArrayList<>(productVariationIds.length);
+        for (int i = 0; i < productVariationIds.length; i++) {
+            result.add(snapshot.price(productVariationIds[i], unitPrices[i], quantities[i]));
+        }
+        return result;
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPromotionChanged(PromotionChangedEvent event) {
+        invalidate();
+    }
+
+    private synchronized PromotionSnapshot rebuild() {
+        LocalDateTime now = LocalDateTime.now();
+        long expectedGeneration = generation.get();
+        PromotionSnapshot snapshot = current;
+        if (snapshot != null && snapshot.generation() == expectedGeneration && snapshot.isValidAt(now)) {
+            return snapshot;
+        }
+
+        List<Promotion> promotions = promotionRepository.findAllActiveWithCampaign(now);
+        Map<Integer, List<PromotionSnapshot.ActivePromotion>> byVariation = new HashMap<>();
+        LocalDateTime validUntil = campaignRepository.findNextStartDate(now);
+        for (Promotion promotion : promotions) {
+            byVariation.computeIfAbsent(promotion.getProductVariationId(), k -> new ArrayList<>())
+                    .add(PromotionSnapshot.ActivePromotion.of(promotion));
+            LocalDateTime endDate = promotion.getCampaign().getEndDate();
+            if (validUntil == null || endDate.isBefore(validUntil)) {
+                validUntil = endDate;
+            }
+        }
+        byVariation.replaceAll((variationId, list) -> List.copyOf(list));
+
+        snapshot = new PromotionSnapshot(byVariation, now, validUntil, expectedGeneration);
+        current = snapshot;
+        log.debug("Built promotion snapshot: {} promotions on {} variations, valid until {}",
+                promotions.size(), byVariation.size(), validUntil);
+        return snapshot;
+    }
+}
@@ -0,0 +1,120 @@
+package vn.techbox.techbox_store.promotion.engine;
+
+import vn.techbox.techbox_store.promotion.model.Promotion;
+import vn.techbox.techbox_store.promotion.model.PromotionType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bảng promotion đang hoạt động tại một thời điểm, tra theo product variation id. Bất biến.
+ *
+ * Valid until {@link #validUntil()}, the next campaign start/end after it was built; a null
+ * value means no campaign boundary was ahead at build time.
+ */
+public final class PromotionSnapshot {
+
+    private final Map<Integer, List<ActivePromotion>> promotionsByVariation;
+    private final LocalDateTime builtAt;
+    private final LocalDateTime validUntil;
+    private final long generation;
+
+    PromotionSnapshot(Map<Integer, List<ActivePromotion>> promotionsByVariation,
+                      LocalDateTime builtAt, LocalDateTime validUntil, long generation) {
+        this.promotionsByVariation = Map.copyOf(promotionsByVariation);
+        this.builtAt = builtAt;
+        this.validUntil = validUntil;
+        this.generation = generation;
+    }
+
+    public boolean isValidAt(LocalDateTime time) {
+        return validUntil == null || time.isBefore(validUntil);
+    }
+
+    public LocalDateTime builtAt() {
+        return builtAt;
+    }
+
+    public LocalDateTime validUntil() {
+        return validUntil;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    public int variationCount() {
+        return promotionsByVariation.size();
+    }
+
+    public List<ActivePromotion> promotionsOf(Integer productVariationId) {
+        return promotionsByVariation.getOrDefault(productVariationId, List.of());
+    }
+
+    /**
+     * Best promotion for one line: the one with the largest discount on {@code quantity} units
+     * (the lowest promotion id wins a tie)
+     */
+    public PromotionPrice price(Integer productVariationId, BigDecimal unitPrice, int quantity) {
+        BigDecimal price = unitPrice != null ? unitPrice : BigDecimal.ZERO;
+        ActivePromotion best = null;
+        BigDecimal bestDiscount = BigDecimal.ZERO;
+        for (ActivePromotion promotion : promotionsOf(productVariationId)) {
+            BigDecimal discount = promotion.discount(price, quantity);
+            if (best == null || discount.compareTo(bestDiscount) > 0) {
+                best = promotion;
+                bestDiscount = discount;
+            }
+        }
+        BigDecimal lineAmount = price.multiply(BigDecimal.valueOf(quantity));
+        BigDecimal unitSalePrice = best != null ? price.subtract(best.discount(price, 1)) : price;
+        return new PromotionPrice(productVariationId, price, quantity, bestDiscount,
+                lineAmount.subtract(bestDiscount), unitSalePrice, best);
+    }
+
+    /**
+     * Một promotion đang hoạt động, tách khỏi persistence context
+     */
+    public record ActivePromotion(Integer promotionId,
+                                  Integer campaignId,
+                                  String campaignName,
+                                  PromotionType discountType,
+                                  BigDecimal discountValue) {
+
+        static ActivePromotion of(Promotion promotion) {
+            return new ActivePromotion(
+                    promotion.getId(),
+                    promotion.getCampaign().getId(),
+                    promotion.getCampaign().getName(),
+                    promotion.getDiscountType(),
+                    promotion.getDiscountValue());
+        }
+
+        public BigDecimal discount(BigDecimal unitPrice, int quantity) {
+            return Promotion.calculateDiscount(discountType, discountValue, unitPrice, quantity);
+        }
+    }
+
+    /**
+     * Giá của một dòng sau promotion
+     *
+     * @param discountAmount discount on the whole line
+     * @param lineTotal      unitPrice x quantity - discountAmount
+     * @param unitSalePrice  display price of one unit
+     * @param promotion      applied promotion, or null
+     */
+    public record PromotionPrice(Integer productVariationId,
+                                 BigDecimal unitPrice,
+                                 int quantity,
+                                 BigDecimal discountAmount,
+                                 BigDecimal lineTotal,
+                                 BigDecimal unitSalePrice,
+                                 ActivePromotion promotion) {
+
+        public boolean hasPromotion() {
+            return promotion != null;
+        }
+    }
+}
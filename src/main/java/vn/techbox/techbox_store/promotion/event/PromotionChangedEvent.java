@@ -0,0 +1,10 @@
+package vn.techbox.techbox_store.promotion.event;
+
+/**
+ * Phát ra khi promotion hoặc campaign (ngày, xoá mềm, khôi phục) thay đổi.
+ * Bảng promotion đang hoạt động trong bộ nhớ được dựng lại sau khi transaction commit.
+ *
+ * @param campaignId campaign bị ảnh hưởng
+ */
+public record PromotionChangedEvent(Integer campaignId) {
+}
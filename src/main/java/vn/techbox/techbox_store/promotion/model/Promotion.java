@@ -58,6 +58,14 @@ public class Promotion {
     
     // Utility methods
     public BigDecimal calculateDiscount(BigDecimal originalPrice, Integer quantity) {
+        return calculateDiscount(discountType, discountValue, originalPrice, quantity);
+    }
+
+    /**
+     * Giảm giá cho {@code quantity} sản phẩm đơn giá {@code originalPrice}, không vượt quá thành tiền
+     */
+    public static BigDecimal calculateDiscount(PromotionType discountType, BigDecimal discountValue,
+                                               BigDecimal originalPrice, Integer quantity) {
         BigDecimal discount = switch (discountType) {
             case PERCENTAGE -> originalPrice.multiply(BigDecimal.valueOf(quantity))
                     .multiply(discountValue)
@@ -25,6 +25,17 @@ public interface CampaignRepository extends JpaRepository<Campaign, Integer> {
      */
     List<Campaign> findByDeletedAtIsNull();
 
+    /**
+     * Campaigns that have not ended yet (their start/end boundaries still affect pricing)
+     */
+    List<Campaign> findByEndDateAfter(LocalDateTime time);
+
+    /**
+     * Earliest start of a campaign that is not active yet (inclusive, a campaign starting exactly now is not active)
+     */
+    @Query("SELECT MIN(c.startDate) FROM Campaign c WHERE c.deletedAt IS NULL AND c.startDate >= :now")
+    LocalDateTime findNextStartDate(@Param("now") LocalDateTime now);
+
     /**
      * Tìm các campaigns có startDate hoặc endDate trong khoảng thời gian
      */
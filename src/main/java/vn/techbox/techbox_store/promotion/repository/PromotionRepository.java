@@ -15,6 +15,12 @@ public interface PromotionRepository extends JpaRepository<Promotion, Integer> {
     List<Promotion> findByProductVariationId(Integer productVariationId);
     List<Promotion> findByProductVariationIdIn(List<Integer> productVariationIds);
 
+    // Tất cả promotion đang hoạt động (cùng điều kiện với Campaign.isActive, bỏ campaign đã xoá mềm)
+    @Query("SELECT p FROM Promotion p JOIN FETCH p.campaign c " +
+           "WHERE c.deletedAt IS NULL AND c.startDate < :now AND c.endDate > :now " +
+           "ORDER BY p.id")
+    List<Promotion> findAllActiveWithCampaign(@Param("now") LocalDateTime now);
+
     @Query("SELECT p FROM Promotion p JOIN p.campaign c " +
            "WHERE p.productVariationId = :productVariationId " +
            "AND c.startDate <= :currentTime " +
@@ -0,0 +1,203 @@
+package vn.techbox.techbox_store.promotion.scheduler;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import vn.techbox.techbox_store.product.service.ProductPriceUpdateService;
+import vn.techbox.techbox_store.promotion.model.Campaign;
+import vn.techbox.techbox_store.promotion.repository.CampaignRepository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Tính lại giá sản phẩm đúng thời điểm campaign bắt đầu / kết thúc.
+ *
+ * Every future start/end of a campaign is kept in a priority queue ordered by time, and a single
+ * task is armed on the {@link TaskScheduler} for the earliest one. When it fires, all due
+ * boundaries are popped and only the products of those campaigns are repriced. Re-registering a
+ * campaign (create/update) bumps its generation so boundaries queued for its old dates are skipped.
+ *
+ * The armed task only hands the boundary over to a single thread of this scheduler's own, so a
+ * large reprice never holds the shared {@link TaskScheduler} thread that other periodic jobs run on.
+ * Immediate reprices requested by campaign edits run on that thread too, not on the request thread.
+ *
+ * Boundaries that passed while the application was down are caught up by one full reprice at startup.
+ */
+@Component
+@Slf4j
+public class CampaignBoundaryScheduler {
+
+    private final CampaignRepository campaignRepository;
+    private final ProductPriceUpdateService productPriceUpdateService;
+    private final TaskScheduler taskScheduler;
+    private final boolean enabled;
+    private final boolean catchUpOnStartup;
+    // Campaign.isActive() is exclusive at both ends, so fire slightly after the boundary
+    private final long delayMillis;
+
+    // Boundaries are repriced one at a time, off the scheduler thread
+    private final ExecutorService repriceExecutor =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("campaign-reprice").daemon(true).factory());
+
+    private final PriorityQueue<Boundary> queue = new PriorityQueue<>(Comparator.comparing(Boundary::fireAt));
+    private final Map<Integer, Long> generations = new HashMap<>();
+    private ScheduledFuture<?> armed;
+    private LocalDateTime armedAt;
+
+    public CampaignBoundaryScheduler(CampaignRepository campaignRepository,
+                                     ProductPriceUpdateService productPriceUpdateService,
+                                     TaskScheduler taskScheduler,
+                                     @Value("${pricing.campaign-boundary.enabled:true}") boolean enabled,
+                                     @Value("${pricing.campaign-boundary.catch-up-on-startup:true}") boolean catchUpOnStartup,
+                                     @Value("${pricing.campaign-boundary.delay-ms:1000}") long delayMillis) {
+        this.campaignRepository = campaignRepository;
+        this.productPriceUpdateService = productPriceUpdateService;
+        this.taskScheduler = taskScheduler;
+        this.enabled = enabled;
+        this.catchUpOnStartup = catchUpOnStartup;
+        this.delayMillis = Math.max(0, delayMillis);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<Campaign> upcoming = campaignRepository.findByEndDateAfter(LocalDateTime.now());
+            synchronized (this) {
+                for (Campaign campaign : upcoming) {
+                    enqueue(campaign);
+                }
+                arm();
+            }
+            log.info("Registered boundaries of {} campaigns for repricing", upcoming.size());
+
+            if (catchUpOnStartup) {
+                productPriceUpdateService.updateAllProductPricing();
+            }
+        } catch (Exception e) {
+            log.error("Failed to initialise campaign boundary scheduler", e);
+        }
+    }
+
+    /**
+     * (Re)register the start/end of a campaign once the current transaction commits.
+     *
+     * @param repriceNow also reprice the campaign's products immediately, for date changes
+     *                   that moved a boundary into the past
+     */
+    public void register(Campaign campaign, boolean repriceNow) {
+        if (!enabled || campaign == null || campaign.getId() == null) {
+            return;
+        }
+        Integer campaignId = campaign.getId();
+        LocalDateTime startDate = campaign.getStartDate();
+        LocalDateTime endDate = campaign.getEndDate();
+        Runnable action = () -> {
+            synchronized (this) {
+                generations.merge(campaignId, 1L, Long::sum);
+                enqueue(campaignId, startDate, endDate);
+                arm();
+            }
+            if (repriceNow) {
+                // Queued behind any boundary being repriced; the committing request does not wait for it
+                repriceExecutor.execute(() -> reprice(campaignId));
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    public synchronized int pendingBoundaries() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        repriceExecutor.shutdownNow();
+    }
+
+    private void fire() {
+        Set<Integer> dueCampaigns = new LinkedHashSet<>();
+        synchronized (this) {
+            armed = null;
+            armedAt = null;
+            LocalDateTime now = LocalDateTime.now();
+            while (!queue.isEmpty() && !queue.peek().fireAt().isAfter(now)) {
+                Boundary boundary = queue.poll();
+                if (boundary.generation() == generations.getOrDefault(boundary.campaignId(), 0L)) {
+                    dueCampaigns.add(boundary.campaignId());
+                }
+            }
+            arm();
+        }
+        for (Integer campaignId : dueCampaigns) {
+            reprice(campaignId);
+        }
+    }
+
+    private void reprice(Integer campaignId) {
+        try {
+            log.info("Repricing products of campaign {} at boundary", campaignId);
+            productPriceUpdateService.updateProductPricingByCampaign(campaignId);
+        } catch (Exception e) {
+            log.error("Error repricing products for campaign ID: {}", campaignId, e);
+        }
+    }
+
+    // Caller holds the monitor
+    private void enqueue(Campaign campaign) {
+        enqueue(campaign.getId(), campaign.getStartDate(), campaign.getEndDate());
+    }
+
+    private void enqueue(Integer campaignId, LocalDateTime startDate, LocalDateTime endDate) {
+        long generation = generations.getOrDefault(campaignId, 0L);
+        LocalDateTime now = LocalDateTime.now();
+        for (LocalDateTime boundary : new LocalDateTime[]{startDate, endDate}) {
+            if (boundary != null && boundary.isAfter(now)) {
+                queue.add(new Boundary(boundary.plusNanos(delayMillis * 1_000_000), campaignId, generation));
+            }
+        }
+    }
+
+    // Keep exactly one task armed for the head of the queue
+    private void arm() {
+        Boundary head = queue.peek();
+        if (head == null) {
+            return;
+        }
+        if (armed != null) {
+            if (!head.fireAt().isBefore(armedAt)) {
+                return;
+            }
+            armed.cancel(false);
+        }
+        armedAt = head.fireAt();
+        armed = taskScheduler.schedule(() -> repriceExecutor.execute(this::fire), armedAt.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private record Boundary(LocalDateTime fireAt, Integer campaignId, long generation) {
+    }
+}
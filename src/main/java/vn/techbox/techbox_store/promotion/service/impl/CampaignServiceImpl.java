@@ -2,6 +2,7 @@ package vn.techbox.techbox_store.promotion.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -9,8 +10,10 @@ import org.springframework.transaction.annotation.Transactional;
 import vn.techbox.techbox_store.promotion.dto.CampaignCreateRequest;
 import vn.techbox.techbox_store.promotion.dto.CampaignResponse;
 import vn.techbox.techbox_store.promotion.dto.CampaignUpdateRequest;
+import vn.techbox.techbox_store.promotion.event.PromotionChangedEvent;
 import vn.techbox.techbox_store.promotion.model.Campaign;
 import vn.techbox.techbox_store.promotion.repository.CampaignRepository;
+import vn.techbox.techbox_store.promotion.scheduler.CampaignBoundaryScheduler;
 import vn.techbox.techbox_store.promotion.service.CampaignService;
 
 import java.time.LocalDateTime;
@@ -24,6 +27,8 @@ import java.util.stream.Collectors;
 public class CampaignServiceImpl implements CampaignService {
     
     private final CampaignRepository campaignRepository;
+    private final CampaignBoundaryScheduler campaignBoundaryScheduler;
+    private final ApplicationEventPublisher eventPublisher;
     
     @Override
     public CampaignResponse createCampaign(CampaignCreateRequest request) {
@@ -49,6 +54,9 @@ public class CampaignServiceImpl implements CampaignService {
                 .build();
         
         Campaign savedCampaign = campaignRepository.save(campaign);
+        // Published before registering so the promotion table is rebuilt before any after-commit reprice
+        eventPublisher.publishEvent(new PromotionChangedEvent(savedCampaign.getId()));
+        campaignBoundaryScheduler.register(savedCampaign, false);
         log.info("Campaign created successfully with ID: {}", savedCampaign.getId());
         
         return mapToResponse(savedCampaign);
@@ -96,6 +104,9 @@ public class CampaignServiceImpl implements CampaignService {
         }
         
         Campaign savedCampaign = campaignRepository.save(campaign);
+        eventPublisher.publishEvent(new PromotionChangedEvent(savedCampaign.getId()));
+        // Dates may have moved a boundary into the past - reprice now and re-arm the new boundaries
+        campaignBoundaryScheduler.register(savedCampaign, true);
         log.info("Campaign updated successfully with ID: {}", savedCampaign.getId());
         
         return mapToResponse(savedCampaign);
@@ -163,6 +174,9 @@ public class CampaignServiceImpl implements CampaignService {
         
         campaign.setDeletedAt(LocalDateTime.now());
         campaignRepository.save(campaign);
+        // Promotions of a deleted campaign no longer apply - reprice its products
+        eventPublisher.publishEvent(new PromotionChangedEvent(campaign.getId()));
+        campaignBoundaryScheduler.register(campaign, true);
         
         log.info("Campaign soft deleted successfully with ID: {}", id);
     }
@@ -181,6 +195,8 @@ public class CampaignServiceImpl implements CampaignService {
         campaign.setDeletedAt(null);
         campaign.setUpdatedAt(LocalDateTime.now());
         campaignRepository.save(campaign);
+        eventPublisher.publishEvent(new PromotionChangedEvent(campaign.getId()));
+        campaignBoundaryScheduler.register(campaign, true);
         
         log.info("Campaign restored successfully with ID: {}", id);
     }
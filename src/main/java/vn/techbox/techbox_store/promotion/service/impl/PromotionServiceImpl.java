@@ -2,14 +2,21 @@ package vn.techbox.techbox_store.promotion.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import vn.techbox.techbox_store.promotion.dto.*;
 import vn.techbox.techbox_store.promotion.dto.PromotionVariantResponse;
+import vn.techbox.techbox_store.product.event.ProductChangedEvent;
+import vn.techbox.techbox_store.product.model.ProductVariation;
+import vn.techbox.techbox_store.product.repository.ProductVariationRepository;
 import vn.techbox.techbox_store.product.service.ProductVariationService;
 import vn.techbox.techbox_store.product.dto.productDto.ProductVariationResponse;
+import vn.techbox.techbox_store.promotion.engine.PromotionEngine;
+import vn.techbox.techbox_store.promotion.engine.PromotionSnapshot;
+import vn.techbox.techbox_store.promotion.event.PromotionChangedEvent;
 import vn.techbox.techbox_store.promotion.model.Promotion;
 import vn.techbox.techbox_store.promotion.model.Campaign;
 import vn.techbox.techbox_store.promotion.repository.CampaignRepository;
@@ -17,7 +24,6 @@ import vn.techbox.techbox_store.promotion.repository.PromotionRepository;
 import vn.techbox.techbox_store.promotion.service.PromotionService;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -32,6 +38,9 @@ public class PromotionServiceImpl implements PromotionService {
     private final PromotionRepository promotionRepository;
     private final CampaignRepository campaignRepository;
     private final ProductVariationService productVariationService;
+    private final ProductVariationRepository productVariationRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PromotionEngine promotionEngine;
     
     @Override
     public PromotionResponse createPromotion(PromotionCreateRequest request) {
@@ -56,6 +65,8 @@ public class PromotionServiceImpl implements PromotionService {
         
         Promotion savedPromotion = promotionRepository.save(promotion);
         log.info("Promotion created successfully with ID: {}", savedPromotion.getId());
+        eventPublisher.publishEvent(new PromotionChangedEvent(campaign.getId()));
+        publishProductChanged(List.of(savedPromotion.getProductVariationId()));
         
         return mapToResponse(savedPromotion);
     }
@@ -66,6 +77,7 @@ public class PromotionServiceImpl implements PromotionService {
         
         Promotion promotion = promotionRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Promotion not found with ID: " + id));
+        Integer previousVariationId = promotion.getProductVariationId();
         
         if (request.getProductVariationId() != null) {
             promotion.setProductVariationId(request.getProductVariationId());
@@ -86,6 +98,8 @@ public class PromotionServiceImpl implements PromotionService {
         
         Promotion savedPromotion = promotionRepository.save(promotion);
         log.info("Promotion updated successfully with ID: {}", savedPromotion.getId());
+        eventPublisher.publishEvent(new PromotionChangedEvent(savedPromotion.getCampaign().getId()));
+        publishProductChanged(List.of(previousVariationId, savedPromotion.getProductVariationId()));
         
         return mapToResponse(savedPromotion);
     }
@@ -240,15 +254,11 @@ public class PromotionServiceImpl implements PromotionService {
     public PromotionCalculationResponse calculatePromotions(PromotionCalculationRequest request) {
         log.info("Calculating promotions for product variation ID: {}", request.getProductVariationId());
         
-        // Lấy promotion active cho product variation
-        List<Promotion> activePromotions = promotionRepository
-                .findActivePromotionsByProductVariationId(
-                    request.getProductVariationId(), 
-                    LocalDateTime.now()
-                );
-        
-        // Nếu không có promotion active, trả về response với giá gốc
-        if (activePromotions.isEmpty()) {
+        // Promotion tốt nhất từ bảng promotion đang hoạt động (không truy vấn DB)
+        PromotionSnapshot.PromotionPrice price = promotionEngine.priceFor(
+                request.getProductVariationId(), request.getOriginalPrice(), 1);
+
+        if (!price.hasPromotion()) {
             log.debug("No active promotion found for product variation ID: {}", request.getProductVariationId());
             return PromotionCalculationResponse.builder()
                     .productVariationId(request.getProductVariationId())
@@ -259,31 +269,15 @@ public class PromotionServiceImpl implements PromotionService {
                     .campaignId(null)
                     .build();
         }
-        Promotion promotion = activePromotions.get(0);
-        BigDecimal salePrice = request.getOriginalPrice();
-        
-        if ("PERCENTAGE".equals(promotion.getDiscountType().name())) {
-            // Giảm theo phần trăm
-            BigDecimal discount = request.getOriginalPrice()
-                .multiply(promotion.getDiscountValue())
-                .divide(BigDecimal.valueOf(100), 2, java.math.RoundingMode.HALF_UP);
-            salePrice = request.getOriginalPrice().subtract(discount);
-        } else if ("FIXED".equals(promotion.getDiscountType().name())) {
-            // Giảm theo số tiền cố định
-            salePrice = request.getOriginalPrice().subtract(promotion.getDiscountValue());
-            // Đảm bảo giá không âm
-            if (salePrice.compareTo(BigDecimal.ZERO) < 0) {
-                salePrice = BigDecimal.ZERO;
-            }
-        }
+        PromotionSnapshot.ActivePromotion promotion = price.promotion();
         
         return PromotionCalculationResponse.builder()
                 .productVariationId(request.getProductVariationId())
-                .salePrice(salePrice)
-                .discountType(promotion.getDiscountType().name())
-                .discountValue(promotion.getDiscountValue())
-                .promotionId(promotion.getId())
-                .campaignId(promotion.getCampaign().getId())
+                .salePrice(price.unitSalePrice())
+                .discountType(promotion.discountType().name())
+                .discountValue(promotion.discountValue())
+                .promotionId(promotion.promotionId())
+                .campaignId(promotion.campaignId())
                 .build();
     }
     
@@ -291,12 +285,26 @@ public class PromotionServiceImpl implements PromotionService {
     public void deletePromotion(Integer id) {
         log.info("Deleting promotion with ID: {}", id);
         
-        if (!promotionRepository.existsById(id)) {
-            throw new IllegalArgumentException("Promotion not found with ID: " + id);
-        }
+        Promotion promotion = promotionRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Promotion not found with ID: " + id));
         
-        promotionRepository.deleteById(id);
+        promotionRepository.delete(promotion);
         log.info("Promotion deleted successfully with ID: {}", id);
+        eventPublisher.publishEvent(new PromotionChangedEvent(promotion.getCampaign().getId()));
+        publishProductChanged(List.of(promotion.getProductVariationId()));
+    }
+
+    /**
+     * Thông báo sản phẩm của các biến thể bị ảnh hưởng bởi thay đổi promotion
+     */
+    private void publishProductChanged(List<Integer> productVariationIds) {
+        List<Integer> productIds = productVariationRepository.findAllById(productVariationIds).stream()
+                .map(ProductVariation::getProductId)
+                .distinct()
+                .toList();
+        if (!productIds.isEmpty()) {
+            eventPublisher.publishEvent(ProductChangedEvent.of(productIds));
+        }
     }
     
     private PromotionResponse mapToResponse(Promotion promotion) {
@@ -0,0 +1,49 @@
+package vn.techbox.techbox_store.user.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * PostgreSQL-specific JDBC access to the shared role/permission matrix version: a single row that
+ * every instance polls and that each matrix change bumps in its own transaction
+ */
+@Repository
+@RequiredArgsConstructor
+public class PermissionMatrixVersionRepository {
+
+    private static final String CREATE_TABLE =
+            "CREATE TABLE IF NOT EXISTS permission_matrix_version (" +
+            "id SMALLINT PRIMARY KEY, version BIGINT NOT NULL)";
+
+    private static final String INSERT_ROW =
+            "INSERT INTO permission_matrix_version (id, version) VALUES (1, 0) ON CONFLICT (id) DO NOTHING";
+
+    // Row lock until commit: concurrent changes are serialised and each gets its own version
+    private static final String BUMP_VERSION =
+            "UPDATE permission_matrix_version SET version = version + 1 WHERE id = 1 RETURNING version";
+
+    private static final String SELECT_VERSION =
+            "SELECT version FROM permission_matrix_version WHERE id = 1";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void createIfMissing() {
+        jdbcTemplate.execute(CREATE_TABLE);
+        jdbcTemplate.update(INSERT_ROW);
+    }
+
+    /**
+     * Increment the version and return the new one. Runs in the caller's transaction, so other
+     * instances only see it once the change that bumped it has committed.
+     */
+    public long bump() {
+        Long version = jdbcTemplate.queryForObject(BUMP_VERSION, Long.class);
+        return version != null ? version : 0;
+    }
+
+    public long currentVersion() {
+        Long version = jdbcTemplate.queryForObject(SELECT_VERSION, Long.class);
+        return version != null ? version : 0;
+    }
+}
@@ -0,0 +1,99 @@
+package vn.techbox.techbox_store.user.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * PostgreSQL-specific JDBC access for refresh tokens: single-statement rotation, batched inserts
+ * from the write-behind store and chunked purges
+ */
+@Repository
+@RequiredArgsConstructor
+public class RefreshTokenJdbcRepository {
+
+    // Row lock + re-check of revoked: of two concurrent rotations of one token only one gets a row back
+    private static final String CONSUME_TOKEN =
+            "UPDATE refresh_tokens SET revoked = true " +
+            "WHERE token_hash = ? AND revoked = false AND expires_at > ? RETURNING user_id";
+
+    private static final String SELECT_REVOKED_USER_ID =
+            "SELECT user_id FROM refresh_tokens WHERE token_hash = ? AND revoked = true LIMIT 1";
+
+    private static final String INSERT_TOKEN =
+            "INSERT INTO refresh_tokens (user_id, token_hash, expires_at, created_at, revoked) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String REVOKE_TOKEN =
+            "UPDATE refresh_tokens SET revoked = true WHERE token_hash = ? AND revoked = false";
+
+    // Hashes still worth recognising as replays: revoked but not yet expired
+    private static final String SELECT_REVOKED_HASHES =
+            "SELECT id, token_hash FROM refresh_tokens WHERE id > ? AND revoked = true AND expires_at > ? " +
+            "ORDER BY id LIMIT ?";
+
+    // Only expired rows: a revoked row is kept until it expires so a replay of it is still recognised.
+    // Rows being rotated right now are skipped and picked up by a later batch
+    private static final String DELETE_EXPIRED =
+            "DELETE FROM refresh_tokens WHERE id IN (" +
+            "SELECT id FROM refresh_tokens WHERE expires_at < ? " +
+            "LIMIT ? FOR UPDATE SKIP LOCKED)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Revoke an active token and return its owner, or empty if it is unknown, expired or already revoked
+     */
+    public Optional<Integer> consumeToken(String tokenHash, LocalDateTime now) {
+        return jdbcTemplate.queryForList(CONSUME_TOKEN, Integer.class, tokenHash, Timestamp.valueOf(now))
+                .stream()
+                .findFirst();
+    }
+
+    public Optional<Integer> findRevokedUserId(String tokenHash) {
+        return jdbcTemplate.queryForList(SELECT_REVOKED_USER_ID, Integer.class, tokenHash)
+                .stream()
+                .findFirst();
+    }
+
+    public void insertTokens(List<TokenRow> rows) {
+        jdbcTemplate.batchUpdate(INSERT_TOKEN, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.userId());
+            ps.setString(2, row.tokenHash());
+            ps.setTimestamp(3, Timestamp.valueOf(row.expiresAt()));
+            ps.setTimestamp(4, Timestamp.valueOf(row.createdAt()));
+            ps.setBoolean(5, row.revoked());
+        });
+    }
+
+    public int revokeToken(String tokenHash) {
+        return jdbcTemplate.update(REVOKE_TOKEN, tokenHash);
+    }
+
+    /**
+     * One page of revoked, unexpired token hashes after {@code afterId}, in id order
+     */
+    public List<RevokedHash> findRevokedHashes(long afterId, LocalDateTime now, int limit) {
+        return jdbcTemplate.query(SELECT_REVOKED_HASHES,
+                (rs, rowNum) -> new RevokedHash(rs.getLong("id"), rs.getString("token_hash")),
+                afterId, Timestamp.valueOf(now), limit);
+    }
+
+    /**
+     * Delete at most {@code limit} expired tokens, revoked or not; each call is one short statement
+     */
+    public int deleteExpired(LocalDateTime expiredBefore, int limit) {
+        return jdbcTemplate.update(DELETE_EXPIRED, Timestamp.valueOf(expiredBefore), limit);
+    }
+
+    public record TokenRow(Integer userId, String tokenHash, LocalDateTime expiresAt,
+                           LocalDateTime createdAt, boolean revoked) {
+    }
+
+    public record RevokedHash(long id, String tokenHash) {
+    }
+}
@@ -8,7 +8,6 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import vn.techbox.techbox_store.user.model.RefreshToken;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,11 +28,6 @@ public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long
     @Query("UPDATE RefreshToken rt SET rt.revoked = true WHERE rt.tokenHash = :tokenHash")
     void revokeTokenByHash(@Param("tokenHash") String tokenHash);
 
-    @Modifying
-    @Transactional
-    @Query("DELETE FROM RefreshToken rt WHERE rt.expiresAt < :expiredTime OR rt.revoked = true")
-    void deleteExpiredAndRevokedTokens(@Param("expiredTime") LocalDateTime expiredTime);
-
     @Query("SELECT COUNT(rt) FROM RefreshToken rt WHERE rt.userId = :userId AND rt.revoked = false")
     long countActiveTokensByUserId(@Param("userId") Integer userId);
 }
@@ -59,6 +59,14 @@ public interface UserRepository extends JpaRepository<User, Integer>, PagingAndS
             "AND u.account.isActive = true")
     User findByEmailForAuth(@Param("email") String email);
 
+    @Query("SELECT DISTINCT u FROM User u " +
+            "LEFT JOIN FETCH u.account " +
+            "LEFT JOIN FETCH u.roles r " +
+            "LEFT JOIN FETCH r.permissions " +
+            "WHERE u.id = :id " +
+            "AND u.account.isActive = true")
+    User findByIdForAuth(@Param("id") Integer id);
+
     @Query("SELECT DISTINCT u FROM User u " +
             "JOIN u.roles r " +
             "WHERE r.name = :roleName " +
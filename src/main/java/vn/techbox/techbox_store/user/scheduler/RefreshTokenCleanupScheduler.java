@@ -1,5 +1,6 @@
 package vn.techbox.techbox_store.user.scheduler;
 
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -7,6 +8,10 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import vn.techbox.techbox_store.user.service.RefreshTokenService;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 @Component
 @RequiredArgsConstructor
 public class RefreshTokenCleanupScheduler {
@@ -14,9 +19,22 @@ public class RefreshTokenCleanupScheduler {
     private static final Logger logger = LoggerFactory.getLogger(RefreshTokenCleanupScheduler.class);
     private final RefreshTokenService refreshTokenService;
 
-    // Run cleanup every 30 days at midnight
-    @Scheduled(cron = "0 0 0 */30 * *")
-    public void cleanupExpiredTokens() {
+    // The purge pauses between batches: run it here, not on the shared @Scheduled thread
+    private final ExecutorService purgeExecutor =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("refresh-token-purge").daemon(true).factory());
+    private Future<?> purgeRun;
+
+    // Dọn theo lô nhỏ nên chạy được hằng ngày (refresh-token.purge.cron)
+    @Scheduled(cron = "${refresh-token.purge.cron:0 30 3 * * *}")
+    public synchronized void cleanupExpiredTokens() {
+        if (purgeRun != null && !purgeRun.isDone()) {
+            logger.info("Previous refresh token cleanup still running, skipping");
+            return;
+        }
+        purgeRun = purgeExecutor.submit(this::runCleanup);
+    }
+
+    private void runCleanup() {
         logger.info("Starting scheduled cleanup of expired refresh tokens");
         try {
             refreshTokenService.cleanupExpiredTokens();
@@ -25,4 +43,10 @@ public class RefreshTokenCleanupScheduler {
             logger.error("Error during scheduled cleanup of refresh tokens: {}", e.getMessage(), e);
         }
     }
+
+    @PreDestroy
+    public void shutdown() {
+        // Interrupts a pause; the purge stops after the batch in progress
+        purgeExecutor.shutdownNow();
+    }
 }
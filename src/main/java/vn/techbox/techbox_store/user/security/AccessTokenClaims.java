@@ -0,0 +1,13 @@
+package vn.techbox.techbox_store.user.security;
+
+/**
+ * Claims of a verified access token, read in a single parse.
+ *
+ * @param userId null for tokens issued before the claim existed
+ */
+public record AccessTokenClaims(
+        String subject,
+        Integer userId,
+        long expiresAtMillis
+) {
+}
@@ -0,0 +1,45 @@
+package vn.techbox.techbox_store.user.security;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+
+import java.util.function.Supplier;
+
+/**
+ * Method security expression handler whose root answers authority and role checks from the
+ * principal's permission bitset (see {@link BitsetSecurityExpressionRoot})
+ */
+public class BitsetMethodSecurityExpressionHandler extends DefaultMethodSecurityExpressionHandler {
+
+    // Resolved on first use: the handler is created before the repositories PermissionIndex needs
+    private final ObjectProvider<PermissionIndex> permissionIndexProvider;
+    private volatile PermissionIndex permissionIndex;
+
+    public BitsetMethodSecurityExpressionHandler(ObjectProvider<PermissionIndex> permissionIndexProvider) {
+        this.permissionIndexProvider = permissionIndexProvider;
+    }
+
+    @Override
+    public EvaluationContext createEvaluationContext(Supplier<Authentication> authentication, MethodInvocation mi) {
+        EvaluationContext context = super.createEvaluationContext(authentication, mi);
+        if (context instanceof StandardEvaluationContext standardContext
+                && standardContext.getRootObject().getValue() instanceof MethodSecurityExpressionOperations root) {
+            standardContext.setRootObject(new BitsetSecurityExpressionRoot(root, permissionIndex()));
+        }
+        return context;
+    }
+
+    private PermissionIndex permissionIndex() {
+        PermissionIndex current = permissionIndex;
+        if (current == null) {
+            current = permissionIndexProvider.getObject();
+            permissionIndex = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,151 @@
+package vn.techbox.techbox_store.user.security;
+
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Gốc biểu thức cho @PreAuthorize: hasAuthority/hasRole của UserPrincipal là phép thử bit.
+ *
+ * Everything else (isAuthenticated, hasPermission, filter and return objects, ...) goes to the
+ * standard root it wraps, as do authority checks for principals that are not a UserPrincipal.
+ */
+public class BitsetSecurityExpressionRoot implements MethodSecurityExpressionOperations {
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final MethodSecurityExpressionOperations delegate;
+    private final PermissionIndex permissionIndex;
+
+    public BitsetSecurityExpressionRoot(MethodSecurityExpressionOperations delegate, PermissionIndex permissionIndex) {
+        this.delegate = delegate;
+        this.permissionIndex = permissionIndex;
+    }
+
+    @Override
+    public boolean hasAuthority(String authority) {
+        long[] bits = authorityBits();
+        return bits != null ? permissionIndex.test(bits, authority) : delegate.hasAuthority(authority);
+    }
+
+    @Override
+    public boolean hasAnyAuthority(String... authorities) {
+        long[] bits = authorityBits();
+        if (bits == null) {
+            return delegate.hasAnyAuthority(authorities);
+        }
+        for (String authority : authorities) {
+            if (permissionIndex.test(bits, authority)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasRole(String role) {
+        long[] bits = authorityBits();
+        return bits != null ? permissionIndex.test(bits, withRolePrefix(role)) : delegate.hasRole(role);
+    }
+
+    @Override
+    public boolean hasAnyRole(String... roles) {
+        long[] bits = authorityBits();
+        if (bits == null) {
+            return delegate.hasAnyRole(roles);
+        }
+        for (String role : roles) {
+            if (permissionIndex.test(bits, withRolePrefix(role))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Cho biểu thức dạng principal.username
+    public Object getPrincipal() {
+        Authentication authentication = getAuthentication();
+        return authentication != null ? authentication.getPrincipal() : null;
+    }
+
+    @Override
+    public Authentication getAuthentication() {
+        return delegate.getAuthentication();
+    }
+
+    @Override
+    public boolean permitAll() {
+        return delegate.permitAll();
+    }
+
+    @Override
+    public boolean denyAll() {
+        return delegate.denyAll();
+    }
+
+    @Override
+    public boolean isAnonymous() {
+        return delegate.isAnonymous();
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return delegate.isAuthenticated();
+    }
+
+    @Override
+    public boolean isRememberMe() {
+        return delegate.isRememberMe();
+    }
+
+    @Override
+    public boolean isFullyAuthenticated() {
+        return delegate.isFullyAuthenticated();
+    }
+
+    @Override
+    public boolean hasPermission(Object target, Object permission) {
+        return delegate.hasPermission(target, permission);
+    }
+
+    @Override
+    public boolean hasPermission(Object targetId, String targetType, Object permission) {
+        return delegate.hasPermission(targetId, targetType, permission);
+    }
+
+    @Override
+    public void setFilterObject(Object filterObject) {
+        delegate.setFilterObject(filterObject);
+    }
+
+    @Override
+    public Object getFilterObject() {
+        return delegate.getFilterObject();
+    }
+
+    @Override
+    public void setReturnObject(Object returnObject) {
+        delegate.setReturnObject(returnObject);
+    }
+
+    @Override
+    public Object getReturnObject() {
+        return delegate.getReturnObject();
+    }
+
+    @Override
+    public Object getThis() {
+        return delegate.getThis();
+    }
+
+    private long[] authorityBits() {
+        Authentication authentication = getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal principal) {
+            return principal.authorityBits();
+        }
+        return null;
+    }
+
+    private static String withRolePrefix(String role) {
+        return role.startsWith(ROLE_PREFIX) ? role : ROLE_PREFIX + role;
+    }
+}
@@ -9,16 +9,20 @@ import vn.techbox.techbox_store.user.model.Role;
 import vn.techbox.techbox_store.user.model.User;
 import vn.techbox.techbox_store.user.repository.UserRepository;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 public class MyUserDetailService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final PermissionIndex permissionIndex;
 
-    public MyUserDetailService(UserRepository userRepository) {
+    public MyUserDetailService(UserRepository userRepository, PermissionIndex permissionIndex) {
         this.userRepository = userRepository;
+        this.permissionIndex = permissionIndex;
     }
 
     @Override
@@ -28,15 +32,35 @@ public class MyUserDetailService implements UserDetailsService {
         if (user == null) {
             throw new UsernameNotFoundException("User not found with email: " + email);
         }
+        return toPrincipal(user);
+    }
+
+    /**
+     * Principal of an active user by id, for tokens that carry the user id
+     */
+    public UserPrincipal loadUserById(Integer id) throws UsernameNotFoundException {
+        User user = userRepository.findByIdForAuth(id);
 
-        Set<String> roles = user.getRoles().stream()
-                .map(Role::getName)
-                .collect(Collectors.toSet());
+        if (user == null) {
+            throw new UsernameNotFoundException("User not found with id: " + id);
+        }
+        return toPrincipal(user);
+    }
+
+    private UserPrincipal toPrincipal(User user) {
+        // Roles and their permissions are already fetched by findByEmailForAuth / findByIdForAuth
+        Set<String> roles = new HashSet<>();
+        Set<String> permissions = new HashSet<>();
+        for (Role role : user.getRoles()) {
+            roles.add(role.getName());
+            for (Permission permission : role.getPermissions()) {
+                permissions.add(permission.getName());
+            }
+        }
 
-        Set<String> permissions = user.getRoles().stream()
-                .flatMap(role -> role.getPermissions().stream())
-                .map(Permission::getName)
-                .collect(Collectors.toSet());
+        List<String> authorities = new ArrayList<>(roles.size() + permissions.size());
+        authorities.addAll(roles);
+        authorities.addAll(permissions);
 
         return new UserPrincipal(
                 user.getId(),
@@ -47,7 +71,8 @@ public class MyUserDetailService implements UserDetailsService {
                 user.getAccount().getIsActive(),
                 user.getAccount().getIsLocked(),
                 roles,
-                permissions
+                permissions,
+                permissionIndex.bitsetOf(authorities)
         );
     }
 }
@@ -0,0 +1,102 @@
+package vn.techbox.techbox_store.user.security;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import vn.techbox.techbox_store.user.model.Permission;
+import vn.techbox.techbox_store.user.model.Role;
+import vn.techbox.techbox_store.user.repository.PermissionRepository;
+import vn.techbox.techbox_store.user.repository.RoleRepository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Đánh số bit cho từng tên quyền/vai trò, để kiểm tra hasAuthority là một phép thử bit.
+ *
+ * Numbers are dense and assigned at startup from the permission and role tables, then appended
+ * to when a permission or role is created (or when a principal carries a name not seen yet).
+ * A number is never reused or moved while the application runs, so bitsets already compiled
+ * into cached principals stay correct after the matrix changes. A name without a number cannot
+ * be in any principal's bitset, so a check for it is simply false.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PermissionIndex {
+
+    private final PermissionRepository permissionRepository;
+    private final RoleRepository roleRepository;
+
+    private final Map<String, Integer> bits = new ConcurrentHashMap<>();
+    private final AtomicInteger nextBit = new AtomicInteger();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void compile() {
+        // Sorted so the numbering does not depend on table order
+        TreeSet<String> names = new TreeSet<>();
+        for (Role role : roleRepository.findAll()) {
+            names.add(role.getName());
+        }
+        for (Permission permission : permissionRepository.findAll()) {
+            names.add(permission.getName());
+        }
+        names.forEach(this::bitOf);
+        log.info("Permission index compiled: {} authorities", bits.size());
+    }
+
+    /**
+     * Number new roles and permissions once the current transaction commits
+     */
+    public void refresh() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    compile();
+                }
+            });
+        } else {
+            compile();
+        }
+    }
+
+    /**
+     * Bitset of the given authority names, numbering the ones not seen yet
+     */
+    public long[] bitsetOf(Collection<String> authorities) {
+        long[] bitset = new long[(nextBit.get() + authorities.size() + 63) >>> 6];
+        for (String authority : authorities) {
+            int bit = bitOf(authority);
+            if ((bit >>> 6) >= bitset.length) {
+                bitset = Arrays.copyOf(bitset, (bit >>> 6) + 1);
+            }
+            bitset[bit >>> 6] |= 1L << bit;
+        }
+        return bitset;
+    }
+
+    /**
+     * Whether {@code bitset} contains {@code authority}; no allocation
+     */
+    public boolean test(long[] bitset, String authority) {
+        Integer bit = bits.get(authority);
+        if (bit == null) {
+            return false;
+        }
+        int word = bit >>> 6;
+        return word < bitset.length && (bitset[word] & (1L << bit)) != 0;
+    }
+
+    private int bitOf(String authority) {
+        return bits.computeIfAbsent(authority, name -> nextBit.getAndIncrement());
+    }
+}
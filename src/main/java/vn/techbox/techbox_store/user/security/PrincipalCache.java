@@ -0,0 +1,121 @@
+package vn.techbox.techbox_store.user.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bộ nhớ đệm UserPrincipal theo user id cho JwtFilter, để request đã xác thực không phải truy vấn DB.
+ *
+ * Entries live at most {@code security.principal-cache.ttl-ms} and the cache holds at most
+ * {@code security.principal-cache.max-entries} users (least recently used go first). Changes to a
+ * user's roles, lock or active state drop that user; changes to the role/permission matrix drop
+ * everyone. Each entry also records the matrix version it was loaded under, and a lookup with a
+ * newer version treats it as a miss. Invalidation happens after the changing transaction commits,
+ * and a load that overlapped an invalidation is not cached, so a stale principal cannot be put
+ * back. Matrix changes made on other instances arrive with the shared matrix version, polled every
+ * {@code security.permission-matrix.poll-interval-ms}; other instances only see a change to one
+ * user once their entry expires, which is what the TTL bounds.
+ */
+@Component
+@Slf4j
+public class PrincipalCache {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+
+    // Guarded by itself
+    private final LinkedHashMap<Integer, Entry> entries;
+    // Bumped by every invalidation; a load only caches its result if nothing was invalidated meanwhile
+    private final AtomicLong generation = new AtomicLong();
+
+    public PrincipalCache(@Value("${security.principal-cache.ttl-ms:300000}") long ttlMillis,
+                          @Value("${security.principal-cache.max-entries:10000}") int maxEntries) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMillis));
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > PrincipalCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * The cached principal of {@code userId}, or the one returned by {@code loader} (not cached if
+     * the user was invalidated while it ran)
+     *
+     * @param matrixVersion current role/permission matrix version; entries loaded under an older
+     *                      one are stale
+     */
+    public UserPrincipal get(Integer userId, long matrixVersion, Supplier<UserPrincipal> loader) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(userId);
+            if (entry != null) {
+                if (entry.matrixVersion() >= matrixVersion && now - entry.loadedAtNanos() < ttlNanos) {
+                    return entry.principal();
+                }
+                entries.remove(userId);
+            }
+        }
+
+        long loadGeneration = generation.get();
+        UserPrincipal principal = loader.get();
+        synchronized (entries) {
+            if (generation.get() == loadGeneration) {
+                entries.put(userId, new Entry(principal, matrixVersion, System.nanoTime()));
+            }
+        }
+        return principal;
+    }
+
+    /**
+     * Drop one user once the current transaction commits (roles, lock or active state changed)
+     */
+    public void invalidate(Integer userId) {
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            synchronized (entries) {
+                entries.remove(userId);
+            }
+        });
+    }
+
+    /**
+     * Drop every user once the current transaction commits (role/permission matrix changed)
+     */
+    public void invalidateAll() {
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            synchronized (entries) {
+                entries.clear();
+            }
+            log.info("Principal cache cleared after a role/permission change");
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private record Entry(UserPrincipal principal, long matrixVersion, long loadedAtNanos) {
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -17,7 +18,10 @@ public record UserPrincipal(
         Boolean isActive,
         Boolean isLocked,
         Set<String> roles,
-        Set<String> permissions
+        Set<String> permissions,
+        // Roles and permissions numbered by PermissionIndex, for allocation-free hasAuthority checks
+        long[] authorityBits,
+        Set<GrantedAuthority> authorities
 ) implements UserDetails {
 
     @Override
@@ -25,11 +29,26 @@ public record UserPrincipal(
         return email;
     }
 
-    @Override
-    public Collection<? extends GrantedAuthority> getAuthorities() {
+    /**
+     * @param authorityBits bitset from {@link PermissionIndex#bitsetOf} over roles and permissions
+     */
+    public UserPrincipal(Integer id, String email, String passwordHash, String firstName, String lastName,
+                         Boolean isActive, Boolean isLocked, Set<String> roles, Set<String> permissions,
+                         long[] authorityBits) {
+        this(id, email, passwordHash, firstName, lastName, isActive, isLocked, roles, permissions,
+                authorityBits, toAuthorities(roles, permissions));
+    }
+
+    // Built once per principal instead of on every call
+    private static Set<GrantedAuthority> toAuthorities(Set<String> roles, Set<String> permissions) {
         Set<GrantedAuthority> authorities = new HashSet<>();
         roles.forEach(role -> authorities.add(new SimpleGrantedAuthority(role)));
         permissions.forEach(permission -> authorities.add(new SimpleGrantedAuthority(permission)));
+        return Collections.unmodifiableSet(authorities);
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
         return authorities;
     }
 
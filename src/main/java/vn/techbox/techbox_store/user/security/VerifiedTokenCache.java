@@ -0,0 +1,115 @@
+package vn.techbox.techbox_store.user.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Claims của các access token đã xác minh, để token gửi lại nhiều lần không phải kiểm chữ ký HMAC
+ * và parse JSON mỗi request.
+ *
+ * Keyed by a 64-bit hash of the raw token; a hit also compares the whole token, so a hash collision
+ * is only a miss. An entry is never served past the token's expiry (the caller then parses the
+ * token again and gets the usual expiry error), expired entries are swept periodically, and a
+ * user's entries are dropped on logout-all. The cache only remembers that a signature was valid:
+ * it does not make a token live longer than its own expiry.
+ */
+@Component
+@Slf4j
+public class VerifiedTokenCache {
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final int maxEntries;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public VerifiedTokenCache(MeterRegistry meterRegistry,
+                              @Value("${security.token-cache.enabled:true}") boolean enabled,
+                              @Value("${security.token-cache.max-entries:50000}") int maxEntries) {
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.hitCounter = Counter.builder("security.token.cache.requests")
+                .description("Bearer tokens looked up in the verified-token cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("security.token.cache.requests")
+                .description("Bearer tokens looked up in the verified-token cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("security.token.cache.size", entries, Map::size)
+                .description("Verified access tokens currently cached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Claims of {@code token} if it was verified before and has not expired, otherwise null
+     */
+    public AccessTokenClaims get(String token) {
+        if (!enabled) {
+            return null;
+        }
+        long key = hash(token);
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.token().equals(token)) {
+            missCounter.increment();
+            return null;
+        }
+        if (entry.claims().expiresAtMillis() <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        return entry.claims();
+    }
+
+    /**
+     * Remember a token whose signature and expiry were just checked
+     */
+    public void put(String token, AccessTokenClaims claims) {
+        // Đầy thì bỏ qua, lần quét sau sẽ dọn token hết hạn
+        if (!enabled || entries.size() >= maxEntries) {
+            return;
+        }
+        entries.put(hash(token), new Entry(token, claims));
+    }
+
+    /**
+     * Drop every cached token of a user (logout from all devices)
+     */
+    public void evictUser(Integer userId) {
+        entries.values().removeIf(entry -> userId.equals(entry.claims().userId()));
+    }
+
+    @Scheduled(fixedDelayString = "${security.token-cache.sweep-interval-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.claims().expiresAtMillis() <= now);
+        int removed = before - entries.size();
+        if (removed > 0) {
+            log.debug("Evicted {} expired tokens from the verified-token cache", removed);
+        }
+    }
+
+    // FNV-1a 64 over the chars: a token is ASCII, a few hundred chars
+    private static long hash(String token) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < token.length(); i++) {
+            hash ^= token.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private record Entry(String token, AccessTokenClaims claims) {
+    }
+}
@@ -2,12 +2,15 @@ package vn.techbox.techbox_store.user.service;
 
 import org.springframework.security.core.userdetails.UserDetails;
 import vn.techbox.techbox_store.user.dto.TokenResponse;
+import vn.techbox.techbox_store.user.security.AccessTokenClaims;
 
 public interface AuthService {
     String generateToken(String username);
     TokenResponse generateTokenPair(Integer userId);
     String extractUserName(String token);
     boolean validateToken(String token, UserDetails userDetails);
+    // Verify signature and expiry and read every claim in one parse; throws like extractUserName
+    AccessTokenClaims parseAccessToken(String token);
     long getAccessTokenExpiry();
     long getRefreshTokenExpiry();
     TokenResponse refreshToken(String refreshToken);
@@ -30,4 +30,7 @@ public interface RolePermissionService {
     RoleResponse assignPermissionsToRole(AssignPermissionsRequest request);
     RoleResponse removePermissionFromRole(Integer roleId, Integer permissionId);
     RoleResponse addPermissionToRole(Integer roleId, Integer permissionId);
+
+    // Version of the role/permission matrix, bumped after every committed change
+    long getMatrixVersion();
 }
@@ -1,6 +1,7 @@
 package vn.techbox.techbox_store.user.service.impl;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SignatureException;
@@ -16,6 +17,8 @@ import org.slf4j.LoggerFactory;
 import vn.techbox.techbox_store.user.dto.TokenResponse;
 import vn.techbox.techbox_store.user.model.RefreshToken;
 import vn.techbox.techbox_store.user.repository.UserRepository;
+import vn.techbox.techbox_store.user.security.AccessTokenClaims;
+import vn.techbox.techbox_store.user.security.VerifiedTokenCache;
 import vn.techbox.techbox_store.user.service.AuthService;
 import vn.techbox.techbox_store.user.service.RefreshTokenService;
 import vn.techbox.techbox_store.user.model.User;
@@ -34,8 +37,16 @@ import java.security.NoSuchAlgorithmException;
 public class AuthServiceImpl implements AuthService {
     private static final Logger logger = LoggerFactory.getLogger(AuthServiceImpl.class);
 
+    private static final String CLAIM_TYPE = "type";
+    private static final String CLAIM_USER_ID = "uid";
+    private static final String ACCESS_TOKEN_TYPE = "access";
+
     private final RefreshTokenService refreshTokenService;
     private final UserRepository userRepository;
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    // Built on first use: the key and parser only depend on jwt.secret
+    private volatile JwtParser parser;
 
     @Getter
     @Value("${jwt.access-token.expiry}")
@@ -67,6 +78,44 @@ public class AuthServiceImpl implements AuthService {
                 .compact();
     }
 
+    /**
+     * Access token carrying the user id JwtFilter looks the cached principal up by
+     */
+    private String generateAccessToken(User user) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(CLAIM_TYPE, ACCESS_TOKEN_TYPE);
+        claims.put(CLAIM_USER_ID, user.getId());
+
+        return Jwts.builder()
+                .claims()
+                .add(claims)
+                .subject(user.getAccount().getEmail())
+                .issuedAt(new Date(System.currentTimeMillis()))
+                .expiration(new Date(System.currentTimeMillis() + accessTokenExpiry))
+                .and()
+                .signWith(getKey())
+                .compact();
+    }
+
+    @Override
+    public AccessTokenClaims parseAccessToken(String token) {
+        // The parser rejects a bad signature and an expired token, so nothing else needs checking here
+        Claims claims = extractAllClaims(token);
+
+        // Password reset tokens are signed with the same key
+        Object type = claims.get(CLAIM_TYPE);
+        if (type != null && !ACCESS_TOKEN_TYPE.equals(type)) {
+            throw new MalformedJwtException("Not an access token");
+        }
+
+        Object userId = claims.get(CLAIM_USER_ID);
+        return new AccessTokenClaims(
+                claims.getSubject(),
+                userId instanceof Number id ? id.intValue() : null,
+                claims.getExpiration() != null ? claims.getExpiration().getTime() : Long.MAX_VALUE
+        );
+    }
+
     @Override
     public String extractUserName(String token) {
         try {
@@ -103,10 +152,12 @@ public class AuthServiceImpl implements AuthService {
     @Override
     public TokenResponse generateTokenPair(Integer userId) {
         try {
-            User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+            User user = userRepository.findByIdWithRoles(userId);
+            if (user == null) {
+                throw new RuntimeException("User not found");
+            }
 
-            String accessToken = generateToken(user.getAccount().getEmail());
+            String accessToken = generateAccessToken(user);
             RefreshToken refreshToken = refreshTokenService.createRefreshToken(userId);
 
             return new TokenResponse(accessToken, refreshToken.getTokenHash(), getAccessTokenExpiry());
@@ -123,10 +174,12 @@ public class AuthServiceImpl implements AuthService {
             RefreshToken newRefreshToken = refreshTokenService.rotateRefreshToken(refreshToken);
 
             // Get user info to generate new access token
-            User user = userRepository.findById(newRefreshToken.getUserId())
-                .orElseThrow(() -> new RuntimeException("User not found"));
+            User user = userRepository.findByIdWithRoles(newRefreshToken.getUserId());
+            if (user == null) {
+                throw new RuntimeException("User not found");
+            }
 
-            String newAccessToken = generateToken(user.getAccount().getEmail());
+            String newAccessToken = generateAccessToken(user);
 
             return new TokenResponse(newAccessToken, newRefreshToken.getTokenHash(), getAccessTokenExpiry());
         } catch (Exception e) {
@@ -150,6 +203,7 @@ public class AuthServiceImpl implements AuthService {
     public void logoutAll(Integer userId) {
         try {
             refreshTokenService.revokeAllUserTokens(userId);
+            verifiedTokenCache.evictUser(userId);
             logger.info("All sessions logged out for user: {}", userId);
         } catch (Exception e) {
             logger.error("Logout all failed for user {}: {}", userId, e.getMessage());
@@ -252,6 +306,15 @@ public class AuthServiceImpl implements AuthService {
         }
     }
 
+    private JwtParser parser() {
+        JwtParser current = parser;
+        if (current == null) {
+            current = Jwts.parser().verifyWith(getKey()).build();
+            parser = current;
+        }
+        return current;
+    }
+
     private <T> T extractClaim(String token, Function<Claims, T> claimResolver) {
         final Claims claims = extractAllClaims(token);
         return claimResolver.apply(claims);
@@ -259,11 +322,7 @@ public class AuthServiceImpl implements AuthService {
 
     private Claims extractAllClaims(String token) {
         try {
-            return Jwts.parser()
-                    .verifyWith(getKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            return parser().parseSignedClaims(token).getPayload();
         } catch (SignatureException e) {
             logger.error("Invalid JWT signature: {}", e.getMessage());
             throw e;
@@ -5,10 +5,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import vn.techbox.techbox_store.user.model.RefreshToken;
-import vn.techbox.techbox_store.user.repository.RefreshTokenRepository;
+import vn.techbox.techbox_store.user.repository.RefreshTokenJdbcRepository;
 import vn.techbox.techbox_store.user.service.RefreshTokenService;
+import vn.techbox.techbox_store.user.token.RefreshTokenStore;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -22,12 +24,19 @@ import java.util.Base64;
 public class RefreshTokenServiceImpl implements RefreshTokenService {
 
     private static final Logger logger = LoggerFactory.getLogger(RefreshTokenServiceImpl.class);
-    private final RefreshTokenRepository refreshTokenRepository;
+    private final RefreshTokenStore refreshTokenStore;
+    private final RefreshTokenJdbcRepository refreshTokenJdbcRepository;
     private final SecureRandom secureRandom = new SecureRandom();
 
     @Value("${jwt.refresh-token.expiry}")
     private long refreshTokenExpiry; // milliseconds
 
+    @Value("${refresh-token.purge.batch-size:1000}")
+    private int purgeBatchSize = 1000;
+
+    @Value("${refresh-token.purge.pause-ms:50}")
+    private long purgePauseMillis = 50;
+
     @Override
     @Transactional
     public RefreshToken createRefreshToken(Integer userId) {
@@ -38,22 +47,15 @@ public class RefreshTokenServiceImpl implements RefreshTokenService {
         LocalDateTime expiresAt = LocalDateTime.now()
             .plusSeconds(refreshTokenExpiry / 1000);
 
-        RefreshToken refreshToken = RefreshToken.builder()
-            .userId(userId)
-            .tokenHash(tokenHash)
-            .expiresAt(expiresAt)
-            .revoked(false)
-            .build();
-
-        RefreshToken savedToken = refreshTokenRepository.save(refreshToken);
+        LocalDateTime createdAt = LocalDateTime.now();
+        refreshTokenStore.save(userId, tokenHash, expiresAt, createdAt);
 
         RefreshToken resultToken = RefreshToken.builder()
-            .id(savedToken.getId())
-            .userId(savedToken.getUserId())
+            .userId(userId)
             .tokenHash(rawToken)
-            .expiresAt(savedToken.getExpiresAt())
-            .createdAt(savedToken.getCreatedAt())
-            .revoked(savedToken.getRevoked())
+            .expiresAt(expiresAt)
+            .createdAt(createdAt)
+            .revoked(false)
             .build();
 
         logger.info("Created new refresh token for user: {}", userId);
@@ -67,7 +69,7 @@ public class RefreshTokenServiceImpl implements RefreshTokenService {
         }
 
         String tokenHash = hashToken(token);
-        RefreshToken refreshToken = refreshTokenRepository.findByTokenHashAndRevokedFalse(tokenHash)
+        RefreshToken refreshToken = refreshTokenStore.findActive(tokenHash)
             .orElseThrow(() -> new RuntimeException("Invalid or revoked refresh token"));
 
         if (refreshToken.getExpiresAt().isBefore(LocalDateTime.now())) {
@@ -80,16 +82,24 @@ public class RefreshTokenServiceImpl implements RefreshTokenService {
     @Override
     @Transactional
     public RefreshToken rotateRefreshToken(String oldToken) {
-        // Validate old token
-        RefreshToken oldRefreshToken = validateRefreshToken(oldToken);
+        if (oldToken == null || oldToken.trim().isEmpty()) {
+            throw new RuntimeException("Refresh token is required");
+        }
 
-        // Revoke old token
-        revokeTokenByHash(oldToken);
+        // Validate and revoke in one step: a token presented twice is only rotated once
+        String oldTokenHash = hashToken(oldToken);
+        Integer userId = refreshTokenStore.consume(oldTokenHash).orElseThrow(() -> {
+            if (refreshTokenStore.isReplay(oldTokenHash)) {
+                logger.warn("Rejected reuse of an already rotated or revoked refresh token");
+                return new RuntimeException("Refresh token has already been used");
+            }
+            return new RuntimeException("Invalid, revoked or expired refresh token");
+        });
 
         // Create new token for the same user with new expiry time
-        RefreshToken newRefreshToken = createRefreshToken(oldRefreshToken.getUserId());
+        RefreshToken newRefreshToken = createRefreshToken(userId);
 
-        logger.info("Rotated refresh token for user: {}", oldRefreshToken.getUserId());
+        logger.info("Rotated refresh token for user: {}", userId);
         return newRefreshToken;
     }
 
@@ -97,23 +107,51 @@ public class RefreshTokenServiceImpl implements RefreshTokenService {
     @Transactional
     public void revokeTokenByHash(String rawToken) {
         String hashedToken = hashToken(rawToken);
-        refreshTokenRepository.revokeTokenByHash(hashedToken);
+        refreshTokenStore.revoke(hashedToken);
         logger.info("Revoked refresh token with hash");
     }
 
     @Override
     @Transactional
     public void revokeAllUserTokens(Integer userId) {
-        refreshTokenRepository.revokeAllTokensByUserId(userId);
+        refreshTokenStore.revokeAllOfUser(userId);
         logger.info("Revoked all refresh tokens for user: {}", userId);
     }
 
+    /**
+     * Deletes expired tokens in batches of {@code refresh-token.purge.batch-size}, each its own short
+     * statement, pausing {@code refresh-token.purge.pause-ms} in between so logins and refreshes are
+     * not held up. Rotated and revoked tokens stay until they expire, so presenting one again is
+     * still detected as a replay, and the revoked filter is rebuilt from exactly those rows.
+     */
     @Override
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void cleanupExpiredTokens() {
         LocalDateTime now = LocalDateTime.now();
-        refreshTokenRepository.deleteExpiredAndRevokedTokens(now);
-        logger.info("Cleaned up expired and revoked refresh tokens");
+        long deleted = 0;
+        int batch;
+        do {
+            batch = refreshTokenJdbcRepository.deleteExpired(now, purgeBatchSize);
+            deleted += batch;
+            if (batch == purgeBatchSize && !pause()) {
+                break;
+            }
+        } while (batch == purgeBatchSize);
+        refreshTokenStore.rebuildRevokedFilter();
+        logger.info("Cleaned up {} expired refresh tokens", deleted);
+    }
+
+    private boolean pause() {
+        if (purgePauseMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(purgePauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
     private String generateSecureToken() {
@@ -2,18 +2,33 @@ package vn.techbox.techbox_store.user.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import vn.techbox.techbox_store.user.dto.*;
 import vn.techbox.techbox_store.user.model.Permission;
 import vn.techbox.techbox_store.user.model.Role;
+import vn.techbox.techbox_store.user.repository.PermissionMatrixVersionRepository;
 import vn.techbox.techbox_store.user.repository.PermissionRepository;
 import vn.techbox.techbox_store.user.repository.RoleRepository;
+import vn.techbox.techbox_store.user.security.PermissionIndex;
+import vn.techbox.techbox_store.user.security.PrincipalCache;
 import vn.techbox.techbox_store.user.service.RolePermissionService;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,32 +38,40 @@ public class RolePermissionServiceImpl implements RolePermissionService {
 
     private final RoleRepository roleRepository;
     private final PermissionRepository permissionRepository;
+    private final PrincipalCache principalCache;
+    private final PermissionIndex permissionIndex;
+    private final PermissionMatrixVersionRepository matrixVersionRepository;
+
+    // Phiên bản ma trận vai trò/quyền mà instance này đã thấy; bản chung nằm trong bảng
+    // permission_matrix_version, được tăng bởi mỗi thay đổi và được đọc lại định kỳ
+    private final AtomicLong matrixVersion = new AtomicLong();
+    private volatile boolean versionTableReady;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
 
     @Override
     @Transactional(readOnly = true)
     public List<RoleResponse> getAllRoles() {
-        log.info("Fetching all roles");
-        return roleRepository.findAllWithPermissions().stream()
-                .map(this::mapToRoleResponse)
-                .collect(Collectors.toList());
+        return snapshot().roles();
     }
 
     @Override
     @Transactional(readOnly = true)
     public RoleResponse getRoleById(Integer roleId) {
-        log.info("Fetching role by id: {}", roleId);
-        Role role = roleRepository.findById(roleId)
-                .orElseThrow(() -> new RuntimeException("Role not found with id: " + roleId));
-        return mapToRoleResponse(role);
+        RoleResponse role = snapshot().rolesById().get(roleId);
+        if (role == null) {
+            throw new RuntimeException("Role not found with id: " + roleId);
+        }
+        return role;
     }
 
     @Override
     @Transactional(readOnly = true)
     public RoleResponse getRoleByName(String name) {
-        log.info("Fetching role by name: {}", name);
-        Role role = roleRepository.findByNameWithPermissions(name)
-                .orElseThrow(() -> new RuntimeException("Role not found with name: " + name));
-        return mapToRoleResponse(role);
+        RoleResponse role = snapshot().rolesByName().get(name);
+        if (role == null) {
+            throw new RuntimeException("Role not found with name: " + name);
+        }
+        return role;
     }
 
     @Override
@@ -67,6 +90,8 @@ public class RolePermissionServiceImpl implements RolePermissionService {
                 .build();
 
         Role savedRole = roleRepository.save(role);
+        permissionIndex.refresh();
+        matrixChanged();
         log.info("Role created successfully: {}", savedRole.getName());
         
         return mapToRoleResponse(savedRole);
@@ -87,34 +112,31 @@ public class RolePermissionServiceImpl implements RolePermissionService {
         // Soft delete
         role.setDeletedAt(java.time.LocalDateTime.now());
         roleRepository.save(role);
+        matrixChanged();
         log.info("Role soft deleted successfully: {}", roleId);
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<PermissionResponse> getAllPermissions() {
-        log.info("Fetching all permissions");
-        return permissionRepository.findAll().stream()
-                .map(this::mapToPermissionResponse)
-                .collect(Collectors.toList());
+        return snapshot().permissions();
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<PermissionResponse> getPermissionsByModule(String module) {
-        log.info("Fetching permissions for module: {}", module);
-        return permissionRepository.findByModule(module).stream()
-                .map(this::mapToPermissionResponse)
-                .collect(Collectors.toList());
+        ModulePermissionResponse modulePermissions = snapshot().modulesByName().get(module);
+        return modulePermissions != null ? modulePermissions.getPermissions() : List.of();
     }
 
     @Override
     @Transactional(readOnly = true)
     public PermissionResponse getPermissionById(Integer permissionId) {
-        log.info("Fetching permission by id: {}", permissionId);
-        Permission permission = permissionRepository.findById(permissionId)
-                .orElseThrow(() -> new RuntimeException("Permission not found with id: " + permissionId));
-        return mapToPermissionResponse(permission);
+        PermissionResponse permission = snapshot().permissionsById().get(permissionId);
+        if (permission == null) {
+            throw new RuntimeException("Permission not found with id: " + permissionId);
+        }
+        return permission;
     }
 
     @Override
@@ -134,6 +156,7 @@ public class RolePermissionServiceImpl implements RolePermissionService {
 
         role.setPermissions(permissions);
         Role updatedRole = roleRepository.save(role);
+        matrixChanged();
         
         log.info("Permissions assigned successfully to role: {}", updatedRole.getName());
         return mapToRoleResponse(updatedRole);
@@ -152,6 +175,7 @@ public class RolePermissionServiceImpl implements RolePermissionService {
 
         role.getPermissions().remove(permission);
         Role updatedRole = roleRepository.save(role);
+        matrixChanged();
         
         log.info("Permission removed successfully from role");
         return mapToRoleResponse(updatedRole);
@@ -170,6 +194,7 @@ public class RolePermissionServiceImpl implements RolePermissionService {
 
         role.getPermissions().add(permission);
         Role updatedRole = roleRepository.save(role);
+        matrixChanged();
         
         log.info("Permission added successfully to role");
         return mapToRoleResponse(updatedRole);
@@ -190,6 +215,7 @@ public class RolePermissionServiceImpl implements RolePermissionService {
         // Soft delete
         permission.setDeletedAt(java.time.LocalDateTime.now());
         permissionRepository.save(permission);
+        matrixChanged();
         log.info("Permission soft deleted successfully: {}", permissionId);
     }
 
@@ -219,6 +245,8 @@ public class RolePermissionServiceImpl implements RolePermissionService {
                 .build();
 
         Permission savedPermission = permissionRepository.save(permission);
+        permissionIndex.refresh();
+        matrixChanged();
         log.info("Permission created successfully: {}", savedPermission.getName());
 
         return mapToPermissionResponse(savedPermission);
@@ -227,79 +255,17 @@ public class RolePermissionServiceImpl implements RolePermissionService {
     @Override
     @Transactional(readOnly = true)
     public List<ModulePermissionResponse> getAllModulePermissions() {
-        log.info("Fetching all module permissions");
-
-        List<Permission> permissions = permissionRepository.findAll();
-
-        // Group permissions by module
-        return permissions.stream()
-                .collect(Collectors.groupingBy(Permission::getModule))
-                .entrySet().stream()
-                .map(entry -> {
-                    String moduleName = entry.getKey();
-                    List<Permission> modulePermissions = entry.getValue();
-
-                    List<PermissionResponse> permissionResponses = modulePermissions.stream()
-                            .map(this::mapToPermissionResponse)
-                            .collect(Collectors.toList());
-
-                    // Use the creation time of the oldest permission as module creation time
-                    var createdAt = modulePermissions.stream()
-                            .min((p1, p2) -> p1.getCreatedAt().compareTo(p2.getCreatedAt()))
-                            .map(Permission::getCreatedAt)
-                            .orElse(java.time.LocalDateTime.now());
-
-                    // Use the update time of the newest permission as module update time
-                    var updatedAt = modulePermissions.stream()
-                            .max((p1, p2) -> p1.getUpdatedAt().compareTo(p2.getUpdatedAt()))
-                            .map(Permission::getUpdatedAt)
-                            .orElse(java.time.LocalDateTime.now());
-
-                    return ModulePermissionResponse.builder()
-                            .moduleName(moduleName)
-                            .description(getModuleDescription(moduleName))
-                            .permissions(permissionResponses)
-                            .totalPermissions(permissionResponses.size())
-                            .createdAt(createdAt)
-                            .updatedAt(updatedAt)
-                            .build();
-                })
-                .collect(Collectors.toList());
+        return snapshot().modules();
     }
 
     @Override
     @Transactional(readOnly = true)
     public ModulePermissionResponse getModulePermissionByName(String moduleName) {
-        log.info("Fetching module permission by name: {}", moduleName);
-
-        List<Permission> modulePermissions = permissionRepository.findByModule(moduleName);
-
-        if (modulePermissions.isEmpty()) {
+        ModulePermissionResponse modulePermissions = snapshot().modulesByName().get(moduleName);
+        if (modulePermissions == null) {
             throw new RuntimeException("Module permission not found with name: " + moduleName);
         }
-
-        List<PermissionResponse> permissionResponses = modulePermissions.stream()
-                .map(this::mapToPermissionResponse)
-                .collect(Collectors.toList());
-
-        var createdAt = modulePermissions.stream()
-                .min((p1, p2) -> p1.getCreatedAt().compareTo(p2.getCreatedAt()))
-                .map(Permission::getCreatedAt)
-                .orElse(java.time.LocalDateTime.now());
-
-        var updatedAt = modulePermissions.stream()
-                .max((p1, p2) -> p1.getUpdatedAt().compareTo(p2.getUpdatedAt()))
-                .map(Permission::getUpdatedAt)
-                .orElse(java.time.LocalDateTime.now());
-
-        return ModulePermissionResponse.builder()
-                .moduleName(moduleName)
-                .description(getModuleDescription(moduleName))
-                .permissions(permissionResponses)
-                .totalPermissions(permissionResponses.size())
-                .createdAt(createdAt)
-                .updatedAt(updatedAt)
-                .build();
+        return modulePermissions;
     }
 
     @Override
@@ -325,6 +291,8 @@ public class RolePermissionServiceImpl implements RolePermissionService {
                 .build();
 
         Permission savedPermission = permissionRepository.save(defaultPermission);
+        permissionIndex.refresh();
+        matrixChanged();
         log.info("Module permission created successfully: {}", request.getModuleName());
 
         return ModulePermissionResponse.builder()
@@ -363,9 +331,157 @@ public class RolePermissionServiceImpl implements RolePermissionService {
             permissionRepository.save(permission);
         }
 
+        matrixChanged();
         log.info("Module permission deleted successfully: {}", moduleName);
     }
 
+    @Override
+    public long getMatrixVersion() {
+        return matrixVersion.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        pollMatrixVersion();
+    }
+
+    /**
+     * Pick up matrix changes committed by other instances: a newer shared version makes the next
+     * read rebuild the snapshot and reloads cached principals loaded under the old matrix
+     */
+    @Scheduled(fixedDelayString = "${security.permission-matrix.poll-interval-ms:5000}")
+    public void pollMatrixVersion() {
+        try {
+            ensureVersionTable();
+            long shared = matrixVersionRepository.currentVersion();
+            long previous = matrixVersion.getAndAccumulate(shared, Math::max);
+            if (shared > previous) {
+                // Roles or permissions created elsewhere need bit numbers here too
+                permissionIndex.compile();
+                log.debug("Role/permission matrix version {} -> {}", previous, shared);
+            }
+        } catch (Exception e) {
+            // The current snapshot keeps being served until a poll succeeds
+            log.warn("Could not read the role/permission matrix version: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Bump the shared matrix version in the current transaction and adopt it here once that
+     * transaction commits, so the next read rebuilds the snapshot and cached principals loaded
+     * under the old matrix are reloaded. Other instances see it on their next poll.
+     */
+    private void matrixChanged() {
+        principalCache.invalidateAll();
+        ensureVersionTable();
+        long version = matrixVersionRepository.bump();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    matrixVersion.accumulateAndGet(version, Math::max);
+                }
+            });
+        } else {
+            matrixVersion.accumulateAndGet(version, Math::max);
+        }
+    }
+
+    private void ensureVersionTable() {
+        if (!versionTableReady) {
+            matrixVersionRepository.createIfMissing();
+            versionTableReady = true;
+        }
+    }
+
+    /**
+     * The current snapshot, built here (in the caller's read transaction) if the matrix changed
+     * since the last one. A snapshot built while a change was committing carries the old version
+     * and is rebuilt by the next read.
+     */
+    private Snapshot snapshot() {
+        long version = matrixVersion.get();
+        Snapshot current = snapshot.get();
+        if (current != null && current.version() == version) {
+            return current;
+        }
+        Snapshot rebuilt = buildSnapshot(version);
+        snapshot.accumulateAndGet(rebuilt, (existing, candidate) ->
+                existing == null || existing.version() < candidate.version() ? candidate : existing);
+        log.info("Role/permission snapshot rebuilt at version {}: {} roles, {} permissions",
+                version, rebuilt.roles().size(), rebuilt.permissions().size());
+        return rebuilt;
+    }
+
+    private Snapshot buildSnapshot(long version) {
+        List<Role> roles = roleRepository.findAllWithPermissions();
+        List<Permission> permissions = permissionRepository.findAll();
+
+        List<RoleResponse> roleResponses = new ArrayList<>(roles.size());
+        Map<Integer, RoleResponse> rolesById = new HashMap<>();
+        Map<String, RoleResponse> rolesByName = new HashMap<>();
+        for (Role role : roles) {
+            RoleResponse response = mapToRoleResponse(role);
+            roleResponses.add(response);
+            rolesById.put(role.getId(), response);
+            rolesByName.put(role.getName(), response);
+        }
+
+        List<PermissionResponse> permissionResponses = new ArrayList<>(permissions.size());
+        Map<Integer, PermissionResponse> permissionsById = new HashMap<>();
+        Map<String, List<Permission>> permissionsByModule = new TreeMap<>();
+        for (Permission permission : permissions) {
+            PermissionResponse response = mapToPermissionResponse(permission);
+            permissionResponses.add(response);
+            permissionsById.put(permission.getId(), response);
+            permissionsByModule.computeIfAbsent(permission.getModule(), module -> new ArrayList<>()).add(permission);
+        }
+
+        List<ModulePermissionResponse> modules = new ArrayList<>(permissionsByModule.size());
+        Map<String, ModulePermissionResponse> modulesByName = new HashMap<>();
+        permissionsByModule.forEach((moduleName, modulePermissions) -> {
+            ModulePermissionResponse module = mapToModulePermissionResponse(moduleName, modulePermissions);
+            modules.add(module);
+            modulesByName.put(moduleName, module);
+        });
+
+        return new Snapshot(
+                version,
+                List.copyOf(roleResponses),
+                Map.copyOf(rolesById),
+                Map.copyOf(rolesByName),
+                List.copyOf(permissionResponses),
+                Map.copyOf(permissionsById),
+                List.copyOf(modules),
+                Map.copyOf(modulesByName)
+        );
+    }
+
+    private ModulePermissionResponse mapToModulePermissionResponse(String moduleName, List<Permission> modulePermissions) {
+        List<PermissionResponse> permissionResponses = new ArrayList<>(modulePermissions.size());
+        // Module creation time is the oldest permission's, update time the newest permission's
+        LocalDateTime createdAt = null;
+        LocalDateTime updatedAt = null;
+        for (Permission permission : modulePermissions) {
+            permissionResponses.add(mapToPermissionResponse(permission));
+            if (permission.getCreatedAt() != null && (createdAt == null || permission.getCreatedAt().isBefore(createdAt))) {
+                createdAt = permission.getCreatedAt();
+            }
+            if (permission.getUpdatedAt() != null && (updatedAt == null || permission.getUpdatedAt().isAfter(updatedAt))) {
+                updatedAt = permission.getUpdatedAt();
+            }
+        }
+
+        return ModulePermissionResponse.builder()
+                .moduleName(moduleName)
+                .description(getModuleDescription(moduleName))
+                .permissions(List.copyOf(permissionResponses))
+                .totalPermissions(permissionResponses.size())
+                .createdAt(createdAt != null ? createdAt : LocalDateTime.now())
+                .updatedAt(updatedAt != null ? updatedAt : LocalDateTime.now())
+                .build();
+    }
+
     private String getModuleDescription(String moduleName) {
         // Return default descriptions for known modules or a generic one
         return switch (moduleName) {
@@ -408,5 +524,19 @@ public class RolePermissionServiceImpl implements RolePermissionService {
                 .updatedAt(permission.getUpdatedAt())
                 .build();
     }
-}
 
+    /**
+     * Immutable view of every role, permission and module grouping, served to the read endpoints
+     */
+    private record Snapshot(
+            long version,
+            List<RoleResponse> roles,
+            Map<Integer, RoleResponse> rolesById,
+            Map<String, RoleResponse> rolesByName,
+            List<PermissionResponse> permissions,
+            Map<Integer, PermissionResponse> permissionsById,
+            List<ModulePermissionResponse> modules,
+            Map<String, ModulePermissionResponse> modulesByName
+    ) {
+    }
+}
@@ -16,6 +16,7 @@ import vn.techbox.techbox_store.user.model.User;
 import vn.techbox.techbox_store.user.repository.AccountRepository;
 import vn.techbox.techbox_store.user.repository.RoleRepository;
 import vn.techbox.techbox_store.user.repository.UserRepository;
+import vn.techbox.techbox_store.user.security.PrincipalCache;
 import vn.techbox.techbox_store.user.security.UserPrincipal;
 import vn.techbox.techbox_store.user.service.AuthService;
 import vn.techbox.techbox_store.user.service.UserService;
@@ -38,6 +39,7 @@ public class UserServiceImpl implements UserService {
     private final AuthenticationManager authManager;
     private final AuthService authService;
     private final PasswordEncoder encoder;
+    private final PrincipalCache principalCache;
 
     @Value("${user.address.max-per-user}")
     private int maxAddressesPerUser;
@@ -47,13 +49,15 @@ public class UserServiceImpl implements UserService {
                           RoleRepository roleRepository,
                           AuthenticationManager authManager,
                           AuthService authService,
-                          PasswordEncoder encoder) {
+                          PasswordEncoder encoder,
+                          PrincipalCache principalCache) {
         this.userRepository = userRepository;
         this.accountRepository = accountRepository;
         this.roleRepository = roleRepository;
         this.authManager = authManager;
         this.authService = authService;
         this.encoder = encoder;
+        this.principalCache = principalCache;
     }
 
     @Transactional
@@ -238,6 +242,8 @@ public class UserServiceImpl implements UserService {
             user.getAddresses().addAll(newAddresses);
         }
 
+        // Email, trạng thái và vai trò nằm trong principal đã cache
+        principalCache.invalidate(user.getId());
         return userRepository.save(user);
     }
 
@@ -251,6 +257,7 @@ public class UserServiceImpl implements UserService {
         user.getAccount().setIsActive(false);
 
         userRepository.save(user);
+        principalCache.invalidate(user.getId());
     }
 
     public void restoreUser(Integer id) {
@@ -265,6 +272,7 @@ public class UserServiceImpl implements UserService {
         user.getAccount().setIsActive(true);
 
         userRepository.save(user);
+        principalCache.invalidate(user.getId());
     }
 
     public TokenResponse verify(UserLoginRequest req) {
@@ -298,6 +306,7 @@ public class UserServiceImpl implements UserService {
         Account account = user.getAccount();
         account.setPasswordHash(encoder.encode(newPassword));
         userRepository.save(user);
+        principalCache.invalidate(user.getId());
     }
 
     @Override
@@ -0,0 +1,318 @@
+package vn.techbox.techbox_store.user.token;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.techbox.techbox_store.user.model.RefreshToken;
+import vn.techbox.techbox_store.user.repository.RefreshTokenJdbcRepository;
+import vn.techbox.techbox_store.user.repository.RefreshTokenJdbcRepository.RevokedHash;
+import vn.techbox.techbox_store.user.repository.RefreshTokenJdbcRepository.TokenRow;
+import vn.techbox.techbox_store.user.repository.RefreshTokenRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lưu và xoay vòng refresh token theo hash.
+ *
+ * Rotation consumes the presented token with one conditional UPDATE ... RETURNING, so of two
+ * requests presenting the same token exactly one gets its owner back, with no read beforehand.
+ *
+ * With {@link RefreshTokenStoreMode#WRITE_BEHIND}, newly issued tokens wait in a pending map
+ * (bounded by {@code refresh-token.store.max-pending}; beyond it tokens are inserted directly)
+ * and are inserted in batches by a scheduled flush and on shutdown. A pending token is consumed or
+ * revoked by flipping its flag, which is still a single winner; the flag is written with the row,
+ * or by whoever flips it after the row has gone out. Pending tokens are only known to this
+ * instance and are lost if the process dies; the mode is meant for a single application instance.
+ *
+ * Hashes revoked here, and revoked unexpired hashes read from the database at startup and after
+ * each purge, go into a bloom filter. A rejected token is only looked up as a possible replay of
+ * a rotated token when the filter says it may be one.
+ */
+@Component
+@Slf4j
+public class RefreshTokenStore {
+
+    private final RefreshTokenJdbcRepository refreshTokenJdbcRepository;
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final TransactionTemplate flushTransaction;
+    private final boolean writeBehind;
+    private final int maxPending;
+    private final int batchSize;
+    private final long filterExpectedInsertions;
+    private final double filterFalsePositiveRate;
+
+    private final ConcurrentHashMap<String, PendingToken> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private volatile RevokedTokenFilter revokedFilter;
+    // Filter being rebuilt; revocations made meanwhile go into both
+    private volatile RevokedTokenFilter rebuilding;
+
+    private final Counter rotatedCounter;
+    private final Counter reusedCounter;
+
+    public RefreshTokenStore(RefreshTokenJdbcRepository refreshTokenJdbcRepository,
+                             RefreshTokenRepository refreshTokenRepository,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry,
+                             @Value("${refresh-token.store.mode:DATABASE}") RefreshTokenStoreMode mode,
+                             @Value("${refresh-token.store.max-pending:10000}") int maxPending,
+                             @Value("${refresh-token.store.batch-size:500}") int batchSize,
+                             @Value("${refresh-token.revoked-filter.expected-insertions:100000}") long filterExpectedInsertions,
+                             @Value("${refresh-token.revoked-filter.false-positive-rate:0.01}") double filterFalsePositiveRate) {
+        this.refreshTokenJdbcRepository = refreshTokenJdbcRepository;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.writeBehind = mode == RefreshTokenStoreMode.WRITE_BEHIND;
+        this.maxPending = Math.max(1, maxPending);
+        this.batchSize = Math.max(1, batchSize);
+        this.filterExpectedInsertions = filterExpectedInsertions;
+        this.filterFalsePositiveRate = filterFalsePositiveRate;
+        this.revokedFilter = new RevokedTokenFilter(filterExpectedInsertions, filterFalsePositiveRate);
+        this.rotatedCounter = Counter.builder("refresh_token.rotations")
+                .description("Refresh token rotations by outcome")
+                .tag("result", "rotated")
+                .register(meterRegistry);
+        this.reusedCounter = Counter.builder("refresh_token.rotations")
+                .description("Refresh token rotations by outcome")
+                .tag("result", "reused")
+                .register(meterRegistry);
+        Gauge.builder("refresh_token.store.pending", pending, Map::size)
+                .description("Issued refresh tokens not yet written to the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Store a newly issued token; in DATABASE mode (or when the pending map is full) it is
+     * inserted in the caller's transaction
+     */
+    public void save(Integer userId, String tokenHash, LocalDateTime expiresAt, LocalDateTime createdAt) {
+        if (writeBehind && pending.size() < maxPending) {
+            pending.put(tokenHash, new PendingToken(userId, expiresAt, createdAt, new AtomicBoolean()));
+            return;
+        }
+        refreshTokenJdbcRepository.insertTokens(List.of(new TokenRow(userId, tokenHash, expiresAt, createdAt, false)));
+    }
+
+    /**
+     * Revoke an active, unexpired token and return its owner. Empty if the token is unknown,
+     * expired or already revoked - including by a concurrent call presenting the same token.
+     */
+    public Optional<Integer> consume(String tokenHash) {
+        LocalDateTime now = LocalDateTime.now();
+        PendingToken token = pending.get(tokenHash);
+        Optional<Integer> owner;
+        if (token != null) {
+            owner = token.expiresAt().isAfter(now) && revokePending(tokenHash, token)
+                    ? Optional.of(token.userId())
+                    : Optional.empty();
+        } else {
+            owner = refreshTokenJdbcRepository.consumeToken(tokenHash, now);
+        }
+        owner.ifPresent(userId -> {
+            markRevoked(tokenHash);
+            rotatedCounter.increment();
+        });
+        return owner;
+    }
+
+    /**
+     * Whether a token that could not be consumed is one that was issued and has already been
+     * rotated or revoked, i.e. it is being presented again
+     */
+    public boolean isReplay(String tokenHash) {
+        if (!revokedFilter.mightContain(tokenHash)) {
+            return false;
+        }
+        PendingToken token = pending.get(tokenHash);
+        boolean replay = token != null
+                ? token.revoked().get()
+                : refreshTokenJdbcRepository.findRevokedUserId(tokenHash).isPresent();
+        if (replay) {
+            reusedCounter.increment();
+        }
+        return replay;
+    }
+
+    public Optional<RefreshToken> findActive(String tokenHash) {
+        PendingToken token = pending.get(tokenHash);
+        if (token == null) {
+            return refreshTokenRepository.findByTokenHashAndRevokedFalse(tokenHash);
+        }
+        if (token.revoked().get()) {
+            return Optional.empty();
+        }
+        return Optional.of(RefreshToken.builder()
+                .userId(token.userId())
+                .tokenHash(tokenHash)
+                .expiresAt(token.expiresAt())
+                .createdAt(token.createdAt())
+                .revoked(false)
+                .build());
+    }
+
+    public void revoke(String tokenHash) {
+        PendingToken token = pending.get(tokenHash);
+        if (token != null) {
+            revokePending(tokenHash, token);
+        } else {
+            refreshTokenJdbcRepository.revokeToken(tokenHash);
+        }
+        markRevoked(tokenHash);
+    }
+
+    public void revokeAllOfUser(Integer userId) {
+        // Pending first: a row flushed after this point carries the flag, one flushed before is hit by the UPDATE
+        pending.forEach((tokenHash, token) -> {
+            if (token.userId().equals(userId)) {
+                token.revoked().set(true);
+                markRevoked(tokenHash);
+            }
+        });
+        refreshTokenRepository.revokeAllTokensByUserId(userId);
+    }
+
+    // Single winner on the flag; if the flush has already taken the row out, the winner writes the revocation
+    private boolean revokePending(String tokenHash, PendingToken token) {
+        if (!token.revoked().compareAndSet(false, true)) {
+            return false;
+        }
+        if (pending.get(tokenHash) != token) {
+            refreshTokenJdbcRepository.revokeToken(tokenHash);
+        }
+        return true;
+    }
+
+    private void markRevoked(String tokenHash) {
+        revokedFilter.add(tokenHash);
+        RevokedTokenFilter next = rebuilding;
+        if (next != null) {
+            next.add(tokenHash);
+        }
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<Map.Entry<String, PendingToken>> entries = new ArrayList<>(pending.entrySet());
+            for (int from = 0; from < entries.size(); from += batchSize) {
+                writeBatch(entries.subList(from, Math.min(from + batchSize, entries.size())));
+            }
+            if (!entries.isEmpty()) {
+                log.debug("Flushed {} refresh tokens", entries.size());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void writeBatch(List<Map.Entry<String, PendingToken>> batch) {
+        List<TokenRow> rows = new ArrayList<>(batch.size());
+        for (Map.Entry<String, PendingToken> entry : batch) {
+            PendingToken token = entry.getValue();
+            rows.add(new TokenRow(token.userId(), entry.getKey(), token.expiresAt(), token.createdAt(),
+                    token.revoked().get()));
+        }
+        flushTransaction.executeWithoutResult(status -> refreshTokenJdbcRepository.insertTokens(rows));
+
+        // Revocations that raced with the insert: the flag flipped after its value was read into the row
+        for (int i = 0; i < batch.size(); i++) {
+            Map.Entry<String, PendingToken> entry = batch.get(i);
+            pending.remove(entry.getKey(), entry.getValue());
+            if (!rows.get(i).revoked() && entry.getValue().revoked().get()) {
+                refreshTokenJdbcRepository.revokeToken(entry.getKey());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${refresh-token.store.flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        if (!writeBehind || pending.isEmpty()) {
+            return;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Error flushing refresh tokens: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (writeBehind && !pending.isEmpty()) {
+            log.info("Flushing {} refresh tokens before shutdown", pending.size());
+            flush();
+        }
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuildRevokedFilter();
+    }
+
+    /**
+     * Replace the revoked-token filter with one holding only hashes still revoked and unexpired,
+     * read {@code refresh-token.store.batch-size} rows at a time
+     */
+    public void rebuildRevokedFilter() {
+        if (!rebuildLock.tryLock()) {
+            return;
+        }
+        try {
+            RevokedTokenFilter next = new RevokedTokenFilter(filterExpectedInsertions, filterFalsePositiveRate);
+            rebuilding = next;
+            LocalDateTime now = LocalDateTime.now();
+            long afterId = 0;
+            int count = 0;
+            List<RevokedHash> page;
+            do {
+                page = refreshTokenJdbcRepository.findRevokedHashes(afterId, now, batchSize);
+                for (RevokedHash revoked : page) {
+                    next.add(revoked.tokenHash());
+                    afterId = revoked.id();
+                }
+                count += page.size();
+            } while (page.size() == batchSize);
+            pending.forEach((tokenHash, token) -> {
+                if (token.revoked().get()) {
+                    next.add(tokenHash);
+                }
+            });
+            revokedFilter = next;
+            log.info("Revoked refresh token filter rebuilt with {} hashes", count);
+        } catch (Exception e) {
+            log.error("Error rebuilding revoked refresh token filter: {}", e.getMessage(), e);
+        } finally {
+            rebuilding = null;
+            rebuildLock.unlock();
+        }
+    }
+
+    private record PendingToken(Integer userId, LocalDateTime expiresAt, LocalDateTime createdAt,
+                                AtomicBoolean revoked) {
+    }
+}
@@ -0,0 +1,17 @@
+package vn.techbox.techbox_store.user.token;
+
+/**
+ * Cách lưu refresh token mới, cấu hình bằng {@code refresh-token.store.mode}
+ */
+public enum RefreshTokenStoreMode {
+
+    /**
+     * Mỗi token mới được insert ngay trong transaction cấp token
+     */
+    DATABASE,
+
+    /**
+     * Token mới nằm trong bộ nhớ và được insert theo lô sau vài giây (một instance ứng dụng)
+     */
+    WRITE_BEHIND
+}
@@ -0,0 +1,105 @@
+package vn.techbox.techbox_store.voucher.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Set-based JDBC access for voucher reservations: bulk expiry and batched reserved counter updates.
+ * Bypasses the persistence context, so callers must not rely on managed Voucher state afterwards.
+ */
+@Repository
+@RequiredArgsConstructor
+public class VoucherReservationJdbcRepository {
+
+    // Bump version so entity writers holding an older copy fail instead of overwriting the counter
+    private static final String SUBTRACT_RESERVED =
+            "UPDATE vouchers SET reserved_quantity = reserved_quantity - ?, " +
+            "version = COALESCE(version, 0) + 1, updated_at = ? WHERE id = ? AND reserved_quantity >= ?";
+
+    private static final String EXPIRE_FOR_ORDERS =
+            "UPDATE voucher_reservations SET status = 'EXPIRED', updated_at = :now " +
+            "WHERE order_id IN (:orderIds) AND status = 'RESERVED' AND expires_at < :now " +
+            "RETURNING id, order_id, voucher_id, quantity";
+
+    private static final String EXPIRE_DUE =
+            "UPDATE voucher_reservations SET status = 'EXPIRED', updated_at = :now " +
+            "WHERE id IN (SELECT id FROM voucher_reservations " +
+            "WHERE status = 'RESERVED' AND expires_at < :now " +
+            "ORDER BY expires_at LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, order_id, voucher_id, quantity";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * Subtract from reserved_quantity, one batched statement per voucher (ascending id order).
+     * Rows whose counter is lower than the quantity are left unchanged.
+     *
+     * @return ids of the vouchers that were not updated
+     */
+    public List<Integer> decrementReserved(SortedMap<Integer, Integer> quantityByVoucher) {
+        if (quantityByVoucher.isEmpty()) {
+            return List.of();
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(quantityByVoucher.size());
+        List<Integer> ids = new ArrayList<>(quantityByVoucher.size());
+        for (Map.Entry<Integer, Integer> entry : quantityByVoucher.entrySet()) {
+            rows.add(new Object[]{entry.getValue(), now, entry.getKey(), entry.getValue()});
+            ids.add(entry.getKey());
+        }
+        int[] counts = jdbcTemplate.batchUpdate(SUBTRACT_RESERVED, rows);
+        List<Integer> skipped = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                skipped.add(ids.get(i));
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Mark the due RESERVED voucher reservations of the given orders EXPIRED in one statement
+     */
+    public List<ExpiredVoucherReservation> expireDueForOrders(Collection<Integer> orderIds, LocalDateTime now) {
+        if (orderIds.isEmpty()) {
+            return List.of();
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("orderIds", orderIds)
+                .addValue("now", Timestamp.valueOf(now));
+        return namedParameterJdbcTemplate.query(EXPIRE_FOR_ORDERS, params, (rs, rowNum) -> expiredReservation(rs));
+    }
+
+    /**
+     * Mark up to {@code limit} due RESERVED voucher reservations (any order) EXPIRED in one statement
+     */
+    public List<ExpiredVoucherReservation> expireDue(LocalDateTime now, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource("now", Timestamp.valueOf(now))
+                .addValue("limit", limit);
+        return namedParameterJdbcTemplate.query(EXPIRE_DUE, params, (rs, rowNum) -> expiredReservation(rs));
+    }
+
+    private static ExpiredVoucherReservation expiredReservation(ResultSet rs) throws SQLException {
+        return new ExpiredVoucherReservation(
+                rs.getLong("id"),
+                rs.getInt("order_id"),
+                rs.getInt("voucher_id"),
+                rs.getInt("quantity"));
+    }
+
+    public record ExpiredVoucherReservation(Long id, Integer orderId, Integer voucherId, int quantity) {
+    }
+}
@@ -34,6 +34,10 @@ public interface VoucherReservationRepository extends JpaRepository<VoucherReser
     Optional<VoucherReservation> findByUserIdAndVoucherCodeAndReserved(@Param("userId") Integer userId,
                                                                        @Param("voucherCode") String voucherCode);
 
+    // Cặp (orderId, expiresAt) của các giữ chỗ còn hạn - dựng lại timing wheel khi khởi động
+    @Query("SELECT DISTINCT vr.orderId, vr.expiresAt FROM VoucherReservation vr WHERE vr.status = 'RESERVED' AND vr.expiresAt IS NOT NULL")
+    List<Object[]> findPendingExpiryDeadlines();
+
     // Delete RELEASED and EXPIRED reservations
     @Modifying(clearAutomatically = true, flushAutomatically = true)
     @Query("DELETE FROM VoucherReservation vr WHERE (vr.status = 'RELEASED' AND vr.releasedAt < :cutoff) OR (vr.status = 'EXPIRED' AND vr.expiresAt < :cutoff)")
@@ -3,20 +3,26 @@ package vn.techbox.techbox_store.voucher.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import vn.techbox.techbox_store.inventory.model.ReservationStatus;
+import vn.techbox.techbox_store.inventory.reservation.ReservationExpiryWheel;
 import vn.techbox.techbox_store.voucher.model.UserVoucher;
 import vn.techbox.techbox_store.voucher.model.Voucher;
 import vn.techbox.techbox_store.voucher.model.VoucherReservation;
 import vn.techbox.techbox_store.voucher.repository.UserVoucherRepository;
 import vn.techbox.techbox_store.voucher.repository.VoucherRepository;
+import vn.techbox.techbox_store.voucher.repository.VoucherReservationJdbcRepository;
 import vn.techbox.techbox_store.voucher.repository.VoucherReservationRepository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 @Service
 @RequiredArgsConstructor
@@ -26,6 +32,11 @@ public class VoucherReservationService {
     private final VoucherReservationRepository voucherReservationRepository;
     private final VoucherRepository voucherRepository;
     private final UserVoucherRepository userVoucherRepository;
+    private final VoucherReservationJdbcRepository voucherReservationJdbcRepository;
+    private final ReservationExpiryWheel expiryWheel;
+
+    @Value("${inventory.reservation.expiry.batch-size:500}")
+    private int expiryBatchSize = 500;
 
     @Transactional
     @Retryable(retryFor = {OptimisticLockingFailureException.class}, maxAttempts = 3, backoff = @Backoff(delay = 100))
@@ -49,6 +60,7 @@ public class VoucherReservationService {
         voucherRepository.save(voucher);
 
         // Create voucher reservation record
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(15);
         VoucherReservation reservation = VoucherReservation.builder()
                 .orderId(orderId)
                 .voucherId(voucherId)
@@ -56,9 +68,10 @@ public class VoucherReservationService {
                 .quantity(1)
                 .status(ReservationStatus.RESERVED)
                 .reservedAt(LocalDateTime.now())
-                .expiresAt(LocalDateTime.now().plusMinutes(15))
+                .expiresAt(expiresAt)
                 .build();
 
+        expiryWheel.schedule(ReservationExpiryWheel.ReservationKind.VOUCHER, orderId, expiresAt);
         return voucherReservationRepository.save(reservation);
     }
 
@@ -107,12 +120,14 @@ public class VoucherReservationService {
                 .expiresAt(expiresAt)
                 .build();
 
+        expiryWheel.schedule(ReservationExpiryWheel.ReservationKind.VOUCHER, orderId, expiresAt);
         return voucherReservationRepository.save(reservation);
     }
 
     @Transactional
     public void confirmReservations(Integer orderId) {
         log.info("Confirming voucher reservations for order: {}", orderId);
+        expiryWheel.cancelAfterCommit(ReservationExpiryWheel.ReservationKind.VOUCHER, orderId);
 
         List<VoucherReservation> reservations = voucherReservationRepository
                 .findByOrderIdAndStatus(orderId, ReservationStatus.RESERVED);
@@ -149,6 +164,7 @@ public class VoucherReservationService {
     @Transactional
     public void     releaseReservations(Integer orderId) {
         log.info("Releasing voucher reservations for order: {}", orderId);
+        expiryWheel.cancelAfterCommit(ReservationExpiryWheel.ReservationKind.VOUCHER, orderId);
 
         List<VoucherReservation> reservations = voucherReservationRepository
                 .findByOrderIdAndStatus(orderId, ReservationStatus.RESERVED);
@@ -173,6 +189,7 @@ public class VoucherReservationService {
     @Transactional
     public void setReservationsExpiryNull(Integer orderId) {
         log.info("Setting voucher reservations expiry to null for order: {}", orderId);
+        expiryWheel.cancelAfterCommit(ReservationExpiryWheel.ReservationKind.VOUCHER, orderId);
 
         List<VoucherReservation> reservations = voucherReservationRepository
                 .findByOrderIdAndStatus(orderId, ReservationStatus.RESERVED);
@@ -186,29 +203,37 @@ public class VoucherReservationService {
         }
     }
 
+    /**
+     * Safety-net sweep: expire up to one batch of due voucher reservations of any order
+     *
+     * @return number of reservations expired (a full batch means more may be due)
+     */
     @Transactional
-    public void cleanUpExpiredReservations() {
-        log.info("Cleaning up expired voucher reservations");
-
-        List<VoucherReservation> expiredReservations = voucherReservationRepository
-                .findExpiredReservations(ReservationStatus.RESERVED, LocalDateTime.now());
-
-        for (VoucherReservation reservation : expiredReservations) {
-            reservation.setStatus(ReservationStatus.EXPIRED);
-
-            // Remove from reserved quantity
-            Voucher voucher = voucherRepository.findById(reservation.getVoucherId())
-                    .orElse(null);
-
-            if (voucher != null) {
-                voucher.setReservedQuantity(voucher.getReservedQuantity() - reservation.getQuantity());
-                voucherRepository.save(voucher);
-            }
-
-            voucherReservationRepository.save(reservation);
+    public int cleanUpExpiredReservations() {
+        List<VoucherReservationJdbcRepository.ExpiredVoucherReservation> expired =
+                voucherReservationJdbcRepository.expireDue(LocalDateTime.now(), expiryBatchSize);
+        releaseExpired(expired);
+        if (!expired.isEmpty()) {
+            log.info("Cleaned up {} expired voucher reservations", expired.size());
         }
+        return expired.size();
+    }
 
-        log.info("Cleaned up {} expired voucher reservations", expiredReservations.size());
+    /**
+     * Expire the due voucher reservations of the given orders (driven by {@link ReservationExpiryWheel})
+     */
+    @Transactional
+    public int expireReservations(Collection<Integer> orderIds) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        List<VoucherReservationJdbcRepository.ExpiredVoucherReservation> expired =
+                voucherReservationJdbcRepository.expireDueForOrders(orderIds, LocalDateTime.now());
+        releaseExpired(expired);
+        if (!expired.isEmpty()) {
+            log.info("Expired {} voucher reservations of {} orders", expired.size(), orderIds.size());
+        }
+        return expired.size();
     }
 
     @Transactional
@@ -218,4 +243,19 @@ public class VoucherReservationService {
         log.info("Purged {} old voucher reservations", deleted);
         return deleted;
     }
+
+    // Trả số lượt giữ về voucher: một UPDATE (batch) cho mỗi voucher thay vì findById + save từng dòng
+    private void releaseExpired(List<VoucherReservationJdbcRepository.ExpiredVoucherReservation> expired) {
+        if (expired.isEmpty()) {
+            return;
+        }
+        SortedMap<Integer, Integer> quantityByVoucher = new TreeMap<>();
+        for (VoucherReservationJdbcRepository.ExpiredVoucherReservation reservation : expired) {
+            quantityByVoucher.merge(reservation.voucherId(), reservation.quantity(), Integer::sum);
+        }
+        List<Integer> skipped = voucherReservationJdbcRepository.decrementReserved(quantityByVoucher);
+        if (!skipped.isEmpty()) {
+            log.warn("Reserved quantity of vouchers {} is lower than their expired reservations, left unchanged", skipped);
+        }
+    }
 }
@@ -0,0 +1,281 @@
+package vn.techbox.techbox_store.cart.store;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import vn.techbox.techbox_store.cart.repository.CartJdbcRepository;
+import vn.techbox.techbox_store.cart.repository.CartJdbcRepository.CartItemRow;
+import vn.techbox.techbox_store.cart.repository.CartJdbcRepository.CartRow;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class CartStoreTest {
+
+    private static final BigDecimal PRICE = new BigDecimal("100000");
+
+    private final RecordingCartJdbcRepository repository = new RecordingCartJdbcRepository();
+    private final CartStore store = new CartStore(repository, mock(PlatformTransactionManager.class),
+            CartStoreMode.WRITE_BEHIND, 100, 100, 500);
+
+    @Test
+    void newCartIsWrittenOnceWithItsLatestLines() {
+        store.execute(1, cart -> {
+            cart.addLine(10, 1, PRICE);
+            cart.addLine(11, 2, PRICE);
+            return null;
+        });
+        store.execute(1, cart -> cart.updateQuantity(10, 5));
+
+        assertThat(repository.upserts).isEmpty();
+        assertThat(store.flush()).isEqualTo(1);
+
+        assertThat(repository.upserts).hasSize(1);
+        int cartId = repository.cartIds.get(1);
+        assertThat(quantities(repository.saves.get(0).get(cartId))).containsEntry(10, 5).containsEntry(11, 2);
+
+        // Nothing changed since: the next flush writes nothing
+        assertThat(store.flush()).isZero();
+        assertThat(repository.upserts).hasSize(1);
+    }
+
+    @Test
+    void existingCartWritesOnlyChangedAndRemovedLines() {
+        LocalDateTime then = LocalDateTime.now().minusDays(1);
+        repository.existing(1, 5, then,
+                new CartItemRow(50, 10, 1, PRICE, then, then),
+                new CartItemRow(51, 11, 1, PRICE, then, then),
+                new CartItemRow(52, 12, 1, PRICE, then, then));
+
+        store.execute(1, cart -> {
+            cart.updateQuantity(10, 3);
+            cart.removeLine(11);
+            return null;
+        });
+        store.flush();
+
+        assertThat(repository.deletes.get(0).get(5)).containsExactly(11);
+        assertThat(quantities(repository.saves.get(0).get(5))).containsOnly(Map.entry(10, 3));
+    }
+
+    @Test
+    void failedFlushKeepsChangesAndRetryWritesThemWithLaterOnes() {
+        store.execute(1, cart -> {
+            cart.addLine(10, 1, PRICE);
+            return null;
+        });
+        store.flush();
+        int cartId = repository.cartIds.get(1);
+
+        store.execute(1, cart -> cart.updateQuantity(10, 4));
+        repository.failNextUpsert = true;
+        assertThatThrownBy(store::flush).isInstanceOf(DataAccessResourceFailureException.class);
+
+        store.execute(1, cart -> {
+            cart.addLine(12, 2, PRICE);
+            return null;
+        });
+        assertThat(store.flush()).isEqualTo(1);
+
+        Map<Integer, Integer> written = quantities(repository.saves.get(repository.saves.size() - 1).get(cartId));
+        assertThat(written).containsEntry(10, 4).containsEntry(12, 2);
+        assertThat(store.flush()).isZero();
+    }
+
+    @Test
+    void failedFlushOfRemovalIsRetried() {
+        LocalDateTime then = LocalDateTime.now().minusDays(1);
+        repository.existing(1, 5, then, new CartItemRow(50, 10, 1, PRICE, then, then));
+
+        store.execute(1, cart -> cart.removeLine(10));
+        repository.failNextUpsert = true;
+        assertThatThrownBy(store::flush).isInstanceOf(DataAccessResourceFailureException.class);
+
+        store.flush();
+        assertThat(repository.deletes.get(repository.deletes.size() - 1).get(5)).containsExactly(10);
+    }
+
+    @Test
+    void changeMadeWhileFlushingIsWrittenByTheNextFlush() {
+        store.execute(1, cart -> {
+            cart.addLine(10, 1, PRICE);
+            return null;
+        });
+        // The cart changes between the rows being read for the write and the write completing
+        repository.duringNextUpsert = () -> store.execute(1, cart -> cart.updateQuantity(10, 7));
+
+        store.flush();
+        int cartId = repository.cartIds.get(1);
+        assertThat(quantities(repository.saves.get(0).get(cartId))).containsEntry(10, 1);
+
+        assertThat(store.flush()).isEqualTo(1);
+        assertThat(quantities(repository.saves.get(1).get(cartId))).containsOnly(Map.entry(10, 7));
+    }
+
+    @Test
+    void cartsOfSeveralUsersAreWrittenInOneBatch() {
+        for (int userId = 1; userId <= 3; userId++) {
+            int variation = 100 + userId;
+            store.execute(userId, cart -> {
+                cart.addLine(variation, 1, PRICE);
+                return null;
+            });
+        }
+
+        assertThat(store.flush()).isEqualTo(3);
+        assertThat(repository.upserts).hasSize(1);
+        assertThat(repository.upserts.get(0)).extracting(CartRow::userId).containsExactlyInAnyOrder(1, 2, 3);
+    }
+
+    @Test
+    void cartTheDatabaseRejectsIsDroppedAndOthersAreWritten() {
+        for (int userId = 1; userId <= 3; userId++) {
+            int variation = 100 + userId;
+            store.execute(userId, cart -> {
+                cart.addLine(variation, 1, PRICE);
+                return null;
+            });
+        }
+        repository.rejectedUserId = 2;
+
+        assertThat(store.flush()).isEqualTo(2);
+        assertThat(repository.cartIds).containsKeys(1, 3).doesNotContainKey(2);
+
+        // Dead-lettered: not retried, and the cart reloads from its (missing) rows
+        assertThat(store.flush()).isZero();
+        assertThat(store.execute(2, cart -> cart.view().items())).isEmpty();
+    }
+
+    @Test
+    void changeBeyondDirtyBoundIsWrittenBeforeReturning() {
+        CartStore bounded = new CartStore(repository, mock(PlatformTransactionManager.class),
+                CartStoreMode.WRITE_BEHIND, 100, 1, 500);
+        bounded.execute(1, cart -> {
+            cart.addLine(10, 1, PRICE);
+            return null;
+        });
+        assertThat(repository.upserts).isEmpty();
+
+        bounded.execute(2, cart -> {
+            cart.addLine(11, 1, PRICE);
+            return null;
+        });
+        assertThat(repository.upserts).hasSize(1);
+        assertThat(repository.upserts.get(0)).extracting(CartRow::userId).containsExactly(2);
+
+        // Reading a stored cart changes nothing, so nothing is written
+        repository.existing(3, 30, LocalDateTime.now().minusDays(1));
+        bounded.execute(3, cart -> cart.view().items());
+        assertThat(repository.upserts).hasSize(1);
+    }
+
+    @Test
+    void failedWriteBeyondDirtyBoundIsNotKept() {
+        CartStore bounded = new CartStore(repository, mock(PlatformTransactionManager.class),
+                CartStoreMode.WRITE_BEHIND, 100, 1, 500);
+        bounded.execute(1, cart -> {
+            cart.addLine(10, 1, PRICE);
+            return null;
+        });
+
+        repository.failNextUpsert = true;
+        assertThatThrownBy(() -> bounded.execute(2, cart -> {
+            cart.addLine(11, 1, PRICE);
+            return null;
+        })).isInstanceOf(DataAccessResourceFailureException.class);
+
+        assertThat(bounded.flush()).isEqualTo(1);
+        assertThat(repository.cartIds).containsKey(1).doesNotContainKey(2);
+        // The change that could not be written was not kept either
+        assertThat(bounded.execute(2, cart -> cart.view().items())).isEmpty();
+    }
+
+    private static Map<Integer, Integer> quantities(Collection<CartItemRow> items) {
+        Map<Integer, Integer> result = new HashMap<>();
+        for (CartItemRow item : items) {
+            result.put(item.productVariationId(), item.quantity());
+        }
+        return result;
+    }
+
+    /**
+     * Keeps cart rows in memory and records every write
+     */
+    private static class RecordingCartJdbcRepository extends CartJdbcRepository {
+
+        final Map<Integer, CartRow> rows = new HashMap<>();
+        final Map<Integer, List<CartItemRow>> items = new HashMap<>();
+        final Map<Integer, Integer> cartIds = new HashMap<>();
+        final List<List<CartRow>> upserts = new ArrayList<>();
+        final List<Map<Integer, List<Integer>>> deletes = new ArrayList<>();
+        final List<Map<Integer, List<CartItemRow>>> saves = new ArrayList<>();
+        boolean failNextUpsert;
+        Integer rejectedUserId;
+        Runnable duringNextUpsert;
+        private int nextCartId = 1000;
+
+        RecordingCartJdbcRepository() {
+            super(null, null);
+        }
+
+        void existing(Integer userId, Integer cartId, LocalDateTime updatedAt, CartItemRow... lines) {
+            rows.put(userId, new CartRow(cartId, userId, updatedAt, updatedAt));
+            items.put(cartId, List.of(lines));
+            cartIds.put(userId, cartId);
+        }
+
+        @Override
+        public Optional<CartRow> findCartByUserId(Integer userId) {
+            return Optional.ofNullable(rows.get(userId));
+        }
+
+        @Override
+        public List<CartItemRow> findItemsByCartId(Integer cartId) {
+            return items.getOrDefault(cartId, List.of());
+        }
+
+        @Override
+        public Map<Integer, Integer> upsertCarts(Collection<CartRow> carts) {
+            if (duringNextUpsert != null) {
+                Runnable action = duringNextUpsert;
+                duringNextUpsert = null;
+                action.run();
+            }
+            if (failNextUpsert) {
+                failNextUpsert = false;
+                throw new DataAccessResourceFailureException("connection lost");
+            }
+            for (CartRow cart : carts) {
+                if (cart.userId().equals(rejectedUserId)) {
+                    throw new DataIntegrityViolationException("cart_items_product_variation_id_fkey");
+                }
+            }
+            upserts.add(List.copyOf(carts));
+            Map<Integer, Integer> result = new HashMap<>();
+            for (CartRow cart : carts) {
+                result.put(cart.userId(), cartIds.computeIfAbsent(cart.userId(), k -> nextCartId++));
+            }
+            return result;
+        }
+
+        @Override
+        public void deleteItems(Map<Integer, ? extends Collection<Integer>> variationIdsByCart) {
+            Map<Integer, List<Integer>> copy = new HashMap<>();
+            variationIdsByCart.forEach((cartId, ids) -> copy.put(cartId, List.copyOf(ids)));
+            deletes.add(copy);
+        }
+
+        @Override
+        public void saveItems(Map<Integer, ? extends Collection<CartItemRow>> itemsByCart) {
+            Map<Integer, List<CartItemRow>> copy = new HashMap<>();
+            itemsByCart.forEach((cartId, lines) -> copy.put(cartId, List.copyOf(lines)));
+            saves.add(copy);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package vn.techbox.techbox_store.inventory.reservation;
+
+import org.junit.jupiter.api.Test;
+import vn.techbox.techbox_store.inventory.reservation.ReservationExpiryWheel.Due;
+import vn.techbox.techbox_store.inventory.reservation.ReservationExpiryWheel.ReservationKind;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReservationExpiryWheelTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 1, 1, 0, 0);
+
+    private final ReservationExpiryWheel wheel = new ReservationExpiryWheel(1000, millis(START));
+
+    @Test
+    void drainsDueOrdersByKind() {
+        wheel.add(ReservationKind.INVENTORY, 1, START.plusMinutes(15));
+        wheel.add(ReservationKind.VOUCHER, 1, START.plusMinutes(15));
+        wheel.add(ReservationKind.INVENTORY, 2, START.plusHours(2));
+
+        assertThat(wheel.drainDue(millis(START.plusMinutes(14))).isEmpty()).isTrue();
+
+        Due due = wheel.drainDue(millis(START.plusMinutes(16)));
+        assertThat(due.inventoryOrderIds()).containsExactly(1);
+        assertThat(due.voucherOrderIds()).containsExactly(1);
+        assertThat(wheel.size()).isEqualTo(1);
+
+        due = wheel.drainDue(millis(START.plusHours(3)));
+        assertThat(due.inventoryOrderIds()).containsExactly(2);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void overdueDeadlineIsReturnedByNextDrain() {
+        wheel.drainDue(millis(START.plusMinutes(10)));
+
+        wheel.add(ReservationKind.INVENTORY, 7, START.plusMinutes(5));
+
+        assertThat(wheel.drainDue(millis(START.plusMinutes(10))).inventoryOrderIds()).containsExactly(7);
+        assertThat(wheel.drainDue(millis(START.plusMinutes(11))).isEmpty()).isTrue();
+    }
+
+    @Test
+    void cancelDropsEveryDeadlineOfTheOrderAndKind() {
+        wheel.add(ReservationKind.INVENTORY, 3, START.plusMinutes(15));
+        wheel.add(ReservationKind.INVENTORY, 3, START.plusDays(3));
+        wheel.add(ReservationKind.VOUCHER, 3, START.plusMinutes(15));
+
+        wheel.cancel(ReservationKind.INVENTORY, 3);
+
+        assertThat(wheel.size()).isEqualTo(1);
+        Due due = wheel.drainDue(millis(START.plusDays(4)));
+        assertThat(due.inventoryOrderIds()).isEmpty();
+        assertThat(due.voucherOrderIds()).containsExactly(3);
+    }
+
+    @Test
+    void cancelWithoutTransactionAppliesImmediately() {
+        wheel.schedule(ReservationKind.VOUCHER, 4, START.plusMinutes(15));
+        wheel.cancelAfterCommit(ReservationKind.VOUCHER, 4);
+
+        assertThat(wheel.drainDue(millis(START.plusHours(1))).isEmpty()).isTrue();
+    }
+
+    @Test
+    void orderCanBeScheduledAgainAfterCancel() {
+        wheel.add(ReservationKind.INVENTORY, 5, START.plusMinutes(15));
+        wheel.cancel(ReservationKind.INVENTORY, 5);
+        wheel.add(ReservationKind.INVENTORY, 5, START.plusMinutes(30));
+
+        assertThat(wheel.drainDue(millis(START.plusMinutes(20))).isEmpty()).isTrue();
+        assertThat(wheel.drainDue(millis(START.plusMinutes(31))).inventoryOrderIds()).containsExactly(5);
+    }
+
+    private static long millis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
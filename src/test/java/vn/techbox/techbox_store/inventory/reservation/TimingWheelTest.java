@@ -0,0 +1,116 @@
+package vn.techbox.techbox_store.inventory.reservation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    // 10 ms ticks, 4 buckets, 2 levels: level 0 holds delays < 4 ticks, level 1 < 16 ticks, the rest overflows
+    private static final long TICK = 10;
+
+    private final TimingWheel<String> wheel = new TimingWheel<>(TICK, 4, 2, 0);
+
+    @Test
+    void firesOnFirstTickAfterDeadline() {
+        List<String> fired = new ArrayList<>();
+        assertThat(wheel.add(25, "a")).isNotNull();
+
+        wheel.advance(29, fired::add);
+        assertThat(fired).isEmpty();
+
+        wheel.advance(30, fired::add);
+        assertThat(fired).containsExactly("a");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void rejectsDeadlineThatHasPassed() {
+        wheel.advance(100, item -> { });
+
+        assertThat(wheel.add(50, "late")).isNull();
+        assertThat(wheel.add(99, "same tick")).isNull();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void cascadesFromUpperLevelAtExactTick() {
+        List<String> fired = new ArrayList<>();
+        wheel.add(125, "upper");
+
+        wheel.advance(129, fired::add);
+        assertThat(fired).isEmpty();
+
+        wheel.advance(130, fired::add);
+        assertThat(fired).containsExactly("upper");
+    }
+
+    @Test
+    void overflowFiresAfterSeveralTopLevelRotations() {
+        List<String> fired = new ArrayList<>();
+        wheel.add(1000, "far");
+
+        for (long now = 0; now < 1010; now += TICK) {
+            wheel.advance(now, fired::add);
+        }
+        assertThat(fired).isEmpty();
+        assertThat(wheel.size()).isEqualTo(1);
+
+        wheel.advance(1010, fired::add);
+        assertThat(fired).containsExactly("far");
+    }
+
+    @Test
+    void everyTimeoutFiresAtItsOwnTickAcrossManyRounds() {
+        Random random = new Random(42);
+        Map<String, Long> expectedTick = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            long deadline = random.nextInt(3000);
+            String item = "t" + i;
+            if (wheel.add(deadline, item) != null) {
+                expectedTick.put(item, deadline / TICK + 1);
+            }
+        }
+
+        Map<String, Long> firedTick = new HashMap<>();
+        // Uneven steps, so several ticks (and rollovers) are crossed in one advance
+        long now = 0;
+        while (now <= 3100) {
+            long step = 1 + random.nextInt(3);
+            for (long i = 0; i < step; i++) {
+                now += TICK;
+                long tick = now / TICK;
+                wheel.advance(now, item -> firedTick.put(item, tick));
+            }
+        }
+
+        assertThat(firedTick).isEqualTo(expectedTick);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void cancelledTimeoutNeverFires() {
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timeout<String> kept = wheel.add(35, "kept");
+        TimingWheel.Timeout<String> cancelled = wheel.add(35, "cancelled");
+        TimingWheel.Timeout<String> far = wheel.add(500, "far");
+
+        assertThat(wheel.cancel(cancelled)).isTrue();
+        assertThat(wheel.cancel(far)).isTrue();
+        assertThat(wheel.cancel(cancelled)).isFalse();
+        assertThat(wheel.size()).isEqualTo(1);
+
+        wheel.advance(1000, fired::add);
+
+        assertThat(fired).containsExactly("kept");
+        assertThat(kept.isDone()).isTrue();
+        assertThat(wheel.cancel(kept)).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+}
@@ -0,0 +1,233 @@
+package vn.techbox.techbox_store.user.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import vn.techbox.techbox_store.user.repository.RefreshTokenJdbcRepository;
+import vn.techbox.techbox_store.user.repository.RefreshTokenRepository;
+import vn.techbox.techbox_store.user.token.RefreshTokenStore;
+import vn.techbox.techbox_store.user.token.RefreshTokenStoreMode;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class RefreshTokenServiceImplTest {
+
+    private static final int USER_ID = 7;
+    private static final long EXPIRY_MILLIS = 7L * 24 * 60 * 60 * 1000;
+    private static final String REPLAY = "Refresh token has already been used";
+    private static final String INVALID = "Invalid, revoked or expired refresh token";
+
+    private final InMemoryRefreshTokenJdbcRepository repository = new InMemoryRefreshTokenJdbcRepository();
+    private RefreshTokenStore store;
+
+    @ParameterizedTest
+    @EnumSource(RefreshTokenStoreMode.class)
+    void concurrentRotationsOfOneTokenHaveOneWinner(RefreshTokenStoreMode mode) throws Exception {
+        RefreshTokenServiceImpl service = service(mode);
+        String token = service.createRefreshToken(USER_ID).getTokenHash();
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    service.rotateRefreshToken(token);
+                    return null;
+                } catch (RuntimeException e) {
+                    return e.getMessage();
+                }
+            }));
+        }
+        start.countDown();
+        List<String> outcomes = new ArrayList<>();
+        for (Future<String> result : results) {
+            outcomes.add(result.get());
+        }
+        executor.shutdown();
+
+        // null is the one rotation that went through; every other request was rejected
+        assertThat(outcomes).containsOnlyOnce((String) null);
+        assertThat(outcomes).filteredOn(outcome -> outcome != null).hasSize(threads - 1);
+        assertThatThrownBy(() -> service.rotateRefreshToken(token)).hasMessage(REPLAY);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RefreshTokenStoreMode.class)
+    void rotatedTokenPresentedAgainIsReplay(RefreshTokenStoreMode mode) {
+        RefreshTokenServiceImpl service = service(mode);
+        String first = service.createRefreshToken(USER_ID).getTokenHash();
+
+        String second = service.rotateRefreshToken(first).getTokenHash();
+
+        assertThatThrownBy(() -> service.rotateRefreshToken(first)).hasMessage(REPLAY);
+        assertThat(service.rotateRefreshToken(second).getUserId()).isEqualTo(USER_ID);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RefreshTokenStoreMode.class)
+    void unknownTokenIsRejectedWithoutReplayLookup(RefreshTokenStoreMode mode) {
+        RefreshTokenServiceImpl service = service(mode);
+        service.rotateRefreshToken(service.createRefreshToken(USER_ID).getTokenHash());
+
+        assertThatThrownBy(() -> service.rotateRefreshToken("never-issued")).hasMessage(INVALID);
+        // The revoked filter rules the token out before the database is asked
+        assertThat(repository.revokedLookups).isZero();
+    }
+
+    @ParameterizedTest
+    @EnumSource(RefreshTokenStoreMode.class)
+    void restartedStoreRecognisesReplaysOnceFilterIsRebuilt(RefreshTokenStoreMode mode) {
+        RefreshTokenServiceImpl service = service(mode);
+        String first = service.createRefreshToken(USER_ID).getTokenHash();
+        service.rotateRefreshToken(first);
+        store.flush();
+
+        // A new instance over the same table starts with an empty filter
+        RefreshTokenServiceImpl restarted = service(mode);
+        assertThatThrownBy(() -> restarted.rotateRefreshToken(first)).hasMessage(INVALID);
+
+        store.rebuildRevokedFilter();
+        assertThatThrownBy(() -> restarted.rotateRefreshToken(first)).hasMessage(REPLAY);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RefreshTokenStoreMode.class)
+    void replayOfRotatedTokenIsStillDetectedAfterPurge(RefreshTokenStoreMode mode) {
+        RefreshTokenServiceImpl service = service(mode);
+        String first = service.createRefreshToken(USER_ID).getTokenHash();
+        String second = service.rotateRefreshToken(first).getTokenHash();
+        store.flush();
+
+        LocalDateTime past = LocalDateTime.now().minusDays(1);
+        repository.insertTokens(List.of(
+                new RefreshTokenJdbcRepository.TokenRow(8, "expired-active", past, past.minusDays(7), false),
+                new RefreshTokenJdbcRepository.TokenRow(8, "expired-revoked", past, past.minusDays(7), true)));
+
+        service.cleanupExpiredTokens();
+
+        assertThat(repository.hashes()).doesNotContain("expired-active", "expired-revoked").hasSize(2);
+        assertThatThrownBy(() -> service.rotateRefreshToken(first)).hasMessage(REPLAY);
+        assertThat(service.rotateRefreshToken(second).getUserId()).isEqualTo(USER_ID);
+    }
+
+    private RefreshTokenServiceImpl service(RefreshTokenStoreMode mode) {
+        store = new RefreshTokenStore(repository, mock(RefreshTokenRepository.class),
+                mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), mode, 100, 2, 1000, 0.01);
+        RefreshTokenServiceImpl service = new RefreshTokenServiceImpl(store, repository);
+        ReflectionTestUtils.setField(service, "refreshTokenExpiry", EXPIRY_MILLIS);
+        ReflectionTestUtils.setField(service, "purgePauseMillis", 0L);
+        return service;
+    }
+
+    /**
+     * Keeps refresh_tokens rows in memory with the same conditions as the SQL; each method holds
+     * the lock for its whole statement, as the row locks do
+     */
+    private static class InMemoryRefreshTokenJdbcRepository extends RefreshTokenJdbcRepository {
+
+        private final List<Row> rows = new ArrayList<>();
+        private long nextId = 1;
+        int revokedLookups;
+
+        InMemoryRefreshTokenJdbcRepository() {
+            super(null);
+        }
+
+        synchronized List<String> hashes() {
+            return rows.stream().map(row -> row.tokenHash).toList();
+        }
+
+        @Override
+        public synchronized Optional<Integer> consumeToken(String tokenHash, LocalDateTime now) {
+            for (Row row : rows) {
+                if (row.tokenHash.equals(tokenHash) && !row.revoked && row.expiresAt.isAfter(now)) {
+                    row.revoked = true;
+                    return Optional.of(row.userId);
+                }
+            }
+            return Optional.empty();
+        }
+
+        @Override
+        public synchronized Optional<Integer> findRevokedUserId(String tokenHash) {
+            revokedLookups++;
+            return rows.stream()
+                    .filter(row -> row.tokenHash.equals(tokenHash) && row.revoked)
+                    .map(row -> row.userId)
+                    .findFirst();
+        }
+
+        @Override
+        public synchronized void insertTokens(List<TokenRow> tokens) {
+            for (TokenRow token : tokens) {
+                rows.add(new Row(nextId++, token.userId(), token.tokenHash(), token.expiresAt(), token.revoked()));
+            }
+        }
+
+        @Override
+        public synchronized int revokeToken(String tokenHash) {
+            int updated = 0;
+            for (Row row : rows) {
+                if (row.tokenHash.equals(tokenHash) && !row.revoked) {
+                    row.revoked = true;
+                    updated++;
+                }
+            }
+            return updated;
+        }
+
+        @Override
+        public synchronized List<RevokedHash> findRevokedHashes(long afterId, LocalDateTime now, int limit) {
+            return rows.stream()
+                    .filter(row -> row.id > afterId && row.revoked && row.expiresAt.isAfter(now))
+                    .limit(limit)
+                    .map(row -> new RevokedHash(row.id, row.tokenHash))
+                    .toList();
+        }
+
+        @Override
+        public synchronized int deleteExpired(LocalDateTime expiredBefore, int limit) {
+            int deleted = 0;
+            for (Iterator<Row> it = rows.iterator(); it.hasNext() && deleted < limit; ) {
+                if (it.next().expiresAt.isBefore(expiredBefore)) {
+                    it.remove();
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+
+        private static final class Row {
+            final long id;
+            final Integer userId;
+            final String tokenHash;
+            final LocalDateTime expiresAt;
+            boolean revoked;
+
+            Row(long id, Integer userId, String tokenHash, LocalDateTime expiresAt, boolean revoked) {
+                this.id = id;
+                this.userId = userId;
+                this.tokenHash = tokenHash;
+                this.expiresAt = expiresAt;
+                this.revoked = revoked;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package vn.techbox.techbox_store.user.token;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RevokedTokenFilterTest {
+
+    @Test
+    void emptyFilterContainsNothing() {
+        RevokedTokenFilter filter = new RevokedTokenFilter(1000, 0.01);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(filter.mightContain(hash("token-" + i))).isFalse();
+        }
+    }
+
+    @Test
+    void everyAddedHashIsFound() {
+        RevokedTokenFilter filter = new RevokedTokenFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(hash("revoked-" + i));
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain(hash("revoked-" + i))).isTrue();
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearConfiguredRate() {
+        RevokedTokenFilter filter = new RevokedTokenFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(hash("revoked-" + i));
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(hash("active-" + i))) {
+                falsePositives++;
+            }
+        }
+        // Configured 1%; allow for variance but catch a broken hash
+        assertThat(falsePositives).isLessThan(probes / 50);
+    }
+
+    @Test
+    void concurrentAddsAreNotLost() throws Exception {
+        RevokedTokenFilter filter = new RevokedTokenFilter(20_000, 0.01);
+        int threads = 4;
+        int perThread = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    filter.add(hash("revoked-" + thread + "-" + i));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                assertThat(filter.mightContain(hash("revoked-" + t + "-" + i))).isTrue();
+            }
+        }
+    }
+
+    // Same shape as the stored token hashes: Base64 of SHA-256
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}